@@ -0,0 +1,431 @@
+package com.firewall.analysis;
+
+import com.firewall.core.PolicyEvaluator;
+import com.firewall.core.PolicyFile;
+import com.firewall.core.PolicyManager;
+import com.firewall.core.PolicyMinimizer;
+import com.firewall.core.PolicySnapshot;
+import com.firewall.model.AppPolicy;
+import com.firewall.model.NetworkRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Finds the parts of a policy file that don't do what they look like they do, e.g.
+//   --analyze-policies [policies.txt] [--write canonical_policies.txt]
+//
+// It reports shadowed and empty app blocks, repeated and unknown keys, inline "# ..."
+// comments that the loader keeps as part of a value, duplicate entries, explicit domains a
+// wildcard already matches, and IPs allowed for several apps. It then writes the canonical
+// form of the file (apps and entries sorted, redundant entries dropped), which is what
+// PolicyManager loads anyway, and proves it equivalent by evaluating the same probe requests
+// against the policies as written, as loaded, and as re-read from the canonical text.
+public class PolicyAnalyzer {
+    private static final List<String> LIST_KEYS = Arrays.asList("allowedDomains", "allowedProtocols", "allowedIPs");
+    private static final List<String> KNOWN_KEYS = Arrays.asList("allowedDomains", "allowedProtocols", "allowedIPs",
+            "defaultAction", "rateLimit", "byteRateLimit", "destinationRateLimit", "destinationByteRateLimit",
+            "allowedTimes", "deniedTimes", "overloadAction");
+    private static final String[] PROBE_PROTOCOLS = {"TCP", "UDP", "HTTP", "HTTPS", "DNS", "SMTP", "SMTPS", "IMAPS",
+            "ICMPV4", "SSH", "FTP"};
+    private static final String PROBE_IP = "203.0.113.7"; // TEST-NET-3, never in a real policy
+    private static final String UNLISTED_APP = "*unlisted-app*";
+    private static final long MAX_FULL_PRODUCT = 200_000; // probes per app before falling back to pairwise coverage
+
+    public enum Kind {
+        SHADOWED_BLOCK, EMPTY_BLOCK, REPEATED_KEY, UNKNOWN_KEY, INLINE_COMMENT, MALFORMED_LINE,
+        DUPLICATE_ENTRY, COVERED_ENTRY, SHARED_IP
+    }
+
+    private final String source;
+    private final PolicyFile file;
+    private final List<Finding> findings = new ArrayList<>();
+    private final Map<String, PolicyFile.Block> effective = new TreeMap<>(); // the block the loader keeps, per app
+    private final Map<String, AppPolicy> asWritten = new TreeMap<>(); // lists entry for entry as written
+    private final Map<String, AppPolicy> loaded = new TreeMap<>();    // as PolicyManager builds them
+    private int entriesAsWritten;
+    private int entriesMinimized;
+
+    public PolicyAnalyzer(String source, PolicyFile file) {
+        this.source = source;
+        this.file = file;
+        analyze();
+    }
+
+    private void analyze() {
+        for (String warning : file.getWarnings()) {
+            findings.add(new Finding(Kind.MALFORMED_LINE, null, warning));
+        }
+        for (PolicyFile.Block block : file.getBlocks()) {
+            String app = block.getAppName();
+            for (String repeat : block.getRepeatedKeys()) {
+                findings.add(new Finding(Kind.REPEATED_KEY, app, "Key " + repeat
+                        + " is set again in the block at line " + block.getLine() + "; only the last value counts"));
+            }
+            if (block.getAttributes().isEmpty()) {
+                findings.add(new Finding(Kind.EMPTY_BLOCK, app, "Block at line " + block.getLine()
+                        + " has no attributes and is skipped; the app gets the global default"));
+                continue;
+            }
+            PolicyFile.Block earlier = effective.put(app, block);
+            if (earlier != null) {
+                findings.add(new Finding(Kind.SHADOWED_BLOCK, app, "Block at line " + earlier.getLine()
+                        + " is replaced entirely by the block at line " + block.getLine()));
+            }
+        }
+
+        Map<String, Set<String>> appsByIp = new TreeMap<>();
+        for (PolicyFile.Block block : effective.values()) {
+            String app = block.getAppName();
+            asWritten.put(app, PolicyManager.buildPolicy(app, block.getAttributes(), false));
+            loaded.put(app, PolicyManager.buildPolicy(app, block.getAttributes()));
+            for (Map.Entry<String, String> attribute : block.getAttributes().entrySet()) {
+                checkAttribute(app, attribute.getKey(), attribute.getValue());
+            }
+            List<String> listFindings = new ArrayList<>();
+            List<String> domains = split(block.getAttributes().get("allowedDomains"));
+            List<String> protocols = split(block.getAttributes().get("allowedProtocols"));
+            List<String> ips = split(block.getAttributes().get("allowedIPs"));
+            entriesAsWritten += domains.size() + protocols.size() + ips.size();
+            List<String> minimizedIps = PolicyMinimizer.minimizeIPs(ips, listFindings);
+            entriesMinimized += PolicyMinimizer.minimizeDomains(domains, listFindings).size()
+                    + PolicyMinimizer.minimizeProtocols(protocols, listFindings).size() + minimizedIps.size();
+            for (String finding : listFindings) {
+                findings.add(new Finding(finding.contains("matched by") ? Kind.COVERED_ENTRY : Kind.DUPLICATE_ENTRY,
+                        app, finding));
+            }
+            for (String ip : minimizedIps) {
+                appsByIp.computeIfAbsent(ip, k -> new LinkedHashSet<>()).add(app);
+            }
+        }
+        for (Map.Entry<String, Set<String>> ip : appsByIp.entrySet()) {
+            if (ip.getValue().size() > 1) {
+                findings.add(new Finding(Kind.SHARED_IP, null, "IP " + ip.getKey() + " is allowed for "
+                        + String.join(", ", ip.getValue())));
+            }
+        }
+    }
+
+    private void checkAttribute(String app, String key, String value) {
+        if (!KNOWN_KEYS.contains(key)) {
+            findings.add(new Finding(Kind.UNKNOWN_KEY, app, "Unknown key '" + key + "' is ignored"));
+        }
+        if (value.indexOf('#') < 0) {
+            return;
+        }
+        String intended = value.substring(0, value.indexOf('#')).trim();
+        if (LIST_KEYS.contains(key)) {
+            for (String entry : split(value)) {
+                if (entry.indexOf('#') >= 0) {
+                    findings.add(new Finding(Kind.INLINE_COMMENT, app, key + " keeps '" + entry
+                            + "' as one entry, which never matches; did you mean '"
+                            + entry.substring(0, entry.indexOf('#')).trim() + "'?"));
+                }
+            }
+        } else if (key.equals("defaultAction")) {
+            findings.add(new Finding(Kind.INLINE_COMMENT, app, "defaultAction '" + value
+                    + "' is not a valid action, the loader falls back to DENY; did you mean '" + intended + "'?"));
+        } else {
+            findings.add(new Finding(Kind.INLINE_COMMENT, app, key + " '" + value
+                    + "' includes the comment; did you mean '" + intended + "'?"));
+        }
+    }
+
+    public List<Finding> getFindings() {
+        return findings;
+    }
+
+    // The policy file as the loader sees it: one block per app, sorted, with minimized lists.
+    // Values that don't parse are kept as written, so the file still loads the same way.
+    public String toCanonicalText() {
+        StringBuilder text = new StringBuilder();
+        text.append("# Canonical form of ").append(source).append(", written by --analyze-policies\n");
+        if (!PolicySnapshot.UNVERSIONED.equals(file.getVersion())) {
+            text.append("# Version: ").append(file.getVersion()).append('\n');
+        }
+        boolean first = true;
+        for (PolicyFile.Block block : effective.values()) {
+            Map<String, String> attributes = block.getAttributes();
+            text.append(first ? "\n" : "---\n").append("appName=").append(block.getAppName()).append('\n');
+            first = false;
+            appendList(text, "allowedDomains", PolicyMinimizer.minimizeDomains(split(attributes.get("allowedDomains")), null));
+            appendList(text, "allowedProtocols", PolicyMinimizer.minimizeProtocols(split(attributes.get("allowedProtocols")), null));
+            appendList(text, "allowedIPs", PolicyMinimizer.minimizeIPs(split(attributes.get("allowedIPs")), null));
+            // Always written, it also keeps an otherwise empty block from being skipped
+            text.append("defaultAction=").append(loaded.get(block.getAppName()).getDefaultAction()).append('\n');
+            for (String key : KNOWN_KEYS.subList(4, KNOWN_KEYS.size())) {
+                appendValue(text, key, attributes.get(key));
+            }
+            for (Map.Entry<String, String> attribute : new TreeMap<>(attributes).entrySet()) {
+                if (!KNOWN_KEYS.contains(attribute.getKey())) {
+                    appendValue(text, attribute.getKey(), attribute.getValue());
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    // Evaluates probe requests for every app (and one app without a policy) against the
+    // policies as written, as PolicyManager loads them, and as loaded from 'canonical'.
+    public Equivalence checkEquivalence(PolicyFile canonical) {
+        Map<String, AppPolicy> reread = new TreeMap<>();
+        for (PolicyFile.Block block : canonical.getBlocks()) {
+            if (!block.getAttributes().isEmpty()) {
+                reread.put(block.getAppName(), PolicyManager.buildPolicy(block.getAppName(), block.getAttributes(), false));
+            }
+        }
+
+        Equivalence result = new Equivalence();
+        if (!reread.keySet().equals(asWritten.keySet())) {
+            result.mismatch("canonical text defines apps " + reread.keySet() + ", expected " + asWritten.keySet());
+        }
+        long now = System.currentTimeMillis();
+        List<String> apps = new ArrayList<>(asWritten.keySet());
+        apps.add(UNLISTED_APP);
+        for (String app : apps) {
+            AppPolicy written = asWritten.get(app);
+            String[] domains = probeDomains(written);
+            String[] protocols = probeProtocols(written);
+            String[] ips = probeIps(written);
+            if ((long) domains.length * protocols.length * ips.length <= MAX_FULL_PRODUCT) {
+                for (String domain : domains) {
+                    for (String protocol : protocols) {
+                        for (String ip : ips) {
+                            compare(result, app, written, loaded.get(app), reread.get(app), domain, protocol, ip, now);
+                        }
+                    }
+                }
+            } else {
+                // Each list is checked on its own (a decision is the AND of the three), every
+                // entry against every protocol, with the third value rotating
+                for (int d = 0; d < domains.length; d++) {
+                    for (int p = 0; p < protocols.length; p++) {
+                        compare(result, app, written, loaded.get(app), reread.get(app), domains[d], protocols[p],
+                                ips[(d + p) % ips.length], now);
+                    }
+                }
+                for (int i = 0; i < ips.length; i++) {
+                    for (int p = 0; p < protocols.length; p++) {
+                        compare(result, app, written, loaded.get(app), reread.get(app), domains[(i + p) % domains.length],
+                                protocols[p], ips[i], now);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void compare(Equivalence result, String app, AppPolicy written, AppPolicy loaded, AppPolicy reread,
+                                String domain, String protocol, String ip, long now) {
+        NetworkRequest request = new NetworkRequest(app, domain, ip, protocol, 443, "N/A", now);
+        PolicyEvaluator.Result expected = PolicyEvaluator.evaluate(written, AppPolicy.Action.DENY, request);
+        PolicyEvaluator.Result fromLoaded = PolicyEvaluator.evaluate(loaded, AppPolicy.Action.DENY, request);
+        PolicyEvaluator.Result fromCanonical = PolicyEvaluator.evaluate(reread, AppPolicy.Action.DENY, request);
+        result.probes++;
+        if (!same(expected, fromLoaded) || !same(expected, fromCanonical)) {
+            result.mismatch(app + " -> " + domain + " (" + ip + ", " + protocol + "): " + expected.getDecision()
+                    + " as written, " + fromLoaded.getDecision() + " as loaded, " + fromCanonical.getDecision()
+                    + " from canonical text");
+        }
+    }
+
+    private static boolean same(PolicyEvaluator.Result a, PolicyEvaluator.Result b) {
+        return a.getDecision().equals(b.getDecision()) && a.getRule().equals(b.getRule());
+    }
+
+    // Every listed domain, plus names each wildcard does and doesn't match, plus an unlisted one
+    private static String[] probeDomains(AppPolicy policy) {
+        Set<String> probes = new LinkedHashSet<>();
+        probes.add("unlisted.example.net");
+        if (policy != null) {
+            for (String domain : policy.getAllowedDomainsList()) {
+                probes.add(domain);
+                probes.add(domain.toUpperCase());
+                if (domain.startsWith("*.")) {
+                    String suffix = domain.substring(1);
+                    probes.add("probe" + suffix);
+                    probes.add("deep.probe" + suffix);
+                    probes.add(suffix.substring(1)); // the bare domain, which the wildcard doesn't match
+                } else {
+                    probes.add("probe." + domain);
+                }
+            }
+        }
+        return probes.toArray(new String[0]);
+    }
+
+    private static String[] probeProtocols(AppPolicy policy) {
+        Set<String> probes = new LinkedHashSet<>(Arrays.asList(PROBE_PROTOCOLS));
+        if (policy != null) {
+            for (String protocol : policy.getAllowedProtocolsList()) {
+                probes.add(protocol);
+                probes.add(protocol.toLowerCase());
+            }
+        }
+        return probes.toArray(new String[0]);
+    }
+
+    private static String[] probeIps(AppPolicy policy) {
+        Set<String> probes = new LinkedHashSet<>();
+        probes.add(PROBE_IP);
+        if (policy != null) {
+            probes.addAll(policy.getAllowedIPsList());
+        }
+        return probes.toArray(new String[0]);
+    }
+
+    private static void appendList(StringBuilder text, String key, List<String> entries) {
+        if (!entries.isEmpty()) {
+            text.append(key).append('=').append(String.join(",", entries)).append('\n');
+        }
+    }
+
+    private static void appendValue(StringBuilder text, String key, String value) {
+        if (value != null && !value.trim().isEmpty()) {
+            text.append(key).append('=').append(value.trim()).append('\n');
+        }
+    }
+
+    private static List<String> split(String value) {
+        List<String> entries = new ArrayList<>();
+        if (value != null) {
+            for (String entry : value.split(",")) {
+                if (!entry.trim().isEmpty()) {
+                    entries.add(entry.trim());
+                }
+            }
+        }
+        return entries;
+    }
+
+    public int getEntriesAsWritten() {
+        return entriesAsWritten;
+    }
+
+    public int getEntriesMinimized() {
+        return entriesMinimized;
+    }
+
+    public static final class Finding {
+        private final Kind kind;
+        private final String app; // null for file-wide findings
+        private final String message;
+
+        Finding(Kind kind, String app, String message) {
+            this.kind = kind;
+            this.app = app;
+            this.message = message;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getApp() {
+            return app;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-15s %s%s", kind, app == null ? "" : app + ": ", message);
+        }
+    }
+
+    public static final class Equivalence {
+        private static final int MAX_EXAMPLES = 10;
+        private long probes;
+        private long mismatches;
+        private final List<String> examples = new ArrayList<>();
+
+        void mismatch(String example) {
+            mismatches++;
+            if (examples.size() < MAX_EXAMPLES) {
+                examples.add(example);
+            }
+        }
+
+        public long getProbes() {
+            return probes;
+        }
+
+        public long getMismatches() {
+            return mismatches;
+        }
+
+        public List<String> getExamples() {
+            return examples;
+        }
+    }
+
+    public static void main(String[] args) {
+        String policyFile = "policies.txt";
+        String outputFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--write") && i + 1 < args.length) {
+                outputFile = args[++i];
+            } else if (!args[i].startsWith("--")) {
+                policyFile = args[i];
+            } else {
+                System.err.println("Usage: --analyze-policies [policy file] [--write <canonical policy file>]");
+                return;
+            }
+        }
+
+        PolicyFile file;
+        try {
+            file = PolicyFile.read(policyFile);
+        } catch (IOException e) {
+            System.err.println("Error reading " + policyFile + ": " + e.getMessage());
+            return;
+        }
+        PolicyAnalyzer analyzer = new PolicyAnalyzer(policyFile, file);
+        System.out.println("\n--- Findings in " + policyFile + " (version " + file.getVersion() + ") ---");
+        if (analyzer.getFindings().isEmpty()) {
+            System.out.println("None.");
+        }
+        for (Finding finding : analyzer.getFindings()) {
+            System.out.println(finding);
+        }
+        System.out.printf("%nAllow-list entries: %d as written, %d after minimizing.%n",
+                analyzer.getEntriesAsWritten(), analyzer.getEntriesMinimized());
+
+        String canonicalText = analyzer.toCanonicalText();
+        Path canonicalPath = null;
+        try {
+            canonicalPath = outputFile != null ? Paths.get(outputFile) : Files.createTempFile("canonical-policies", ".txt");
+            Files.write(canonicalPath, canonicalText.getBytes(StandardCharsets.UTF_8));
+            Equivalence equivalence = analyzer.checkEquivalence(PolicyFile.read(canonicalPath.toString()));
+            System.out.println("Equivalence: " + equivalence.getProbes() + " probe requests, "
+                    + equivalence.getMismatches() + " decision(s) changed.");
+            for (String example : equivalence.getExamples()) {
+                System.out.println("  " + example);
+            }
+            if (outputFile != null) {
+                System.out.println("Canonical policy file written to " + outputFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing canonical policy file: " + e.getMessage());
+        } finally {
+            if (outputFile == null && canonicalPath != null) {
+                try {
+                    Files.deleteIfExists(canonicalPath);
+                } catch (IOException ignored) {
+                    // only a temp file
+                }
+            }
+        }
+    }
+}
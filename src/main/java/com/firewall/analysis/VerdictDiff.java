@@ -0,0 +1,141 @@
+package com.firewall.analysis;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Tally of re-evaluated requests: how many kept their verdict and, for each change such as
+// "ALLOW -> DENY", counts per app and per domain plus the earliest examples. Each fork/join
+// leaf fills its own instance and the results are merged, so nothing is shared while counting.
+public final class VerdictDiff {
+    private final int maxExamples;
+    private long evaluated;
+    private long unchanged;
+    private long skipped;
+    private long notReevaluated;
+    private final Map<String, Change> changes = new TreeMap<>();
+
+    public VerdictDiff(int maxExamples) {
+        this.maxExamples = maxExamples;
+    }
+
+    void recordUnchanged() {
+        evaluated++;
+        unchanged++;
+    }
+
+    void recordSkipped() {
+        skipped++;
+    }
+
+    // A verdict the policy didn't decide (blocklist, shed under overload)
+    void recordNotReevaluated() {
+        notReevaluated++;
+    }
+
+    // 'position' orders examples (byte offset in a log, record number in a trace)
+    void recordChange(String from, String to, String app, String domain, long position, String example) {
+        evaluated++;
+        Change change = changes.computeIfAbsent(from + " -> " + to, key -> new Change());
+        change.count++;
+        change.byApp.computeIfAbsent(app, key -> new long[1])[0]++;
+        change.byDomain.computeIfAbsent(domain, key -> new long[1])[0]++;
+        if (change.examples.size() < maxExamples) {
+            change.examples.add(new Example(position, example));
+        }
+    }
+
+    VerdictDiff merge(VerdictDiff other) {
+        evaluated += other.evaluated;
+        unchanged += other.unchanged;
+        skipped += other.skipped;
+        notReevaluated += other.notReevaluated;
+        other.changes.forEach((key, theirs) -> {
+            Change mine = changes.computeIfAbsent(key, k -> new Change());
+            mine.count += theirs.count;
+            theirs.byApp.forEach((app, n) -> mine.byApp.computeIfAbsent(app, k -> new long[1])[0] += n[0]);
+            theirs.byDomain.forEach((domain, n) -> mine.byDomain.computeIfAbsent(domain, k -> new long[1])[0] += n[0]);
+            mine.examples.addAll(theirs.examples);
+            mine.examples.sort(Comparator.comparingLong(e -> e.position));
+            if (mine.examples.size() > maxExamples) {
+                mine.examples.subList(maxExamples, mine.examples.size()).clear();
+            }
+        });
+        return this;
+    }
+
+    public long getEvaluated() {
+        return evaluated;
+    }
+
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    public long getChanged() {
+        return evaluated - unchanged;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getNotReevaluated() {
+        return notReevaluated;
+    }
+
+    public long getChangeCount(String from, String to) {
+        Change change = changes.get(from + " -> " + to);
+        return change == null ? 0 : change.count;
+    }
+
+    void print(int top) {
+        System.out.printf("Evaluated %d requests: %d unchanged, %d would change verdict%s%n",
+                evaluated, unchanged, getChanged(), skipped > 0 ? " (" + skipped + " unreadable lines skipped)" : "");
+        if (notReevaluated > 0) {
+            System.out.println(notReevaluated + " blocklist or overload verdicts not re-evaluated (the policy didn't decide them)");
+        }
+        changes.forEach((key, change) -> {
+            System.out.println();
+            System.out.println(key + ": " + change.count);
+            printTop("  by app:", change.byApp, top);
+            printTop("  by domain:", change.byDomain, top);
+            System.out.println("  examples:");
+            for (Example example : change.examples) {
+                System.out.println("    " + example.text);
+            }
+        });
+    }
+
+    private static void printTop(String title, Map<String, long[]> counts, int top) {
+        System.out.println(title);
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        for (int i = 0; i < Math.min(top, entries.size()); i++) {
+            System.out.printf("    %-40s %d%n", entries.get(i).getKey(), entries.get(i).getValue()[0]);
+        }
+        if (entries.size() > top) {
+            System.out.println("    ... and " + (entries.size() - top) + " more");
+        }
+    }
+
+    private static final class Change {
+        long count;
+        final Map<String, long[]> byApp = new HashMap<>();
+        final Map<String, long[]> byDomain = new HashMap<>();
+        final List<Example> examples = new ArrayList<>();
+    }
+
+    private static final class Example {
+        final long position;
+        final String text;
+
+        Example(long position, String text) {
+            this.position = position;
+            this.text = text;
+        }
+    }
+}
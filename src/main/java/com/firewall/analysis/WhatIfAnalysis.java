@@ -0,0 +1,336 @@
+package com.firewall.analysis;
+
+import com.firewall.core.FirewallAgent;
+import com.firewall.core.PolicyEvaluator;
+import com.firewall.core.PolicyManager;
+import com.firewall.core.PolicySnapshot;
+import com.firewall.model.NetworkRequest;
+import com.firewall.query.LogTimestamps;
+import com.firewall.trace.TraceReader;
+import com.firewall.trace.TraceRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// Which past requests would change verdict under a candidate policy file, e.g.
+//   --whatif candidate_policies.txt [--log firewall_activity.log | --trace traffic.fwt]
+//
+// Each request from the activity log (or a recorded trace) is re-evaluated with
+// PolicyEvaluator against the candidate snapshot and compared with the verdict it got at the
+// time. Nothing goes through a FirewallAgent, so the live loggers, statistics and alert engine
+// are never touched. Verdicts the policy didn't decide, blocklist denies and requests shed under
+// overload, are recognised by their rule (traces) or reason (logs) and counted as not
+// re-evaluated rather than as changes.
+//
+// The log is memory-mapped and split across a fork/join pool like LogQueryEngine does; each
+// leaf parses its lines straight from the mapped bytes and counts into its own VerdictDiff.
+// A trace has to be decoded in order (its string dictionary builds up as it goes), so it is
+// read on the calling thread and evaluated in batches on the pool.
+public class WhatIfAnalysis {
+    private static final long LEAF_BYTES = 4L << 20;
+    private static final int INITIAL_TAIL = 64 * 1024;
+    private static final int TRACE_BATCH = 16384;
+    private static final int ACTIVITY_COLUMNS = 9; // TIMESTAMP | LEVEL | APP_NAME | TARGET_DOMAIN | TARGET_IP | PROTOCOL | PORT | DECISION | REASON
+    private static final byte[][] OUTSIDE_POLICY_REASONS = {
+            FirewallAgent.BLOCKLIST_REASON_PREFIX.getBytes(StandardCharsets.UTF_8),
+            FirewallAgent.SHED_REASON_PREFIX.getBytes(StandardCharsets.UTF_8)};
+
+    private final PolicySnapshot candidate;
+    private final ForkJoinPool pool;
+    private final int maxExamples;
+
+    public WhatIfAnalysis(PolicySnapshot candidate, ForkJoinPool pool, int maxExamples) {
+        this.candidate = candidate;
+        this.pool = pool;
+        this.maxExamples = maxExamples;
+    }
+
+    public VerdictDiff analyzeLog(Path activityLog) throws IOException {
+        try (FileChannel channel = FileChannel.open(activityLog, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize == 0) {
+                return new VerdictDiff(maxExamples);
+            }
+            return pool.invoke(new LogTask(channel, fileSize, 0, fileSize));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public VerdictDiff analyzeTrace(String traceFile) throws IOException {
+        VerdictDiff total = new VerdictDiff(maxExamples);
+        Deque<ForkJoinTask<VerdictDiff>> inFlight = new ArrayDeque<>();
+        int window = Math.max(2, pool.getParallelism() * 2);
+        try (TraceReader reader = new TraceReader(traceFile)) {
+            long position = 0;
+            while (true) {
+                List<TraceRecord> batch = new ArrayList<>(TRACE_BATCH);
+                TraceRecord record;
+                while (batch.size() < TRACE_BATCH && (record = reader.next()) != null) {
+                    batch.add(record);
+                }
+                if (batch.isEmpty()) break;
+                long firstPosition = position;
+                position += batch.size();
+                inFlight.add(pool.submit(() -> evaluateTraceBatch(batch, firstPosition)));
+                if (inFlight.size() >= window) {
+                    total.merge(inFlight.poll().join());
+                }
+            }
+        } finally {
+            while (!inFlight.isEmpty()) {
+                total.merge(inFlight.poll().join());
+            }
+        }
+        return total;
+    }
+
+    private VerdictDiff evaluateTraceBatch(List<TraceRecord> batch, long firstPosition) {
+        VerdictDiff diff = new VerdictDiff(maxExamples);
+        for (int i = 0; i < batch.size(); i++) {
+            TraceRecord record = batch.get(i);
+            if (PolicyEvaluator.isDecidedOutsidePolicy(record.getRule())) {
+                diff.recordNotReevaluated();
+            } else {
+                compare(diff, record.getRequest(), record.getVerdict(), firstPosition + i);
+            }
+        }
+        return diff;
+    }
+
+    private void compare(VerdictDiff diff, NetworkRequest request, String recorded, long position) {
+        PolicyEvaluator.Result result = PolicyEvaluator.evaluate(candidate, request);
+        if ("RATE_LIMITED".equals(recorded)) {
+            recorded = "ALLOW"; // the policy allowed it; rate limits depend on timing and aren't re-run here
+        }
+        if (result.getDecision().equals(recorded)) {
+            diff.recordUnchanged();
+        } else {
+            diff.recordChange(recorded, result.getDecision(), request.getApplicationName(),
+                    request.getTargetDomain(), position,
+                    request.getApplicationName() + " -> " + request.getTargetDomain() + " (" + request.getTargetIP()
+                            + ", " + request.getProtocol() + "/" + request.getPort() + "): " + result.getReason());
+        }
+    }
+
+    // Re-evaluates the lines that *start* in [from, to), the same boundary rule as LogQueryEngine.
+    private final class LogTask extends RecursiveTask<VerdictDiff> {
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long from;
+        private final long to;
+
+        LogTask(FileChannel channel, long fileSize, long from, long to) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected VerdictDiff compute() {
+            if (to - from > LEAF_BYTES) {
+                long mid = from + (to - from) / 2;
+                LogTask left = new LogTask(channel, fileSize, from, mid);
+                LogTask right = new LogTask(channel, fileSize, mid, to);
+                left.fork();
+                VerdictDiff rightDiff = right.compute();
+                return left.join().merge(rightDiff);
+            }
+            try {
+                int tail = INITIAL_TAIL;
+                VerdictDiff diff;
+                while ((diff = scanLeaf(tail)) == null) {
+                    tail *= 4; // a line longer than the mapped tail, map more and retry
+                }
+                return diff;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private VerdictDiff scanLeaf(int tail) throws IOException {
+            long mapStart = from > 0 ? from - 1 : 0; // one byte back to see if 'from' starts a line
+            long mapEnd = Math.min(fileSize, to + tail);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            int limit = buffer.limit();
+            int rangeEnd = (int) (to - mapStart);
+            VerdictDiff diff = new VerdictDiff(maxExamples);
+
+            int pos = 0;
+            if (from > 0) {
+                pos = indexOf(buffer, (byte) '\n', 0, limit);
+                if (pos < 0) {
+                    return mapEnd == fileSize ? diff : null;
+                }
+                pos++;
+            }
+
+            int[] columnStarts = new int[ACTIVITY_COLUMNS];
+            byte[] scratch = new byte[256];
+            while (pos < rangeEnd) {
+                int lineEnd = indexOf(buffer, (byte) '\n', pos, limit);
+                if (lineEnd < 0) {
+                    if (mapEnd < fileSize) return null;
+                    break; // last line is still being written
+                }
+                long key = LogTimestamps.parseKey(buffer, pos, lineEnd);
+                if (key >= 0) { // skips the header
+                    if (splitColumns(buffer, pos, lineEnd, columnStarts) < ACTIVITY_COLUMNS) {
+                        diff.recordSkipped();
+                    } else {
+                        evaluateLine(diff, buffer, columnStarts, lineEnd, key, mapStart + pos, scratch);
+                    }
+                }
+                pos = lineEnd + 1;
+            }
+            return diff;
+        }
+
+        private void evaluateLine(VerdictDiff diff, MappedByteBuffer buffer, int[] columnStarts, int lineEnd,
+                                  long timestampKey, long offset, byte[] scratch) {
+            if (decidedOutsidePolicy(buffer, columnStarts[ACTIVITY_COLUMNS - 1], lineEnd)) {
+                diff.recordNotReevaluated();
+                return;
+            }
+            String app = column(buffer, columnStarts, 2, scratch);
+            String domain = column(buffer, columnStarts, 3, scratch);
+            String ip = column(buffer, columnStarts, 4, scratch);
+            String protocol = column(buffer, columnStarts, 5, scratch);
+            int port;
+            try {
+                port = Integer.parseInt(column(buffer, columnStarts, 6, scratch));
+            } catch (NumberFormatException e) {
+                diff.recordSkipped();
+                return;
+            }
+            String recorded = column(buffer, columnStarts, 7, scratch);
+            long timestamp;
+            try {
+                timestamp = LogTimestamps.toEpochMillis(timestampKey, ZoneId.systemDefault());
+            } catch (DateTimeException e) {
+                diff.recordSkipped();
+                return;
+            }
+            // Logged at that time, so time-window rules are judged by when the request was made
+            compare(diff, new NetworkRequest(app, domain, ip, protocol, port, "N/A", timestamp), recorded, offset);
+        }
+    }
+
+    // Whether the reason column starting at 'start' marks a blocklist or shed verdict
+    private static boolean decidedOutsidePolicy(MappedByteBuffer buffer, int start, int end) {
+        for (byte[] prefix : OUTSIDE_POLICY_REASONS) {
+            if (end - start < prefix.length) continue;
+            int i = 0;
+            while (i < prefix.length && buffer.get(start + i) == prefix[i]) i++;
+            if (i == prefix.length) return true;
+        }
+        return false;
+    }
+
+    // Column 'index' of a split line; columns up to DECISION are short, 'scratch' fits them
+    private static String column(MappedByteBuffer buffer, int[] columnStarts, int index, byte[] scratch) {
+        int start = columnStarts[index];
+        int length = columnStarts[index + 1] - 3 - start;
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Records where each of the first ACTIVITY_COLUMNS columns starts (the reason takes the rest)
+    private static int splitColumns(MappedByteBuffer buffer, int start, int end, int[] columnStarts) {
+        int count = 0;
+        columnStarts[count++] = start;
+        int i = start;
+        while (count < columnStarts.length && i <= end - 3) {
+            if (buffer.get(i) == ' ' && buffer.get(i + 1) == '|' && buffer.get(i + 2) == ' ') {
+                i += 3;
+                columnStarts[count++] = i;
+            } else {
+                i++;
+            }
+        }
+        return count;
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte b, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            printUsage();
+            return;
+        }
+        String candidateFile = args[0];
+        String logFile = "firewall_activity.log";
+        String traceFile = null;
+        int examples = 5;
+        int top = 10;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--log": logFile = value(args, ++i, arg); break;
+                    case "--trace": traceFile = value(args, ++i, arg); break;
+                    case "--examples": examples = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--top": top = Integer.parseInt(value(args, ++i, arg)); break;
+                    default:
+                        printUsage();
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            printUsage();
+            return;
+        }
+
+        PolicySnapshot candidate = new PolicyManager(candidateFile).getSnapshot();
+        WhatIfAnalysis analysis = new WhatIfAnalysis(candidate, ForkJoinPool.commonPool(), examples);
+        String source = traceFile != null ? traceFile : logFile;
+        System.out.println("\nRe-evaluating " + source + " against " + candidateFile + " (version "
+                + candidate.getVersion() + ") ...");
+        long start = System.nanoTime();
+        try {
+            VerdictDiff diff = traceFile != null ? analysis.analyzeTrace(traceFile) : analysis.analyzeLog(Paths.get(logFile));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            diff.print(top);
+            System.out.printf("%nDone in %.2f s (%.0f requests/s).%n", seconds, diff.getEvaluated() / seconds);
+        } catch (IOException e) {
+            System.err.println("Error reading " + source + ": " + e.getMessage());
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: --whatif <candidate policy file> [--log <activity log> | --trace <trace file>]");
+        System.err.println("                [--examples <n per change>] [--top <n apps/domains>]");
+    }
+}
@@ -0,0 +1,247 @@
+package com.firewall.blocklist;
+
+import com.firewall.model.NetworkRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+// A compiled threat-intel blocklist (see BlocklistFormat), mapped read-only.
+//
+// Heap use is the /16 prefilter (8 KB) and the Bloom filter (~10 bits a domain); the ranges
+// and domain hashes stay in the mapped file. Most lookups are for destinations that aren't
+// listed, and those are answered from the two in-memory filters without touching the mapping.
+// An IPv4 destination is looked up in the ranges; a domain is looked up with each of its
+// parent domains, so listing "malicious-site.com" also blocks "cdn.malicious-site.com".
+//
+// Immutable after open() and safe from any thread: lookups only use absolute reads. To swap
+// blocklists, open the new one and replace the reference (see BlocklistLoader).
+public final class Blocklist {
+    private final Path path;
+    private final long compiledAtMillis;
+    private final int rangeCount;
+    private final int domainCount;
+    private final long[] prefilter;
+    private final long[] bloom;
+    private final long bloomBits;
+    private final int bloomHashes;
+    private final ByteBuffer ranges;  // (first, last) int pairs
+    private final ByteBuffer domains; // sorted longs
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder mappedProbes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    private Blocklist(Path path, ByteBuffer mapped) throws IOException {
+        this.path = path;
+        if (mapped.limit() < BlocklistFormat.HEADER_BYTES || mapped.getInt(0) != BlocklistFormat.MAGIC) {
+            throw new IOException("not a compiled blocklist");
+        }
+        short version = mapped.getShort(4);
+        if (version != BlocklistFormat.VERSION) {
+            throw new IOException("unsupported blocklist version " + version);
+        }
+        this.compiledAtMillis = mapped.getLong(8);
+        this.rangeCount = mapped.getInt(16);
+        this.domainCount = mapped.getInt(20);
+        int bloomWords = mapped.getInt(24);
+        this.bloomHashes = mapped.getInt(28);
+        int crc = mapped.getInt(32);
+        long expected = BlocklistFormat.HEADER_BYTES
+                + 8L * (BlocklistFormat.PREFILTER_WORDS + bloomWords) + 8L * rangeCount + 8L * domainCount;
+        if (rangeCount < 0 || domainCount < 0 || bloomWords < 1 || bloomHashes < 1 || expected != mapped.limit()) {
+            throw new IOException("truncated or inconsistent blocklist");
+        }
+        ByteBuffer body = slice(mapped, BlocklistFormat.HEADER_BYTES, mapped.limit() - BlocklistFormat.HEADER_BYTES);
+        CRC32 check = new CRC32(); // one sequential pass, on the loading thread
+        check.update(body.duplicate());
+        if ((int) check.getValue() != crc) {
+            throw new IOException("checksum mismatch");
+        }
+
+        int position = BlocklistFormat.HEADER_BYTES;
+        this.prefilter = new long[BlocklistFormat.PREFILTER_WORDS];
+        slice(mapped, position, 8 * prefilter.length).asLongBuffer().get(prefilter);
+        position += 8 * prefilter.length;
+        this.bloom = new long[bloomWords];
+        slice(mapped, position, 8 * bloomWords).asLongBuffer().get(bloom);
+        this.bloomBits = bloomWords * 64L;
+        position += 8 * bloomWords;
+        this.ranges = slice(mapped, position, 8 * rangeCount);
+        position += 8 * rangeCount;
+        this.domains = slice(mapped, position, 8 * domainCount);
+    }
+
+    // Maps the compiled blocklist at 'path'; throws if it is missing or unusable
+    public static Blocklist open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file is larger than 2 GB");
+            }
+            // The mapping stays valid after the channel is closed
+            return new Blocklist(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position).limit(position + length);
+        return duplicate.slice();
+    }
+
+    // What the request's destination matched, for the log ("IP range a-b" or "domain x"), or
+    // null if it isn't listed. The domain is skipped when it is just the IP again, as for
+    // captured packets.
+    public String match(NetworkRequest request) {
+        lookups.increment();
+        String ip = request.getTargetIP();
+        long address = ip == null ? -1 : BlocklistFormat.parseIPv4(ip);
+        if (address >= 0) {
+            String range = matchAddress(address);
+            if (range != null) {
+                hits.increment();
+                return range;
+            }
+        }
+        String domain = request.getTargetDomain();
+        if (domain == null || domain.equals(ip) || BlocklistFormat.parseIPv4(domain) >= 0) {
+            return null;
+        }
+        String listed = matchDomain(domain);
+        if (listed != null) {
+            hits.increment();
+        }
+        return listed;
+    }
+
+    public boolean isAddressListed(String ip) {
+        long address = BlocklistFormat.parseIPv4(ip);
+        return address >= 0 && matchAddress(address) != null;
+    }
+
+    public boolean isDomainListed(String domain) {
+        return matchDomain(domain) != null;
+    }
+
+    private String matchAddress(long address) {
+        int prefix = (int) (address >>> 16);
+        if ((prefilter[prefix >>> 6] & (1L << prefix)) == 0) {
+            return null;
+        }
+        mappedProbes.increment();
+        // Last range starting at or before the address
+        int low = 0;
+        int high = rangeCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if ((ranges.getInt(8 * mid) & 0xffffffffL) <= address) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0) {
+            return null;
+        }
+        long last = ranges.getInt(8 * found + 4) & 0xffffffffL;
+        if (address > last) {
+            return null;
+        }
+        long first = ranges.getInt(8 * found) & 0xffffffffL;
+        return first == last ? "IP " + BlocklistFormat.formatIPv4(first)
+                : "IP range " + BlocklistFormat.formatIPv4(first) + "-" + BlocklistFormat.formatIPv4(last);
+    }
+
+    // Tries the domain, then each parent domain
+    private String matchDomain(String domain) {
+        int from = 0;
+        while (from < domain.length()) {
+            long hash = BlocklistFormat.hashDomain(domain, from);
+            if (mightContain(hash)) {
+                mappedProbes.increment();
+                if (containsHash(hash)) {
+                    return "domain " + domain.substring(from);
+                }
+            }
+            int dot = domain.indexOf('.', from);
+            if (dot < 0) {
+                break;
+            }
+            from = dot + 1;
+        }
+        return null;
+    }
+
+    private boolean mightContain(long hash) {
+        for (int i = 0; i < bloomHashes; i++) {
+            long bit = BlocklistFormat.bloomBit(hash, i, bloomBits);
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsHash(long hash) {
+        int low = 0;
+        int high = domainCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = domains.getLong(8 * mid);
+            if (value < hash) {
+                low = mid + 1;
+            } else if (value > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getCompiledAtMillis() {
+        return compiledAtMillis;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    public int getDomainCount() {
+        return domainCount;
+    }
+
+    // Bytes this blocklist keeps on the heap; the rest is in the mapping
+    public long getHeapBytes() {
+        return 8L * (prefilter.length + bloom.length);
+    }
+
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    // Lookups a prefilter couldn't rule out, which went on to search the mapped file
+    public long getMappedProbeCount() {
+        return mappedProbes.sum();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + rangeCount + " IPv4 ranges, " + domainCount + " domains, "
+                + getHeapBytes() / 1024 + " KB on heap)";
+    }
+}
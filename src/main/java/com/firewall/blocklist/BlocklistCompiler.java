@@ -0,0 +1,230 @@
+package com.firewall.blocklist;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Compiles threat-intel feeds into the mapped blocklist format (see BlocklistFormat). Feeds are
+// text, one entry per line, '#' starts a comment:
+//   malicious-site.com            the domain and all its subdomains ("*.x" and ".x" mean the same)
+//   0.0.0.0 malicious-site.com    hosts-file style, the address is ignored
+//   203.0.113.7                   one IPv4 address
+//   198.51.100.0/24               an IPv4 CIDR block
+//   192.0.2.10-192.0.2.99         an inclusive IPv4 range
+// Entries are held as primitive arrays (8 bytes a domain, 8 a range) while compiling; IPv6
+// and anything else unparseable is counted and skipped. Run with:
+//   FirewallSimulator --compile-blocklist <out file> <feed>...
+// which writes a new version next to <out file> for the agent's BlocklistLoader to pick up,
+// rather than replacing a file the agent may have mapped.
+public class BlocklistCompiler {
+    private long[] ranges = new long[1024]; // first << 32 | last
+    private int rangeCount;
+    private long[] domains = new long[1024];
+    private int domainCount;
+    private long skipped;
+
+    public void addFeed(Path feed) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(feed, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addEntry(line);
+            }
+        }
+    }
+
+    // Returns false (and counts it) for a line that isn't a comment, blank or a usable entry
+    public boolean addEntry(String line) {
+        int comment = line.indexOf('#');
+        String entry = (comment >= 0 ? line.substring(0, comment) : line).trim();
+        if (entry.isEmpty()) {
+            return true;
+        }
+        String[] tokens = entry.split("\\s+");
+        if (tokens.length == 2 && (tokens[0].equals("0.0.0.0") || tokens[0].equals("127.0.0.1"))) {
+            entry = tokens[1];
+        } else if (tokens.length != 1) {
+            skipped++;
+            return false;
+        }
+        if (addAddresses(entry) || addDomain(entry)) {
+            return true;
+        }
+        skipped++;
+        return false;
+    }
+
+    private boolean addAddresses(String entry) {
+        int slash = entry.indexOf('/');
+        int dash = entry.indexOf('-');
+        long first;
+        long last;
+        if (slash > 0) {
+            first = BlocklistFormat.parseIPv4(entry.substring(0, slash));
+            int prefix;
+            try {
+                prefix = Integer.parseInt(entry.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (first < 0 || prefix < 0 || prefix > 32) return false;
+            long size = 1L << (32 - prefix);
+            first &= ~(size - 1);
+            last = first + size - 1;
+        } else if (dash > 0 && BlocklistFormat.parseIPv4(entry.substring(0, dash)) >= 0) {
+            first = BlocklistFormat.parseIPv4(entry.substring(0, dash));
+            last = BlocklistFormat.parseIPv4(entry.substring(dash + 1));
+            if (last < first) return false;
+        } else {
+            first = BlocklistFormat.parseIPv4(entry);
+            last = first;
+            if (first < 0) return false;
+        }
+        if (rangeCount == ranges.length) {
+            ranges = Arrays.copyOf(ranges, rangeCount * 2);
+        }
+        ranges[rangeCount++] = first << 32 | last;
+        return true;
+    }
+
+    private boolean addDomain(String entry) {
+        String domain = entry.startsWith("*.") ? entry.substring(2) : entry.startsWith(".") ? entry.substring(1) : entry;
+        if (domain.isEmpty() || domain.indexOf(':') >= 0) {
+            return false; // IPv6 and such
+        }
+        for (int i = 0; i < domain.length(); i++) {
+            char c = domain.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '-' || c == '.' || c == '_')) return false;
+        }
+        if (domainCount == domains.length) {
+            domains = Arrays.copyOf(domains, domainCount * 2);
+        }
+        domains[domainCount++] = BlocklistFormat.hashDomain(domain, 0);
+        return true;
+    }
+
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    // Writes the blocklist next to 'path' and then moves it there, so a blocklist being swapped
+    // in is never seen half-written. 'path' must not exist yet: an existing file may be mapped
+    // by a running agent. Returns {ranges, domains} as written, after merging.
+    public int[] writeTo(Path path, long compiledAtMillis) throws IOException {
+        if (Files.exists(path)) {
+            throw new FileAlreadyExistsException(path.toString());
+        }
+        long[] merged = mergeRanges();
+        long[] hashes = Arrays.copyOf(domains, domainCount);
+        Arrays.sort(hashes);
+        int unique = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i == 0 || hashes[i] != hashes[unique - 1]) hashes[unique++] = hashes[i];
+        }
+
+        long[] prefilter = new long[BlocklistFormat.PREFILTER_WORDS];
+        for (long range : merged) {
+            for (long prefix = (range >>> 48); prefix <= ((range & 0xffffffffL) >>> 16); prefix++) {
+                prefilter[(int) (prefix >>> 6)] |= 1L << prefix;
+            }
+        }
+        int bloomWords = (int) Math.max(1, ((long) unique * BlocklistFormat.BLOOM_BITS_PER_DOMAIN + 63) / 64);
+        long[] bloom = new long[bloomWords];
+        long bloomBits = bloomWords * 64L;
+        for (int i = 0; i < unique; i++) {
+            for (int k = 0; k < BlocklistFormat.BLOOM_HASHES; k++) {
+                long bit = BlocklistFormat.bloomBit(hashes[i], k, bloomBits);
+                bloom[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        long bodyBytes = 8L * (prefilter.length + bloom.length) + 8L * merged.length + 8L * unique;
+        if (BlocklistFormat.HEADER_BYTES + bodyBytes > Integer.MAX_VALUE) {
+            throw new IOException("Blocklist would be larger than 2 GB");
+        }
+        ByteBuffer body = ByteBuffer.allocate((int) bodyBytes);
+        body.asLongBuffer().put(prefilter).put(bloom);
+        body.position(8 * (prefilter.length + bloom.length));
+        for (long range : merged) {
+            body.putInt((int) (range >>> 32)).putInt((int) range);
+        }
+        for (int i = 0; i < unique; i++) {
+            body.putLong(hashes[i]);
+        }
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(BlocklistFormat.HEADER_BYTES);
+        header.putInt(BlocklistFormat.MAGIC).putShort(BlocklistFormat.VERSION).putShort((short) 0)
+                .putLong(compiledAtMillis).putInt(merged.length).putInt(unique).putInt(bloomWords)
+                .putInt(BlocklistFormat.BLOOM_HASHES).putInt((int) crc.getValue()).putInt(0);
+        header.flip();
+
+        Path tmp = Paths.get(path.toString() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) channel.write(header);
+            while (body.hasRemaining()) channel.write(body);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        return new int[]{merged.length, unique};
+    }
+
+    // Sorted by first address, overlapping and adjacent ranges joined
+    private long[] mergeRanges() {
+        long[] sorted = new long[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            sorted[i] = ranges[i] ^ Long.MIN_VALUE; // flipping the sign bit makes signed order unsigned order
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < rangeCount; i++) {
+            sorted[i] ^= Long.MIN_VALUE;
+        }
+        int count = 0;
+        for (long range : sorted) {
+            long first = range >>> 32;
+            long last = range & 0xffffffffL;
+            if (count > 0 && first <= (sorted[count - 1] & 0xffffffffL) + 1) {
+                long previousLast = sorted[count - 1] & 0xffffffffL;
+                sorted[count - 1] = (sorted[count - 1] >>> 32) << 32 | Math.max(previousLast, last);
+            } else {
+                sorted[count++] = range;
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: --compile-blocklist <out file> <feed>...");
+            return;
+        }
+        BlocklistCompiler compiler = new BlocklistCompiler();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                compiler.addFeed(Paths.get(args[i]));
+            }
+            long start = System.nanoTime();
+            long compiledAt = System.currentTimeMillis();
+            Path out = BlocklistLoader.versionPath(Paths.get(args[0]), compiledAt);
+            while (Files.exists(out)) { // compiled twice within a millisecond
+                out = BlocklistLoader.versionPath(Paths.get(args[0]), ++compiledAt);
+            }
+            int[] counts = compiler.writeTo(out, compiledAt);
+            System.out.printf("Wrote %s: %d IPv4 range(s), %d domain(s), %d line(s) skipped, %.0f ms%n", out,
+                    counts[0], counts[1], compiler.getSkippedCount(), (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Could not compile blocklist: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.firewall.blocklist;
+
+import com.firewall.detection.Hashing;
+
+// Layout of a compiled threat-intel blocklist (all integers big-endian):
+//
+//   header     "FWBL" (int), version (short), reserved (short), compiled-at millis (long),
+//              range count (int), domain count (int), Bloom filter words (int), Bloom hash
+//              count (int), CRC32 of everything after the header (int), reserved (int)
+//   prefilter  PREFILTER_WORDS longs: bit n is set if any range touches the /16 n.0.0.0/16
+//   bloom      Bloom filter over the domain hashes, 'words' longs
+//   ranges     IPv4 ranges as (first, last) unsigned int pairs, sorted and non-overlapping
+//   domains    64-bit domain hashes (see hashDomain), sorted
+//
+// The prefilter and the Bloom filter are copied to the heap when the file is opened; the
+// ranges and domains stay in the mapped file and are only binary-searched when a prefilter
+// says the address or domain may be listed. Only hashes of the domains are stored, so a
+// domain can match by a 64-bit collision; at a few million entries the odds are ~1e-12.
+final class BlocklistFormat {
+    static final int MAGIC = 0x4657424C; // "FWBL"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 4 + 2 + 2 + 8 + 4 + 4 + 4 + 4 + 4 + 4;
+    static final int PREFILTER_WORDS = 65536 / 64;
+    static final int BLOOM_BITS_PER_DOMAIN = 10; // ~1% false positives with BLOOM_HASHES
+    static final int BLOOM_HASHES = 7;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private BlocklistFormat() {
+    }
+
+    // Hash of domain.substring(from), ignoring ASCII case and a trailing dot, without
+    // allocating: FNV-1a and the same finalizer as the detection sketches (Hashing.mix64).
+    static long hashDomain(CharSequence domain, int from) {
+        int end = domain.length();
+        if (end > from && domain.charAt(end - 1) == '.') {
+            end--;
+        }
+        long h = FNV_OFFSET;
+        for (int i = from; i < end; i++) {
+            char c = domain.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            h ^= c;
+            h *= FNV_PRIME;
+        }
+        return Hashing.mix64(h);
+    }
+
+    // The i-th Bloom filter bit for a domain hash (double hashing over 'bits')
+    static long bloomBit(long hash, int i, long bits) {
+        long step = Long.rotateLeft(hash, 32) | 1;
+        return ((hash + i * step) & Long.MAX_VALUE) % bits;
+    }
+
+    // Dotted-quad IPv4 address as an unsigned int in a long, or -1 if 'text' isn't one
+    static long parseIPv4(CharSequence text) {
+        long address = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) return -1;
+            } else if (c == '.' && value >= 0 && octets < 3) {
+                address = (address << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (value < 0 || octets != 3) return -1;
+        return (address << 8) | value;
+    }
+
+    static String formatIPv4(long address) {
+        return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "." + ((address >>> 8) & 0xff) + "."
+                + (address & 0xff);
+    }
+}
@@ -0,0 +1,148 @@
+package com.firewall.blocklist;
+
+import com.firewall.core.FirewallAgent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Loads the compiled blocklist named by -Dfirewall.blocklist=<file> into the agent and swaps
+// in a new one whenever a newer version appears. BlocklistCompiler never writes over a file:
+// it writes <name>.<compiled-at millis>.<ext> next to <file>, and the loader takes the newest
+// of those (a plain <file> counts as the oldest). Nothing is ever renamed over a mapped
+// blocklist, which Windows refuses. A new blocklist is opened and checked off the decision
+// path and then published with one volatile write, so each decision sees either the old list
+// or the new one. A file that can't be used leaves the current blocklist in place. After a
+// swap, every other version except the one just replaced is deleted; that one may still be
+// mapped by a decision in flight, and a delete that fails is retried after the next swap.
+public class BlocklistLoader {
+    public static final String FILE_PROPERTY = "firewall.blocklist";
+    private static final long CHECK_INTERVAL_SECONDS = 10;
+
+    private final Path path;
+    private final FirewallAgent agent;
+    private Path loadedPath; // watcher thread only
+    private FileTime loadedModifiedTime;
+
+    BlocklistLoader(Path path, FirewallAgent agent) {
+        this.path = path;
+        this.agent = agent;
+    }
+
+    // Returns null unless -Dfirewall.blocklist is set
+    public static BlocklistLoader startIfRequested(FirewallAgent agent) {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.trim().isEmpty()) {
+            return null;
+        }
+        BlocklistLoader loader = new BlocklistLoader(Paths.get(file.trim()), agent);
+        loader.reloadIfChanged();
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blocklist-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(loader::reloadIfChanged, CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+        return loader;
+    }
+
+    // Swaps the blocklist in if a newer version appeared since the last load; true if it did
+    public synchronized boolean reloadIfChanged() {
+        Path newest = null;
+        try {
+            List<Path> versions = versionsOf(path);
+            if (versions.isEmpty()) {
+                throw new IOException("no such file, and no versions of it");
+            }
+            newest = versions.get(versions.size() - 1);
+            FileTime modified = Files.getLastModifiedTime(newest);
+            if (newest.equals(loadedPath) && modified.equals(loadedModifiedTime)) {
+                return false;
+            }
+            long start = System.nanoTime();
+            Blocklist blocklist = Blocklist.open(newest);
+            Path replaced = loadedPath;
+            loadedPath = newest;
+            loadedModifiedTime = modified;
+            agent.setBlocklist(blocklist);
+            System.out.printf("Blocklist loaded: %s in %.1f ms%n", blocklist, (System.nanoTime() - start) / 1e6);
+            deleteAllBut(versions, newest, replaced);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load blocklist " + (newest != null ? newest : path) + ": "
+                    + e.getMessage() + (agent.getBlocklist() != null ? ". Keeping the current one." : ""));
+            return false;
+        }
+    }
+
+    private static void deleteAllBut(List<Path> versions, Path loaded, Path replaced) {
+        for (Path version : versions) {
+            if (version.equals(loaded) || version.equals(replaced)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(version);
+            } catch (IOException e) {
+                // Still mapped (Windows); tried again after the next swap
+            }
+        }
+    }
+
+    // The path a blocklist compiled at 'compiledAtMillis' is written to for -Dfirewall.blocklist=<base>
+    static Path versionPath(Path base, long compiledAtMillis) {
+        String name = base.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        return base.resolveSibling(stem + "." + compiledAtMillis + extension);
+    }
+
+    // Existing versions of 'base', oldest first; the plain 'base' (if present) comes first
+    static List<Path> versionsOf(Path base) throws IOException {
+        String name = base.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String prefix = (dot > 0 ? name.substring(0, dot) : name) + ".";
+        String suffix = dot > 0 ? name.substring(dot) : "";
+        Path directory = base.toAbsolutePath().getParent();
+        List<Path> versions = new ArrayList<>();
+        if (Files.isRegularFile(base)) {
+            versions.add(base);
+        }
+        if (directory == null || !Files.isDirectory(directory)) {
+            return versions;
+        }
+        List<Path> numbered = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (versionMillis(file.getFileName().toString(), prefix, suffix) >= 0) {
+                    numbered.add(base.resolveSibling(file.getFileName()));
+                }
+            }
+        }
+        numbered.sort(Comparator.comparingLong(file -> versionMillis(file.getFileName().toString(), prefix, suffix)));
+        versions.addAll(numbered);
+        return versions;
+    }
+
+    // The millis in "<prefix><millis><suffix>", or -1 if 'name' isn't a version
+    private static long versionMillis(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix) || name.length() <= prefix.length() + suffix.length()) {
+            return -1;
+        }
+        String digits = name.substring(prefix.length(), name.length() - suffix.length());
+        for (int i = 0; i < digits.length(); i++) {
+            if (digits.charAt(i) < '0' || digits.charAt(i) > '9') return -1;
+        }
+        return digits.length() <= 18 ? Long.parseLong(digits) : -1;
+    }
+}
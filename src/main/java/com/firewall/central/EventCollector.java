@@ -0,0 +1,499 @@
+package com.firewall.central;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Inflater;
+
+// Receives decision and alert batches from many EventShippers and writes them, merged by
+// time, to hourly partitioned segment files: <dir>/events-<yyyyMMdd-HH>.<n>.log, a new
+// segment every SEGMENT_BYTES.
+//
+// Events wait in a time-ordered buffer until every agent that is still sending has moved
+// past them, or at most MAX_LATENESS_MS, then go out in timestamp order. Events that arrive
+// later than that (e.g. an agent's spool catching up after an outage) are written as they
+// come and counted as late. When the buffer holds MAX_BUFFERED_EVENTS the collector stops
+// reading sockets, so acks stop and agents keep their batches in their own spools.
+//
+// A batch is acknowledged once it is in the buffer. Per-agent acknowledged sequence numbers
+// are saved to <dir>/agents.properties on every flush, so after a clean restart agents resume
+// without duplicates; batches acknowledged but not yet written when the process dies are lost.
+public class EventCollector implements AutoCloseable {
+    static final long MAX_LATENESS_MS = 2000;
+    static final int MAX_BUFFERED_EVENTS = 1_000_000;
+    private static final long SEGMENT_BYTES = 64L << 20;
+    private static final int MAX_OPEN_PARTITIONS = 4;
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final DateTimeFormatter PARTITION_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HH").withZone(ZoneId.systemDefault());
+
+    private final Path directory;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private volatile boolean closed;
+
+    // Touched only by the selector thread
+    private final PriorityQueue<Pending> buffer = new PriorityQueue<>();
+    private final Map<String, AgentState> agents = new HashMap<>();
+    private final LinkedHashMap<String, Partition> partitions = new LinkedHashMap<>(16, 0.75f, true);
+    private final Inflater inflater = new Inflater();
+    private long arrival;        // tie-breaker keeping equal timestamps in arrival order
+    private long emittedUpTo = Long.MIN_VALUE;
+    private boolean readingPaused;
+
+    private volatile int connectedAgents;
+    private final LongAdder batchesReceived = new LongAdder();
+    private final LongAdder duplicateBatches = new LongAdder();
+    private final LongAdder eventsWritten = new LongAdder();
+    private final LongAdder lateEvents = new LongAdder();
+
+    public EventCollector(InetSocketAddress bindAddress, Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        loadAgentState();
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(bindAddress);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.selectorThread = new Thread(this::selectLoop, "event-collector");
+        this.selectorThread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getConnectedAgents() {
+        return connectedAgents;
+    }
+
+    public long getBatchesReceived() {
+        return batchesReceived.sum();
+    }
+
+    public long getDuplicateBatches() {
+        return duplicateBatches.sum();
+    }
+
+    public long getEventsWritten() {
+        return eventsWritten.sum();
+    }
+
+    public long getLateEvents() {
+        return lateEvents.sum();
+    }
+
+    private void selectLoop() {
+        long lastFlush = System.currentTimeMillis();
+        try {
+            while (!closed) {
+                selector.select(FLUSH_INTERVAL_MS);
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        }
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastFlush >= FLUSH_INTERVAL_MS) {
+                    emit(watermark(now));
+                    lastFlush = now;
+                }
+                updateReadInterest();
+            }
+            emit(Long.MAX_VALUE);
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("Event collector stopped: " + e.getMessage());
+        } finally {
+            closePartitions();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.register(selector, readingPaused ? 0 : SelectionKey.OP_READ, new Connection(channel));
+        connectedAgents++;
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (connection.channel.read(connection.in) < 0) {
+            disconnect(key);
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length <= 0 || length > EventProtocol.MAX_FRAME) {
+                throw new IOException("Bad frame length " + length);
+            }
+            if (in.remaining() < 4 + length) {
+                if (4 + length > in.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+                    bigger.put(in);
+                    connection.in = bigger;
+                    return;
+                }
+                break;
+            }
+            in.getInt();
+            byte type = in.get();
+            byte[] payload = new byte[length - 1];
+            in.get(payload);
+            handle(key, connection, type, payload);
+        }
+        in.compact();
+    }
+
+    private void handle(SelectionKey key, Connection connection, byte type, byte[] payload) throws IOException {
+        switch (type) {
+            case EventProtocol.HELLO: {
+                String agentId = PolicyProtocol.readString(new DataInputStream(new ByteArrayInputStream(payload)));
+                connection.agent = agents.computeIfAbsent(agentId, AgentState::new);
+                connection.agent.lastHeardMillis = System.currentTimeMillis(); // hold the merge for its spool
+                send(key, connection, EventProtocol.ack(connection.agent.acknowledged));
+                break;
+            }
+            case EventProtocol.BATCH: {
+                AgentState agent = connection.agent;
+                if (agent == null) throw new IOException("BATCH before HELLO");
+                long sequence = ByteBuffer.wrap(payload).getLong();
+                batchesReceived.increment();
+                if (sequence <= agent.acknowledged) {
+                    duplicateBatches.increment(); // resent after a reconnect, already have it
+                } else {
+                    List<ShippedEvent> events = EventProtocol.decodeBody(payload, 8, payload.length - 8, inflater);
+                    for (ShippedEvent event : events) {
+                        agent.latestTimestamp = Math.max(agent.latestTimestamp, event.timestampMillis);
+                        buffer.add(new Pending(event, agent.id, arrival++));
+                    }
+                    agent.acknowledged = sequence;
+                    agent.lastHeardMillis = System.currentTimeMillis();
+                }
+                send(key, connection, EventProtocol.ack(agent.acknowledged));
+                break;
+            }
+            default:
+                throw new IOException("Unexpected message type " + type);
+        }
+    }
+
+    // Events at or before the returned time can be written: every agent heard from in the last
+    // MAX_LATENESS_MS has already sent something later, or they are too old to wait for.
+    private long watermark(long now) {
+        long watermark = now - MAX_LATENESS_MS;
+        long slowest = Long.MAX_VALUE;
+        for (AgentState agent : agents.values()) {
+            if (now - agent.lastHeardMillis <= MAX_LATENESS_MS) {
+                slowest = Math.min(slowest, agent.latestTimestamp);
+            }
+        }
+        return slowest == Long.MAX_VALUE ? watermark : Math.max(watermark, slowest);
+    }
+
+    private void emit(long watermark) throws IOException {
+        Pending pending;
+        while ((pending = buffer.peek()) != null && pending.event.timestampMillis <= watermark) {
+            buffer.poll();
+            if (pending.event.timestampMillis < emittedUpTo) {
+                lateEvents.increment();
+            } else {
+                emittedUpTo = pending.event.timestampMillis;
+            }
+            partitionFor(pending.event.timestampMillis).write(pending.event.format(pending.agentId));
+            eventsWritten.increment();
+        }
+        for (Partition partition : partitions.values()) {
+            partition.writer.flush();
+        }
+        saveAgentState();
+    }
+
+    private Partition partitionFor(long timestampMillis) throws IOException {
+        String name = PARTITION_FORMAT.format(Instant.ofEpochMilli(timestampMillis));
+        Partition partition = partitions.get(name);
+        if (partition == null) {
+            if (partitions.size() >= MAX_OPEN_PARTITIONS) {
+                Iterator<Partition> eldest = partitions.values().iterator();
+                eldest.next().writer.close();
+                eldest.remove();
+            }
+            partition = new Partition(name);
+            partitions.put(name, partition);
+        }
+        if (partition.size >= SEGMENT_BYTES) {
+            partition.roll();
+        }
+        return partition;
+    }
+
+    private void updateReadInterest() {
+        boolean pause = buffer.size() >= MAX_BUFFERED_EVENTS;
+        boolean resume = readingPaused && buffer.size() <= MAX_BUFFERED_EVENTS / 2;
+        if (pause == readingPaused || (!pause && !resume)) return;
+        readingPaused = pause;
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof Connection) {
+                Connection connection = (Connection) key.attachment();
+                int ops = connection.out.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+                key.interestOps(pause ? ops : ops | SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void send(SelectionKey key, Connection connection, ByteBuffer frame) throws IOException {
+        connection.out.add(frame);
+        write(key);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer head;
+        while ((head = connection.out.peek()) != null) {
+            connection.channel.write(head);
+            if (head.hasRemaining()) break;
+            connection.out.poll();
+        }
+        int ops = readingPaused ? 0 : SelectionKey.OP_READ;
+        key.interestOps(connection.out.isEmpty() ? ops : ops | SelectionKey.OP_WRITE);
+    }
+
+    private void disconnect(SelectionKey key) {
+        if (!key.isValid()) return;
+        key.cancel();
+        try {
+            ((Connection) key.attachment()).channel.close();
+        } catch (IOException ignored) {
+        }
+        connectedAgents--;
+    }
+
+    private void loadAgentState() throws IOException {
+        Path file = directory.resolve("agents.properties");
+        if (!Files.exists(file)) return;
+        Properties properties = new Properties();
+        try (java.io.Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String agentId : properties.stringPropertyNames()) {
+            try {
+                agents.computeIfAbsent(agentId, AgentState::new).acknowledged =
+                        Long.parseLong(properties.getProperty(agentId).trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring bad sequence for agent " + agentId + " in " + file);
+            }
+        }
+    }
+
+    private void saveAgentState() throws IOException {
+        Properties properties = new Properties();
+        for (AgentState agent : agents.values()) {
+            properties.setProperty(agent.id, Long.toString(agent.acknowledged));
+        }
+        Path file = directory.resolve("agents.properties");
+        Path temp = directory.resolve("agents.properties.tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Last batch accepted from each agent");
+        }
+        Files.move(temp, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void closePartitions() {
+        for (Partition partition : partitions.values()) {
+            try {
+                partition.writer.close();
+            } catch (IOException e) {
+                System.err.println("Error closing segment " + partition.file + ": " + e.getMessage());
+            }
+        }
+        partitions.clear();
+    }
+
+    // Writes out everything still buffered, saves the agent state and stops.
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join(10_000);
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing event collector: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        inflater.end();
+    }
+
+    private static final class AgentState {
+        final String id;
+        long acknowledged;
+        long latestTimestamp = Long.MIN_VALUE;
+        long lastHeardMillis;
+
+        AgentState(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Pending implements Comparable<Pending> {
+        final ShippedEvent event;
+        final String agentId;
+        final long arrival;
+
+        Pending(ShippedEvent event, String agentId, long arrival) {
+            this.event = event;
+            this.agentId = agentId;
+            this.arrival = arrival;
+        }
+
+        @Override
+        public int compareTo(Pending other) {
+            int byTime = Long.compare(event.timestampMillis, other.event.timestampMillis);
+            return byTime != 0 ? byTime : Long.compare(arrival, other.arrival);
+        }
+    }
+
+    private final class Partition {
+        final String name;
+        int segment;
+        Path file;
+        Writer writer;
+        long size;
+
+        Partition(String name) throws IOException {
+            this.name = name;
+            while (Files.exists(segmentFile(segment + 1))) {
+                segment++; // continue after segments written by an earlier run
+            }
+            if (segment == 0) segment = 1;
+            open();
+        }
+
+        private Path segmentFile(int n) {
+            return directory.resolve(String.format("events-%s.%03d.log", name, n));
+        }
+
+        private void open() throws IOException {
+            file = segmentFile(segment);
+            writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16);
+            size = Files.size(file);
+        }
+
+        void roll() throws IOException {
+            writer.close();
+            segment++;
+            open();
+        }
+
+        void write(String line) throws IOException {
+            writer.write(line);
+            writer.write(System.lineSeparator());
+            size += line.length() + 1;
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        final Queue<ByteBuffer> out = new ArrayDeque<>();
+        AgentState agent;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    // Collects events from agents started with -Dfirewall.collector=<host>:<port>, e.g.
+    //   --collector --port 7071 --dir collected-events
+    public static void main(String[] args) {
+        String bind = "0.0.0.0";
+        int port = 7071;
+        String dir = "collected-events";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--bind": bind = args[++i]; break;
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    case "--dir": dir = args[++i]; break;
+                    default:
+                        System.err.println("Usage: --collector [--bind <address>] [--port <port>] [--dir <directory>]");
+                        return;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Usage: --collector [--bind <address>] [--port <port>] [--dir <directory>]");
+            return;
+        }
+        try {
+            EventCollector collector = new EventCollector(new InetSocketAddress(bind, port), Paths.get(dir));
+            Runtime.getRuntime().addShutdownHook(new Thread(collector::close, "event-collector-shutdown"));
+            System.out.println("Event collector listening on " + bind + ":" + collector.getPort() + ", writing to "
+                    + Paths.get(dir).toAbsolutePath());
+            while (true) {
+                Thread.sleep(10_000);
+                System.out.println(collector.getConnectedAgents() + " agent(s) connected, "
+                        + collector.getEventsWritten() + " events written, " + collector.getLateEvents() + " late, "
+                        + collector.getDuplicateBatches() + " duplicate batches");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not start event collector on " + bind + ":" + port + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
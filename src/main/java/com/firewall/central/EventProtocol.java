@@ -0,0 +1,118 @@
+package com.firewall.central;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Wire format between EventShipper and EventCollector, framed like PolicyProtocol:
+//
+//   int length (of what follows), byte type, payload
+//
+//   HELLO  agent -> collector  string agentId
+//   BATCH  agent -> collector  long sequence, then a batch body:
+//                              int events, long minTimestamp, long maxTimestamp, int rawLength,
+//                              deflated events (ShippedEvent.writeTo, one after another)
+//   ACK    collector -> agent  long sequence: every batch up to and including it is accepted.
+//                              Also the answer to HELLO, telling the agent where to resume.
+//
+// Batch sequence numbers start at 1 per agent and have no gaps, so an agent reconnecting
+// after a failure resends exactly what was not acknowledged and the collector drops repeats.
+final class EventProtocol {
+    static final byte HELLO = 1;
+    static final byte BATCH = 2;
+    static final byte ACK = 3;
+    static final int MAX_FRAME = 16 << 20;
+
+    private EventProtocol() {
+    }
+
+    static ByteBuffer hello(String agentId) {
+        return PolicyProtocol.frame(HELLO, out -> PolicyProtocol.writeString(out, agentId));
+    }
+
+    static ByteBuffer ack(long sequence) {
+        return PolicyProtocol.frame(ACK, out -> out.writeLong(sequence));
+    }
+
+    static ByteBuffer batch(long sequence, byte[] body) {
+        return PolicyProtocol.frame(BATCH, out -> {
+            out.writeLong(sequence);
+            out.write(body);
+        });
+    }
+
+    // Compresses events into a batch body; 'deflater' is reused across batches by one thread.
+    static byte[] encodeBody(List<ShippedEvent> events, Deflater deflater) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(events.size() * 96);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        try (DataOutputStream out = new DataOutputStream(raw)) {
+            for (ShippedEvent event : events) {
+                event.writeTo(out);
+                min = Math.min(min, event.timestampMillis);
+                max = Math.max(max, event.timestampMillis);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream, cannot happen
+        }
+        byte[] input = raw.toByteArray();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(input.length / 4 + 64);
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeInt(events.size());
+            out.writeLong(min);
+            out.writeLong(max);
+            out.writeInt(input.length);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return body.toByteArray();
+    }
+
+    static List<ShippedEvent> decodeBody(byte[] body, int offset, int length, Inflater inflater) throws IOException {
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(body, offset, length));
+        int count = header.readInt();
+        header.readLong(); // min timestamp
+        header.readLong(); // max timestamp
+        int rawLength = header.readInt();
+        if (count < 0 || rawLength < 0 || rawLength > MAX_FRAME * 8) {
+            throw new IOException("Bad batch header");
+        }
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(body, offset + 24, length - 24);
+        try {
+            int done = 0;
+            while (done < rawLength) {
+                int n = inflater.inflate(raw, done, rawLength - done);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated batch");
+                }
+                done += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt batch: " + e.getMessage());
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        List<ShippedEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(ShippedEvent.readFrom(in));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,289 @@
+package com.firewall.central;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+// Agent side of event collection: ships every decision and alert to an EventCollector.
+//
+// The decision path only offers an event to a bounded in-memory queue and never waits; if
+// the queue is full the event is dropped and counted. A batching thread packs queued events
+// into deflate-compressed batches and appends them to a bounded on-disk EventSpool. A sender
+// thread streams spooled batches over one persistent non-blocking connection, with at most
+// WINDOW batches unacknowledged. So a slow or missing collector only makes the spool grow
+// (until its budget runs out), never the decision path slower.
+//
+// Agents started with -Dfirewall.collector=<host>:<port> run one of these
+// (-Dfirewall.collector.spool=<dir>, default event-spool, holds the spool).
+public class EventShipper implements AutoCloseable {
+    public static final String COLLECTOR_PROPERTY = "firewall.collector";
+    public static final String SPOOL_PROPERTY = "firewall.collector.spool";
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final int MAX_BATCH = 2048;
+    private static final long LINGER_MS = 100;     // how long a partial batch may wait for more events
+    private static final int WINDOW = 16;          // unacknowledged batches on the wire
+    private static final long DEFAULT_SPOOL_BYTES = 256L << 20;
+    private static final long MIN_BACKOFF_MS = 200;
+    private static final long MAX_BACKOFF_MS = 10_000;
+
+    private final String agentId;
+    private final InetSocketAddress collectorAddress;
+    private final EventSpool spool;
+    private final BlockingQueue<ShippedEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread batcherThread;
+    private final Thread senderThread;
+    private volatile boolean closing;
+    private volatile boolean closed;
+    private volatile Selector selector;
+
+    private final LongAdder offered = new LongAdder();
+    private final LongAdder droppedQueueFull = new LongAdder();
+    private final LongAdder droppedSpoolFull = new LongAdder();
+    private volatile long batchesSent;
+    private volatile boolean connected;
+
+    public EventShipper(String agentId, InetSocketAddress collectorAddress, Path spoolDirectory, long spoolBytes)
+            throws IOException {
+        this.agentId = agentId;
+        this.collectorAddress = collectorAddress;
+        this.spool = new EventSpool(spoolDirectory, spoolBytes);
+        this.batcherThread = new Thread(this::batchLoop, "event-shipper");
+        this.batcherThread.setDaemon(true);
+        this.senderThread = new Thread(this::sendLoop, "event-sender");
+        this.senderThread.setDaemon(true);
+        this.batcherThread.start();
+        this.senderThread.start();
+    }
+
+    // Starts shipping if -Dfirewall.collector is set; the spool is flushed on exit.
+    public static EventShipper startIfRequested() {
+        String collector = System.getProperty(COLLECTOR_PROPERTY);
+        if (collector == null || collector.trim().isEmpty()) {
+            return null;
+        }
+        int colon = collector.lastIndexOf(':');
+        try {
+            InetSocketAddress address = new InetSocketAddress(collector.substring(0, colon).trim(),
+                    Integer.parseInt(collector.substring(colon + 1).trim()));
+            String agentId = System.getProperty("user.name", "agent") + "@"
+                    + java.net.InetAddress.getLocalHost().getHostName();
+            Path spoolDirectory = Paths.get(System.getProperty(SPOOL_PROPERTY, "event-spool"));
+            EventShipper shipper = new EventShipper(agentId, address, spoolDirectory, DEFAULT_SPOOL_BYTES);
+            Runtime.getRuntime().addShutdownHook(new Thread(shipper::close, "event-shipper-shutdown"));
+            System.out.println("Shipping decisions and alerts to " + address + " as " + agentId
+                    + " (spool " + spoolDirectory.toAbsolutePath() + ")");
+            return shipper;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Invalid " + COLLECTOR_PROPERTY + " '" + collector + "', expected <host>:<port>");
+        } catch (IOException e) {
+            System.err.println("Could not start event shipping: " + e.getMessage());
+        }
+        return null;
+    }
+
+    public void offerDecision(long timestampMillis, String level, String appName, String targetDomain,
+                              String targetIP, String protocol, int port, String decision, String reason) {
+        offer(new ShippedEvent(ShippedEvent.DECISION, timestampMillis, level, appName, targetDomain, targetIP,
+                protocol, String.valueOf(port), decision, reason));
+    }
+
+    public void offerAlert(long timestampMillis, String level, String type, String application, String details) {
+        offer(new ShippedEvent(ShippedEvent.ALERT, timestampMillis, level, type, application, details));
+    }
+
+    private void offer(ShippedEvent event) {
+        offered.increment();
+        if (closing || !queue.offer(event)) {
+            droppedQueueFull.increment();
+        }
+    }
+
+    public long getOfferedCount() {
+        return offered.sum();
+    }
+
+    // Events lost because the in-memory queue or the spool was full
+    public long getDroppedCount() {
+        return droppedQueueFull.sum() + droppedSpoolFull.sum();
+    }
+
+    public long getSpooledBytes() {
+        return spool.getBytes();
+    }
+
+    // Batches written to the spool but not yet acknowledged by the collector
+    public long getUnacknowledgedBatches() {
+        return spool.getNextSequence() - 1 - spool.getAcknowledged();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void batchLoop() {
+        List<ShippedEvent> batch = new ArrayList<>(MAX_BATCH);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            while (!closing || !queue.isEmpty()) {
+                ShippedEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MS);
+                while (batch.size() < MAX_BATCH) {
+                    queue.drainTo(batch, MAX_BATCH - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= MAX_BATCH || wait <= 0 || closing) break;
+                    ShippedEvent next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next != null) batch.add(next);
+                }
+                if (spool.append(EventProtocol.encodeBody(batch, deflater)) < 0) {
+                    droppedSpoolFull.add(batch.size());
+                }
+                batch.clear();
+                Selector current = selector;
+                if (current != null) current.wakeup();
+            }
+        } catch (IOException e) {
+            System.err.println("Event spool failed, no longer shipping events: " + e.getMessage());
+            closing = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void sendLoop() {
+        long backoff = MIN_BACKOFF_MS;
+        while (!closed) {
+            try (Selector connectionSelector = Selector.open();
+                 SocketChannel channel = SocketChannel.open(collectorAddress)) {
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(connectionSelector, SelectionKey.OP_READ);
+                selector = connectionSelector;
+                connected = true;
+                backoff = MIN_BACKOFF_MS;
+                stream(channel, key);
+            } catch (IOException e) {
+                if (closed) break;
+                if (connected || backoff == MIN_BACKOFF_MS) {
+                    System.err.println("Event collector " + collectorAddress + " unavailable (" + e.getMessage()
+                            + "), spooling events");
+                }
+            } finally {
+                connected = false;
+                selector = null;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+        }
+    }
+
+    // Sends spooled batches within the window and reads acks until the connection fails
+    private void stream(SocketChannel channel, SelectionKey key) throws IOException {
+        Queue<ByteBuffer> out = new ArrayDeque<>();
+        out.add(EventProtocol.hello(agentId));
+        ByteBuffer in = ByteBuffer.allocate(64);
+        long nextToSend = -1; // unknown until the collector answers HELLO
+        while (!closed) {
+            if (nextToSend > 0) {
+                long acked = spool.getAcknowledged();
+                nextToSend = Math.max(nextToSend, acked + 1);
+                while (nextToSend - acked <= WINDOW && nextToSend < spool.getNextSequence()) {
+                    byte[] body = spool.read(nextToSend);
+                    if (body == null) break;
+                    out.add(EventProtocol.batch(nextToSend, body));
+                    nextToSend++;
+                    batchesSent++;
+                }
+            }
+            ByteBuffer head;
+            while ((head = out.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) break;
+                out.poll();
+            }
+            key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            key.selector().select(500);
+            key.selector().selectedKeys().clear();
+            if (channel.read(in) < 0) {
+                throw new IOException("collector closed the connection");
+            }
+            in.flip();
+            while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+                int length = in.getInt();
+                byte type = in.get();
+                if (type != EventProtocol.ACK || length != 9) {
+                    throw new IOException("Unexpected message from collector");
+                }
+                long sequence = in.getLong();
+                if (nextToSend < 0) {
+                    // Answer to HELLO. A collector ahead of everything spooled has seen this agent
+                    // id number past a spool that has since been lost; renumber the pending batches
+                    // after its mark, or it would take them for duplicates.
+                    if (sequence >= spool.getNextSequence()) {
+                        System.err.println("Event collector has batches up to " + sequence + " from " + agentId
+                                + " but the spool only reached " + (spool.getNextSequence() - 1)
+                                + ", renumbering spooled batches");
+                        spool.renumberFrom(sequence + 1);
+                    }
+                    nextToSend = sequence + 1; // resume right after what the collector already has
+                }
+                spool.acknowledge(sequence);
+            }
+            in.compact();
+        }
+    }
+
+    // Stops taking events, spools what is queued and gives the sender a moment to deliver it.
+    // Anything still unacknowledged stays in the spool for the next start.
+    @Override
+    public void close() {
+        if (closed) return;
+        closing = true;
+        try {
+            batcherThread.join(5000);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (connected && getUnacknowledgedBatches() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        Selector current = selector;
+        if (current != null) current.wakeup();
+        senderThread.interrupt();
+        try {
+            senderThread.join(2000);
+            spool.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error closing event spool: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.firewall.central;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Bounded on-disk queue of compressed batches between EventShipper's batching thread and its
+// sender. Batches are appended to segment files (spool-<first sequence>.seg) as
+//
+//   int body length, long sequence, batch body
+//
+// and a segment is deleted once every batch in it is acknowledged, except the last one: it
+// carries the sequence numbering over a restart, so a restarted agent never numbers batches
+// below what the collector has already acknowledged (the collector would drop them as
+// duplicates). It goes once a newer segment holds a batch. Whatever the collector has not
+// acknowledged survives a collector outage and an agent restart. When the spool would grow
+// past its byte budget new batches are refused (and counted by the shipper) instead of
+// growing without bound or blocking anyone; an acknowledged last segment doesn't count.
+final class EventSpool implements AutoCloseable {
+    private static final long SEGMENT_BYTES = 4L << 20;
+    private static final int RECORD_HEADER = 12;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>(); // by first sequence
+    private long nextSequence = 1;
+    private long acknowledged; // highest sequence the collector has accepted
+    private long totalBytes;
+
+    EventSpool(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "spool-*.seg")) {
+            for (Path file : files) {
+                Segment segment = Segment.open(file);
+                if (segment.count == 0) {
+                    segment.delete();
+                    continue;
+                }
+                segments.put(segment.firstSequence, segment);
+                totalBytes += segment.size;
+            }
+        }
+        if (!segments.isEmpty()) {
+            Segment last = segments.lastEntry().getValue();
+            nextSequence = last.firstSequence + last.count;
+            acknowledged = segments.firstKey() - 1;
+        }
+    }
+
+    // Returns the batch's sequence number, or -1 if the spool is full
+    synchronized long append(byte[] body) throws IOException {
+        long recordBytes = RECORD_HEADER + body.length;
+        Map.Entry<Long, Segment> lastEntry = segments.lastEntry();
+        Segment last = lastEntry == null ? null : lastEntry.getValue();
+        boolean lastAcknowledged = last != null && last.firstSequence + last.count - 1 <= acknowledged;
+        if ((lastAcknowledged ? totalBytes - last.size : totalBytes) + recordBytes > maxBytes) {
+            return -1;
+        }
+        boolean newSegment = last == null || last.size + recordBytes > SEGMENT_BYTES
+                || lastAcknowledged && totalBytes + recordBytes > maxBytes;
+        long sequence = write(body, newSegment);
+        if (newSegment && lastAcknowledged) {
+            segments.remove(last.firstSequence); // the new segment carries the numbering now
+            totalBytes -= last.size;
+            last.delete();
+        }
+        return sequence;
+    }
+
+    private long write(byte[] body, boolean newSegment) throws IOException {
+        Segment segment;
+        if (newSegment || segments.isEmpty()) {
+            segment = Segment.create(directory, nextSequence);
+            segments.put(nextSequence, segment);
+        } else {
+            segment = segments.lastEntry().getValue();
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + body.length);
+        record.putInt(body.length).putLong(nextSequence).put(body).flip();
+        segment.append(record);
+        totalBytes += record.capacity();
+        return nextSequence++;
+    }
+
+    // The body of batch 'sequence', or null if it is not in the spool (acknowledged or not yet written)
+    synchronized byte[] read(long sequence) throws IOException {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+        if (entry == null || sequence >= nextSequence) {
+            return null;
+        }
+        return entry.getValue().read(sequence);
+    }
+
+    // Everything up to and including 'sequence' has reached the collector
+    synchronized void acknowledge(long sequence) throws IOException {
+        if (sequence <= acknowledged) return;
+        acknowledged = Math.min(sequence, nextSequence - 1);
+        while (segments.size() > 1) {
+            Segment first = segments.firstEntry().getValue();
+            if (first.firstSequence + first.count - 1 > acknowledged) break;
+            segments.pollFirstEntry();
+            totalBytes -= first.size;
+            first.delete();
+        }
+    }
+
+    // Gives the batches not yet acknowledged new sequence numbers starting at 'first'. For a
+    // collector that already has higher numbers from this agent than the spool ever wrote
+    // (the spool was deleted or reset), which would otherwise skip them as duplicates.
+    synchronized void renumberFrom(long first) throws IOException {
+        if (first <= nextSequence) return;
+        List<Segment> old = new ArrayList<>(segments.values());
+        long pending = acknowledged + 1;
+        segments.clear();
+        totalBytes = 0;
+        nextSequence = first;
+        acknowledged = first - 1;
+        boolean newSegment = true; // names from 'first' on can't clash with the old ones
+        for (Segment segment : old) {
+            for (long sequence = Math.max(pending, segment.firstSequence);
+                 sequence < segment.firstSequence + segment.count; sequence++) {
+                byte[] body = segment.read(sequence);
+                long recordBytes = RECORD_HEADER + body.length;
+                Map.Entry<Long, Segment> last = segments.lastEntry();
+                write(body, newSegment || last.getValue().size + recordBytes > SEGMENT_BYTES);
+                newSegment = false;
+            }
+            segment.delete(); // only once its batches are copied
+        }
+    }
+
+    synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    synchronized long getAcknowledged() {
+        return acknowledged;
+    }
+
+    synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    private static final class Segment {
+        final Path file;
+        final FileChannel channel;
+        final long firstSequence;
+        long[] offsets = new long[256]; // record start by sequence - firstSequence
+        int count;
+        long size;
+
+        private Segment(Path file, FileChannel channel, long firstSequence) {
+            this.file = file;
+            this.channel = channel;
+            this.firstSequence = firstSequence;
+        }
+
+        static Segment create(Path directory, long firstSequence) throws IOException {
+            Path file = directory.resolve(String.format("spool-%020d.seg", firstSequence));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(file, channel, firstSequence);
+        }
+
+        // Re-indexes a segment left behind by an earlier run; a torn last record is cut off
+        static Segment open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            long position = 0;
+            Segment segment = null;
+            while (position + RECORD_HEADER <= fileSize) {
+                header.clear();
+                channel.read(header, position);
+                int length = header.getInt(0);
+                long sequence = header.getLong(4);
+                if (length < 0 || position + RECORD_HEADER + length > fileSize) break;
+                if (segment == null) {
+                    segment = new Segment(file, channel, sequence);
+                } else if (sequence != segment.firstSequence + segment.count) {
+                    break;
+                }
+                segment.addOffset(position);
+                position += RECORD_HEADER + length;
+            }
+            if (segment == null) {
+                segment = new Segment(file, channel, 0);
+            }
+            channel.truncate(position);
+            segment.size = position;
+            return segment;
+        }
+
+        void append(ByteBuffer record) throws IOException {
+            addOffset(size);
+            long position = size;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            size = position;
+        }
+
+        byte[] read(long sequence) throws IOException {
+            long index = sequence - firstSequence;
+            if (index < 0 || index >= count) return null;
+            long offset = offsets[(int) index];
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            readFully(header, offset);
+            ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+            readFully(body, offset + RECORD_HEADER);
+            return body.array();
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n < 0) throw new IOException("Spool segment " + file + " is truncated");
+                position += n;
+            }
+        }
+
+        private void addOffset(long offset) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = offset;
+        }
+
+        void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+}
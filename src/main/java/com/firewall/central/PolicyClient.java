@@ -0,0 +1,218 @@
+package com.firewall.central;
+
+import com.firewall.core.PolicyManager;
+import com.firewall.core.PolicySnapshot;
+import com.firewall.model.AppPolicy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+
+// Agent side of the policy service: keeps a PolicyManager in step with a PolicyServer.
+//
+// On connect the client reports the revision it last applied and the digest of the policies
+// it actually holds, so the server can answer with a small delta even after a restart of
+// either side. Each delta is applied to a copy of the current policy set, checked against the
+// server's digest and installed with PolicyManager.install() as one snapshot swap; decisions
+// never see a half-applied delta. A delta that doesn't produce the server's digest makes the
+// client resubscribe with what it really holds, which gets it a fitting delta or a full resync.
+//
+// Agents started with -Dfirewall.policy.server=<host>:<port> run one of these.
+public class PolicyClient implements AutoCloseable {
+    public static final String SERVER_PROPERTY = "firewall.policy.server";
+    private static final long MIN_BACKOFF_MS = 200;
+    private static final long MAX_BACKOFF_MS = 10_000;
+
+    private final String agentId;
+    private final InetSocketAddress serverAddress;
+    private final PolicyManager policyManager;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile SocketChannel channel;
+    private volatile boolean verbose = true;
+
+    private volatile long revision; // 0 until the first delta is applied
+    private volatile long deltasApplied;
+    private volatile long fullResyncs;
+    private boolean resubscribed; // a SUBSCRIBE is outstanding, stale deltas can be ignored
+
+    public PolicyClient(String agentId, InetSocketAddress serverAddress, PolicyManager policyManager) {
+        this.agentId = agentId;
+        this.serverAddress = serverAddress;
+        this.policyManager = policyManager;
+        this.thread = new Thread(this::run, "policy-client-" + agentId);
+        this.thread.setDaemon(true);
+    }
+
+    // Starts a client for the policy manager if -Dfirewall.policy.server is set.
+    public static PolicyClient startIfRequested(PolicyManager policyManager) {
+        String server = System.getProperty(SERVER_PROPERTY);
+        if (server == null || server.trim().isEmpty()) {
+            return null;
+        }
+        int colon = server.lastIndexOf(':');
+        try {
+            InetSocketAddress address = new InetSocketAddress(server.substring(0, colon).trim(),
+                    Integer.parseInt(server.substring(colon + 1).trim()));
+            String agentId = System.getProperty("user.name", "agent") + "@" + ProcessHandle.current().pid();
+            PolicyClient client = new PolicyClient(agentId, address, policyManager);
+            client.start();
+            System.out.println("Following policies from " + address + " (local file used until the first update)");
+            return client;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Invalid " + SERVER_PROPERTY + " '" + server + "', expected <host>:<port>");
+            return null;
+        }
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public long getDeltasApplied() {
+        return deltasApplied;
+    }
+
+    public long getFullResyncs() {
+        return fullResyncs;
+    }
+
+    // Waits until the agent has applied 'wanted' (or a later revision); false on timeout.
+    public synchronized boolean awaitRevision(long wanted, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (revision < wanted) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF_MS;
+        while (!closed) {
+            try (SocketChannel connection = SocketChannel.open(serverAddress)) {
+                channel = connection;
+                connection.socket().setTcpNoDelay(true);
+                subscribe(connection);
+                backoff = MIN_BACKOFF_MS;
+                receive(connection);
+            } catch (IOException e) {
+                if (closed) break;
+                if (verbose) {
+                    System.err.println("Policy server " + serverAddress + " unavailable (" + e.getMessage()
+                            + "), retrying in " + backoff + " ms");
+                }
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+        }
+    }
+
+    private void subscribe(SocketChannel connection) throws IOException {
+        long digest = PolicyDigest.of(policyManager.getSnapshot().getPolicies());
+        writeFully(connection, PolicyProtocol.subscribe(revision, digest, agentId));
+        resubscribed = true;
+    }
+
+    private void receive(SocketChannel connection) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5);
+        while (!closed) {
+            header.clear();
+            readFully(connection, header);
+            int length = header.getInt(0);
+            byte type = header.get(4);
+            if (length <= 0 || length > PolicyProtocol.MAX_FRAME) {
+                throw new IOException("Bad frame length " + length);
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length - 1);
+            readFully(connection, payload);
+            if (type != PolicyProtocol.DELTA) {
+                throw new IOException("Unexpected message type " + type);
+            }
+            apply(connection, PolicyDelta.decode(payload.array()));
+        }
+    }
+
+    private void apply(SocketChannel connection, PolicyDelta delta) throws IOException {
+        PolicySnapshot current = policyManager.getSnapshot();
+        // The digest decides whether the delta fits what we hold; the base revision number alone
+        // can't (after a restart we hold a known policy set under revision 0)
+        Map<String, AppPolicy> updated = delta.applyTo(current.getPolicies());
+        long digest = PolicyDigest.of(updated);
+        if (digest != delta.digest) {
+            if (!resubscribed) { // else a stale delta sent before our SUBSCRIBE arrived, the answer is on its way
+                System.err.println("Policy revision " + delta.revision + " does not fit the local policies,"
+                        + " resubscribing");
+                subscribe(connection);
+            }
+            return;
+        }
+        if (delta.full || !delta.isEmpty() || !delta.version.equals(current.getVersion())) {
+            policyManager.install(updated, delta.version);
+        }
+        resubscribed = false;
+        synchronized (this) {
+            revision = delta.revision;
+            deltasApplied++;
+            if (delta.full) fullResyncs++;
+            notifyAll();
+        }
+        writeFully(connection, PolicyProtocol.ack(delta.revision, digest));
+        if (verbose) {
+            System.out.println("Policy revision " + delta.revision + " applied (version " + delta.version + ", "
+                    + (delta.full ? "full resync, " : "") + delta.changed.size() + " added/changed, "
+                    + delta.removed.size() + " removed)");
+        }
+    }
+
+    private static void readFully(SocketChannel connection, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (connection.read(buffer) < 0) {
+                throw new EOFException("Policy server closed the connection");
+            }
+        }
+    }
+
+    private static void writeFully(SocketChannel connection, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            connection.write(buffer);
+        }
+    }
+
+    // Drops the connection; the client reconnects and resubscribes after its backoff. For tests.
+    void disconnect() throws IOException {
+        SocketChannel current = channel;
+        if (current != null) current.close();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            disconnect();
+        } catch (IOException ignored) {
+        }
+        thread.interrupt();
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.firewall.central;
+
+import com.firewall.core.PolicyManager;
+import com.firewall.model.AppPolicy;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The app policies added, changed and removed between two revisions, or the whole set when
+// 'full' is true. Policies travel as their source attributes and are rebuilt on the agent
+// with PolicyManager.buildPolicy(), exactly as if they had been read from a policy file.
+final class PolicyDelta {
+    final boolean full;
+    final long baseRevision;
+    final long revision;
+    final long digest;
+    final String version;
+    final Map<String, Map<String, String>> changed; // added or changed apps
+    final List<String> removed;
+
+    private PolicyDelta(boolean full, long baseRevision, long revision, long digest, String version,
+                        Map<String, Map<String, String>> changed, List<String> removed) {
+        this.full = full;
+        this.baseRevision = baseRevision;
+        this.revision = revision;
+        this.digest = digest;
+        this.version = version;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    // 'base' null means a full resync
+    static PolicyDelta between(PolicyServer.Revision base, PolicyServer.Revision target) {
+        Map<String, AppPolicy> from = base == null ? Collections.emptyMap() : base.policies;
+        Map<String, Map<String, String>> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, AppPolicy> app : target.policies.entrySet()) {
+            AppPolicy old = from.get(app.getKey());
+            if (old == null || !old.getSourceAttributes().equals(app.getValue().getSourceAttributes())) {
+                changed.put(app.getKey(), app.getValue().getSourceAttributes());
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String app : from.keySet()) {
+            if (!target.policies.containsKey(app)) {
+                removed.add(app);
+            }
+        }
+        return new PolicyDelta(base == null, base == null ? 0 : base.number, target.number, target.digest,
+                target.version, changed, removed);
+    }
+
+    boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+    // The policy set after applying this delta to 'current' (ignored for a full resync)
+    Map<String, AppPolicy> applyTo(Map<String, AppPolicy> current) {
+        Map<String, AppPolicy> result = full ? new HashMap<>() : new HashMap<>(current);
+        for (String app : removed) {
+            result.remove(app);
+        }
+        changed.forEach((app, attributes) -> result.put(app, PolicyManager.buildPolicy(app, attributes)));
+        return result;
+    }
+
+    ByteBuffer encode() {
+        return PolicyProtocol.frame(PolicyProtocol.DELTA, out -> {
+            out.writeBoolean(full);
+            out.writeLong(baseRevision);
+            out.writeLong(revision);
+            out.writeLong(digest);
+            PolicyProtocol.writeString(out, version);
+            out.writeInt(changed.size());
+            for (Map.Entry<String, Map<String, String>> app : changed.entrySet()) {
+                PolicyProtocol.writeString(out, app.getKey());
+                out.writeInt(app.getValue().size());
+                for (Map.Entry<String, String> attribute : app.getValue().entrySet()) {
+                    PolicyProtocol.writeString(out, attribute.getKey());
+                    PolicyProtocol.writeString(out, attribute.getValue());
+                }
+            }
+            out.writeInt(removed.size());
+            for (String app : removed) {
+                PolicyProtocol.writeString(out, app);
+            }
+        });
+    }
+
+    // 'payload' is a DELTA frame without its length and type
+    static PolicyDelta decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        boolean full = in.readBoolean();
+        long baseRevision = in.readLong();
+        long revision = in.readLong();
+        long digest = in.readLong();
+        String version = PolicyProtocol.readString(in);
+        int changedCount = in.readInt();
+        Map<String, Map<String, String>> changed = new LinkedHashMap<>();
+        for (int i = 0; i < changedCount; i++) {
+            String app = PolicyProtocol.readString(in);
+            int attributeCount = in.readInt();
+            Map<String, String> attributes = new LinkedHashMap<>();
+            for (int j = 0; j < attributeCount; j++) {
+                attributes.put(PolicyProtocol.readString(in), PolicyProtocol.readString(in));
+            }
+            changed.put(app, attributes);
+        }
+        int removedCount = in.readInt();
+        List<String> removed = new ArrayList<>(Math.min(removedCount, 1024));
+        for (int i = 0; i < removedCount; i++) {
+            removed.add(PolicyProtocol.readString(in));
+        }
+        return new PolicyDelta(full, baseRevision, revision, digest, version, changed, removed);
+    }
+}
@@ -0,0 +1,49 @@
+package com.firewall.central;
+
+import com.firewall.model.AppPolicy;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Content hash of a policy set (apps and their source attributes, in sorted order). Server and
+// agents compare digests to find out whether an agent really holds the revision it claims to,
+// whatever order its policies were loaded or patched in.
+final class PolicyDigest {
+    private PolicyDigest() {
+    }
+
+    static long of(Map<String, AppPolicy> policies) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // required on every JVM
+        }
+        for (Map.Entry<String, AppPolicy> app : new TreeMap<>(policies).entrySet()) {
+            update(sha, app.getKey());
+            for (Map.Entry<String, String> attribute : app.getValue().getSourceAttributes().entrySet()) {
+                update(sha, attribute.getKey());
+                update(sha, attribute.getValue());
+            }
+            sha.update((byte) 0xFF); // end of app
+        }
+        byte[] hash = sha.digest();
+        long digest = 0;
+        for (int i = 0; i < 8; i++) {
+            digest = (digest << 8) | (hash[i] & 0xFF);
+        }
+        return digest;
+    }
+
+    private static void update(MessageDigest sha, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        sha.update((byte) (bytes.length >>> 24));
+        sha.update((byte) (bytes.length >>> 16));
+        sha.update((byte) (bytes.length >>> 8));
+        sha.update((byte) bytes.length);
+        sha.update(bytes);
+    }
+}
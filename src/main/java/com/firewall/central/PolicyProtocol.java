@@ -0,0 +1,80 @@
+package com.firewall.central;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Wire format between PolicyServer and PolicyClient. Every message is a frame:
+//
+//   int length (of what follows), byte type, payload
+//
+//   SUBSCRIBE  agent -> server  long revision, long digest, string agentId
+//              Sent on connect and whenever the agent finds it has drifted. The server
+//              answers with a DELTA from whatever revision the agent verifiably holds.
+//   DELTA      server -> agent  boolean full, long baseRevision, long revision, long digest,
+//                               string version, int n, n x (string app, int m, m x (string key,
+//                               string value)), int r, r x string removedApp
+//   ACK        agent -> server  long revision, long digest
+//
+// Strings are an int byte count followed by UTF-8. Revision 0 means "no revision".
+final class PolicyProtocol {
+    static final byte SUBSCRIBE = 1;
+    static final byte DELTA = 2;
+    static final byte ACK = 3;
+    static final int MAX_FRAME = 16 << 20;
+
+    private PolicyProtocol() {
+    }
+
+    static ByteBuffer subscribe(long revision, long digest, String agentId) {
+        return frame(SUBSCRIBE, out -> {
+            out.writeLong(revision);
+            out.writeLong(digest);
+            writeString(out, agentId);
+        });
+    }
+
+    static ByteBuffer ack(long revision, long digest) {
+        return frame(ACK, out -> {
+            out.writeLong(revision);
+            out.writeLong(digest);
+        });
+    }
+
+    interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static ByteBuffer frame(byte type, PayloadWriter payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0); // length, patched below
+            out.writeByte(type);
+            payload.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream, cannot happen
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.capacity() - 4);
+        return frame;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,401 @@
+package com.firewall.central;
+
+import com.firewall.core.PolicyManager;
+import com.firewall.core.PolicySnapshot;
+import com.firewall.model.AppPolicy;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Central policy service. Every publish() with different content becomes a new numbered
+// revision, and each subscribed agent is sent only the delta from the revision it holds.
+//
+// One selector thread does all the networking with non-blocking channels, so a slow or stuck
+// agent never holds up the others: frames wait in that agent's own output queue, and an agent
+// whose queue grows past MAX_PENDING_BYTES is disconnected (it resubscribes when it
+// reconnects). Agents on the same revision share one encoded delta per publish.
+//
+// The last MAX_HISTORY revisions are kept. An agent that reports a revision (and digest) the
+// server still knows gets a delta; anything else gets a full resync.
+public class PolicyServer implements AutoCloseable {
+    static final int MAX_HISTORY = 32;
+    static final int MAX_PENDING_BYTES = 8 << 20;
+    private static final long FULL_RESYNC = -1; // cache key for deltas with no base
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    // Touched only by the selector thread
+    private final LinkedHashMap<Long, Revision> history = new LinkedHashMap<>();
+    private Revision latest;
+
+    private volatile long latestRevision;
+    private volatile int connectedAgents;
+    private final LongAdder deltasSent = new LongAdder();
+    private final LongAdder fullResyncs = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder disconnectedSlow = new LongAdder();
+
+    public PolicyServer(InetSocketAddress bindAddress, Map<String, AppPolicy> initialPolicies, String version)
+            throws IOException {
+        this.latest = new Revision(1, version, new HashMap<>(initialPolicies));
+        this.history.put(latest.number, latest);
+        this.latestRevision = latest.number;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(bindAddress);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.selectorThread = new Thread(this::selectLoop, "policy-server");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // Makes 'policies' the current revision and pushes the delta to every subscribed agent.
+    // Returns immediately; a policy set identical to the current one is ignored.
+    public void publish(Map<String, AppPolicy> policies, String version) {
+        Map<String, AppPolicy> copy = new HashMap<>(policies);
+        tasks.add(() -> doPublish(copy, version));
+        selector.wakeup();
+    }
+
+    public long getLatestRevision() {
+        return latestRevision;
+    }
+
+    public int getConnectedAgents() {
+        return connectedAgents;
+    }
+
+    public long getDeltasSent() {
+        return deltasSent.sum();
+    }
+
+    public long getFullResyncs() {
+        return fullResyncs.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getDisconnectedSlowAgents() {
+        return disconnectedSlow.sum();
+    }
+
+    private void doPublish(Map<String, AppPolicy> policies, String version) {
+        Revision next = new Revision(latest.number + 1, version, policies);
+        if (next.digest == latest.digest) {
+            return;
+        }
+        latest = next;
+        history.put(next.number, next);
+        if (history.size() > MAX_HISTORY) {
+            Iterator<Long> oldest = history.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        latestRevision = next.number;
+
+        Map<Long, ByteBuffer> framesByBase = new HashMap<>();
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection)) continue;
+            Connection connection = (Connection) key.attachment();
+            if (connection.sentRevision == 0) continue; // not subscribed yet
+            Revision base = history.get(connection.sentRevision);
+            long cacheKey = base == null ? FULL_RESYNC : base.number;
+            ByteBuffer frame = framesByBase.computeIfAbsent(cacheKey, k -> PolicyDelta.between(base, latest).encode());
+            sendDelta(key, connection, base, frame.duplicate());
+        }
+    }
+
+    private void sendDelta(SelectionKey key, Connection connection, Revision base, ByteBuffer frame) {
+        (base == null ? fullResyncs : deltasSent).increment();
+        connection.sentRevision = latest.number;
+        send(key, connection, frame);
+    }
+
+    private void selectLoop() {
+        try {
+            while (!closed) {
+                selector.select(1000);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        }
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) {
+                System.err.println("Policy server stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+        connectedAgents++;
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (connection.channel.read(connection.in) < 0) {
+            disconnect(key);
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length <= 0 || length > PolicyProtocol.MAX_FRAME) {
+                throw new IOException("Bad frame length " + length);
+            }
+            if (in.remaining() < 4 + length) {
+                if (4 + length > in.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+                    bigger.put(in);
+                    connection.in = bigger;
+                    return; // already compacted into the new buffer
+                }
+                break;
+            }
+            in.getInt();
+            byte type = in.get();
+            byte[] payload = new byte[length - 1];
+            in.get(payload);
+            handle(key, connection, type, payload);
+            if (!key.isValid()) return;
+        }
+        in.compact();
+    }
+
+    private void handle(SelectionKey key, Connection connection, byte type, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (type) {
+            case PolicyProtocol.SUBSCRIBE: {
+                long revision = in.readLong();
+                long digest = in.readLong();
+                connection.agentId = PolicyProtocol.readString(in);
+                Revision base = findHeldRevision(revision, digest);
+                sendDelta(key, connection, base, PolicyDelta.between(base, latest).encode());
+                break;
+            }
+            case PolicyProtocol.ACK: {
+                long revision = in.readLong();
+                long digest = in.readLong();
+                connection.ackedRevision = revision;
+                Revision acked = history.get(revision);
+                if (acked != null && acked.digest != digest) {
+                    // Applied the delta but ended up with different content: start it over
+                    sendDelta(key, connection, null, PolicyDelta.between(null, latest).encode());
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unexpected message type " + type + " from agent " + connection.agentId);
+        }
+    }
+
+    // The revision an agent reporting (revision, digest) really holds, or null if unknown
+    private Revision findHeldRevision(long revision, long digest) {
+        Revision claimed = history.get(revision);
+        if (claimed != null && claimed.digest == digest) {
+            return claimed;
+        }
+        // Restarted agent or restarted server: match on content alone, newest first
+        Revision match = null;
+        for (Revision candidate : history.values()) {
+            if (candidate.digest == digest) match = candidate;
+        }
+        return match;
+    }
+
+    private void send(SelectionKey key, Connection connection, ByteBuffer frame) {
+        if (connection.pendingBytes + frame.remaining() > MAX_PENDING_BYTES) {
+            System.err.println("Policy server: agent " + connection.agentId + " (at revision " + connection.ackedRevision
+                    + ") is not reading, disconnecting it.");
+            disconnectedSlow.increment();
+            disconnect(key);
+            return;
+        }
+        connection.out.add(frame);
+        connection.pendingBytes += frame.remaining();
+        try {
+            write(key);
+        } catch (IOException e) {
+            disconnect(key);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer head;
+        while ((head = connection.out.peek()) != null) {
+            int written = connection.channel.write(head);
+            connection.pendingBytes -= written;
+            bytesSent.add(written);
+            if (head.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE); // socket buffer full
+                return;
+            }
+            connection.out.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void disconnect(SelectionKey key) {
+        if (!key.isValid()) return;
+        key.cancel();
+        try {
+            ((Connection) key.attachment()).channel.close();
+        } catch (IOException ignored) {
+        }
+        connectedAgents--;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join(2000);
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing policy server: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One published policy set
+    static final class Revision {
+        final long number;
+        final String version;
+        final Map<String, AppPolicy> policies;
+        final long digest;
+
+        Revision(long number, String version, Map<String, AppPolicy> policies) {
+            this.number = number;
+            this.version = version;
+            this.policies = policies;
+            this.digest = PolicyDigest.of(policies);
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        final Queue<ByteBuffer> out = new ArrayDeque<>();
+        long pendingBytes;
+        long sentRevision;  // what the agent will hold once it has applied everything sent
+        long ackedRevision; // what it has confirmed applying
+        String agentId = "?";
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    // Serves a policy file to agents started with -Dfirewall.policy.server=<host>:<port>, e.g.
+    //   --policy-server --policies policies.txt --port 7070
+    // The file is re-read and republished whenever it changes on disk.
+    public static void main(String[] args) {
+        String policyFile = "policies.txt";
+        String bind = "0.0.0.0";
+        int port = 7070;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--policies": policyFile = args[++i]; break;
+                    case "--bind": bind = args[++i]; break;
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    default:
+                        System.err.println("Usage: --policy-server [--policies <file>] [--bind <address>] [--port <port>]");
+                        return;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Usage: --policy-server [--policies <file>] [--bind <address>] [--port <port>]");
+            return;
+        }
+
+        PolicyManager policyManager = new PolicyManager(policyFile);
+        PolicySnapshot snapshot = policyManager.getSnapshot();
+        File file = new File(policyFile);
+        try (PolicyServer server = new PolicyServer(new InetSocketAddress(bind, port), snapshot.getPolicies(),
+                snapshot.getVersion())) {
+            System.out.println("Policy server listening on " + bind + ":" + server.getPort() + ", serving "
+                    + policyFile + " (version " + snapshot.getVersion() + ")");
+            long lastModified = file.lastModified();
+            while (true) {
+                Thread.sleep(2000);
+                if (file.lastModified() != lastModified) {
+                    lastModified = file.lastModified();
+                    snapshot = policyManager.reload();
+                    server.publish(snapshot.getPolicies(), snapshot.getVersion());
+                    Thread.sleep(100);
+                    System.out.println("Published revision " + server.getLatestRevision() + " (version "
+                            + snapshot.getVersion() + ") to " + server.getConnectedAgents() + " agent(s); "
+                            + server.getDeltasSent() + " deltas, " + server.getFullResyncs() + " full resyncs, "
+                            + server.getBytesSent() + " bytes sent so far");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not start policy server on " + bind + ":" + port + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
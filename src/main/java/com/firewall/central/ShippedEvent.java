@@ -0,0 +1,53 @@
+package com.firewall.central;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// A decision or alert on its way from an agent to the collector.
+final class ShippedEvent {
+    static final byte DECISION = 0; // fields: level, app, domain, ip, protocol, port, decision, reason
+    static final byte ALERT = 1;    // fields: level, type, app, details
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    final byte kind;
+    final long timestampMillis;
+    final String[] fields;
+
+    ShippedEvent(byte kind, long timestampMillis, String... fields) {
+        this.kind = kind;
+        this.timestampMillis = timestampMillis;
+        this.fields = fields;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(kind);
+        out.writeLong(timestampMillis);
+        out.writeByte(fields.length);
+        for (String field : fields) {
+            PolicyProtocol.writeString(out, field == null ? "" : field);
+        }
+    }
+
+    static ShippedEvent readFrom(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        long timestamp = in.readLong();
+        String[] fields = new String[in.readUnsignedByte()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = PolicyProtocol.readString(in);
+        }
+        return new ShippedEvent(kind, timestamp, fields);
+    }
+
+    // One line of a collector segment file:
+    //   TIMESTAMP | AGENT | DECISION | LEVEL | APP_NAME | TARGET_DOMAIN | TARGET_IP | PROTOCOL | PORT | DECISION | REASON
+    //   TIMESTAMP | AGENT | ALERT | LEVEL | TYPE | APPLICATION | DETAILS
+    String format(String agentId) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(timestampMillis)) + " | " + agentId + " | "
+                + (kind == DECISION ? "DECISION" : "ALERT") + " | " + String.join(" | ", fields);
+    }
+}
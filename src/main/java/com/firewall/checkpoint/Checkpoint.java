@@ -0,0 +1,207 @@
+package com.firewall.checkpoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+// A checkpoint file mapped read-only. Opening it only reads the header and the section
+// directory; a section is checked against its CRC the first time it is used, and get()
+// looks a single key up through the section's hash slots, so restoring state costs
+// nothing until the state is actually needed.
+//
+// Lookups only use absolute reads on the shared mapping and are safe from any thread.
+public final class Checkpoint {
+    private final Path path;
+    private final long savedAtMillis;
+    private final Map<String, Section> sections = new HashMap<>();
+
+    private Checkpoint(Path path, ByteBuffer mapped) throws IOException {
+        this.path = path;
+        if (mapped.limit() < CheckpointFormat.HEADER_BYTES || mapped.getInt(0) != CheckpointFormat.MAGIC) {
+            throw new IOException("not a checkpoint file");
+        }
+        short version = mapped.getShort(4);
+        if (version != CheckpointFormat.VERSION) {
+            throw new IOException("unsupported checkpoint version " + version);
+        }
+        this.savedAtMillis = mapped.getLong(8);
+        int count = mapped.getInt(16);
+        int position = CheckpointFormat.HEADER_BYTES;
+        try {
+            for (int i = 0; i < count; i++) {
+                int nameLength = mapped.getShort(position);
+                String name = CheckpointFormat.readString(mapped, position + 2, nameLength);
+                position += 2 + nameLength;
+                long offset = mapped.getLong(position);
+                int length = mapped.getInt(position + 8);
+                int crc = mapped.getInt(position + 12);
+                position += 16;
+                if (offset < position || offset + length > mapped.limit()) {
+                    throw new IOException("section '" + name + "' lies outside the file");
+                }
+                ByteBuffer body = mapped.duplicate();
+                body.position((int) offset).limit((int) offset + length);
+                sections.put(name, new Section(name, body.slice(), crc));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated section directory");
+        }
+    }
+
+    // Maps the checkpoint at 'path'. Returns null if there is none yet, or if it can't be used
+    // (the firewall then simply starts from empty state).
+    public static Checkpoint open(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file is larger than 2 GB");
+            }
+            // The mapping stays valid after the channel is closed
+            return new Checkpoint(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            System.err.println("Warning: Ignoring state checkpoint " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // When the checkpoint at 'path' was saved, read from its header without mapping it; -1 if
+    // there is no file there or it isn't a checkpoint this version can read
+    public static long savedAtMillis(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(CheckpointFormat.HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            if (header.hasRemaining() || header.getInt(0) != CheckpointFormat.MAGIC
+                    || header.getShort(4) != CheckpointFormat.VERSION) {
+                return -1;
+            }
+            return header.getLong(8);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSavedAtMillis() {
+        return savedAtMillis;
+    }
+
+    // The named section, or null if the checkpoint doesn't have it
+    public Section getSection(String name) {
+        return sections.get(name);
+    }
+
+    public final class Section {
+        private final String name;
+        private final ByteBuffer body;
+        private final int expectedCrc;
+        private volatile int state; // 0 unchecked, 1 valid, -1 corrupt
+
+        Section(String name, ByteBuffer body, int expectedCrc) {
+            this.name = name;
+            this.body = body;
+            this.expectedCrc = expectedCrc;
+        }
+
+        public long getSavedAtMillis() {
+            return savedAtMillis;
+        }
+
+        // The value stored under 'key' as a read-only buffer positioned at its start, or null
+        public ByteBuffer get(String key) {
+            if (!isValid()) {
+                return null;
+            }
+            byte[] keyBytes = CheckpointFormat.utf8(key);
+            int hash = CheckpointFormat.hash(keyBytes);
+            int slotCount = body.getInt(4);
+            int mask = slotCount - 1;
+            for (int slot = hash & mask, probes = 0; probes < slotCount; slot = (slot + 1) & mask, probes++) {
+                int entry = body.getInt(8 + 4 * slot);
+                if (entry == CheckpointFormat.EMPTY_SLOT) {
+                    return null;
+                }
+                if (body.getInt(entry) == hash && keyEquals(entry + 6, body.getShort(entry + 4), keyBytes)) {
+                    return value(entry + 6 + keyBytes.length);
+                }
+            }
+            return null;
+        }
+
+        // Every record in the section, in the order it was written
+        public void forEach(BiConsumer<String, ByteBuffer> consumer) {
+            if (!isValid()) {
+                return;
+            }
+            int entries = body.getInt(0);
+            int position = 8 + 4 * body.getInt(4);
+            for (int i = 0; i < entries; i++) {
+                int keyLength = body.getShort(position + 4);
+                String key = CheckpointFormat.readString(body, position + 6, keyLength);
+                ByteBuffer value = value(position + 6 + keyLength);
+                consumer.accept(key, value);
+                position += 6 + keyLength + 4 + value.remaining();
+            }
+        }
+
+        public int size() {
+            return isValid() ? body.getInt(0) : 0;
+        }
+
+        private boolean keyEquals(int position, int length, byte[] key) {
+            if (length != key.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (body.get(position + i) != key[i]) return false;
+            }
+            return true;
+        }
+
+        private ByteBuffer value(int lengthPosition) {
+            ByteBuffer value = body.duplicate();
+            int start = lengthPosition + 4;
+            value.position(start).limit(start + body.getInt(lengthPosition));
+            return value.slice().asReadOnlyBuffer();
+        }
+
+        private boolean isValid() {
+            int checked = state;
+            if (checked == 0) {
+                checked = verify();
+            }
+            return checked > 0;
+        }
+
+        private synchronized int verify() {
+            if (state == 0) {
+                CRC32 crc = new CRC32();
+                crc.update(body.duplicate());
+                boolean valid = (int) crc.getValue() == expectedCrc && body.limit() >= 8
+                        && Integer.bitCount(body.getInt(4)) == 1;
+                if (!valid) {
+                    System.err.println("Warning: Section '" + name + "' of state checkpoint " + path
+                            + " is corrupt, starting it empty.");
+                }
+                state = valid ? 1 : -1;
+            }
+            return state;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.firewall.checkpoint;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Layout of a state checkpoint file (all integers big-endian):
+//
+//   header     "FWCK" (int), version (short), reserved (short), saved-at millis (long),
+//              section count (int)
+//   directory  per section: name length (short), name (UTF-8), offset (long), length (int),
+//              CRC32 of the section bytes (int)
+//   sections   one after another at the offsets in the directory
+//
+//   section    entry count (int), slot count (int, a power of two), slots (int each: the
+//              offset of an entry from the start of the section, or EMPTY_SLOT), then entries
+//   entry      key hash (int), key length (short), key (UTF-8), value length (int), value
+//
+// The slots are an open-addressing hash table over the keys, so one key can be looked up
+// straight from the mapped file without decoding the rest of the section. Readers skip
+// sections they don't know, so new state can be added without bumping VERSION; a change to
+// an existing section's values needs a new section name.
+final class CheckpointFormat {
+    static final int MAGIC = 0x4657434B; // "FWCK"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 4 + 2 + 2 + 8 + 4;
+    static final int EMPTY_SLOT = -1;
+
+    private CheckpointFormat() {
+    }
+
+    static int hash(byte[] key) {
+        int hash = 1;
+        for (byte b : key) {
+            hash = 31 * hash + b;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int slotCountFor(int entries) {
+        int slots = 2;
+        while (slots < entries * 2) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    static String readString(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,13 @@
+package com.firewall.checkpoint;
+
+// State that survives a restart through StateCheckpointer, stored as one named section.
+public interface CheckpointParticipant {
+
+    // Called on the checkpoint thread while the firewall keeps running; a key's record only
+    // has to be consistent in itself, not with the other records.
+    void saveState(CheckpointWriter.SectionWriter out);
+
+    // Called once at startup with the section saved by the previous run. Implementations
+    // should keep it and pull records out as keys are first seen instead of decoding it all.
+    void restoreState(Checkpoint.Section saved);
+}
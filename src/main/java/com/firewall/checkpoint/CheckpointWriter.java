@@ -0,0 +1,129 @@
+package com.firewall.checkpoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Collects sections of key -> value records in memory and writes them as one checkpoint
+// file (see CheckpointFormat). The file is written next to the target and moved over it,
+// so a crash mid-write leaves the previous checkpoint intact.
+public class CheckpointWriter {
+    private final long savedAtMillis;
+    private final Map<String, SectionWriter> sections = new LinkedHashMap<>();
+
+    public CheckpointWriter(long savedAtMillis) {
+        this.savedAtMillis = savedAtMillis;
+    }
+
+    public SectionWriter section(String name) {
+        return sections.computeIfAbsent(name, n -> new SectionWriter());
+    }
+
+    public void writeTo(Path path) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        List<ByteBuffer> bodies = new ArrayList<>();
+        int directoryBytes = 0;
+        for (Map.Entry<String, SectionWriter> entry : sections.entrySet()) {
+            byte[] name = CheckpointFormat.utf8(entry.getKey());
+            names.add(name);
+            bodies.add(entry.getValue().build());
+            directoryBytes += 2 + name.length + 8 + 4 + 4;
+        }
+        ByteBuffer header = ByteBuffer.allocate(CheckpointFormat.HEADER_BYTES + directoryBytes);
+        header.putInt(CheckpointFormat.MAGIC).putShort(CheckpointFormat.VERSION).putShort((short) 0)
+                .putLong(savedAtMillis).putInt(bodies.size());
+        long offset = header.capacity();
+        for (int i = 0; i < bodies.size(); i++) {
+            ByteBuffer body = bodies.get(i);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            header.putShort((short) names.get(i).length).put(names.get(i))
+                    .putLong(offset).putInt(body.remaining()).putInt((int) crc.getValue());
+            offset += body.remaining();
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoint would be larger than 2 GB");
+        }
+        header.flip();
+
+        Path tmp = Paths.get(path.toString() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (ByteBuffer body : bodies) {
+                writeFully(channel, body);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // The records of one section. Keys must be unique within it; a later put replaces an earlier one.
+    public static final class SectionWriter {
+        private final Map<String, byte[]> records = new LinkedHashMap<>();
+
+        public void put(String key, byte[] value) {
+            records.put(key, value);
+        }
+
+        public void put(String key, ByteBuffer value) {
+            byte[] bytes = new byte[value.remaining()];
+            value.duplicate().get(bytes);
+            put(key, bytes);
+        }
+
+        public int size() {
+            return records.size();
+        }
+
+        ByteBuffer build() {
+            int slotCount = CheckpointFormat.slotCountFor(records.size());
+            int size = 4 + 4 + 4 * slotCount;
+            List<byte[]> keys = new ArrayList<>(records.size());
+            for (Map.Entry<String, byte[]> record : records.entrySet()) {
+                byte[] key = CheckpointFormat.utf8(record.getKey());
+                if (key.length > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("Checkpoint key too long: " + record.getKey().substring(0, 64));
+                }
+                keys.add(key);
+                size += 4 + 2 + key.length + 4 + record.getValue().length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putInt(records.size()).putInt(slotCount);
+            int slotsStart = buffer.position();
+            for (int i = 0; i < slotCount; i++) {
+                buffer.putInt(CheckpointFormat.EMPTY_SLOT);
+            }
+            int mask = slotCount - 1;
+            int i = 0;
+            for (byte[] value : records.values()) {
+                byte[] key = keys.get(i++);
+                int hash = CheckpointFormat.hash(key);
+                int slot = hash & mask;
+                while (buffer.getInt(slotsStart + 4 * slot) != CheckpointFormat.EMPTY_SLOT) {
+                    slot = (slot + 1) & mask;
+                }
+                buffer.putInt(slotsStart + 4 * slot, buffer.position());
+                buffer.putInt(hash).putShort((short) key.length).put(key).putInt(value.length).put(value);
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.firewall.checkpoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Carries runtime state (decision counters, alert windows and cooldowns) across restarts.
+//
+// On start the previous run's checkpoint is mapped and each registered participant gets its
+// section; nothing is decoded until a participant looks a key up, so startup doesn't grow
+// with the amount of state. A daemon thread writes a fresh checkpoint every interval and
+// close() writes a last one, from the shutdown hook.
+//
+// Checkpoints alternate between two generation files, <file>.a and <file>.b. The mapping of
+// the previous checkpoint lives as long as the process, and Windows refuses to replace or
+// delete a mapped file, so saves always go to the generation that isn't mapped and the next
+// start maps whichever of the two was saved last. A plain <file> left by an older version is
+// read once and deleted once a generation has replaced it.
+//
+// On by default, -Dfirewall.checkpoint=<file> moves it and -Dfirewall.checkpoint=off turns
+// it off; -Dfirewall.checkpoint.interval=<seconds> sets the interval.
+public class StateCheckpointer {
+    public static final String CHECKPOINT_PROPERTY = "firewall.checkpoint";
+    public static final String INTERVAL_PROPERTY = "firewall.checkpoint.interval";
+    private static final String DEFAULT_FILE = "firewall_state.ckpt";
+    private static final long DEFAULT_INTERVAL_SECONDS = 30;
+
+    private final Checkpoint previous; // null on a cold start
+    private final Path savePath;       // the generation file 'previous' isn't mapped from
+    private final Map<String, CheckpointParticipant> participants = new LinkedHashMap<>();
+    private final ScheduledExecutorService timer;
+    private boolean closed;
+
+    public StateCheckpointer(Path path, long intervalSeconds) {
+        Path first = generation(path, "a");
+        Path second = generation(path, "b");
+        this.previous = openNewest(first, second, path);
+        this.savePath = previous != null && previous.getPath().equals(first) ? second : first;
+        if (previous != null && !previous.getPath().equals(path)) {
+            try {
+                Files.deleteIfExists(path); // from an older version, superseded
+            } catch (IOException e) {
+                System.err.println("Warning: Could not delete old state checkpoint " + path + ": " + e.getMessage());
+            }
+        }
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::save, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Returns null when checkpointing is turned off
+    public static StateCheckpointer startIfEnabled() {
+        String file = System.getProperty(CHECKPOINT_PROPERTY, DEFAULT_FILE).trim();
+        if (file.isEmpty() || file.equalsIgnoreCase("off") || file.equalsIgnoreCase("false")) {
+            return null;
+        }
+        long interval = DEFAULT_INTERVAL_SECONDS;
+        try {
+            interval = Math.max(1, Long.parseLong(System.getProperty(INTERVAL_PROPERTY,
+                    String.valueOf(DEFAULT_INTERVAL_SECONDS)).trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + INTERVAL_PROPERTY + ", using " + DEFAULT_INTERVAL_SECONDS + " seconds.");
+        }
+        StateCheckpointer checkpointer = new StateCheckpointer(Paths.get(file), interval);
+        if (checkpointer.previous != null) {
+            System.out.println("Resuming state from " + checkpointer.previous.getPath().toAbsolutePath() + " (saved "
+                    + (System.currentTimeMillis() - checkpointer.previous.getSavedAtMillis()) / 1000 + " s ago)");
+        }
+        return checkpointer;
+    }
+
+    private static Path generation(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + "." + suffix);
+    }
+
+    // Maps the most recently saved usable checkpoint among the candidates; only that one is
+    // mapped, so the others can still be replaced
+    private static Checkpoint openNewest(Path... files) {
+        long[] savedAt = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            savedAt[i] = Checkpoint.savedAtMillis(files[i]);
+        }
+        while (true) {
+            int newest = -1;
+            for (int i = 0; i < files.length; i++) {
+                if (savedAt[i] >= 0 && (newest < 0 || savedAt[i] > savedAt[newest])) newest = i;
+            }
+            if (newest < 0) {
+                return null;
+            }
+            Checkpoint checkpoint = Checkpoint.open(files[newest]);
+            if (checkpoint != null) {
+                return checkpoint;
+            }
+            savedAt[newest] = -1; // damaged, fall back to the older one
+        }
+    }
+
+    // The checkpoint file this run resumed from, or null on a cold start
+    public Path getRestoredPath() {
+        return previous == null ? null : previous.getPath();
+    }
+
+    // Where save() writes
+    public Path getSavePath() {
+        return savePath;
+    }
+
+    // Hands the participant its section from the previous run, if there is one, and includes
+    // it in every checkpoint from now on.
+    public synchronized void register(String section, CheckpointParticipant participant) {
+        participants.put(section, participant);
+        Checkpoint.Section saved = previous == null ? null : previous.getSection(section);
+        if (saved != null) {
+            participant.restoreState(saved);
+        }
+    }
+
+    // Writes a checkpoint now; returns false (after a warning) if it couldn't be written
+    public synchronized boolean save() {
+        if (closed) {
+            return false;
+        }
+        CheckpointWriter writer = new CheckpointWriter(System.currentTimeMillis());
+        try {
+            for (Map.Entry<String, CheckpointParticipant> entry : participants.entrySet()) {
+                entry.getValue().saveState(writer.section(entry.getKey()));
+            }
+            writer.writeTo(savePath);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Warning: Could not write state checkpoint " + savePath + ": " + e);
+            return false;
+        }
+    }
+
+    // Stops the timer and writes the final checkpoint
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        timer.shutdownNow();
+        save();
+        closed = true;
+    }
+}
@@ -0,0 +1,62 @@
+package com.firewall.classify;
+
+// Cheap checks on the first bytes of a flow's payload, for services running on ports the
+// port table doesn't know. Each looks at a few fixed bytes only; none parses the protocol.
+public enum PayloadSignature {
+    // TLS record of type handshake (0x16), version 3.x, whose first message is a ClientHello (1)
+    TLS_CLIENT_HELLO("tls-client-hello") {
+        @Override
+        public boolean matches(byte[] payload) {
+            return payload.length >= 6 && payload[0] == 0x16 && payload[1] == 0x03 && (payload[2] & 0xff) <= 0x04
+                    && payload[5] == 0x01;
+        }
+    },
+    // RFC 4253 identification string, sent by both client and server: "SSH-2.0-..."
+    SSH_BANNER("ssh-banner") {
+        @Override
+        public boolean matches(byte[] payload) {
+            return startsWith(payload, "SSH-");
+        }
+    },
+    // An HTTP/1.x request line
+    HTTP_REQUEST("http-request") {
+        @Override
+        public boolean matches(byte[] payload) {
+            for (String method : HTTP_METHODS) {
+                if (startsWith(payload, method)) return true;
+            }
+            return false;
+        }
+    };
+
+    private static final String[] HTTP_METHODS = {"GET ", "POST ", "HEAD ", "PUT ", "DELETE ", "OPTIONS ", "PATCH ",
+            "CONNECT "};
+
+    private final String configName;
+
+    PayloadSignature(String configName) {
+        this.configName = configName;
+    }
+
+    public abstract boolean matches(byte[] payload);
+
+    // Name used in services.txt
+    public String getConfigName() {
+        return configName;
+    }
+
+    public static PayloadSignature forConfigName(String name) {
+        for (PayloadSignature signature : values()) {
+            if (signature.configName.equalsIgnoreCase(name)) return signature;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] payload, String prefix) {
+        if (payload.length < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (payload[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+}
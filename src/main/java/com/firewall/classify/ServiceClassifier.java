@@ -0,0 +1,283 @@
+package com.firewall.classify;
+
+import com.firewall.detection.Hashing;
+import org.pcap4j.packet.Packet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Names the application behind a captured packet, in constant time however many services
+// are configured.
+//
+//   1. Port table: one short per port (65536) per transport, indexing a table of service
+//      names, so a mapped destination port costs one array read.
+//   2. Payload signatures: only for flows to unmapped ports, and only on the flow's first few
+//      packets that carry data (inspectPackets). The first signature that matches names the
+//      flow; if none has matched by then, it keeps the transport's fallback name.
+//   3. Flow cache: a direct-mapped table of flow keys (a 64-bit hash of the 5-tuple) holding
+//      each flow's answer once it is settled. A colliding flow simply takes over the slot and
+//      is inspected again.
+//
+// The mappings come from services.txt (see the comments there); without it the built-in
+// DEFAULT_CONFIG applies, which is the port switch the simulator used to hard-code.
+//
+// Not thread-safe: the flow cache belongs to the one capture thread that calls classify().
+public final class ServiceClassifier {
+    public static final String DEFAULT_FILE = "services.txt";
+    public static final String UNKNOWN_APP = "UnknownApp";
+    static final List<String> DEFAULT_CONFIG = Arrays.asList(
+            "tcp 80 HTTP", "tcp 443 HTTPS", "tcp 21 FTP", "tcp 22 SSH", "tcp 25 SMTP", "tcp 53 DNS_TCP",
+            "tcp * GenericTCP",
+            "udp 53 DNS", "udp 67 DHCP_Server", "udp 68 DHCP_Client", "udp 161 SNMP", "udp 123 NTP",
+            "udp * GenericUDP",
+            "signature tls-client-hello HTTPS", "signature ssh-banner SSH", "signature http-request HTTP",
+            "inspect 4");
+    private static final int PORTS = 65536;
+    private static final int FLOW_SLOTS = 1 << 16;
+    private static final short UNMAPPED = 0;
+    private static final byte DECIDED = -1;
+
+    private final List<String> names = new ArrayList<>(); // service id -> name; id 0 is UNMAPPED
+    private final Map<String, Short> ids = new LinkedHashMap<>();
+    private final short[] tcpPorts = new short[PORTS];
+    private final short[] udpPorts = new short[PORTS];
+    private short tcpFallback;
+    private short udpFallback;
+    private final List<PayloadSignature> signatureList = new ArrayList<>();
+    private final List<Short> signatureServiceList = new ArrayList<>();
+    private int inspectPackets = 4;
+
+    // Frozen copies used on the lookup path
+    private String[] serviceNames;
+    private PayloadSignature[] signatures;
+    private short[] signatureServices;
+
+    private final long[] flowKeys = new long[FLOW_SLOTS];
+    private final short[] flowServices = new short[FLOW_SLOTS];
+    private final byte[] flowInspected = new byte[FLOW_SLOTS]; // data packets looked at, or DECIDED
+
+    private long portHits;
+    private long flowCacheHits;
+    private long signatureMatches;
+
+    private ServiceClassifier() {
+        names.add(null);
+    }
+
+    // Reads 'path', or falls back to the built-in mappings if there is no such file
+    public static ServiceClassifier load(String path) {
+        try {
+            return parse(Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8), path);
+        } catch (NoSuchFileException e) {
+            System.out.println("No " + path + " found, using the built-in port mappings.");
+        } catch (IOException e) {
+            System.err.println("Error reading " + path + ": " + e.getMessage() + ". Using the built-in port mappings.");
+        }
+        return defaults();
+    }
+
+    public static ServiceClassifier defaults() {
+        return parse(DEFAULT_CONFIG, "built-in mappings");
+    }
+
+    // Later lines override earlier ones; bad lines are reported and skipped
+    public static ServiceClassifier parse(List<String> lines, String source) {
+        ServiceClassifier classifier = new ServiceClassifier();
+        classifier.tcpFallback = classifier.idFor("GenericTCP");
+        classifier.udpFallback = classifier.idFor("GenericUDP");
+        int lineNumber = 0;
+        for (String raw : lines) {
+            lineNumber++;
+            int comment = raw.indexOf('#');
+            String line = (comment >= 0 ? raw.substring(0, comment) : raw).trim();
+            if (line.isEmpty()) continue;
+            String problem = classifier.apply(line.split("\\s+"));
+            if (problem != null) {
+                System.err.println("Warning: " + source + " line " + lineNumber + ": " + problem + ": " + line);
+            }
+        }
+        classifier.freeze();
+        return classifier;
+    }
+
+    // Returns what is wrong with the line, or null
+    private String apply(String[] fields) {
+        String kind = fields[0].toLowerCase();
+        if (kind.equals("inspect")) {
+            if (fields.length != 2) return "expected 'inspect <packets>'";
+            try {
+                inspectPackets = Math.max(1, Math.min(100, Integer.parseInt(fields[1])));
+                return null;
+            } catch (NumberFormatException e) {
+                return "not a number";
+            }
+        }
+        if (fields.length != 3) {
+            return "expected '<tcp|udp|signature> <what> <service>'";
+        }
+        if (kind.equals("signature")) {
+            PayloadSignature signature = PayloadSignature.forConfigName(fields[1]);
+            if (signature == null) return "unknown signature '" + fields[1] + "'";
+            int existing = signatureList.indexOf(signature);
+            if (existing >= 0) {
+                signatureServiceList.set(existing, idFor(fields[2]));
+            } else {
+                signatureList.add(signature);
+                signatureServiceList.add(idFor(fields[2]));
+            }
+            return null;
+        }
+        short[] ports;
+        if (kind.equals("tcp")) {
+            ports = tcpPorts;
+        } else if (kind.equals("udp")) {
+            ports = udpPorts;
+        } else {
+            return "unknown entry type '" + fields[0] + "'";
+        }
+        if (fields[1].equals("*")) {
+            if (ports == tcpPorts) tcpFallback = idFor(fields[2]);
+            else udpFallback = idFor(fields[2]);
+            return null;
+        }
+        int first;
+        int last;
+        try {
+            int dash = fields[1].indexOf('-');
+            first = Integer.parseInt(dash < 0 ? fields[1] : fields[1].substring(0, dash));
+            last = dash < 0 ? first : Integer.parseInt(fields[1].substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return "bad port '" + fields[1] + "'";
+        }
+        if (first < 0 || last >= PORTS || last < first) {
+            return "bad port range '" + fields[1] + "'";
+        }
+        Arrays.fill(ports, first, last + 1, idFor(fields[2]));
+        return null;
+    }
+
+    private short idFor(String name) {
+        Short id = ids.get(name);
+        if (id == null) {
+            if (names.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("More than " + Short.MAX_VALUE + " service names");
+            }
+            id = (short) names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    private void freeze() {
+        serviceNames = names.toArray(new String[0]);
+        signatures = signatureList.toArray(new PayloadSignature[0]);
+        signatureServices = new short[signatureServiceList.size()];
+        for (int i = 0; i < signatureServices.length; i++) {
+            signatureServices[i] = signatureServiceList.get(i);
+        }
+    }
+
+    // Service name for a TCP or UDP packet ("UnknownApp" for other transports). 'payload' is
+    // the transport's payload, or null; its bytes are only read while a flow to an unmapped
+    // port is still being inspected.
+    public String classify(String transport, String sourceIp, int sourcePort, String destIp, int destPort,
+                           Packet payload) {
+        short[] ports;
+        short fallback;
+        if ("TCP".equals(transport)) {
+            ports = tcpPorts;
+            fallback = tcpFallback;
+        } else if ("UDP".equals(transport)) {
+            ports = udpPorts;
+            fallback = udpFallback;
+        } else {
+            return UNKNOWN_APP;
+        }
+        short service = ports[destPort & 0xffff];
+        if (service != UNMAPPED) {
+            portHits++;
+            return serviceNames[service];
+        }
+        if (signatures.length == 0) {
+            return serviceNames[fallback];
+        }
+
+        long key = flowKey(transport, sourceIp, sourcePort, destIp, destPort);
+        int slot = (int) key & (FLOW_SLOTS - 1);
+        if (flowKeys[slot] != key) {
+            flowKeys[slot] = key; // new flow, or one that collided with it
+            flowServices[slot] = fallback;
+            flowInspected[slot] = 0;
+        } else if (flowInspected[slot] == DECIDED) {
+            flowCacheHits++;
+            return serviceNames[flowServices[slot]];
+        }
+        if (payload != null && payload.length() > 0) { // handshakes and bare ACKs don't count
+            byte[] data = payload.getRawData();
+            for (int i = 0; i < signatures.length; i++) {
+                if (signatures[i].matches(data)) {
+                    signatureMatches++;
+                    flowServices[slot] = signatureServices[i];
+                    flowInspected[slot] = DECIDED;
+                    return serviceNames[signatureServices[i]];
+                }
+            }
+            if (++flowInspected[slot] >= inspectPackets) {
+                flowInspected[slot] = DECIDED;
+            }
+        }
+        return serviceNames[flowServices[slot]];
+    }
+
+    private static long flowKey(String transport, String sourceIp, int sourcePort, String destIp, int destPort) {
+        long key = Hashing.mix64(Hashing.hash64(sourceIp) * 31 + Hashing.hash64(destIp)
+                + ((long) sourcePort << 32 | (long) destPort << 16 | transport.charAt(0)));
+        return key == 0 ? 1 : key; // 0 marks an empty slot
+    }
+
+    // Service for a destination port alone, without signatures; null for an unknown transport
+    public String serviceForPort(String transport, int port) {
+        if ("TCP".equals(transport)) {
+            return serviceNames[tcpPorts[port] != UNMAPPED ? tcpPorts[port] : tcpFallback];
+        } else if ("UDP".equals(transport)) {
+            return serviceNames[udpPorts[port] != UNMAPPED ? udpPorts[port] : udpFallback];
+        }
+        return null;
+    }
+
+    public int getServiceCount() {
+        return serviceNames.length - 1;
+    }
+
+    public long getPortHitCount() {
+        return portHits;
+    }
+
+    public long getFlowCacheHitCount() {
+        return flowCacheHits;
+    }
+
+    public long getSignatureMatchCount() {
+        return signatureMatches;
+    }
+
+    @Override
+    public String toString() {
+        int mapped = 0;
+        for (int port = 0; port < PORTS; port++) {
+            if (tcpPorts[port] != UNMAPPED) mapped++;
+            if (udpPorts[port] != UNMAPPED) mapped++;
+        }
+        return getServiceCount() + " services, " + mapped + " mapped ports, " + signatures.length
+                + " payload signatures (first " + inspectPackets + " data packets of a flow)";
+    }
+}
@@ -1,40 +1,261 @@
 package com.firewall.core;
 
+import com.firewall.central.EventShipper;
+import com.firewall.jfr.LoggerFlushJfrEvent;
+
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+// Writes the activity log from a background thread. log() only stamps the time and queues
+// the entry; the writer thread formats entries, keeps the file open and flushes whenever
+// the queue runs dry, so a burst costs one write per batch instead of an open/close per line.
+//
+// The queue is bounded. When it is full, log() waits for room rather than dropping lines:
+// the activity log is an audit trail. getQueueDepth() shows how close that is to happening.
+// If the writer thread stops (the file can't be opened, the disk is full), nothing would
+// ever make room again, so from then on entries are reported on stderr and counted as
+// dropped instead of waited on. Callers that must never stall use tryLog(), which drops
+// and counts the entry when the queue is full.
 public class ActivityLogger {
+    private static final int DEFAULT_QUEUE_CAPACITY = 16384;
+    private static final int MAX_BATCH = 512;
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
     private final String logFilePath;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final BlockingQueue<Entry> queue;
+    private final int queueCapacity;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder blockedOffers = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private volatile boolean writerStopped;
+    private volatile boolean consoleEcho = true;
+    private volatile EventShipper eventShipper; // null unless shipping to a central collector
 
     public ActivityLogger(String logFilePath) {
+        this(logFilePath, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ActivityLogger(String logFilePath, int queueCapacity) {
         this.logFilePath = logFilePath;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
         // Initialize log file with header if it's new/empty
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(logFilePath, true)))) {
-            if (new java.io.File(logFilePath).length() == 0) {
-                out.println("TIMESTAMP | LEVEL | APP_NAME | TARGET_DOMAIN | TARGET_IP | PROTOCOL | PORT | DECISION | REASON");
+        if (new java.io.File(logFilePath).length() == 0) {
+            try (Writer out = new BufferedWriter(new FileWriter(logFilePath, true))) {
+                out.write("TIMESTAMP | LEVEL | APP_NAME | TARGET_DOMAIN | TARGET_IP | PROTOCOL | PORT | DECISION | REASON");
+                out.write(System.lineSeparator());
+            } catch (IOException e) {
+                System.err.println("Error initializing activity logger: " + e.getMessage());
             }
-        } catch (IOException e) {
-            System.err.println("Error initializing activity logger: " + e.getMessage());
         }
+        this.writerThread = new Thread(this::writeLoop, "activity-logger");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
     }
 
     public void log(String level, String appName, String targetDomain, String targetIP,
                     String protocol, int port, String decision, String reason) {
-        String timestamp = dateFormat.format(new Date());
-        String logEntry = String.join(" | ",
-                timestamp, level, appName, targetDomain, targetIP, protocol, String.valueOf(port), decision, reason);
+        Entry entry = new Entry(System.currentTimeMillis(), level, appName, targetDomain, targetIP,
+                protocol, port, decision, reason);
+        if (closed || writerStopped) {
+            drop(entry);
+            return;
+        }
+        EventShipper shipper = eventShipper;
+        if (shipper != null) {
+            shipper.offerDecision(entry.timestampMillis, level, appName, targetDomain, targetIP, protocol, port,
+                    decision, reason);
+        }
+        if (!queue.offer(entry)) {
+            blockedOffers.increment();
+            try {
+                // Wait in slices so a caller can't wait forever on a writer that has stopped
+                while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+                    if (writerStopped || !writerThread.isAlive()) {
+                        drop(entry);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Interrupted while queueing activity log entry: " + entry.format());
+            }
+        }
+        if (writerStopped && queue.remove(entry)) {
+            drop(entry); // queued just after the writer's last drain
+        }
+    }
 
-        System.out.println("LOG: " + logEntry); // Also print to console for immediate feedback
+    // Like log(), but never waits: returns false, counting the entry in getOverflowCount(), if
+    // the queue is full, and false without a word on stderr if the logger can't write at all.
+    public boolean tryLog(String level, String appName, String targetDomain, String targetIP,
+                          String protocol, int port, String decision, String reason) {
+        if (closed || writerStopped) {
+            dropped.increment();
+            return false;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), level, appName, targetDomain, targetIP,
+                protocol, port, decision, reason);
+        EventShipper shipper = eventShipper;
+        if (shipper != null) {
+            shipper.offerDecision(entry.timestampMillis, level, appName, targetDomain, targetIP, protocol, port,
+                    decision, reason);
+        }
+        if (!queue.offer(entry)) {
+            overflowed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void drop(Entry entry) {
+        dropped.increment();
+        System.err.println((closed ? "Activity logger closed" : "Activity log writer stopped") + ", dropping: "
+                + entry.format());
+    }
+
+    // Echoing every entry to stdout is handy when watching a few simulated requests and
+    // ruinous at high rates; load tests turn it off.
+    public void setConsoleEcho(boolean consoleEcho) {
+        this.consoleEcho = consoleEcho;
+    }
+
+    // Also sends every entry to a central collector; the shipper never blocks log().
+    public void setEventShipper(EventShipper eventShipper) {
+        this.eventShipper = eventShipper;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
 
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(logFilePath, true)))) {
-            out.println(logEntry);
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    // Times log() found the queue full and had to wait.
+    public long getBlockedCount() {
+        return blockedOffers.sum();
+    }
+
+    // Entries that never reached the file because the logger was closed or its writer stopped.
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    // Entries tryLog() dropped because the queue was full.
+    public long getOverflowCount() {
+        return overflowed.sum();
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        try (Writer out = new BufferedWriter(new FileWriter(logFilePath, true), 1 << 16)) {
+            while (!closed || !queue.isEmpty()) {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                LoggerFlushJfrEvent jfrEvent = new LoggerFlushJfrEvent();
+                jfrEvent.begin();
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (Entry entry : batch) {
+                    String line = entry.format();
+                    if (consoleEcho) {
+                        System.out.println("LOG: " + line); // Also print to console for immediate feedback
+                    }
+                    out.write(line);
+                    out.write(System.lineSeparator());
+                }
+                int entries = batch.size();
+                written.add(entries);
+                batch.clear();
+                boolean flushed = queue.isEmpty();
+                if (flushed) {
+                    out.flush();
+                }
+                jfrEvent.end();
+                if (jfrEvent.shouldCommit()) {
+                    jfrEvent.entries = entries;
+                    jfrEvent.flushed = flushed;
+                    jfrEvent.queueDepthAfter = queue.size();
+                    jfrEvent.commit();
+                }
+            }
         } catch (IOException e) {
             System.err.println("Error writing to activity log: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writerStopped = true;
+            // Anything still queued can't be written any more; callers waiting for room give up too
+            List<Entry> lost = new ArrayList<>();
+            queue.drainTo(lost);
+            for (Entry entry : lost) {
+                drop(entry);
+            }
+        }
+    }
+
+    // Writes out everything queued so far and stops the writer thread.
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            System.err.println("Warning: Activity log writer did not finish within 5 seconds.");
+        }
+    }
+
+    private static final class Entry {
+        final long timestampMillis;
+        final String level;
+        final String appName;
+        final String targetDomain;
+        final String targetIP;
+        final String protocol;
+        final int port;
+        final String decision;
+        final String reason;
+
+        Entry(long timestampMillis, String level, String appName, String targetDomain, String targetIP,
+              String protocol, int port, String decision, String reason) {
+            this.timestampMillis = timestampMillis;
+            this.level = level;
+            this.appName = appName;
+            this.targetDomain = targetDomain;
+            this.targetIP = targetIP;
+            this.protocol = protocol;
+            this.port = port;
+            this.decision = decision;
+            this.reason = reason;
+        }
+
+        String format() {
+            return String.join(" | ",
+                    DATE_FORMAT.format(Instant.ofEpochMilli(timestampMillis)), level, appName, targetDomain,
+                    targetIP, protocol, String.valueOf(port), decision, reason);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,80 +1,184 @@
 package com.firewall.core;
 
+import com.firewall.central.EventShipper;
+import com.firewall.checkpoint.StateCheckpointer;
+import com.firewall.detection.AlertDetector;
+import com.firewall.detection.BurstDetector;
+import com.firewall.detection.DecisionEvent;
+import com.firewall.detection.DetectorPipeline;
+import com.firewall.detection.DetectorStats;
+import com.firewall.detection.ExcessiveDeniesDetector;
+import com.firewall.detection.HeavyHitterDetector;
+import com.firewall.detection.PortScanDetector;
+import com.firewall.detection.RateLimitDetector;
+import com.firewall.detection.UnexpectedProtocolDetector;
+import com.firewall.jfr.AlertJfrEvent;
 import com.firewall.model.NetworkRequest;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
 
 public class AlertEngine {
     private final String alertFilePath;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private PrintWriter alertWriter; // kept open, alerts are flushed one by one
+    private volatile EventShipper eventShipper; // null unless shipping to a central collector
 
-    // Heuristic 1: Denied requests per app
-    private final int MAX_DENIED_REQUESTS_PER_APP = 5;
-    private final long DENIED_REQUESTS_WINDOW_MS = 60 * 1000; // 1 minute
-    private final Map<String, Queue<Long>> appDeniedTimestamps = new HashMap<>();
+    // Storm protection: one alert per (type, app) per cooldown, and a global cap on alert rate
+    private final long ALERT_COOLDOWN_MS = 30 * 1000;
+    private final int MAX_COOLDOWN_KEYS = 10_000;
+    private final double MAX_ALERTS_PER_SECOND = 10;
+    private final int ALERT_BURST = 20;
+    private final AlertThrottle alertThrottle =
+            new AlertThrottle(ALERT_COOLDOWN_MS, MAX_COOLDOWN_KEYS, MAX_ALERTS_PER_SECOND, ALERT_BURST);
+
+    // Alerts actually written, per type (after cooldown and rate limiting)
+    private final ConcurrentHashMap<String, LongAdder> alertCounts = new ConcurrentHashMap<>();
+
+    // Detectors run on their own threads; the decision path only enqueues an event
+    private final DetectorPipeline detectorPipeline;
+    private final ExcessiveDeniesDetector excessiveDeniesDetector = new ExcessiveDeniesDetector();
 
     public AlertEngine(String alertFilePath) {
         this.alertFilePath = alertFilePath;
-         try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(alertFilePath, true)))) {
-            if (new java.io.File(alertFilePath).length() == 0) {
-                out.println("TIMESTAMP | LEVEL | TYPE | APPLICATION | DETAILS");
+        try {
+            boolean isNew = new java.io.File(alertFilePath).length() == 0;
+            alertWriter = new PrintWriter(new BufferedWriter(new FileWriter(alertFilePath, true)));
+            if (isNew) {
+                alertWriter.println("TIMESTAMP | LEVEL | TYPE | APPLICATION | DETAILS");
+                alertWriter.flush();
             }
         } catch (IOException e) {
             System.err.println("Error initializing alert logger: " + e.getMessage());
         }
+
+        // Last, so the detector threads it starts see a fully built engine
+        detectorPipeline = new DetectorPipeline(this::generateAlert);
+        registerDetector(excessiveDeniesDetector);           // Heuristic 1: denied requests per app
+        registerDetector(new UnexpectedProtocolDetector());  // Heuristic 2: protocol outside the allow-list
+        registerDetector(new PortScanDetector());            // Streaming heuristics with fixed memory
+        registerDetector(new HeavyHitterDetector());
+        registerDetector(new BurstDetector());
+        registerDetector(new RateLimitDetector());
+    }
+
+    public void registerDetector(AlertDetector detector) {
+        detectorPipeline.register(detector);
     }
 
+    // Called on the decision path: hands the decision to the detector threads and returns.
     public void processEvent(NetworkRequest request, String decision, String reason) {
-        if ("DENY".equals(decision)) {
-            checkDeniedRequestThreshold(request);
-            if (reason.contains("protocol not allowed")) {
-                 generateAlert("MEDIUM", "UNEXPECTED_PROTOCOL", request.getApplicationName(),
-                        "App tried to use " + request.getProtocol() + " to " + request.getTargetDomain() + ", which is not in its allowed protocols.");
-            }
-        }
-        // Add more heuristics here if needed
+        detectorPipeline.publish(new DecisionEvent(request, decision, reason));
+    }
+
+    // For alerts the firewall raises about itself (e.g. OVERLOAD); throttled like detector alerts.
+    public void raiseAlert(String level, String type, String application, String details) {
+        generateAlert(level, type, application, details);
     }
 
-    private void checkDeniedRequestThreshold(NetworkRequest request) {
-        String appName = request.getApplicationName();
-        appDeniedTimestamps.putIfAbsent(appName, new LinkedList<>());
-        Queue<Long> timestamps = appDeniedTimestamps.get(appName);
+    public List<DetectorStats> getDetectorStats() {
+        return detectorPipeline.getDetectorStats();
+    }
 
-        long currentTime = request.getTimestamp();
-        timestamps.add(currentTime);
+    public DetectorPipeline getDetectorPipeline() {
+        return detectorPipeline;
+    }
 
-        // Remove old timestamps outside the window
-        while (!timestamps.isEmpty() && currentTime - timestamps.peek() > DENIED_REQUESTS_WINDOW_MS) {
-            timestamps.poll();
-        }
+    // Keeps the alert cooldowns and the per-app deny windows across restarts, so an app that
+    // was about to trip EXCESSIVE_DENIES doesn't start from zero and cooled-down alerts stay quiet.
+    public void registerCheckpointState(StateCheckpointer checkpointer) {
+        checkpointer.register("alert-cooldowns", alertThrottle);
+        checkpointer.register("excessive-denies", excessiveDeniesDetector.getDeniedCounts());
+    }
 
-        if (timestamps.size() >= MAX_DENIED_REQUESTS_PER_APP) {
-            generateAlert("HIGH", "EXCESSIVE_DENIES", appName,
-                    "Application '" + appName + "' has " + timestamps.size() +
-                    " denied requests in the last " + (DENIED_REQUESTS_WINDOW_MS / 1000) + " seconds.");
-            // Optional: Clear queue after alert to avoid repeated alerts for the same burst
-            // timestamps.clear(); // Or implement a cooldown period
+    public void forEachAlertCount(ObjLongConsumer<String> consumer) {
+        for (Map.Entry<String, LongAdder> entry : alertCounts.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue().sum());
         }
     }
 
     private void generateAlert(String level, String type, String application, String details) {
-        String timestamp = dateFormat.format(new Date());
+        long now = System.currentTimeMillis();
+        int suppressed = alertThrottle.acquireCooldown(type, application, now);
+        if (suppressed < 0) {
+            return; // same alert still cooling down, counted for the next one
+        }
+        if (suppressed > 0) {
+            details += " (" + suppressed + " similar alert(s) suppressed in the last "
+                    + (ALERT_COOLDOWN_MS / 1000) + " seconds)";
+        }
+
+        switch (alertThrottle.acquireRate(now)) {
+            case LIMIT_STARTED:
+                writeAlert("HIGH", "ALERT_RATE_LIMITED", "*",
+                        "Alert rate exceeded " + MAX_ALERTS_PER_SECOND + "/s. Dropping alerts until it falls back.");
+                return;
+            case DROPPED:
+                return;
+            default:
+                break;
+        }
+        long dropped = alertThrottle.endRateLimiting();
+        if (dropped > 0) {
+            writeAlert("HIGH", "ALERT_RATE_LIMITED", "*", dropped + " alert(s) dropped by the global alert rate limit.");
+        }
+        writeAlert(level, type, application, details);
+    }
+
+    private synchronized void writeAlert(String level, String type, String application, String details) {
+        AlertJfrEvent jfrEvent = new AlertJfrEvent();
+        jfrEvent.begin();
+        String timestamp = dateFormat.format(LocalDateTime.now());
         String alertEntry = String.join(" | ", timestamp, level, type, application, details);
 
         System.err.println("ALERT: " + alertEntry); // Print to console (stderr for alerts)
+        EventShipper shipper = eventShipper;
+        if (shipper != null) {
+            shipper.offerAlert(System.currentTimeMillis(), level, type, application, details);
+        }
+        alertCounts.computeIfAbsent(type, t -> new LongAdder()).increment();
 
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(alertFilePath, true)))) {
-            out.println(alertEntry);
-        } catch (IOException e) {
-            System.err.println("Error writing to alert log: " + e.getMessage());
+        if (alertWriter != null) {
+            alertWriter.println(alertEntry);
+            alertWriter.flush();
+            if (alertWriter.checkError()) {
+                System.err.println("Error writing to alert log: " + alertFilePath);
+            }
+        }
+        jfrEvent.end();
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.level = level;
+            jfrEvent.type = type;
+            jfrEvent.application = application;
+            jfrEvent.details = details;
+            jfrEvent.commit();
+        }
+    }
+
+    public void setEventShipper(EventShipper eventShipper) {
+        this.eventShipper = eventShipper;
+    }
+
+    // Lets the detectors finish queued events, then closes alerts.log.
+    public void shutdown() {
+        if (!detectorPipeline.shutdown(5000)) {
+            System.err.println("Warning: Alert detectors did not drain within 5 seconds.");
+        }
+        close();
+    }
+
+    public synchronized void close() {
+        if (alertWriter != null) {
+            alertWriter.close();
+            alertWriter = null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,161 @@
+package com.firewall.core;
+
+import com.firewall.checkpoint.Checkpoint;
+import com.firewall.checkpoint.CheckpointParticipant;
+import com.firewall.checkpoint.CheckpointWriter;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps AlertEngine from turning an attack into an alert storm.
+//
+// 1. Cooldown / dedup: after an alert of a given (type, application) is emitted, identical
+//    alerts are suppressed for cooldownMs and counted. The next alert that gets through
+//    reports how many were suppressed.
+// 2. Global rate limit: a token bucket caps the total alert rate across all types. The
+//    caller is told when limiting starts and how many alerts were dropped once it ends, so
+//    it can write one summary alert for each instead of thousands of lines.
+//
+// Cooldowns are kept in the state checkpoint, so a restart doesn't re-raise every alert that
+// was cooling down; a key's saved cooldown is looked up the first time that alert fires again.
+public class AlertThrottle implements CheckpointParticipant {
+    public enum RateDecision { ADMIT, LIMIT_STARTED, DROPPED }
+
+    private final long cooldownMs;
+    private final int maxCooldownKeys;
+    private final ConcurrentHashMap<String, Cooldown> cooldowns = new ConcurrentHashMap<>();
+    private volatile Checkpoint.Section restored; // cooldowns saved by the last run, until they'd have expired
+
+    private final double alertsPerMs;
+    private final double burst;
+    private double tokens;
+    private long lastRefillMs = -1;
+    private boolean limiting;
+    private long droppedWhileLimiting;
+
+    public AlertThrottle(long cooldownMs, int maxCooldownKeys, double maxAlertsPerSecond, int burst) {
+        this.cooldownMs = cooldownMs;
+        this.maxCooldownKeys = maxCooldownKeys;
+        this.alertsPerMs = maxAlertsPerSecond / 1000.0;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    // Returns -1 if an identical alert is still cooling down (it is counted as suppressed),
+    // otherwise the number of identical alerts suppressed since the last one was emitted.
+    public int acquireCooldown(String type, String application, long nowMs) {
+        String key = type + '|' + application;
+        if (!cooldowns.containsKey(key) && cooldowns.size() >= maxCooldownKeys) {
+            evictExpired(nowMs);
+            if (cooldowns.size() >= maxCooldownKeys) {
+                return 0; // table full of live keys, leave it to the global rate limit
+            }
+        }
+        int[] result = new int[1];
+        cooldowns.compute(key, (k, cooldown) -> {
+            if (cooldown == null) {
+                cooldown = restoredCooldown(k, nowMs);
+            }
+            if (cooldown == null) {
+                cooldown = new Cooldown();
+            } else if (nowMs - cooldown.lastEmittedMs < cooldownMs) {
+                cooldown.suppressed++;
+                result[0] = -1;
+                return cooldown;
+            }
+            result[0] = cooldown.suppressed;
+            cooldown.suppressed = 0;
+            cooldown.lastEmittedMs = nowMs;
+            return cooldown;
+        });
+        return result[0];
+    }
+
+    public synchronized RateDecision acquireRate(long nowMs) {
+        if (lastRefillMs >= 0 && nowMs > lastRefillMs) {
+            tokens = Math.min(burst, tokens + (nowMs - lastRefillMs) * alertsPerMs);
+        }
+        lastRefillMs = Math.max(lastRefillMs, nowMs);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return RateDecision.ADMIT;
+        }
+        droppedWhileLimiting++;
+        if (!limiting) {
+            limiting = true;
+            return RateDecision.LIMIT_STARTED;
+        }
+        return RateDecision.DROPPED;
+    }
+
+    // Called after an alert has been admitted: if limiting was in effect, ends it and returns
+    // how many alerts it dropped (0 otherwise).
+    public synchronized long endRateLimiting() {
+        if (!limiting) {
+            return 0;
+        }
+        limiting = false;
+        long dropped = droppedWhileLimiting;
+        droppedWhileLimiting = 0;
+        return dropped;
+    }
+
+    public long getCooldownMs() {
+        return cooldownMs;
+    }
+
+    // The cooldown the last run saved for 'key', or null
+    private Cooldown restoredCooldown(String key, long nowMs) {
+        Checkpoint.Section saved = restored;
+        if (saved == null) {
+            return null;
+        }
+        if (nowMs - saved.getSavedAtMillis() >= cooldownMs) {
+            restored = null; // every saved cooldown has run out
+            return null;
+        }
+        ByteBuffer value = saved.get(key);
+        if (value == null || value.remaining() < 12) {
+            return null;
+        }
+        Cooldown cooldown = new Cooldown();
+        cooldown.lastEmittedMs = value.getLong(0);
+        cooldown.suppressed = value.getInt(8);
+        return cooldown;
+    }
+
+    @Override
+    public void saveState(CheckpointWriter.SectionWriter out) {
+        long[] lastEmitted = new long[1];
+        int[] suppressed = new int[1];
+        for (Map.Entry<String, Cooldown> entry : cooldowns.entrySet()) {
+            // Read under the key's lock so the two fields belong together
+            if (cooldowns.computeIfPresent(entry.getKey(), (k, cooldown) -> {
+                lastEmitted[0] = cooldown.lastEmittedMs;
+                suppressed[0] = cooldown.suppressed;
+                return cooldown;
+            }) != null) {
+                out.put(entry.getKey(), ByteBuffer.allocate(12).putLong(lastEmitted[0]).putInt(suppressed[0]).array());
+            }
+        }
+    }
+
+    @Override
+    public void restoreState(Checkpoint.Section saved) {
+        restored = saved;
+    }
+
+    private void evictExpired(long nowMs) {
+        // Suppressed counts of expired keys are lost, they're only informational
+        for (String key : cooldowns.keySet()) {
+            cooldowns.computeIfPresent(key,
+                    (k, cooldown) -> nowMs - cooldown.lastEmittedMs >= cooldownMs ? null : cooldown);
+        }
+    }
+
+    private static final class Cooldown {
+        long lastEmittedMs;
+        int suppressed;
+    }
+}
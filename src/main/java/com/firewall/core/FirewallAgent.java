@@ -1,13 +1,37 @@
 package com.firewall.core;
 
+import com.firewall.blocklist.Blocklist;
+import com.firewall.jfr.DecisionJfrEvent;
+import com.firewall.metrics.PipelineMetrics;
+import com.firewall.metrics.Stage;
 import com.firewall.model.AppPolicy;
 import com.firewall.model.NetworkRequest;
 import com.firewall.model.DecisionResult;
-
+import com.firewall.trace.TraceRecorder;
+
+// processRequest() may be called from any number of threads at once. Nothing on the way takes
+// a shared lock: policies are read from an immutable snapshot, counters are LongAdders, and the
+// activity log, trace recorder and alert detectors are fed through bounded queues. That also
+// keeps virtual threads from pinning their carrier on a monitor. Rate limits are checked with
+// a CAS on the app's own bucket (see RateLimiter). A global threat-intel blocklist, when one is
+// loaded, is checked before the app's policy and denies listed destinations outright.
+//
+// Under overload (see OverloadController) the activity log and the alert detectors only see a
+// sample of the decisions, and shed() answers a request from its app's overloadAction without
+// evaluating it. Statistics always count every verdict.
 public class FirewallAgent {
+    // Starts of the logged reasons for verdicts reached without the policy, for tools that
+    // only have the activity log (see PolicyEvaluator.isDecidedOutsidePolicy())
+    public static final String BLOCKLIST_REASON_PREFIX = "Destination is on the threat-intel blocklist";
+    public static final String SHED_REASON_PREFIX = "Shed under overload";
+
     private final PolicyManager policyManager;
     private final ActivityLogger activityLogger;
     private final AlertEngine alertEngine;
+    private final TrafficStatistics statistics = new TrafficStatistics();
+    private volatile TraceRecorder traceRecorder; // null unless a request trace is being recorded
+    private volatile OverloadController overloadController; // null unless decisions are queued behind one
+    private volatile Blocklist blocklist; // null unless a threat-intel blocklist is loaded; swapped whole
 
     public FirewallAgent(PolicyManager policyManager, ActivityLogger activityLogger, AlertEngine alertEngine) {
         this.policyManager = policyManager;
@@ -16,143 +40,126 @@ public class FirewallAgent {
     }
 
     public DecisionResult processRequest(NetworkRequest request) {
+        DecisionJfrEvent jfrEvent = new DecisionJfrEvent();
+        jfrEvent.begin();
         String appName = request.getApplicationName();
-        AppPolicy policy = policyManager.getPolicyForApp(appName);
+        long stageStart = PipelineMetrics.start();
+        Blocklist currentBlocklist = blocklist;
+        String listed = currentBlocklist == null ? null : currentBlocklist.match(request);
+        stageStart = PipelineMetrics.lap(Stage.BLOCKLIST, stageStart);
 
         String decision;
         String reason;
-
-        if (policy == null) {
-            // No specific policy for this app, apply global default action
-            AppPolicy.Action effectiveGlobalDefault = policyManager.getGlobalDefaultAction();
-            decision = (effectiveGlobalDefault == AppPolicy.Action.ALLOW) ? "ALLOW" : "DENY";
-            reason = "No policy defined for app '" + appName + "'. Applying global default: " + effectiveGlobalDefault;
+        String rule; // which part of the policy decided, for the JFR event
+        if (listed != null) {
+            decision = "DENY";
+            reason = BLOCKLIST_REASON_PREFIX + " (" + listed + ").";
+            rule = PolicyEvaluator.RULE_BLOCKLIST;
         } else {
-            // Policy exists for the app. Check specific rules.
-            // AppPolicy.isDomainAllowed() now returns true if allowedDomains list is empty.
-            // Same for protocol and IP.
-            // So, a request is allowed if:
-            // 1. Domain matches allowedDomains (or allowedDomains is empty) AND
-            // 2. Protocol matches allowedProtocols (or allowedProtocols is empty) AND
-            // 3. IP matches allowedIPs (or allowedIPs is empty)
-            // If all these conditions effectively pass (either by match or by list being empty),
-            // then the request is considered "potentially allowed by specific rules".
-            // However, if the app's defaultAction is DENY, it means "deny unless explicitly allowed".
-            // If the app's defaultAction is ALLOW, it means "allow unless explicitly denied by a specific rule"
-            // (we don't have explicit deny rules yet, only allow lists).
-
-            // Let's simplify: A request is ALLOWED if it matches *all* specified restrictions in the policy.
-            // If any specified restriction is violated, it's a DENY candidate.
-            // If it passes all specified restrictions, then it's ALLOWED.
-            // If no restrictions are violated (e.g., all lists are empty or all criteria match non-empty lists),
-            // the app's defaultAction doesn't strictly come into play unless interpreted as "allow if not explicitly denied".
-
-            // More straightforward interpretation for a rule-based allow-list system:
-            // To be ALLOWED, the request must satisfy ALL conditions for which there are rules.
-            // If a rule category (e.g. domains) is specified (list not empty), it MUST match.
-            // If a rule category is NOT specified (list is empty), it's considered a pass for that category.
-
-            boolean domainCheckPassed = policy.getAllowedDomainsList().isEmpty() || policy.isDomainAllowed(request.getTargetDomain());
-            boolean protocolCheckPassed = policy.getAllowedProtocolsList().isEmpty() || policy.isProtocolAllowed(request.getProtocol());
-            boolean ipCheckPassed = policy.getAllowedIPsList().isEmpty() || policy.isIpAllowed(request.getTargetIP());
-
-            if (domainCheckPassed && protocolCheckPassed && ipCheckPassed) {
-                // All specified criteria are met (or not specified, thus not restrictive)
-                decision = "ALLOW";
-                reason = "Request by '" + appName + "' to '" + request.getTargetDomain() + 
-                         "' via '" + request.getProtocol() + "' matches app policy.";
-                if (!policy.getAllowedDomainsList().isEmpty()) reason += " Domain rule matched.";
-                if (!policy.getAllowedProtocolsList().isEmpty()) reason += " Protocol rule matched.";
-                // Add IP if relevant
-            } else {
-                // At least one specified criterion was not met.
-                // The app's defaultAction will determine the outcome.
-                // If default is ALLOW, this state (failed specific check) should still be DENY.
-                // If default is DENY, this state is definitely DENY.
-                // So, if any specific rule check fails, it should be DENY regardless of defaultAction for an allow-list firewall.
-                decision = "DENY";
-                reason = "Request by '" + appName + "' to '" + request.getTargetDomain() +
-                         "' via '" + request.getProtocol() + "' violated app policy. ";
-                if (!domainCheckPassed && !policy.getAllowedDomainsList().isEmpty()) reason += "Domain not allowed. ";
-                if (!protocolCheckPassed && !policy.getAllowedProtocolsList().isEmpty()) reason += "Protocol not allowed. ";
-                if (!ipCheckPassed && !policy.getAllowedIPsList().isEmpty()) reason += "IP not allowed. ";
-                
-                // The role of defaultAction in an allow-list system:
-                // If a request matches NO specific allow rules, THEN the defaultAction applies.
-                // My logic above for ALLOW is: if it matches all *existing* specific rules for the app.
-                // What if an app has NO rules (all lists empty)?
-                // Then domainCheckPassed, protocolCheckPassed, ipCheckPassed are all true.
-                // The request would be ALLOWED by the logic above. THEN the app's defaultAction matters.
-                
-                // Let's refine the decision:
-                // 1. Check against specific rules.
-                // 2. If all specific rules pass (or no specific rules exist for a category),
-                //    AND the app's defaultAction is ALLOW, then ALLOW.
-                // 3. If any specific rule fails, then DENY.
-                // 4. If all specific rules pass (or no specific rules exist for a category),
-                //    BUT the app's defaultAction is DENY, then DENY (because it wasn't *explicitly*
-                //    allowed by matching specific criteria, it just didn't violate anything).
-                //    This is classic "default deny".
-
-                // Revised Logic:
-                boolean specificallyAllowed = true;
-                StringBuilder violationReason = new StringBuilder();
-
-                if (!policy.getAllowedDomainsList().isEmpty() && !policy.isDomainAllowed(request.getTargetDomain())) {
-                    specificallyAllowed = false;
-                    violationReason.append("Domain '").append(request.getTargetDomain()).append("' not in allowed list. ");
-                }
-                if (!policy.getAllowedProtocolsList().isEmpty() && !policy.isProtocolAllowed(request.getProtocol())) {
-                    specificallyAllowed = false;
-                    violationReason.append("Protocol '").append(request.getProtocol()).append("' not in allowed list. ");
-                }
-                if (!policy.getAllowedIPsList().isEmpty() && !policy.isIpAllowed(request.getTargetIP())) {
-                    specificallyAllowed = false;
-                    violationReason.append("IP '").append(request.getTargetIP()).append("' not in allowed list. ");
-                }
-
-                if (specificallyAllowed) {
-                    // It passed all specific restrictions (if any were defined).
-                    // If NO rules were defined at all for this app (all lists empty), it also falls here.
-                    // In this case, the app's defaultAction should decide.
-                    // Or, if it *matched* specific rules, it should be allowed regardless of defaultAction
-                    // IF the defaultAction is only for "unmatched" traffic.
-
-                    // Simpler: If it passes all defined filters, it's a candidate for ALLOW.
-                    // If any defined filter is violated, it's a DENY.
-                    // If no filters are defined for an app, app's defaultAction applies.
-
-                    boolean hasAnySpecificRules = !policy.getAllowedDomainsList().isEmpty() ||
-                                                  !policy.getAllowedProtocolsList().isEmpty() ||
-                                                  !policy.getAllowedIPsList().isEmpty();
-                    
-                    if (hasAnySpecificRules) { // If there are specific rules, and it passed them all.
-                        decision = "ALLOW";
-                        reason = "Request matches defined policy rules for " + appName + ".";
-                    } else { // No specific rules defined for this app (all allow lists are empty).
-                        decision = (policy.getDefaultAction() == AppPolicy.Action.ALLOW) ? "ALLOW" : "DENY";
-                        reason = "No specific rules for app '" + appName + "'. Applying app default: " + policy.getDefaultAction();
-                    }
-
-                } else { // Violated at least one specific rule
-                    decision = "DENY";
-                    reason = "Request by '" + appName + "' violated specific policy rules: " + violationReason.toString().trim();
+            PolicySnapshot snapshot = policyManager.getSnapshot(); // one consistent policy generation
+            AppPolicy policy = snapshot.getPolicy(appName);
+            stageStart = PipelineMetrics.lap(Stage.POLICY_LOOKUP, stageStart);
+
+            PolicyEvaluator.Result evaluation = PolicyEvaluator.evaluate(policy, snapshot.getGlobalDefaultAction(), request);
+            decision = evaluation.getDecision();
+            reason = evaluation.getReason();
+            rule = evaluation.getRule();
+            if ("ALLOW".equals(decision)) {
+                RateLimiter limiter = snapshot.getRateLimiter(appName);
+                int exceeded = limiter == null ? RateLimiter.NOT_LIMITED : limiter.tryAcquire(request, System.nanoTime());
+                if (exceeded != RateLimiter.NOT_LIMITED) {
+                    decision = "RATE_LIMITED";
+                    reason = "Allowed by policy but over the " + limiter.describe(exceeded) + ".";
+                    rule = PolicyEvaluator.RULE_RATE_LIMIT;
                 }
             }
         }
 
-        activityLogger.log(
-                "DENY".equals(decision) ? "WARN" : "INFO",
-                appName,
-                request.getTargetDomain(),
-                request.getTargetIP(),
-                request.getProtocol(),
-                request.getPort(),
-                decision,
-                reason
-        );
-
-        alertEngine.processEvent(request, decision, reason);
+        stageStart = PipelineMetrics.lap(Stage.RULE_EVALUATION, stageStart);
+
+        OverloadController overload = overloadController;
+        boolean sampled = overload == null || overload.sampleEvent();
+        if (sampled) {
+            activityLogger.log(
+                    "ALLOW".equals(decision) ? "INFO" : "WARN",
+                    appName,
+                    request.getTargetDomain(),
+                    request.getTargetIP(),
+                    request.getProtocol(),
+                    request.getPort(),
+                    decision,
+                    reason
+            );
+        }
+        PipelineMetrics.stop(Stage.ACTIVITY_LOG, stageStart);
+
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            recorder.record(request, decision, rule); // only queues the request
+        }
+
+        statistics.record(appName, decision);
+        if (sampled) {
+            stageStart = PipelineMetrics.start();
+            alertEngine.processEvent(request, decision, reason);
+            PipelineMetrics.stop(Stage.ALERT_DISPATCH, stageStart);
+        }
+
+        jfrEvent.end();
+        if (jfrEvent.shouldCommit()) { // false unless a recording enables the event and the threshold is met
+            jfrEvent.application = appName;
+            jfrEvent.verdict = decision;
+            jfrEvent.rule = rule;
+            jfrEvent.protocol = request.getProtocol();
+            jfrEvent.targetDomain = request.getTargetDomain();
+            jfrEvent.commit();
+        }
+        return new DecisionResult(decision, reason, request);
+    }
+
+    // The verdict for a request dropped by the overload controller: its app's overloadAction
+    // (DENY for apps without a policy), with no policy evaluation, rate limiting or alerting.
+    // Shed verdicts are logged only when sampled, like every other decision under overload,
+    // and never wait for the activity log: shedding runs on the capture thread, usually
+    // while the logger is backed up, so a full log queue drops the entry instead.
+    public DecisionResult shed(NetworkRequest request, String cause) {
+        String appName = request.getApplicationName();
+        AppPolicy policy = policyManager.getSnapshot().getPolicy(appName);
+        boolean failOpen = policy != null && policy.getOverloadAction() == AppPolicy.Action.ALLOW;
+        String decision = failOpen ? "ALLOW" : "DENY";
+        String reason = SHED_REASON_PREFIX + " (" + cause + "): "
+                + (failOpen ? "allowed unevaluated, app fails open." : "denied unevaluated, app fails closed.");
+        OverloadController overload = overloadController;
+        if (overload == null || overload.sampleEvent()) {
+            activityLogger.tryLog("WARN", appName, request.getTargetDomain(), request.getTargetIP(),
+                    request.getProtocol(), request.getPort(), decision, reason);
+        }
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            recorder.record(request, decision, PolicyEvaluator.RULE_OVERLOAD);
+        }
+        statistics.record(appName, decision);
         return new DecisionResult(decision, reason, request);
     }
+
+    public void setOverloadController(OverloadController overloadController) {
+        this.overloadController = overloadController;
+    }
+
+    // Takes effect from the next decision; null removes the blocklist stage
+    public void setBlocklist(Blocklist blocklist) {
+        this.blocklist = blocklist;
+    }
+
+    public Blocklist getBlocklist() {
+        return blocklist;
+    }
+
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    public TrafficStatistics getStatistics() {
+        return statistics;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,369 @@
+package com.firewall.core;
+
+import com.firewall.model.DecisionResult;
+import com.firewall.model.NetworkRequest;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+// Puts a bounded queue between the packet capture loop and the decisions, so a traffic spike
+// degrades predictably instead of growing latency until libpcap silently drops packets.
+//
+// submit() never blocks the capture thread; a worker thread makes the decisions. Requests
+// shed in submit() get their verdict right there, but the activity log entry is only offered
+// (see FirewallAgent.shed()) and the sink is called from a reporter thread, so neither a
+// backed-up logger nor a slow sink can stall capture. A watchdog
+// samples the queue depth and the decision latency (the longest wait for a verdict, including
+// the request at the head of the queue) every CHECK_INTERVAL_MS and sets the level:
+//   NORMAL    every decision is logged and seen by the alert detectors
+//   PRESSURE  only one decision in sampleEvery is logged, alerted on and passed to the sink
+//   SHEDDING  as PRESSURE, and the queue is held to an eighth of its capacity: requests beyond
+//             that, and queued requests older than the latency budget, are shed
+// A full queue sheds at any level. A shed request gets its app's overloadAction without being
+// evaluated: ALLOW for apps marked overloadAction=ALLOW (fail open), DENY for everything else
+// (fail closed). Levels rise at once and fall one step after CALM_CHECKS quiet checks in a
+// row; entering and leaving SHEDDING raises an alert.
+//
+// On by default for live capture; -Dfirewall.overload=off decides on the capture thread as
+// before. -Dfirewall.overload.queue=<requests>, -Dfirewall.overload.latencyMs=<ms> and
+// -Dfirewall.overload.sampleEvery=<n> tune it.
+public class OverloadController {
+    public static final String OVERLOAD_PROPERTY = "firewall.overload";
+    public static final String QUEUE_PROPERTY = "firewall.overload.queue";
+    public static final String LATENCY_PROPERTY = "firewall.overload.latencyMs";
+    public static final String SAMPLE_PROPERTY = "firewall.overload.sampleEvery";
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    private static final int DEFAULT_LATENCY_BUDGET_MS = 250;
+    private static final int DEFAULT_SAMPLE_EVERY = 10;
+    static final long CHECK_INTERVAL_MS = 50;
+    private static final int CALM_CHECKS = 20; // a second below the thresholds per step down
+
+    public enum Level { NORMAL, PRESSURE, SHEDDING }
+
+    private final FirewallAgent agent;
+    private final AlertEngine alertEngine; // null when overload isn't alerted on
+    private final ObjIntConsumer<DecisionResult> sink; // gets each (sampled) verdict and the source port
+    private final BlockingQueue<Pending> queue;
+    private final int queueCapacity;
+    private final long latencyBudgetNanos;
+    private final int sampleEvery;
+    private final Thread worker;
+    private final BlockingQueue<Report> reports; // verdicts shed by submit(), for the reporter
+    private final Thread reporter;
+    private final ScheduledExecutorService watchdog;
+
+    private final LongAccumulator worstLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong eventSequence = new AtomicLong();
+    private final AtomicLong sinkSequence = new AtomicLong();
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder shedFailOpen = new LongAdder();
+    private final LongAdder shedFailClosed = new LongAdder();
+    private final LongAdder shedQueueFull = new LongAdder();
+    private final LongAdder shedOverLimit = new LongAdder();
+    private final LongAdder shedExpired = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder sheddingEpisodes = new LongAdder();
+    private final LongAdder reportsDropped = new LongAdder();
+    private volatile Level level = Level.NORMAL;
+    private volatile long decisionLatencyNanos; // as of the last check
+    private volatile boolean closed;
+
+    // Watchdog thread only
+    private int calmChecks;
+    private long sheddingSinceMillis;
+    private long shedAtEpisodeStart;
+
+    public OverloadController(FirewallAgent agent, AlertEngine alertEngine, ObjIntConsumer<DecisionResult> sink,
+                              int queueCapacity, long latencyBudgetMs, int sampleEvery) {
+        this.agent = agent;
+        this.alertEngine = alertEngine;
+        this.sink = sink;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.latencyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs);
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.worker = new Thread(this::decideLoop, "decision-worker");
+        this.worker.setDaemon(true);
+        this.worker.start();
+        this.reports = new ArrayBlockingQueue<>(Math.max(64, queueCapacity / 4));
+        this.reporter = new Thread(this::reportLoop, "shed-reporter");
+        this.reporter.setDaemon(true);
+        this.reporter.start();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overload-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.scheduleAtFixedRate(this::check, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        agent.setOverloadController(this);
+    }
+
+    // Returns null when turned off with -Dfirewall.overload=off
+    public static OverloadController startIfEnabled(FirewallAgent agent, AlertEngine alertEngine,
+                                                    ObjIntConsumer<DecisionResult> sink) {
+        String enabled = System.getProperty(OVERLOAD_PROPERTY, "on").trim();
+        if (enabled.equalsIgnoreCase("off") || enabled.equalsIgnoreCase("false")) {
+            return null;
+        }
+        return new OverloadController(agent, alertEngine, sink,
+                intProperty(QUEUE_PROPERTY, DEFAULT_QUEUE_CAPACITY),
+                intProperty(LATENCY_PROPERTY, DEFAULT_LATENCY_BUDGET_MS),
+                intProperty(SAMPLE_PROPERTY, DEFAULT_SAMPLE_EVERY));
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        try {
+            return Math.max(1, Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)).trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + name + ", using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    // Called on the capture thread; never blocks. The verdict reaches the sink later, from the
+    // worker, or from the reporter if the request is shed.
+    public void submit(NetworkRequest request, int sourcePort) {
+        if (level == Level.SHEDDING && queue.size() >= queueCapacity / 8) {
+            shedOverLimit.increment();
+            deliverLater(shed(request, "decision queue over its shedding limit"), sourcePort);
+        } else if (closed || !queue.offer(new Pending(request, sourcePort, System.nanoTime()))) {
+            shedQueueFull.increment();
+            deliverLater(shed(request, "decision queue full"), sourcePort);
+        }
+    }
+
+    // Whether this decision should be logged and passed to the alert detectors. Always true
+    // at NORMAL; under pressure true for one call in sampleEvery, and the rest are counted.
+    // Sampling does make the detectors undercount, which is the point: they shed load too.
+    public boolean sampleEvent() {
+        if (level == Level.NORMAL || eventSequence.getAndIncrement() % sampleEvery == 0) {
+            return true;
+        }
+        sampledOut.increment();
+        return false;
+    }
+
+    private DecisionResult shed(NetworkRequest request, String cause) {
+        DecisionResult result = agent.shed(request, cause);
+        if ("ALLOW".equals(result.decision)) {
+            shedFailOpen.increment();
+        } else {
+            shedFailClosed.increment();
+        }
+        return result;
+    }
+
+    private void deliver(DecisionResult result, int sourcePort) {
+        if (sink != null && (level == Level.NORMAL || sinkSequence.getAndIncrement() % sampleEvery == 0)) {
+            sink.accept(result, sourcePort);
+        }
+    }
+
+    // The sink may be slow, so shed verdicts are handed to the reporter; if it is behind too,
+    // the verdict is counted and goes unreported (it is still in the statistics)
+    private void deliverLater(DecisionResult result, int sourcePort) {
+        if (sink != null && (level == Level.NORMAL || sinkSequence.getAndIncrement() % sampleEvery == 0)
+                && !reports.offer(new Report(result, sourcePort))) {
+            reportsDropped.increment();
+        }
+    }
+
+    private void reportLoop() {
+        while (!closed || !reports.isEmpty()) {
+            Report report;
+            try {
+                report = reports.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (report != null) {
+                sink.accept(report.result, report.sourcePort);
+            }
+        }
+    }
+
+    private void decideLoop() {
+        while (!closed || !queue.isEmpty()) {
+            Pending pending;
+            try {
+                pending = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (pending == null) {
+                continue;
+            }
+            DecisionResult result;
+            if (level == Level.SHEDDING && System.nanoTime() - pending.submittedNanos > latencyBudgetNanos) {
+                shedExpired.increment();
+                result = shed(pending.request, "waited longer than " + latencyBudgetNanos / 1_000_000 + " ms");
+            } else {
+                result = agent.processRequest(pending.request);
+                evaluated.increment();
+            }
+            worstLatencyNanos.accumulate(System.nanoTime() - pending.submittedNanos);
+            deliver(result, pending.sourcePort);
+        }
+    }
+
+    // Watchdog: one level up as soon as a threshold is crossed, one down after a quiet spell
+    private void check() {
+        int depth = queue.size();
+        Pending head = queue.peek();
+        long latency = Math.max(worstLatencyNanos.getThenReset(), head == null ? 0 : System.nanoTime() - head.submittedNanos);
+        decisionLatencyNanos = latency;
+
+        Level target;
+        if (depth >= queueCapacity / 4 * 3 || latency >= latencyBudgetNanos) {
+            target = Level.SHEDDING;
+        } else if (depth >= queueCapacity / 4 || latency >= latencyBudgetNanos / 2) {
+            target = Level.PRESSURE;
+        } else {
+            target = Level.NORMAL;
+        }
+        if (target.compareTo(level) > 0) {
+            calmChecks = 0;
+            changeLevel(target, depth, latency);
+        } else if (target.compareTo(level) < 0 && ++calmChecks >= CALM_CHECKS) {
+            calmChecks = 0;
+            changeLevel(Level.values()[level.ordinal() - 1], depth, latency);
+        } else if (target == level) {
+            calmChecks = 0;
+        }
+    }
+
+    private void changeLevel(Level next, int depth, long latencyNanos) {
+        Level previous = level;
+        level = next;
+        if (next == Level.SHEDDING) {
+            sheddingEpisodes.increment();
+            sheddingSinceMillis = System.currentTimeMillis();
+            shedAtEpisodeStart = getShedCount();
+            raiseAlert("HIGH", "OVERLOAD", "Decisions can't keep up (queue " + depth + "/" + queueCapacity
+                    + ", latency " + latencyNanos / 1_000_000 + " ms). Shedding requests: apps with"
+                    + " overloadAction=ALLOW fail open, all others fail closed.");
+        } else if (previous == Level.SHEDDING) {
+            raiseAlert("MEDIUM", "OVERLOAD_CLEARED", "Stopped shedding after "
+                    + (System.currentTimeMillis() - sheddingSinceMillis) / 1000.0 + " s; "
+                    + (getShedCount() - shedAtEpisodeStart) + " request(s) shed meanwhile.");
+        }
+    }
+
+    private void raiseAlert(String severity, String type, String details) {
+        if (alertEngine != null) {
+            alertEngine.raiseAlert(severity, type, "*", details);
+        } else {
+            System.err.println(type + ": " + details);
+        }
+    }
+
+    // Stops taking requests, decides the ones already queued and reports the shed ones (up to
+    // 5 seconds).
+    public void close() {
+        closed = true;
+        watchdog.shutdownNow();
+        long deadline = System.currentTimeMillis() + 5000;
+        try {
+            worker.join(5000);
+            reporter.join(Math.max(1, deadline - System.currentTimeMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive() || reporter.isAlive()) {
+            System.err.println("Warning: Decision queue did not drain within 5 seconds.");
+        }
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    // Longest time a request waited for its verdict in the last watchdog interval
+    public long getDecisionLatencyNanos() {
+        return decisionLatencyNanos;
+    }
+
+    public long getEvaluatedCount() {
+        return evaluated.sum();
+    }
+
+    public long getShedCount() {
+        return shedFailOpen.sum() + shedFailClosed.sum();
+    }
+
+    public long getShedFailOpenCount() {
+        return shedFailOpen.sum();
+    }
+
+    public long getShedFailClosedCount() {
+        return shedFailClosed.sum();
+    }
+
+    // Shed because the queue was full
+    public long getShedQueueFullCount() {
+        return shedQueueFull.sum();
+    }
+
+    // Shed on arrival while SHEDDING held the queue short
+    public long getShedOverLimitCount() {
+        return shedOverLimit.sum();
+    }
+
+    // Shed after waiting in the queue past the latency budget
+    public long getShedExpiredCount() {
+        return shedExpired.sum();
+    }
+
+    // Decisions that were neither logged nor alerted on because of sampling
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    public long getSheddingEpisodes() {
+        return sheddingEpisodes.sum();
+    }
+
+    // Shed verdicts the sink never saw because the reporter was behind
+    public long getReportsDroppedCount() {
+        return reportsDropped.sum();
+    }
+
+    private static final class Pending {
+        final NetworkRequest request;
+        final int sourcePort;
+        final long submittedNanos;
+
+        Pending(NetworkRequest request, int sourcePort, long submittedNanos) {
+            this.request = request;
+            this.sourcePort = sourcePort;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    private static final class Report {
+        final DecisionResult result;
+        final int sourcePort;
+
+        Report(DecisionResult result, int sourcePort) {
+            this.result = result;
+            this.sourcePort = sourcePort;
+        }
+    }
+}
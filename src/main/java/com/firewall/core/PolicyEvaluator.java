@@ -0,0 +1,123 @@
+package com.firewall.core;
+
+import com.firewall.model.AppPolicy;
+import com.firewall.model.NetworkRequest;
+import com.firewall.model.TimeSchedule;
+
+// The allow/deny decision for a request, with no logging, statistics or alerting, so it can
+// run on any thread against any PolicySnapshot (FirewallAgent on the live path, the what-if
+// analysis against a candidate policy file).
+//
+// A request is allowed when it satisfies every allow-list its app's policy defines (an empty
+// list does not restrict) and denied as soon as one is violated. Apps without a policy get the
+// global default action. An app's own defaultAction is not consulted: a policy with no lists
+// at all allows everything. A request that passes the lists is still denied if its timestamp
+// falls outside the app's allowedTimes or inside its deniedTimes.
+public final class PolicyEvaluator {
+    public static final String RULE_GLOBAL_DEFAULT = "global-default";
+    public static final String RULE_POLICY_MATCH = "policy-match";
+    public static final String RULE_POLICY_VIOLATION = "policy-violation";
+    public static final String RULE_TIME_WINDOW = "time-window";
+    // Not produced here: FirewallAgent turns an ALLOW into RATE_LIMITED when the app's limiter says so
+    public static final String RULE_RATE_LIMIT = "rate-limit";
+    // Not produced here either: a request shed under overload gets its app's overloadAction unevaluated
+    public static final String RULE_OVERLOAD = "overload";
+    // Nor this one: FirewallAgent denies destinations on the threat-intel blocklist before evaluating
+    public static final String RULE_BLOCKLIST = "blocklist";
+
+    // Verdicts that FirewallAgent reaches without evaluating the policy (RULE_OVERLOAD and
+    // RULE_BLOCKLIST): re-running evaluate() can't reproduce them, so what-if and replay skip them.
+    public static boolean isDecidedOutsidePolicy(String rule) {
+        return RULE_OVERLOAD.equals(rule) || RULE_BLOCKLIST.equals(rule);
+    }
+
+    private PolicyEvaluator() {
+    }
+
+    public static Result evaluate(PolicySnapshot snapshot, NetworkRequest request) {
+        return evaluate(snapshot.getPolicy(request.getApplicationName()), snapshot.getGlobalDefaultAction(), request);
+    }
+
+    // 'policy' is the request's app policy, or null if it has none.
+    public static Result evaluate(AppPolicy policy, AppPolicy.Action globalDefaultAction, NetworkRequest request) {
+        if (policy == null) {
+            return new Result(globalDefaultAction == AppPolicy.Action.ALLOW ? "ALLOW" : "DENY",
+                    RULE_GLOBAL_DEFAULT, null, globalDefaultAction, request);
+        }
+        boolean allowed = policy.isDomainAllowed(request.getTargetDomain())
+                && policy.isProtocolAllowed(request.getProtocol())
+                && policy.isIpAllowed(request.getTargetIP());
+        if (!allowed) {
+            return new Result("DENY", RULE_POLICY_VIOLATION, policy, globalDefaultAction, request);
+        }
+        TimeSchedule schedule = policy.getSchedule();
+        if (schedule != null && schedule.isBlockedAt(request.getTimestamp())) {
+            return new Result("DENY", RULE_TIME_WINDOW, policy, globalDefaultAction, request);
+        }
+        return new Result("ALLOW", RULE_POLICY_MATCH, policy, globalDefaultAction, request);
+    }
+
+    public static final class Result {
+        private final String decision;
+        private final String rule;
+        private final AppPolicy policy;
+        private final AppPolicy.Action globalDefaultAction;
+        private final NetworkRequest request;
+
+        Result(String decision, String rule, AppPolicy policy, AppPolicy.Action globalDefaultAction,
+               NetworkRequest request) {
+            this.decision = decision;
+            this.rule = rule;
+            this.policy = policy;
+            this.globalDefaultAction = globalDefaultAction;
+            this.request = request;
+        }
+
+        // "ALLOW" or "DENY" (rate limiting happens after evaluation)
+        public String getDecision() {
+            return decision;
+        }
+
+        // Which part of the policy decided, one of the RULE_ constants
+        public String getRule() {
+            return rule;
+        }
+
+        // Human-readable explanation for the logs. Built on demand, bulk evaluation never needs it.
+        public String getReason() {
+            String appName = request.getApplicationName();
+            switch (rule) {
+                case RULE_GLOBAL_DEFAULT:
+                    return "No policy defined for app '" + appName + "'. Applying global default: " + globalDefaultAction;
+                case RULE_POLICY_MATCH: {
+                    String reason = "Request by '" + appName + "' to '" + request.getTargetDomain() +
+                            "' via '" + request.getProtocol() + "' matches app policy.";
+                    if (policy.hasAllowedDomains()) reason += " Domain rule matched.";
+                    if (policy.hasAllowedProtocols()) reason += " Protocol rule matched.";
+                    return reason;
+                }
+                case RULE_TIME_WINDOW: {
+                    TimeSchedule schedule = policy.getSchedule();
+                    return schedule.stateAt(request.getTimestamp()) == TimeSchedule.INSIDE_DENIED
+                            ? "Request by '" + appName + "' is inside its denied hours ("
+                                    + TimeSchedule.join(schedule.getDeniedWindows()) + ")."
+                            : "Request by '" + appName + "' is outside its allowed hours ("
+                                    + TimeSchedule.join(schedule.getAllowedWindows()) + ").";
+                }
+                default: {
+                    StringBuilder violationReason = new StringBuilder();
+                    if (!policy.isDomainAllowed(request.getTargetDomain())) {
+                        violationReason.append("Domain '").append(request.getTargetDomain()).append("' not in allowed list. ");
+                    }
+                    if (!policy.isProtocolAllowed(request.getProtocol())) {
+                        violationReason.append("Protocol '").append(request.getProtocol()).append("' not in allowed list. ");
+                    }
+                    if (!policy.isIpAllowed(request.getTargetIP())) {
+                        violationReason.append("IP '").append(request.getTargetIP()).append("' not in allowed list. ");
+                    }
+                    return "Request by '" + appName + "' violated specific policy rules: " + violationReason.toString().trim();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.firewall.core;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The policy file as written: its "# Version:" comment and its app blocks in file order,
+// before anything is turned into an AppPolicy. PolicyManager builds policies from it (a later
+// block for the same app replaces an earlier one); the policy analyzer also looks at what the
+// loader throws away, such as repeated keys and shadowed blocks.
+public final class PolicyFile {
+    private static final String VERSION_PREFIX = "# Version:";
+
+    private final String version;
+    private final List<Block> blocks;
+    private final List<String> warnings;
+
+    private PolicyFile(String version, List<Block> blocks, List<String> warnings) {
+        this.version = version;
+        this.blocks = Collections.unmodifiableList(blocks);
+        this.warnings = Collections.unmodifiableList(warnings);
+    }
+
+    public static PolicyFile read(String path) throws IOException {
+        String version = PolicySnapshot.UNVERSIONED;
+        List<Block> blocks = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNumber = 0;
+            Block current = null;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.regionMatches(true, 0, VERSION_PREFIX, 0, VERSION_PREFIX.length())) {
+                    version = line.substring(VERSION_PREFIX.length()).trim();
+                    continue;
+                }
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                if (line.equals("---")) {
+                    // An app with no attributes yet keeps collecting them after the separator
+                    if (current != null && !current.attributes.isEmpty()) {
+                        current = null;
+                    }
+                    continue;
+                }
+
+                if (line.startsWith("appName=")) {
+                    current = new Block(line.substring("appName=".length()).trim(), lineNumber);
+                    blocks.add(current);
+                } else if (current != null) {
+                    String[] parts = line.split("=", 2);
+                    if (parts.length == 2) {
+                        String key = parts[0].trim();
+                        if (current.attributes.containsKey(key)) {
+                            current.repeatedKeys.add(key + " (line " + lineNumber + ")");
+                        }
+                        current.attributes.put(key, parts[1].trim());
+                    } else {
+                        warnings.add("Malformed policy line for app '" + current.appName + "': " + line);
+                    }
+                } else {
+                    warnings.add("Policy line found outside of an app block: " + line);
+                }
+            }
+        }
+        return new PolicyFile(version, blocks, warnings);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    // Every appName block in file order, including ones with no attributes (which the loader skips)
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    // Lines the loader ignored, worded for "Warning: " + warning
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    public static final class Block {
+        private final String appName;
+        private final int line;
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+        private final List<String> repeatedKeys = new ArrayList<>();
+
+        Block(String appName, int line) {
+            this.appName = appName;
+            this.line = line;
+        }
+
+        public String getAppName() {
+            return appName;
+        }
+
+        // Line of the appName= entry
+        public int getLine() {
+            return line;
+        }
+
+        // key=value attributes in file order; for a repeated key, the last value
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        // Keys set more than once in the block, with the line of each repeat
+        public List<String> getRepeatedKeys() {
+            return repeatedKeys;
+        }
+    }
+}
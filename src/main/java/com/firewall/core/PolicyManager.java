@@ -1,75 +1,133 @@
 package com.firewall.core;
 
+import com.firewall.jfr.PolicyLoadJfrEvent;
 import com.firewall.model.AppPolicy;
+import com.firewall.model.RateLimit;
+import com.firewall.model.TimeSchedule;
+import com.firewall.model.TimeWindow;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class PolicyManager {
-    private final Map<String, AppPolicy> policies = new HashMap<>();
+    // Re-check schedules at least this often, in case the wall clock is changed under the timer
+    private static final long MAX_SCHEDULE_DELAY_MILLIS = 60_000;
+
     private final String policyFilePath;
-    private AppPolicy.Action globalDefaultAction = AppPolicy.Action.DENY;
+    // Replaced as a whole on reload, so a decision always sees one consistent policy set
+    private volatile PolicySnapshot snapshot;
+    private long loadCount;
+    // Moves time-window schedules to their next segment; started with the first policy that has one
+    private ScheduledExecutorService scheduleTimer;
+    private ScheduledFuture<?> nextScheduleTick;
 
     public PolicyManager(String policyFilePath) {
         this.policyFilePath = policyFilePath;
-        loadPolicies(); // Renamed from loadPoliciesRefined for simplicity, this is the active one
-    }
-
-    private void loadPolicies() { // This is the refined version
-        policies.clear();
-        try (BufferedReader reader = new BufferedReader(new FileReader(policyFilePath))) {
-            String line;
-            Map<String, String> currentAppAttributes = new HashMap<>();
-            String currentAppName = null;
-
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) continue;
-
-                if (line.equals("---")) {
-                    if (currentAppName != null && !currentAppAttributes.isEmpty()) {
-                        createAndStorePolicy(currentAppName, currentAppAttributes);
-                        currentAppName = null;
-                        currentAppAttributes.clear();
-                    }
-                    continue;
-                }
+        this.snapshot = loadPolicies(AppPolicy.Action.DENY); // Renamed from loadPoliciesRefined for simplicity, this is the active one
+        armScheduleTimer();
+    }
 
-                if (line.startsWith("appName=")) {
-                    if (currentAppName != null && !currentAppAttributes.isEmpty()) {
-                        createAndStorePolicy(currentAppName, currentAppAttributes); // Process previous before starting new
-                        currentAppAttributes.clear();
-                    }
-                    currentAppName = line.substring("appName=".length()).trim();
-                } else if (currentAppName != null) {
-                    String[] parts = line.split("=", 2);
-                    if (parts.length == 2) {
-                        currentAppAttributes.put(parts[0].trim(), parts[1].trim());
-                    } else {
-                        System.err.println("Warning: Malformed policy line for app '" + currentAppName + "': " + line);
-                    }
-                } else if (!line.isEmpty()){
-                    System.err.println("Warning: Policy line found outside of an app block: " + line);
-                }
-            }
-            // Process the last app block if the file doesn't end with '---'
-            if (currentAppName != null && !currentAppAttributes.isEmpty()) {
-                createAndStorePolicy(currentAppName, currentAppAttributes);
+    // Re-reads the policy file and swaps it in. Decisions already in flight finish with the
+    // previous snapshot.
+    public synchronized PolicySnapshot reload() {
+        snapshot = loadPolicies(snapshot.getGlobalDefaultAction());
+        armScheduleTimer();
+        return snapshot;
+    }
+
+    // Advances every schedule in the current snapshot to now and sets the timer for the
+    // earliest next transition, so the decision path only compares against the current segment.
+    private synchronized void armScheduleTimer() {
+        long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+        for (AppPolicy policy : snapshot.getPolicies().values()) {
+            TimeSchedule schedule = policy.getSchedule();
+            if (schedule != null) {
+                next = Math.min(next, schedule.advance(now));
             }
+        }
+        if (nextScheduleTick != null) {
+            nextScheduleTick.cancel(false);
+            nextScheduleTick = null;
+        }
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+        if (scheduleTimer == null) {
+            scheduleTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "policy-schedule");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long delay = Math.max(0, Math.min(next - now, MAX_SCHEDULE_DELAY_MILLIS));
+        nextScheduleTick = scheduleTimer.schedule(this::armScheduleTimer, delay, TimeUnit.MILLISECONDS);
+    }
 
+    private synchronized PolicySnapshot loadPolicies(AppPolicy.Action globalDefaultAction) { // This is the refined version
+        PolicyLoadJfrEvent jfrEvent = new PolicyLoadJfrEvent();
+        jfrEvent.begin();
+        Map<String, AppPolicy> policies = new HashMap<>();
+        String version = PolicySnapshot.UNVERSIONED;
+        try {
+            PolicyFile file = PolicyFile.read(policyFilePath);
+            version = file.getVersion();
+            for (String warning : file.getWarnings()) {
+                System.err.println("Warning: " + warning);
+            }
+            for (PolicyFile.Block block : file.getBlocks()) {
+                if (!block.getAttributes().isEmpty()) { // a later block for the same app replaces this one
+                    createAndStorePolicy(policies, block.getAppName(), block.getAttributes());
+                }
+            }
         } catch (IOException e) {
             System.err.println("CRITICAL: Error loading policies from " + policyFilePath + ": " + e.getMessage());
             // Depending on requirements, might throw a RuntimeException to halt startup
         }
-        System.out.println("Policies loaded: " + policies.size());
+        loadCount++;
+        System.out.println("Policies loaded: " + policies.size() + " (version " + version + ")");
+        PolicySnapshot loaded = new PolicySnapshot(policies, globalDefaultAction, version, loadCount, System.currentTimeMillis(),
+                snapshot);
+        jfrEvent.end();
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.policyFile = policyFilePath;
+            jfrEvent.version = version;
+            jfrEvent.generation = loadCount;
+            jfrEvent.reload = loadCount > 1;
+            jfrEvent.applications = policies.size();
+            for (AppPolicy policy : policies.values()) {
+                jfrEvent.domainRules += policy.getAllowedDomainsList().size();
+                jfrEvent.protocolRules += policy.getAllowedProtocolsList().size();
+                jfrEvent.ipRules += policy.getAllowedIPsList().size();
+            }
+            jfrEvent.commit();
+        }
+        return loaded;
+    }
+
+    private void createAndStorePolicy(Map<String, AppPolicy> policies, String appName, Map<String, String> attributes) {
+        AppPolicy policy = buildPolicy(appName, attributes);
+        policies.put(appName, policy);
+        System.out.println("Loaded policy for: " + appName + " -> " + policy.toString());
+    }
+
+    // Builds an app policy from the key=value attributes of its block in the policy file.
+    public static AppPolicy buildPolicy(String appName, Map<String, String> attributes) {
+        return buildPolicy(appName, attributes, true);
     }
 
-    private void createAndStorePolicy(String appName, Map<String, String> attributes) {
+    // With 'minimize' false the allow-lists are kept entry for entry as written, which only the
+    // policy analyzer wants, to compare against.
+    public static AppPolicy buildPolicy(String appName, Map<String, String> attributes, boolean minimize) {
         AppPolicy.Action defaultAction;
         try {
             defaultAction = AppPolicy.Action.valueOf(
@@ -80,56 +138,105 @@ public class PolicyManager {
             defaultAction = AppPolicy.Action.DENY;
         }
 
-        AppPolicy policy = new AppPolicy(appName, defaultAction);
+        AppPolicy policy = new AppPolicy(appName, defaultAction, attributes);
 
-        if (attributes.containsKey("allowedDomains")) {
-            String domainsStr = attributes.get("allowedDomains");
-            if (domainsStr != null && !domainsStr.trim().isEmpty()) {
-                policy.addAllowedDomains(
-                    Arrays.stream(domainsStr.split(","))
-                          .map(String::trim) // Trim each domain
-                          .filter(s -> !s.isEmpty()) // Filter out empty strings if any (e.g. "domain1,,domain2")
-                          .collect(Collectors.toList())
-                );
-            }
+        List<String> domains = splitList(attributes.get("allowedDomains"));
+        List<String> protocols = splitList(attributes.get("allowedProtocols"));
+        List<String> ips = splitList(attributes.get("allowedIPs"));
+        if (minimize) { // same decisions, fewer entries to check (see PolicyMinimizer)
+            domains = PolicyMinimizer.minimizeDomains(domains, null);
+            protocols = PolicyMinimizer.minimizeProtocols(protocols, null);
+            ips = PolicyMinimizer.minimizeIPs(ips, null);
         }
-        if (attributes.containsKey("allowedProtocols")) {
-            String protocolsStr = attributes.get("allowedProtocols");
-            if(protocolsStr != null && !protocolsStr.trim().isEmpty()){
-                policy.addAllowedProtocols(
-                    Arrays.stream(protocolsStr.split(","))
-                          .map(String::trim)
-                          .map(String::toUpperCase)
-                          .filter(s -> !s.isEmpty())
-                          .collect(Collectors.toList())
-                );
-            }
+        policy.addAllowedDomains(domains);
+        policy.addAllowedProtocols(protocols);
+        policy.addAllowedIPs(ips);
+        policy.setRateLimits(
+                parseRateLimit(appName, attributes, "rateLimit"),
+                parseRateLimit(appName, attributes, "byteRateLimit"),
+                parseRateLimit(appName, attributes, "destinationRateLimit"),
+                parseRateLimit(appName, attributes, "destinationByteRateLimit"));
+        List<TimeWindow> allowedTimes = parseTimeWindows(appName, attributes, "allowedTimes");
+        List<TimeWindow> deniedTimes = parseTimeWindows(appName, attributes, "deniedTimes");
+        if (allowedTimes != null || deniedTimes != null) {
+            policy.setSchedule(new TimeSchedule(allowedTimes, deniedTimes));
         }
-        if (attributes.containsKey("allowedIPs")) {
-            String ipsStr = attributes.get("allowedIPs");
-            if(ipsStr != null && !ipsStr.trim().isEmpty()){
-                policy.addAllowedIPs(
-                    Arrays.stream(ipsStr.split(","))
-                          .map(String::trim)
-                          .filter(s -> !s.isEmpty())
-                          .collect(Collectors.toList())
-                );
+        String overloadAction = attributes.get("overloadAction");
+        if (overloadAction != null && !overloadAction.trim().isEmpty()) {
+            try {
+                policy.setOverloadAction(AppPolicy.Action.valueOf(overloadAction.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Warning: Invalid overloadAction value for app '" + appName + "'. Using DENY.");
             }
         }
-        policies.put(appName, policy);
-        System.out.println("Loaded policy for: " + appName + " -> " + policy.toString());
+        return policy;
+    }
+
+    // "a, b,,c" -> [a, b, c]; null or blank -> []
+    private static List<String> splitList(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty()) // e.g. "domain1,,domain2"
+                .collect(Collectors.toList());
+    }
+
+    // e.g. allowedTimes=01:00-04:00 or deniedTimes=Mon-Fri 09:00-17:00; a bad value leaves that key off
+    private static List<TimeWindow> parseTimeWindows(String appName, Map<String, String> attributes, String key) {
+        String value = attributes.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return TimeWindow.parseList(value);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: Invalid " + key + " for app '" + appName + "' (" + e.getMessage()
+                    + "). No time restriction applied.");
+            return null;
+        }
+    }
+
+    // e.g. rateLimit=200/s,burst=400 or byteRateLimit=5M/s; a bad value leaves that limit off
+    private static RateLimit parseRateLimit(String appName, Map<String, String> attributes, String key) {
+        String value = attributes.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return RateLimit.parse(value);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: Invalid " + key + " for app '" + appName + "' (" + e.getMessage()
+                    + "). No limit applied.");
+            return null;
+        }
+    }
+
+    // Swaps in a policy set that came from elsewhere (the central policy server) instead of
+    // the local file. Like reload(), decisions in flight finish with the previous snapshot.
+    public synchronized PolicySnapshot install(Map<String, AppPolicy> policies, String version) {
+        loadCount++;
+        snapshot = new PolicySnapshot(new HashMap<>(policies), snapshot.getGlobalDefaultAction(), version, loadCount,
+                System.currentTimeMillis(), snapshot);
+        armScheduleTimer();
+        return snapshot;
     }
 
     public AppPolicy getPolicyForApp(String appName) {
-        return policies.get(appName);
+        return snapshot.getPolicy(appName);
+    }
+
+    public PolicySnapshot getSnapshot() {
+        return snapshot;
     }
 
     public AppPolicy.Action getGlobalDefaultAction() {
-        return globalDefaultAction;
+        return snapshot.getGlobalDefaultAction();
     }
 
-    public void setGlobalDefaultAction(AppPolicy.Action action) {
-        this.globalDefaultAction = action;
+    public synchronized void setGlobalDefaultAction(AppPolicy.Action action) {
+        this.snapshot = snapshot.withGlobalDefaultAction(action);
     }
     
     public static void main(String[] args) {
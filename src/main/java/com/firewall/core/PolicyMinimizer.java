@@ -0,0 +1,82 @@
+package com.firewall.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Reduces an app's allow-lists to the entries that can change a decision, in a canonical
+// (sorted) order. PolicyManager.buildPolicy() runs every list through here, so AppPolicy never
+// holds duplicates or explicit domains that a wildcard already matches; PolicyAnalyzer uses
+// the same functions to report what was dropped and to prove the decisions didn't change.
+//
+// Only entries that are provably redundant are dropped. In particular a list is never made
+// empty, since an empty list doesn't restrict at all.
+public final class PolicyMinimizer {
+    private PolicyMinimizer() {
+    }
+
+    // Trims, drops duplicates and any entry matched by another entry's wildcard: "*.example.com"
+    // matches "a.example.com" and "*.a.example.com", but not "example.com" itself.
+    // 'findings' (may be null) gets one line per dropped entry.
+    public static List<String> minimizeDomains(List<String> domains, List<String> findings) {
+        Map<String, Integer> counts = countTrimmed(domains, false, findings);
+        List<String> suffixes = new ArrayList<>();
+        for (String domain : counts.keySet()) {
+            if (domain.startsWith("*.")) {
+                suffixes.add(domain.substring(1));
+            }
+        }
+        TreeSet<String> kept = new TreeSet<>();
+        for (String domain : counts.keySet()) {
+            String coveredBy = coveringWildcard(domain, suffixes);
+            if (coveredBy == null) {
+                kept.add(domain);
+            } else if (findings != null) {
+                findings.add("'" + domain + "' is already matched by '" + coveredBy + "'");
+            }
+        }
+        return new ArrayList<>(kept);
+    }
+
+    // Protocols are compared upper-cased, as AppPolicy does
+    public static List<String> minimizeProtocols(List<String> protocols, List<String> findings) {
+        return new ArrayList<>(new TreeSet<>(countTrimmed(protocols, true, findings).keySet()));
+    }
+
+    public static List<String> minimizeIPs(List<String> ips, List<String> findings) {
+        return new ArrayList<>(new TreeSet<>(countTrimmed(ips, false, findings).keySet()));
+    }
+
+    // The wildcard (other than 'domain' itself) that matches 'domain', or null
+    private static String coveringWildcard(String domain, List<String> suffixes) {
+        for (String suffix : suffixes) {
+            if (domain.endsWith(suffix) && domain.length() > suffix.length() && !domain.equals("*" + suffix)) {
+                return "*" + suffix;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Integer> countTrimmed(List<String> entries, boolean upperCase, List<String> findings) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String entry : entries) {
+            String trimmed = entry.trim();
+            if (upperCase) {
+                trimmed = trimmed.toUpperCase(); // exactly as AppPolicy does
+            }
+            if (!trimmed.isEmpty()) {
+                counts.merge(trimmed, 1, Integer::sum);
+            }
+        }
+        if (findings != null) {
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                if (count.getValue() > 1) {
+                    findings.add("'" + count.getKey() + "' is listed " + count.getValue() + " times");
+                }
+            }
+        }
+        return counts;
+    }
+}
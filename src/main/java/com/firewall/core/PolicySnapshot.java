@@ -0,0 +1,83 @@
+package com.firewall.core;
+
+import com.firewall.model.AppPolicy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// One immutable generation of the loaded policies. PolicyManager swaps in a new snapshot on
+// reload, so readers never see a half-loaded policy set and need no locking.
+public final class PolicySnapshot {
+    public static final String UNVERSIONED = "unversioned";
+
+    private final Map<String, AppPolicy> policies;
+    private final Map<String, RateLimiter> rateLimiters; // only apps with rate limits
+    private final AppPolicy.Action globalDefaultAction;
+    private final String version;     // from the "# Version:" comment in the policy file
+    private final long generation;    // 1 for the first load, +1 per reload
+    private final long loadedAtMillis;
+
+    // 'previous' is the snapshot being replaced, or null. Apps whose limits are unchanged keep
+    // its rate limiter, so a reload doesn't hand every limited app a fresh burst.
+    PolicySnapshot(Map<String, AppPolicy> policies, AppPolicy.Action globalDefaultAction,
+                   String version, long generation, long loadedAtMillis, PolicySnapshot previous) {
+        this(policies, globalDefaultAction, version, generation, loadedAtMillis,
+                buildRateLimiters(policies, previous));
+    }
+
+    private PolicySnapshot(Map<String, AppPolicy> policies, AppPolicy.Action globalDefaultAction, String version,
+                           long generation, long loadedAtMillis, Map<String, RateLimiter> rateLimiters) {
+        this.policies = Collections.unmodifiableMap(policies);
+        this.globalDefaultAction = globalDefaultAction;
+        this.version = version;
+        this.generation = generation;
+        this.loadedAtMillis = loadedAtMillis;
+        this.rateLimiters = rateLimiters;
+    }
+
+    private static Map<String, RateLimiter> buildRateLimiters(Map<String, AppPolicy> policies, PolicySnapshot previous) {
+        Map<String, RateLimiter> limiters = new HashMap<>();
+        for (Map.Entry<String, AppPolicy> entry : policies.entrySet()) {
+            AppPolicy policy = entry.getValue();
+            if (!policy.hasRateLimits()) continue;
+            RateLimiter existing = previous == null ? null : previous.rateLimiters.get(entry.getKey());
+            limiters.put(entry.getKey(), existing != null && existing.hasLimitsOf(policy)
+                    ? existing : RateLimiter.forPolicy(policy));
+        }
+        return limiters.isEmpty() ? Collections.emptyMap() : limiters;
+    }
+
+    PolicySnapshot withGlobalDefaultAction(AppPolicy.Action action) {
+        return new PolicySnapshot(policies, action, version, generation, loadedAtMillis, rateLimiters);
+    }
+
+    public AppPolicy getPolicy(String appName) {
+        return policies.get(appName);
+    }
+
+    // The app's rate limiter, or null if its policy sets no limits
+    public RateLimiter getRateLimiter(String appName) {
+        return rateLimiters.isEmpty() ? null : rateLimiters.get(appName);
+    }
+
+    public Map<String, AppPolicy> getPolicies() {
+        return policies;
+    }
+
+    public AppPolicy.Action getGlobalDefaultAction() {
+        return globalDefaultAction;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+}
@@ -0,0 +1,138 @@
+package com.firewall.core;
+
+import com.firewall.model.AppPolicy;
+import com.firewall.model.NetworkRequest;
+import com.firewall.model.RateLimit;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Enforces one app's rate limits on traffic its policy has already allowed.
+//
+// Each bucket is a GCRA cell: a single long holding the "theoretical arrival time" at which
+// the bucket will be empty again. Admitting a request of cost c pushes it forward by
+// c / rate seconds and is refused if that would put it more than burst / rate seconds ahead
+// of now. Checking a bucket is one read and one CAS, with no lock and no allocation, and
+// there is no refill thread: time does the refilling.
+//
+// All of an app's cells live in one AtomicLongArray: the app-wide request and byte buckets,
+// then DESTINATION_SLOTS pairs for per-destination limits, picked by hashing the domain (or
+// the IP when there is none). Destinations that hash to the same slot share a bucket, which
+// keeps memory fixed at the cost of occasionally limiting a destination early.
+//
+// A byte bucket can never admit a request bigger than its burst, so the burst should be at
+// least the largest packet. Requests of unknown size (0 bytes) skip the byte limits.
+public final class RateLimiter {
+    public static final int NOT_LIMITED = -1;
+    public static final int APP_REQUESTS = 0;
+    public static final int APP_BYTES = 1;
+    public static final int DESTINATION_REQUESTS = 2;
+    public static final int DESTINATION_BYTES = 3;
+    static final int DESTINATION_SLOTS = 1024;
+
+    private final RateLimit[] limits = new RateLimit[4]; // by APP_REQUESTS .. DESTINATION_BYTES
+    private final double[] nanosPerUnit = new double[4];
+    private final long[] windowNanos = new long[4];
+    private final AtomicLongArray cells;
+    private final long originNanos = System.nanoTime(); // cells hold times relative to this, starting at 0
+
+    private RateLimiter(AppPolicy policy) {
+        limits[APP_REQUESTS] = policy.getRequestLimit();
+        limits[APP_BYTES] = policy.getByteLimit();
+        limits[DESTINATION_REQUESTS] = policy.getDestinationRequestLimit();
+        limits[DESTINATION_BYTES] = policy.getDestinationByteLimit();
+        for (int kind = 0; kind < limits.length; kind++) {
+            if (limits[kind] != null) {
+                nanosPerUnit[kind] = 1e9 / limits[kind].getPerSecond();
+                windowNanos[kind] = (long) (limits[kind].getBurst() * nanosPerUnit[kind]);
+            }
+        }
+        boolean perDestination = limits[DESTINATION_REQUESTS] != null || limits[DESTINATION_BYTES] != null;
+        this.cells = new AtomicLongArray(2 + (perDestination ? 2 * DESTINATION_SLOTS : 0));
+    }
+
+    // A limiter for the policy's limits, or null if it has none
+    static RateLimiter forPolicy(AppPolicy policy) {
+        return policy != null && policy.hasRateLimits() ? new RateLimiter(policy) : null;
+    }
+
+    // True if this limiter enforces exactly the policy's limits, so its buckets can carry over
+    boolean hasLimitsOf(AppPolicy policy) {
+        return Objects.equals(limits[APP_REQUESTS], policy.getRequestLimit())
+                && Objects.equals(limits[APP_BYTES], policy.getByteLimit())
+                && Objects.equals(limits[DESTINATION_REQUESTS], policy.getDestinationRequestLimit())
+                && Objects.equals(limits[DESTINATION_BYTES], policy.getDestinationByteLimit());
+    }
+
+    // Charges the request to every applicable bucket. Returns NOT_LIMITED if all of them had
+    // room, otherwise the kind of the first limit exceeded; buckets already charged are refunded.
+    public int tryAcquire(NetworkRequest request, long nowNanos) {
+        long now = nowNanos - originNanos;
+        long bytes = request.getBytes();
+        long charged0 = charge(APP_REQUESTS, 0, 1, now);
+        if (charged0 < 0) return APP_REQUESTS;
+        long charged1 = bytes > 0 ? charge(APP_BYTES, 1, bytes, now) : 0;
+        if (charged1 < 0) {
+            refund(0, charged0);
+            return APP_BYTES;
+        }
+        if (cells.length() > 2) {
+            int slot = 2 + 2 * destinationSlot(request);
+            long charged2 = charge(DESTINATION_REQUESTS, slot, 1, now);
+            if (charged2 >= 0) {
+                long charged3 = bytes > 0 ? charge(DESTINATION_BYTES, slot + 1, bytes, now) : 0;
+                if (charged3 >= 0) return NOT_LIMITED;
+                refund(slot, charged2);
+            }
+            refund(0, charged0);
+            refund(1, charged1);
+            return charged2 < 0 ? DESTINATION_REQUESTS : DESTINATION_BYTES;
+        }
+        return NOT_LIMITED;
+    }
+
+    // Returns the nanoseconds added to the cell (0 if this limit isn't set), or -1 if over the limit
+    private long charge(int kind, int cell, long cost, long now) {
+        if (limits[kind] == null) {
+            return 0;
+        }
+        long increment = (long) (cost * nanosPerUnit[kind]);
+        while (true) {
+            long tat = cells.get(cell);
+            long next = Math.max(tat, now) + increment;
+            if (next - now > windowNanos[kind]) {
+                return -1;
+            }
+            if (cells.compareAndSet(cell, tat, next)) {
+                return increment;
+            }
+        }
+    }
+
+    private void refund(int cell, long increment) {
+        if (increment > 0) {
+            cells.addAndGet(cell, -increment);
+        }
+    }
+
+    private static int destinationSlot(NetworkRequest request) {
+        String destination = request.getTargetDomain();
+        if (destination == null || destination.isEmpty() || "N/A".equals(destination)) {
+            destination = request.getTargetIP();
+        }
+        int hash = destination == null ? 0 : destination.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (DESTINATION_SLOTS - 1);
+    }
+
+    // e.g. "app request limit 200/s burst 400", for the decision reason
+    public String describe(int kind) {
+        switch (kind) {
+            case APP_REQUESTS: return "app request limit " + limits[kind];
+            case APP_BYTES: return "app byte limit " + limits[kind];
+            case DESTINATION_REQUESTS: return "per-destination request limit " + limits[kind];
+            case DESTINATION_BYTES: return "per-destination byte limit " + limits[kind];
+            default: return "no limit";
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.firewall.core;
+
+import com.firewall.checkpoint.Checkpoint;
+import com.firewall.checkpoint.CheckpointParticipant;
+import com.firewall.checkpoint.CheckpointWriter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts events per key over a sliding time window using a fixed ring of int buckets per key,
+// so memory per key is constant no matter how many events arrive.
+//
+// The number of tracked keys is capped. Keys that have been idle for a whole window are
+// evicted; if the table is still full, events for new keys are folded into a shared
+// OVERFLOW_KEY window instead of growing the table (e.g. a flood of spoofed app names). A
+// full table is swept for idle keys at most once per bucket; in between, new keys go straight
+// to OVERFLOW_KEY, so a flood costs no more per event than an ordinary record.
+//
+// Safe for concurrent callers: the table is a ConcurrentHashMap and each key's ring is
+// guarded by its own monitor, so callers only contend when they hit the same key.
+//
+// Windows can be carried over a restart through a state checkpoint. Bucket numbers are
+// absolute (time / bucket length), so a restored window slides on from where it was saved;
+// a key's window is pulled out of the checkpoint when the key is first recorded again.
+public class SlidingWindowCounter implements CheckpointParticipant {
+    public static final String OVERFLOW_KEY = "*untracked*";
+    private static final int SWEEP_INTERVAL = 1024; // records between idle sweeps
+
+    private final long windowMs;
+    private final long bucketMs;
+    private final int bucketCount;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicInteger recordsSinceSweep = new AtomicInteger();
+    private final AtomicInteger keyCount = new AtomicInteger(); // tracked keys, OVERFLOW_KEY not included
+    private final AtomicLong nextFullSweepMs = new AtomicLong(Long.MIN_VALUE);
+    private volatile Checkpoint.Section restored; // windows saved by the last run, until they'd have expired
+
+    public SlidingWindowCounter(long windowMs, int bucketCount, int maxKeys) {
+        if (windowMs <= 0 || bucketCount <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("windowMs, bucketCount and maxKeys must be positive");
+        }
+        this.windowMs = windowMs;
+        this.bucketCount = bucketCount;
+        this.bucketMs = Math.max(1, windowMs / bucketCount);
+        this.maxKeys = maxKeys;
+    }
+
+    // Records one event for 'key' at 'timeMs' and returns the number of events for the key
+    // (or for OVERFLOW_KEY, see resolveKey) within the window ending at timeMs.
+    public int record(String key, long timeMs) {
+        if (recordsSinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+            recordsSinceSweep.set(0);
+            evictIdle(timeMs);
+        }
+        while (true) {
+            Window window = windows.get(key);
+            if (window == null) {
+                window = track(key, timeMs);
+            }
+            synchronized (window) {
+                if (window.evicted) {
+                    continue; // lost a race with evictIdle, look it up again
+                }
+                return window.add(timeMs / bucketMs, timeMs);
+            }
+        }
+    }
+
+    // Current count for a key without recording anything; 0 for untracked keys.
+    public int count(String key, long timeMs) {
+        Window window = windows.get(key);
+        if (window == null) {
+            return 0;
+        }
+        synchronized (window) {
+            return window.evicted ? 0 : window.total(timeMs / bucketMs);
+        }
+    }
+
+    // False once 'key' has been folded into OVERFLOW_KEY (or evicted).
+    public boolean isTracked(String key) {
+        return windows.containsKey(key);
+    }
+
+    public int trackedKeys() {
+        return windows.size();
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    // The window to record an untracked key in: its own while there is room, OVERFLOW_KEY's
+    // once the table is full of keys that are still active.
+    private Window track(String key, long timeMs) {
+        if (!reserveKey(timeMs)) {
+            return windows.computeIfAbsent(OVERFLOW_KEY, k -> newWindow(k, timeMs));
+        }
+        boolean[] created = new boolean[1];
+        Window window = windows.computeIfAbsent(key, k -> {
+            created[0] = true;
+            return newWindow(k, timeMs);
+        });
+        if (!created[0]) {
+            keyCount.decrementAndGet(); // another caller added it first
+        }
+        return window;
+    }
+
+    // Takes one of the maxKeys places, sweeping out idle keys first if there is none left and
+    // no sweep has run in this bucket
+    private boolean reserveKey(long timeMs) {
+        if (tryReserve()) {
+            return true;
+        }
+        long next = nextFullSweepMs.get();
+        if (timeMs < next || !nextFullSweepMs.compareAndSet(next, timeMs + bucketMs)) {
+            return false;
+        }
+        evictIdle(timeMs);
+        return tryReserve();
+    }
+
+    private boolean tryReserve() {
+        while (true) {
+            int count = keyCount.get();
+            if (count >= maxKeys) {
+                return false;
+            }
+            if (keyCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private Window newWindow(String key, long timeMs) {
+        Window window = new Window(bucketCount);
+        Checkpoint.Section saved = restored;
+        if (saved != null) {
+            if (timeMs - saved.getSavedAtMillis() >= windowMs) {
+                restored = null; // everything saved has slid out of the window by now
+            } else {
+                window.restore(saved.get(key), bucketMs);
+            }
+        }
+        return window;
+    }
+
+    @Override
+    public void saveState(CheckpointWriter.SectionWriter out) {
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            byte[] bytes;
+            synchronized (window) {
+                if (window.evicted || window.headBucket == Long.MIN_VALUE) {
+                    continue;
+                }
+                bytes = window.toBytes(bucketMs);
+            }
+            out.put(entry.getKey(), bytes);
+        }
+    }
+
+    @Override
+    public void restoreState(Checkpoint.Section saved) {
+        restored = saved;
+    }
+
+    // Drops every key whose newest event is older than the window.
+    public void evictIdle(long timeMs) {
+        Iterator<Map.Entry<String, Window>> it = windows.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Window> entry = it.next();
+            Window window = entry.getValue();
+            synchronized (window) {
+                if (timeMs - window.lastEventMs >= windowMs) {
+                    window.evicted = true;
+                    it.remove();
+                    if (!entry.getKey().equals(OVERFLOW_KEY)) {
+                        keyCount.decrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Window {
+        final int[] buckets;
+        long headBucket = Long.MIN_VALUE; // absolute bucket number of the newest bucket
+        long lastEventMs;
+        int total;
+        boolean evicted;
+
+        Window(int bucketCount) {
+            this.buckets = new int[bucketCount];
+        }
+
+        int add(long bucket, long timeMs) {
+            advance(bucket);
+            if (bucket > headBucket - buckets.length) { // late events that already slid out are dropped
+                buckets[index(bucket)]++;
+                total++;
+            }
+            lastEventMs = Math.max(lastEventMs, timeMs);
+            return total;
+        }
+
+        int total(long bucket) {
+            advance(bucket);
+            return total;
+        }
+
+        // Moves the head forward to 'bucket', clearing the buckets that fall out of the window.
+        private void advance(long bucket) {
+            if (headBucket == Long.MIN_VALUE) {
+                headBucket = bucket;
+                return;
+            }
+            if (bucket <= headBucket) {
+                return;
+            }
+            long steps = bucket - headBucket;
+            if (steps >= buckets.length) {
+                Arrays.fill(buckets, 0);
+                total = 0;
+            } else {
+                for (long b = headBucket + 1; b <= bucket; b++) {
+                    int i = index(b);
+                    total -= buckets[i];
+                    buckets[i] = 0;
+                }
+            }
+            headBucket = bucket;
+        }
+
+        byte[] toBytes(long bucketMs) {
+            ByteBuffer bytes = ByteBuffer.allocate(8 + 8 + 8 + 4 + 4 * buckets.length);
+            bytes.putLong(bucketMs).putLong(headBucket).putLong(lastEventMs).putInt(buckets.length);
+            for (int count : buckets) {
+                bytes.putInt(count);
+            }
+            return bytes.array();
+        }
+
+        // Loads a window saved by toBytes() with the same bucket layout; anything else is ignored
+        void restore(ByteBuffer saved, long bucketMs) {
+            if (saved == null || saved.remaining() < 28 || saved.getLong(0) != bucketMs
+                    || saved.getInt(24) != buckets.length || saved.remaining() < 28 + 4 * buckets.length) {
+                return;
+            }
+            headBucket = saved.getLong(8);
+            lastEventMs = saved.getLong(16);
+            total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = saved.getInt(28 + 4 * i);
+                total += buckets[i];
+            }
+        }
+
+        private int index(long bucket) {
+            return (int) Math.floorMod(bucket, (long) buckets.length);
+        }
+    }
+}
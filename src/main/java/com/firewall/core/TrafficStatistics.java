@@ -0,0 +1,209 @@
+package com.firewall.core;
+
+import com.firewall.checkpoint.Checkpoint;
+import com.firewall.checkpoint.CheckpointParticipant;
+import com.firewall.checkpoint.CheckpointWriter;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Decision counters updated on the decision path. LongAdders are striped per CPU so
+// concurrent callers don't fight over one cache line; readers (GUI, metrics) sum them
+// whenever they sample. Per-app counters are capped at maxApps, later apps are folded
+// into OTHER_APPS.
+//
+// Counts carry over a restart through a state checkpoint: the totals are restored at once,
+// each app's counters when the app is first seen again, and any apps still left over on the
+// first read of the per-app counters.
+public class TrafficStatistics implements CheckpointParticipant {
+    public static final String OTHER_APPS = "*other*";
+    private static final String TOTALS_KEY = "*total*"; // checkpoint record for the totals
+
+    private final Counters totals = new Counters();
+    private final ConcurrentHashMap<String, Counters> perApp = new ConcurrentHashMap<>();
+    private final int maxApps;
+    private volatile Checkpoint.Section restored; // per-app counts from the last run not yet seeded
+
+    public TrafficStatistics() {
+        this(1024);
+    }
+
+    public TrafficStatistics(int maxApps) {
+        this.maxApps = maxApps;
+    }
+
+    public void record(String appName, String decision) {
+        totals.record(decision);
+        Counters app = perApp.get(appName);
+        if (app == null) {
+            String key = perApp.size() < maxApps ? appName : OTHER_APPS;
+            app = perApp.computeIfAbsent(key, this::newCounters);
+        }
+        app.record(decision);
+    }
+
+    public long getTotal() {
+        return totals.total.sum();
+    }
+
+    public long getAllowed() {
+        return totals.allowed.sum();
+    }
+
+    public long getDenied() {
+        return totals.denied.sum();
+    }
+
+    public long getRateLimited() {
+        return totals.rateLimited.sum();
+    }
+
+    // Consistent-enough copy for display: each counter is summed once. Apps come in hash order,
+    // not first-seen order; readers that show them sort them.
+    public Snapshot snapshot() {
+        restoreRemaining();
+        Map<String, long[]> apps = new LinkedHashMap<>();
+        for (Map.Entry<String, Counters> entry : perApp.entrySet()) {
+            apps.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new Snapshot(System.currentTimeMillis(), totals.toArray(), apps);
+    }
+
+    // Walks the per-app counters without copying them into a snapshot, for frequent readers
+    // such as the metrics endpoint.
+    public void forEachApp(AppCountsVisitor visitor) {
+        restoreRemaining();
+        for (Map.Entry<String, Counters> entry : perApp.entrySet()) {
+            Counters counters = entry.getValue();
+            visitor.visit(entry.getKey(), counters.total.sum(), counters.allowed.sum(), counters.denied.sum(),
+                    counters.rateLimited.sum());
+        }
+    }
+
+    @Override
+    public void saveState(CheckpointWriter.SectionWriter out) {
+        restoreRemaining(); // or apps not seen since the restart would drop out of the checkpoint
+        out.put(TOTALS_KEY, totals.toBytes());
+        for (Map.Entry<String, Counters> entry : perApp.entrySet()) {
+            out.put(entry.getKey(), entry.getValue().toBytes());
+        }
+    }
+
+    @Override
+    public void restoreState(Checkpoint.Section saved) {
+        totals.add(saved.get(TOTALS_KEY));
+        restored = saved;
+    }
+
+    private Counters newCounters(String appName) {
+        Counters counters = new Counters();
+        Checkpoint.Section saved = restored;
+        if (saved != null) {
+            counters.add(saved.get(appName));
+        }
+        return counters;
+    }
+
+    // Seeds every app from the last run that hasn't shown up yet, so readers see them all
+    private void restoreRemaining() {
+        if (restored == null) {
+            return;
+        }
+        synchronized (this) {
+            Checkpoint.Section saved = restored;
+            if (saved == null) {
+                return;
+            }
+            saved.forEach((appName, counts) -> {
+                if (TOTALS_KEY.equals(appName) || perApp.containsKey(appName)) {
+                    return;
+                }
+                if (perApp.size() < maxApps) {
+                    perApp.computeIfAbsent(appName, this::newCounters);
+                } else {
+                    perApp.computeIfAbsent(OTHER_APPS, this::newCounters).add(counts);
+                }
+            });
+            restored = null;
+        }
+    }
+
+    public interface AppCountsVisitor {
+        void visit(String appName, long total, long allowed, long denied, long rateLimited);
+    }
+
+    public static final class Snapshot {
+        public static final int TOTAL = 0;
+        public static final int ALLOWED = 1;
+        public static final int DENIED = 2;
+        public static final int RATE_LIMITED = 3;
+
+        private final long timestampMs;
+        private final long[] totals;
+        private final Map<String, long[]> perApp;
+
+        Snapshot(long timestampMs, long[] totals, Map<String, long[]> perApp) {
+            this.timestampMs = timestampMs;
+            this.totals = totals;
+            this.perApp = perApp;
+        }
+
+        public long getTimestampMs() {
+            return timestampMs;
+        }
+
+        // TOTAL, ALLOWED, DENIED or RATE_LIMITED
+        public long get(int counter) {
+            return totals[counter];
+        }
+
+        // App name -> counts indexed by TOTAL, ALLOWED, DENIED, RATE_LIMITED
+        public Map<String, long[]> getPerApp() {
+            return perApp;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder total = new LongAdder();
+        final LongAdder allowed = new LongAdder();
+        final LongAdder denied = new LongAdder();
+        final LongAdder rateLimited = new LongAdder();
+
+        void record(String decision) {
+            total.increment();
+            if ("ALLOW".equals(decision)) {
+                allowed.increment();
+            } else if ("DENY".equals(decision)) {
+                denied.increment();
+            } else if ("RATE_LIMITED".equals(decision)) {
+                rateLimited.increment();
+            }
+        }
+
+        long[] toArray() {
+            return new long[]{total.sum(), allowed.sum(), denied.sum(), rateLimited.sum()};
+        }
+
+        byte[] toBytes() {
+            ByteBuffer bytes = ByteBuffer.allocate(4 * 8);
+            for (long count : toArray()) {
+                bytes.putLong(count);
+            }
+            return bytes.array();
+        }
+
+        // Adds counts saved by toBytes(); null (nothing saved) adds nothing
+        void add(ByteBuffer saved) {
+            if (saved == null || saved.remaining() < 4 * 8) {
+                return;
+            }
+            total.add(saved.getLong(0));
+            allowed.add(saved.getLong(8));
+            denied.add(saved.getLong(16));
+            rateLimited.add(saved.getLong(24));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.firewall.detection;
+
+// Detector SPI. Implementations are registered with DetectorPipeline and each one runs on
+// its own thread, so onDecision is never called concurrently for the same detector and
+// needs no locking of its own unless it exposes state to other threads.
+public interface AlertDetector {
+
+    // Short identifier used for the thread name and in metrics, e.g. "port-scan".
+    String getName();
+
+    void onDecision(DecisionEvent event, AlertSink sink);
+}
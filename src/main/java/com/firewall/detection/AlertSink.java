@@ -0,0 +1,7 @@
+package com.firewall.detection;
+
+// Where detectors report what they found; AlertEngine applies cooldowns and writes alerts.log.
+@FunctionalInterface
+public interface AlertSink {
+    void alert(String level, String type, String application, String details);
+}
@@ -0,0 +1,76 @@
+package com.firewall.detection;
+
+import com.firewall.model.NetworkRequest;
+
+// Detects sudden bursts per application by comparing a short and a long exponentially
+// decayed request rate. A burst starts when the short-term rate is burstFactor times the
+// long-term one and above minRatePerSecond; it's reported once and re-armed when the
+// short-term rate falls back under half that ratio. At most maxApps are tracked (LRU).
+public class BurstDetector implements AlertDetector {
+    private final long shortHalfLifeMs;
+    private final long longHalfLifeMs;
+    private final double burstFactor;
+    private final double minRatePerSecond;
+    private final LruMap<String, AppRates> apps;
+
+    private static final class AppRates {
+        final DecayingRate shortRate;
+        final DecayingRate longRate;
+        boolean bursting;
+
+        AppRates(long shortHalfLifeMs, long longHalfLifeMs) {
+            this.shortRate = new DecayingRate(shortHalfLifeMs);
+            this.longRate = new DecayingRate(longHalfLifeMs);
+        }
+    }
+
+    public BurstDetector() {
+        this(5 * 1000, 5 * 60 * 1000, 5.0, 20.0, 1024);
+    }
+
+    public BurstDetector(long shortHalfLifeMs, long longHalfLifeMs, double burstFactor,
+                         double minRatePerSecond, int maxApps) {
+        this.shortHalfLifeMs = shortHalfLifeMs;
+        this.longHalfLifeMs = longHalfLifeMs;
+        this.burstFactor = burstFactor;
+        this.minRatePerSecond = minRatePerSecond;
+        this.apps = new LruMap<>(maxApps);
+    }
+
+    @Override
+    public String getName() {
+        return "burst";
+    }
+
+    @Override
+    public void onDecision(DecisionEvent event, AlertSink sink) {
+        NetworkRequest request = event.getRequest();
+        String app = request.getApplicationName();
+        long now = request.getTimestamp();
+        double shortRate;
+        double longRate;
+        synchronized (this) {
+            AppRates rates = apps.get(app);
+            if (rates == null) {
+                rates = new AppRates(shortHalfLifeMs, longHalfLifeMs);
+                apps.put(app, rates);
+            }
+            rates.shortRate.add(now, 1);
+            rates.longRate.add(now, 1);
+            shortRate = rates.shortRate.ratePerSecond(now);
+            longRate = rates.longRate.ratePerSecond(now);
+            if (rates.bursting) {
+                if (shortRate < burstFactor / 2 * longRate) {
+                    rates.bursting = false;
+                }
+                return;
+            }
+            if (shortRate < minRatePerSecond || shortRate < burstFactor * longRate) {
+                return;
+            }
+            rates.bursting = true;
+        }
+        sink.alert("MEDIUM", "TRAFFIC_BURST", app,
+                String.format("Request rate jumped to %.1f/s against a baseline of %.1f/s.", shortRate, longRate));
+    }
+}
@@ -0,0 +1,59 @@
+package com.firewall.detection;
+
+import java.util.Arrays;
+
+// Frequency estimator: depth rows of width counters. Estimates never undercount and
+// overcount by at most ~e/width * total with probability 1 - e^-depth.
+// Not thread-safe; detectors guard it with their own lock.
+public class CountMinSketch {
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+    private long total;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("depth and width must be positive");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+
+    // Adds 'count' and returns the updated estimate for the item.
+    public long add(long hash, long count) {
+        long min = Long.MAX_VALUE;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            int i = row * width + Math.floorMod(h1 + row * h2, width);
+            counters[i] += count;
+            min = Math.min(min, counters[i]);
+        }
+        total += count;
+        return min;
+    }
+
+    public long estimate(long hash) {
+        long min = Long.MAX_VALUE;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[row * width + Math.floorMod(h1 + row * h2, width)]);
+        }
+        return min;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void clear() {
+        Arrays.fill(counters, 0);
+        total = 0;
+    }
+
+    public int sizeInBytes() {
+        return counters.length * Long.BYTES;
+    }
+}
@@ -0,0 +1,31 @@
+package com.firewall.detection;
+
+// Exponentially decayed event rate: every event adds 1/tau and the total decays by
+// e^(-dt/tau), so the value tracks the recent rate with the given half-life and needs
+// only two fields. Not thread-safe; detectors guard it with their own lock.
+public class DecayingRate {
+    private final double tauMs;
+    private double ratePerMs;
+    private long lastUpdateMs = -1;
+
+    public DecayingRate(long halfLifeMs) {
+        this.tauMs = halfLifeMs / Math.log(2);
+    }
+
+    public void add(long nowMs, double count) {
+        decayTo(nowMs);
+        ratePerMs += count / tauMs;
+    }
+
+    public double ratePerSecond(long nowMs) {
+        decayTo(nowMs);
+        return ratePerMs * 1000;
+    }
+
+    private void decayTo(long nowMs) {
+        if (lastUpdateMs >= 0 && nowMs > lastUpdateMs) {
+            ratePerMs *= Math.exp(-(nowMs - lastUpdateMs) / tauMs);
+        }
+        lastUpdateMs = Math.max(lastUpdateMs, nowMs);
+    }
+}
@@ -0,0 +1,43 @@
+package com.firewall.detection;
+
+import com.firewall.model.NetworkRequest;
+
+// Immutable record of one firewall decision, published to the detector pipeline.
+// NetworkRequest is itself immutable, so the event just points at it.
+public final class DecisionEvent {
+    private final NetworkRequest request;
+    private final String decision;
+    private final String reason;
+    private final long publishedNanos; // for queueing latency
+
+    public DecisionEvent(NetworkRequest request, String decision, String reason) {
+        this.request = request;
+        this.decision = decision;
+        this.reason = reason;
+        this.publishedNanos = System.nanoTime();
+    }
+
+    public NetworkRequest getRequest() {
+        return request;
+    }
+
+    public String getDecision() {
+        return decision;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+
+    public boolean isDenied() {
+        return "DENY".equals(decision);
+    }
+
+    public boolean isRateLimited() {
+        return "RATE_LIMITED".equals(decision);
+    }
+}
@@ -0,0 +1,184 @@
+package com.firewall.detection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs alert detectors off the decision path.
+//
+// publish() is the only thing the decision path pays for: one offer() into a bounded
+// queue, never blocking. A dispatcher thread fans each event out to a bounded queue per
+// detector, and every detector drains its own queue on its own thread. A slow detector
+// only backs up (and eventually drops from) its own queue; it can't stall the others
+// or the caller. Drops are counted, never silent.
+public class DetectorPipeline {
+    private static final int DISPATCH_BATCH = 256;
+
+    private final BlockingQueue<DecisionEvent> ingress;
+    private final int detectorQueueCapacity;
+    private final AlertSink sink;
+    private final List<DetectorRunner> runners = new CopyOnWriteArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder droppedAtIngress = new LongAdder();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    public DetectorPipeline(AlertSink sink) {
+        this(sink, 65536, 16384);
+    }
+
+    public DetectorPipeline(AlertSink sink, int queueCapacity, int detectorQueueCapacity) {
+        this.sink = sink;
+        this.ingress = new ArrayBlockingQueue<>(queueCapacity);
+        this.detectorQueueCapacity = detectorQueueCapacity;
+        this.dispatcher = new Thread(this::dispatchLoop, "detector-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public void register(AlertDetector detector) {
+        DetectorRunner runner = new DetectorRunner(detector, detectorQueueCapacity, sink);
+        runners.add(runner);
+        runner.thread.start();
+    }
+
+    // Returns false if the event was dropped because the pipeline is full or shut down.
+    public boolean publish(DecisionEvent event) {
+        if (running && ingress.offer(event)) {
+            published.increment();
+            return true;
+        }
+        droppedAtIngress.increment();
+        return false;
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedAtIngress.sum();
+    }
+
+    public int getBacklog() {
+        return ingress.size();
+    }
+
+    public List<DetectorStats> getDetectorStats() {
+        List<DetectorStats> stats = new ArrayList<>();
+        for (DetectorRunner runner : runners) {
+            stats.add(runner.snapshot());
+        }
+        return stats;
+    }
+
+    // Stops accepting events, lets every detector finish what is already queued, then stops
+    // the threads. Returns false if that took longer than timeoutMs.
+    public boolean shutdown(long timeoutMs) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            dispatcher.join(Math.max(1, deadline - System.currentTimeMillis()));
+            for (DetectorRunner runner : runners) {
+                runner.stopping = true;
+            }
+            for (DetectorRunner runner : runners) {
+                runner.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return System.currentTimeMillis() <= deadline;
+    }
+
+    private void dispatchLoop() {
+        List<DecisionEvent> batch = new ArrayList<>(DISPATCH_BATCH);
+        while (running || !ingress.isEmpty()) {
+            try {
+                DecisionEvent first = ingress.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                ingress.drainTo(batch, DISPATCH_BATCH - 1);
+                for (DetectorRunner runner : runners) {
+                    for (DecisionEvent event : batch) {
+                        runner.offer(event);
+                    }
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // One detector, its queue and its thread. Counters other than 'dropped' are only written by
+    // the runner thread and 'dropped' only by the dispatcher, so plain volatiles are enough.
+    private static final class DetectorRunner {
+        final AlertDetector detector;
+        final BlockingQueue<DecisionEvent> queue;
+        final AlertSink sink;
+        final Thread thread;
+        volatile boolean stopping;
+        volatile long processed;
+        volatile long dropped;
+        volatile long errors;
+        volatile long totalNanos;
+        volatile long maxNanos;
+        volatile long maxQueueDelayNanos;
+
+        DetectorRunner(AlertDetector detector, int capacity, AlertSink sink) {
+            this.detector = detector;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.sink = sink;
+            this.thread = new Thread(this::runLoop, "detector-" + detector.getName());
+            this.thread.setDaemon(true);
+        }
+
+        void offer(DecisionEvent event) {
+            if (!queue.offer(event)) {
+                dropped++;
+            }
+        }
+
+        private void runLoop() {
+            while (!stopping || !queue.isEmpty()) {
+                DecisionEvent event;
+                try {
+                    event = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (event == null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    detector.onDecision(event, sink);
+                } catch (RuntimeException e) {
+                    errors++;
+                    System.err.println("Error in detector '" + detector.getName() + "': " + e);
+                }
+                long elapsed = System.nanoTime() - start;
+                processed++;
+                totalNanos += elapsed;
+                if (elapsed > maxNanos) maxNanos = elapsed;
+                long queueDelay = start - event.getPublishedNanos();
+                if (queueDelay > maxQueueDelayNanos) maxQueueDelayNanos = queueDelay;
+            }
+        }
+
+        DetectorStats snapshot() {
+            return new DetectorStats(detector.getName(), processed, dropped, errors, queue.size(),
+                    totalNanos, maxNanos, maxQueueDelayNanos);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.firewall.detection;
+
+// Point-in-time metrics for one registered detector.
+public class DetectorStats {
+    private final String name;
+    private final long processed;
+    private final long dropped;
+    private final long errors;
+    private final int backlog;
+    private final long totalProcessingNanos;
+    private final long maxProcessingNanos;
+    private final long maxQueueDelayNanos;
+
+    public DetectorStats(String name, long processed, long dropped, long errors, int backlog,
+                         long totalProcessingNanos, long maxProcessingNanos, long maxQueueDelayNanos) {
+        this.name = name;
+        this.processed = processed;
+        this.dropped = dropped;
+        this.errors = errors;
+        this.backlog = backlog;
+        this.totalProcessingNanos = totalProcessingNanos;
+        this.maxProcessingNanos = maxProcessingNanos;
+        this.maxQueueDelayNanos = maxQueueDelayNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    // Events this detector never saw because its queue was full.
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public long getTotalProcessingNanos() {
+        return totalProcessingNanos;
+    }
+
+    public double getAverageProcessingMicros() {
+        return processed == 0 ? 0 : totalProcessingNanos / 1000.0 / processed;
+    }
+
+    public double getMaxProcessingMicros() {
+        return maxProcessingNanos / 1000.0;
+    }
+
+    // Longest time an event waited between publish() and this detector picking it up.
+    public double getMaxQueueDelayMicros() {
+        return maxQueueDelayNanos / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: processed=%d dropped=%d errors=%d backlog=%d avg=%.1fus max=%.1fus maxQueueDelay=%.1fus",
+                name, processed, dropped, errors, backlog, getAverageProcessingMicros(),
+                getMaxProcessingMicros(), getMaxQueueDelayMicros());
+    }
+}
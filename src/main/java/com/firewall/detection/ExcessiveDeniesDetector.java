@@ -0,0 +1,51 @@
+package com.firewall.detection;
+
+import com.firewall.core.SlidingWindowCounter;
+import com.firewall.model.NetworkRequest;
+
+// Too many denied requests for one application within a minute.
+public class ExcessiveDeniesDetector implements AlertDetector {
+    private final int maxDeniedRequests;
+    private final long windowMs;
+    private final SlidingWindowCounter appDeniedCounts;
+
+    public ExcessiveDeniesDetector() {
+        // 5 denies per 60 s at 1 s resolution; app names come from traffic, so bound them
+        this(5, 60 * 1000, 60, 10_000);
+    }
+
+    public ExcessiveDeniesDetector(int maxDeniedRequests, long windowMs, int windowBuckets, int maxTrackedApps) {
+        this.maxDeniedRequests = maxDeniedRequests;
+        this.windowMs = windowMs;
+        this.appDeniedCounts = new SlidingWindowCounter(windowMs, windowBuckets, maxTrackedApps);
+    }
+
+    // Per-app deny counts, for the state checkpoint
+    public SlidingWindowCounter getDeniedCounts() {
+        return appDeniedCounts;
+    }
+
+    @Override
+    public String getName() {
+        return "excessive-denies";
+    }
+
+    @Override
+    public void onDecision(DecisionEvent event, AlertSink sink) {
+        if (!event.isDenied()) {
+            return;
+        }
+        NetworkRequest request = event.getRequest();
+        String appName = request.getApplicationName();
+        int deniedCount = appDeniedCounts.record(appName, request.getTimestamp());
+
+        if (deniedCount >= maxDeniedRequests) {
+            // Once the table of tracked apps is full, new names share one overflow window
+            String subject = appDeniedCounts.isTracked(appName) ? appName : SlidingWindowCounter.OVERFLOW_KEY;
+            // Repeats for the same burst are held back by the alert cooldown in AlertEngine
+            sink.alert("HIGH", "EXCESSIVE_DENIES", subject,
+                    "Application '" + subject + "' has " + deniedCount +
+                    " denied requests in the last " + (windowMs / 1000) + " seconds.");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.firewall.detection;
+
+// 64-bit hashing for the sketches. String.hashCode() is only 32 bits and its low bits are
+// poorly mixed, which skews HyperLogLog and Count-Min, so we use FNV-1a over the chars
+// followed by the MurmurHash3 finalizer.
+public final class Hashing {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    public static long hash64(CharSequence value) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    public static long hash64(long value) {
+        return mix64(value + 0x9e3779b97f4a7c15L);
+    }
+
+    public static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,68 @@
+package com.firewall.detection;
+
+import com.firewall.model.NetworkRequest;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Finds destinations that take a disproportionate share of traffic in a window, using a
+// Count-Min Sketch with a top-K heap. A destination is reported once per window when its
+// estimated count is both above minCount and above minShare of all requests in the window.
+public class HeavyHitterDetector implements AlertDetector {
+    private final long windowMs;
+    private final long minCount;
+    private final double minShare;
+    private final HeavyHitters heavyHitters;
+    private final Set<String> reportedThisWindow = new HashSet<>(); // at most K entries
+    private long windowStartMs = -1;
+
+    public HeavyHitterDetector() {
+        this(60 * 1000, 10, 4, 2048, 500, 0.5);
+    }
+
+    public HeavyHitterDetector(long windowMs, int k, int depth, int width, long minCount, double minShare) {
+        this.windowMs = windowMs;
+        this.minCount = minCount;
+        this.minShare = minShare;
+        this.heavyHitters = new HeavyHitters(k, depth, width);
+    }
+
+    @Override
+    public String getName() {
+        return "heavy-hitter";
+    }
+
+    @Override
+    public void onDecision(DecisionEvent event, AlertSink sink) {
+        NetworkRequest request = event.getRequest();
+        String destination = destinationOf(request);
+        long now = request.getTimestamp();
+        long estimate;
+        long total;
+        synchronized (this) {
+            if (windowStartMs < 0 || now - windowStartMs >= windowMs) {
+                heavyHitters.clear();
+                reportedThisWindow.clear();
+                windowStartMs = now;
+            }
+            estimate = heavyHitters.add(destination);
+            total = heavyHitters.getTotal();
+            if (estimate < minCount || estimate < minShare * total || !reportedThisWindow.add(destination)) {
+                return;
+            }
+        }
+        sink.alert("MEDIUM", "HEAVY_HITTER", request.getApplicationName(),
+                "Destination " + destination + " received ~" + estimate + " of " + total + " requests in the last "
+                + (windowMs / 1000) + " seconds.");
+    }
+
+    public synchronized List<HeavyHitters.Entry> topDestinations() {
+        return heavyHitters.top();
+    }
+
+    static String destinationOf(NetworkRequest request) {
+        String domain = request.getTargetDomain();
+        return (domain == null || "N/A".equals(domain)) ? request.getTargetIP() : domain;
+    }
+}
@@ -0,0 +1,83 @@
+package com.firewall.detection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Top-K frequent items: a Count-Min Sketch estimates every item's count and a min-heap of
+// size K keeps the current leaders. Memory is the sketch plus K entries, whatever the
+// number of distinct items. Not thread-safe; detectors guard it with their own lock.
+public class HeavyHitters {
+    private final CountMinSketch sketch;
+    private final int k;
+    private final Map<String, Entry> members = new HashMap<>();
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>(Comparator.comparingLong(e -> e.count));
+
+    public static final class Entry {
+        public final String item;
+        long count;
+
+        Entry(String item, long count) {
+            this.item = item;
+            this.count = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return item + "=" + count;
+        }
+    }
+
+    public HeavyHitters(int k, int depth, int width) {
+        this.k = k;
+        this.sketch = new CountMinSketch(depth, width);
+    }
+
+    // Counts one occurrence and returns the item's estimated count.
+    public long add(String item) {
+        long estimate = sketch.add(Hashing.hash64(item), 1);
+        Entry entry = members.get(item);
+        if (entry != null) {
+            heap.remove(entry); // K is small, an O(K) reposition is cheaper than a fancier heap
+            entry.count = estimate;
+            heap.add(entry);
+        } else if (members.size() < k) {
+            entry = new Entry(item, estimate);
+            members.put(item, entry);
+            heap.add(entry);
+        } else if (estimate > heap.peek().count) {
+            members.remove(heap.poll().item);
+            entry = new Entry(item, estimate);
+            members.put(item, entry);
+            heap.add(entry);
+        }
+        return estimate;
+    }
+
+    public long getTotal() {
+        return sketch.getTotal();
+    }
+
+    // Current leaders, largest first.
+    public List<Entry> top() {
+        List<Entry> result = new ArrayList<>();
+        for (Entry e : heap) {
+            result.add(new Entry(e.item, e.count));
+        }
+        result.sort(Comparator.comparingLong((Entry e) -> e.count).reversed());
+        return result;
+    }
+
+    public void clear() {
+        sketch.clear();
+        members.clear();
+        heap.clear();
+    }
+}
@@ -0,0 +1,20 @@
+package com.firewall.detection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Access-ordered map that drops its least recently used entry beyond maxEntries. Keeps
+// per-source detector state bounded when sources are attacker controlled.
+class LruMap<K, V> extends LinkedHashMap<K, V> {
+    private final int maxEntries;
+
+    LruMap(int maxEntries) {
+        super(16, 0.75f, true);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxEntries;
+    }
+}
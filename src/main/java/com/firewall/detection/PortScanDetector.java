@@ -0,0 +1,99 @@
+package com.firewall.detection;
+
+import com.firewall.model.NetworkRequest;
+
+// Flags sources that touch many distinct destination ports or IPs within a window, using
+// two HyperLogLogs per source. Sources are the packet's source IP when known (capture),
+// otherwise the application name (simulation). At most maxSources are tracked; the least
+// recently active ones are dropped, so memory is capped at maxSources * 2 * 2^precision bytes.
+public class PortScanDetector implements AlertDetector {
+    private final long windowMs;
+    private final int precision;
+    private final long portThreshold;
+    private final long ipThreshold;
+    private final LruMap<String, SourceState> sources;
+
+    private static final class SourceState {
+        final HyperLogLog ports;
+        final HyperLogLog ips;
+        long windowStartMs;
+        boolean portAlertRaised;
+        boolean ipAlertRaised;
+
+        SourceState(int precision, long now) {
+            this.ports = new HyperLogLog(precision);
+            this.ips = new HyperLogLog(precision);
+            this.windowStartMs = now;
+        }
+    }
+
+    public PortScanDetector() {
+        this(60 * 1000, 10, 1024, 100, 50);
+    }
+
+    public PortScanDetector(long windowMs, int precision, int maxSources, long portThreshold, long ipThreshold) {
+        this.windowMs = windowMs;
+        this.precision = precision;
+        this.portThreshold = portThreshold;
+        this.ipThreshold = ipThreshold;
+        this.sources = new LruMap<>(maxSources);
+    }
+
+    @Override
+    public String getName() {
+        return "port-scan";
+    }
+
+    @Override
+    public void onDecision(DecisionEvent event, AlertSink sink) {
+        NetworkRequest request = event.getRequest();
+        String source = sourceOf(request);
+        long now = request.getTimestamp();
+        long distinctPorts = -1;
+        long distinctIps = -1;
+        synchronized (this) {
+            SourceState state = sources.get(source);
+            if (state == null) {
+                state = new SourceState(precision, now);
+                sources.put(source, state);
+            } else if (now - state.windowStartMs >= windowMs) {
+                state.ports.clear();
+                state.ips.clear();
+                state.windowStartMs = now;
+                state.portAlertRaised = false;
+                state.ipAlertRaised = false;
+            }
+            // Only re-estimate when a register moved; most packets don't change the sketch
+            if (state.ports.add(Hashing.hash64(request.getPort())) && !state.portAlertRaised) {
+                long estimate = state.ports.estimate();
+                if (estimate >= portThreshold) {
+                    state.portAlertRaised = true;
+                    distinctPorts = estimate;
+                }
+            }
+            if (state.ips.add(Hashing.hash64(request.getTargetIP())) && !state.ipAlertRaised) {
+                long estimate = state.ips.estimate();
+                if (estimate >= ipThreshold) {
+                    state.ipAlertRaised = true;
+                    distinctIps = estimate;
+                }
+            }
+        }
+        // Report outside the lock, the sink does I/O
+        if (distinctPorts >= 0) {
+            sink.alert("HIGH", "PORT_SCAN", request.getApplicationName(),
+                    "Source " + source + " contacted ~" + distinctPorts + " distinct destination ports in the last "
+                    + (windowMs / 1000) + " seconds.");
+        }
+        if (distinctIps >= 0) {
+            sink.alert("HIGH", "HOST_SCAN", request.getApplicationName(),
+                    "Source " + source + " contacted ~" + distinctIps + " distinct destination IPs in the last "
+                    + (windowMs / 1000) + " seconds.");
+        }
+    }
+
+    static String sourceOf(NetworkRequest request) {
+        String sourceIp = request.getSourceIP();
+        return (sourceIp == null || "N/A".equals(sourceIp)) ? request.getApplicationName() : sourceIp;
+    }
+}
@@ -0,0 +1,24 @@
+package com.firewall.detection;
+
+import com.firewall.model.NetworkRequest;
+
+// An app went over one of its rate limits. AlertEngine's cooldown turns a sustained flood
+// into one alert per app every cooldown period, with the suppressed count appended.
+public class RateLimitDetector implements AlertDetector {
+
+    @Override
+    public String getName() {
+        return "rate-limit";
+    }
+
+    @Override
+    public void onDecision(DecisionEvent event, AlertSink sink) {
+        if (!event.isRateLimited()) {
+            return;
+        }
+        NetworkRequest request = event.getRequest();
+        sink.alert("MEDIUM", "APP_RATE_LIMITED", request.getApplicationName(),
+                "Traffic to " + request.getTargetDomain() + " (" + request.getTargetIP() + ") throttled: "
+                        + event.getReason());
+    }
+}
@@ -0,0 +1,31 @@
+package com.firewall.detection;
+
+import com.firewall.model.NetworkRequest;
+
+// A request denied because its protocol isn't in the app's allowed protocols.
+public class UnexpectedProtocolDetector implements AlertDetector {
+
+    @Override
+    public String getName() {
+        return "unexpected-protocol";
+    }
+
+    @Override
+    public void onDecision(DecisionEvent event, AlertSink sink) {
+        if (!event.isDenied() || !isProtocolViolation(event.getReason())) {
+            return;
+        }
+        NetworkRequest request = event.getRequest();
+        sink.alert("MEDIUM", "UNEXPECTED_PROTOCOL", request.getApplicationName(),
+                "App tried to use " + request.getProtocol() + " to " + request.getTargetDomain() +
+                ", which is not in its allowed protocols.");
+    }
+
+    // FirewallAgent reports protocol violations as "Protocol 'X' not in allowed list."
+    static boolean isProtocolViolation(String reason) {
+        if (reason == null) return false;
+        String lower = reason.toLowerCase();
+        return lower.contains("protocol not allowed")
+            || (lower.contains("protocol '") && lower.contains("' not in allowed list"));
+    }
+}
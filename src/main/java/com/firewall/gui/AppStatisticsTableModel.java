@@ -0,0 +1,70 @@
+package com.firewall.gui;
+
+import com.firewall.core.TrafficStatistics;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Per-application breakdown for the statistics tab, rebuilt from each sample on the EDT.
+class AppStatisticsTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"App", "Total", "Allowed", "Denied", "Rate limited", "Req/s", "Denied/s"};
+
+    private List<Object[]> rows = new ArrayList<>();
+    private Map<String, long[]> previousCounts = new HashMap<>();
+
+    void update(TrafficStatistics.Snapshot snapshot, double elapsedSeconds) {
+        List<Object[]> newRows = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : snapshot.getPerApp().entrySet()) {
+            long[] counts = entry.getValue();
+            long[] previous = previousCounts.getOrDefault(entry.getKey(), new long[counts.length]);
+            newRows.add(new Object[]{
+                    entry.getKey(),
+                    counts[TrafficStatistics.Snapshot.TOTAL],
+                    counts[TrafficStatistics.Snapshot.ALLOWED],
+                    counts[TrafficStatistics.Snapshot.DENIED],
+                    counts[TrafficStatistics.Snapshot.RATE_LIMITED],
+                    rate(counts, previous, TrafficStatistics.Snapshot.TOTAL, elapsedSeconds),
+                    rate(counts, previous, TrafficStatistics.Snapshot.DENIED, elapsedSeconds)
+            });
+        }
+        // Busiest first, ties by name, so rows don't swap places between samples
+        newRows.sort((a, b) -> a[1].equals(b[1]) ? ((String) a[0]).compareTo((String) b[0])
+                : Long.compare((Long) b[1], (Long) a[1]));
+        previousCounts = new HashMap<>(snapshot.getPerApp());
+        boolean sameShape = newRows.size() == rows.size();
+        rows = newRows;
+        if (sameShape && !rows.isEmpty()) {
+            fireTableRowsUpdated(0, rows.size() - 1);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    private static String rate(long[] counts, long[] previous, int counter, double elapsedSeconds) {
+        if (elapsedSeconds <= 0) return "-";
+        return String.format("%.1f", (counts[counter] - previous[counter]) / elapsedSeconds);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return rows.get(rowIndex)[columnIndex];
+    }
+}
@@ -0,0 +1,150 @@
+package com.firewall.gui;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// What the live traffic JTable actually shows: LiveTrafficTableModel as is, or the rows
+// matching a TrafficFilter.
+//
+// Matching never runs on the EDT. Every frame published by the live model is handed to a
+// worker thread that keeps a TrafficFilterIndex of the window; the worker sends back the
+// finished list of matching rows plus how many were dropped at the head and appended at
+// the tail, and the EDT just swaps the array in and fires the matching events. Without a
+// filter, the live model's events are passed straight through. A new filter takes effect
+// when its first matches arrive; until then the table keeps showing what it showed before.
+// This is the model installed on the JTable, so it is the one that keeps it scrolled.
+class FilteredTrafficTableModel extends AbstractTableModel {
+    private final LiveTrafficTableModel source;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "traffic-filter");
+        t.setDaemon(true);
+        return t;
+    });
+    private final TrafficFilterIndex index; // worker thread only
+    private int workerFilterVersion;        // worker thread only
+
+    // EDT side
+    private int filterVersion;
+    private boolean showingMatches; // false while the source's rows are passed through
+    private TrafficRow[] matches = new TrafficRow[0];
+    private JTable followTable;
+
+    FilteredTrafficTableModel(LiveTrafficTableModel source, int windowSize) {
+        this.source = source;
+        this.index = new TrafficFilterIndex(windowSize);
+        source.addTableModelListener(this::sourceChanged);
+        source.setFrameListener(rows -> worker.execute(() -> indexFrame(rows)));
+    }
+
+    void setFollowTable(JTable table) {
+        this.followTable = table;
+    }
+
+    // EDT
+    void setFilter(TrafficFilter newFilter) {
+        int version = ++filterVersion;
+        if (newFilter.isEmpty() && showingMatches) {
+            showingMatches = false;
+            matches = new TrafficRow[0];
+            fireTableDataChanged();
+        }
+        worker.execute(() -> {
+            index.setFilter(newFilter);
+            workerFilterVersion = version;
+            if (!newFilter.isEmpty()) {
+                TrafficRow[] rows = index.snapshotMatches();
+                SwingUtilities.invokeLater(() -> applyMatches(version, rows, -1, 0));
+            }
+        });
+    }
+
+    boolean isFiltering() {
+        return showingMatches;
+    }
+
+    int getSourceRowCount() {
+        return source.getRowCount();
+    }
+
+    TrafficRow getRow(int rowIndex) {
+        return showingMatches ? matches[rowIndex] : source.getRow(rowIndex);
+    }
+
+    // Worker thread
+    private void indexFrame(TrafficRow[] rows) {
+        for (TrafficRow row : rows) {
+            index.add(row);
+        }
+        if (index.hasChanges()) {
+            int dropped = index.getDroppedMatches();
+            int appended = index.getAppendedMatches();
+            TrafficRow[] snapshot = index.snapshotMatches();
+            int version = workerFilterVersion;
+            SwingUtilities.invokeLater(() -> applyMatches(version, snapshot, dropped, appended));
+        }
+    }
+
+    // EDT. dropped < 0 means a full replacement (new filter).
+    private void applyMatches(int version, TrafficRow[] rows, int dropped, int appended) {
+        if (version != filterVersion) {
+            return; // produced for a filter that has since been replaced
+        }
+        boolean atBottom = LiveTrafficTableModel.isScrolledToBottom(followTable);
+        matches = rows;
+        if (dropped < 0) {
+            showingMatches = true;
+            fireTableDataChanged();
+        } else {
+            if (dropped > 0) fireTableRowsDeleted(0, dropped - 1);
+            if (appended > 0) fireTableRowsInserted(rows.length - appended, rows.length - 1);
+        }
+        if (atBottom && rows.length > 0) {
+            scrollToBottom();
+        }
+    }
+
+    private void sourceChanged(TableModelEvent e) {
+        if (!showingMatches) {
+            boolean atBottom = LiveTrafficTableModel.isScrolledToBottom(followTable);
+            fireTableChanged(new TableModelEvent(this, e.getFirstRow(), e.getLastRow(), e.getColumn(), e.getType()));
+            if (atBottom && e.getType() == TableModelEvent.INSERT) {
+                scrollToBottom();
+            }
+        }
+    }
+
+    private void scrollToBottom() {
+        if (followTable != null) {
+            followTable.scrollRectToVisible(followTable.getCellRect(followTable.getRowCount() - 1, 0, true));
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return showingMatches ? matches.length : source.getRowCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return source.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return source.getColumnName(column);
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return getRow(rowIndex).getColumn(columnIndex);
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+}
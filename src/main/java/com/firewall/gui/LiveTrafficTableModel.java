@@ -0,0 +1,182 @@
+package com.firewall.gui;
+
+import com.firewall.model.DecisionResult;
+
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Table model for the live traffic log that can be fed at packet rate from any thread.
+//
+// Producers claim a sequence number and drop the row into a fixed-size ring (no locks,
+// no EDT work). A Swing Timer running at a capped frame rate copies whatever was
+// published since the last frame into the visible window and fires one delete/insert
+// pair for the whole batch. EDT cost is therefore bounded by the frame rate and the
+// window size, not by the packet rate. If producers outrun the ring between two frames,
+// the oldest unseen rows are skipped and counted instead of queueing up.
+public class LiveTrafficTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS =
+            {"Time", "Proto", "Src IP", "Src Port", "Dst IP", "Dst Port", "App", "Decision", "Reason"};
+    public static final int DECISION_COLUMN = 7;
+    // How far producers may run ahead of a slot that is still unwritten before it is given up
+    // on: a write that late, or an older lap's late write covering the slot, would stall the
+    // table until the ring came round again
+    private static final int MAX_WRITE_LAG = 256;
+
+    // Producer side, shared between threads
+    private final AtomicReferenceArray<TrafficRow> ring;
+    private final int ringMask;
+    private final int maxWriteLag;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    // EDT side
+    private final TrafficRow[] window; // rows currently shown, as a circular buffer
+    private int windowStart;
+    private int windowSize;
+    private long publishedSequence; // next sequence to copy out of the ring
+    private long skippedRows;
+    private final ArrayDeque<TrafficRow> fresh = new ArrayDeque<>(); // scratch for one frame
+    private final Timer frameTimer;
+    private JTable followTable;
+    private Consumer<TrafficRow[]> frameListener;
+
+    public LiveTrafficTableModel(int maxVisibleRows, int ringCapacity, int framesPerSecond) {
+        int capacity = Integer.highestOneBit(Math.max(2, Math.max(ringCapacity, maxVisibleRows)) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.ringMask = capacity - 1;
+        this.maxWriteLag = Math.min(MAX_WRITE_LAG, capacity / 2);
+        this.window = new TrafficRow[maxVisibleRows];
+        this.frameTimer = new Timer(Math.max(1, 1000 / framesPerSecond), e -> publishFrame());
+        this.frameTimer.setCoalesce(true);
+    }
+
+    // Safe to call from any thread.
+    public void add(DecisionResult result, String sourceIp, int sourcePort) {
+        long sequence = nextSequence.getAndIncrement();
+        ring.set((int) (sequence & ringMask), new TrafficRow(sequence, result, sourceIp, sourcePort));
+    }
+
+    public void start() {
+        frameTimer.start();
+    }
+
+    public void stop() {
+        frameTimer.stop();
+    }
+
+    // Keep this table scrolled to the newest row while the user is already at the bottom.
+    public void setFollowTable(JTable table) {
+        this.followTable = table;
+    }
+
+    // Receives the rows appended to the window in each frame, on the EDT.
+    void setFrameListener(Consumer<TrafficRow[]> listener) {
+        this.frameListener = listener;
+    }
+
+    // Rows producers wrote faster than the frame timer could copy them out.
+    public long getSkippedRowCount() {
+        return skippedRows;
+    }
+
+    public long getTotalRowCount() {
+        return nextSequence.get();
+    }
+
+    TrafficRow getRow(int rowIndex) {
+        return window[(windowStart + rowIndex) % window.length];
+    }
+
+    @Override
+    public int getRowCount() {
+        return windowSize;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return getRow(rowIndex).getColumn(columnIndex);
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    // Runs on the EDT once per frame.
+    private void publishFrame() {
+        long claimed = nextSequence.get();
+        if (claimed - publishedSequence > ring.length()) {
+            long lost = claimed - ring.length() - publishedSequence;
+            skippedRows += lost;
+            publishedSequence += lost;
+        }
+
+        fresh.clear();
+        while (publishedSequence < claimed) {
+            TrafficRow row = ring.get((int) (publishedSequence & ringMask));
+            if (row == null || row.sequence < publishedSequence) {
+                if (claimed - publishedSequence <= maxWriteLag) {
+                    break; // claimed but not written yet, pick it up next frame
+                }
+                skippedRows++;
+            } else if (row.sequence > publishedSequence) {
+                skippedRows++; // overwritten by a later lap before we got to it
+            } else {
+                if (fresh.size() == window.length) {
+                    fresh.pollFirst(); // would scroll out of the window in this same frame
+                }
+                fresh.addLast(row);
+            }
+            publishedSequence++;
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        if (frameListener != null) {
+            frameListener.accept(fresh.toArray(new TrafficRow[0]));
+        }
+        boolean atBottom = isScrolledToBottom(followTable);
+        // Two structural events per frame: drop the oldest rows, then append the new batch
+        int overflow = windowSize + fresh.size() - window.length;
+        if (overflow > 0) {
+            windowStart = (windowStart + overflow) % window.length;
+            windowSize -= overflow;
+            fireTableRowsDeleted(0, overflow - 1);
+        }
+        int firstInserted = windowSize;
+        for (TrafficRow row : fresh) {
+            window[(windowStart + windowSize) % window.length] = row;
+            windowSize++;
+        }
+        fresh.clear();
+        fireTableRowsInserted(firstInserted, windowSize - 1);
+
+        if (atBottom && followTable != null) {
+            followTable.scrollRectToVisible(followTable.getCellRect(followTable.getRowCount() - 1, 0, true));
+        }
+    }
+
+    static boolean isScrolledToBottom(JTable table) {
+        if (table == null || table.getRowCount() == 0) {
+            return true;
+        }
+        Rectangle visible = table.getVisibleRect();
+        return visible.y + visible.height >= table.getHeight() - table.getRowHeight() * 2;
+    }
+}
@@ -0,0 +1,136 @@
+package com.firewall.gui;
+
+import com.firewall.query.LineOffsetIndex;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// "Log Browser" tab: pages through the activity or alert log on disk, however large.
+//
+// Indexing runs on a single background thread (LineOffsetIndex over a memory-mapped file);
+// the table is a virtual LogFileTableModel that reads only the rows on screen. A timer polls
+// for appended lines and, with "Follow" ticked, keeps the newest line in view.
+class LogBrowserPanel extends JPanel {
+    private static final int POLL_INTERVAL_MS = 500;
+
+    private final String[] logFiles;
+    private final LogFileTableModel model = new LogFileTableModel();
+    private final JTable table = new JTable(model);
+    private final JComboBox<String> fileSelector;
+    private final JCheckBox followCheckBox = new JCheckBox("Follow", true);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final Timer pollTimer;
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "log-browser-indexer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    // Only touched on the indexer thread
+    private LineOffsetIndex index;
+    private int selectedFile = -1;
+
+    LogBrowserPanel(String activityLogFile, String alertLogFile) {
+        super(new BorderLayout(5, 5));
+        this.logFiles = new String[]{activityLogFile, alertLogFile};
+        this.fileSelector = new JComboBox<>(new String[]{
+                "Activity log (" + activityLogFile + ")", "Alert log (" + alertLogFile + ")"});
+
+        table.setAutoCreateRowSorter(false); // sorting would touch every row of the file
+        table.setFillsViewportHeight(true);
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(fileSelector);
+        controls.add(followCheckBox);
+        controls.add(statusLabel);
+        add(controls, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        fileSelector.addActionListener(e -> switchTo(fileSelector.getSelectedIndex()));
+        followCheckBox.addActionListener(e -> {
+            if (followCheckBox.isSelected()) scrollToEnd();
+        });
+        pollTimer = new Timer(POLL_INTERVAL_MS, e -> requestRefresh());
+        switchTo(0);
+        pollTimer.start();
+    }
+
+    private void switchTo(int fileIndex) {
+        model.setIndex(null);
+        statusLabel.setText("Indexing " + logFiles[fileIndex] + "...");
+        indexer.execute(() -> {
+            closeIndex();
+            selectedFile = fileIndex;
+            refresh();
+        });
+    }
+
+    // Queues at most one refresh at a time so a slow scan doesn't pile up timer ticks
+    private void requestRefresh() {
+        if (refreshQueued.compareAndSet(false, true)) {
+            indexer.execute(() -> {
+                refreshQueued.set(false);
+                refresh();
+            });
+        }
+    }
+
+    // Indexer thread: opens the selected file if needed and indexes appended lines,
+    // publishing to the table after every mapped window so big files fill in progressively.
+    private void refresh() {
+        String file = logFiles[selectedFile];
+        try {
+            boolean opening = index == null;
+            if (opening) {
+                LineOffsetIndex opened = new LineOffsetIndex(Paths.get(file));
+                index = opened;
+                SwingUtilities.invokeLater(() -> model.setIndex(opened));
+            }
+            LineOffsetIndex current = index;
+            long startNanos = System.nanoTime();
+            int added = current.refresh(() -> SwingUtilities.invokeLater(this::publishRows));
+            if (added != 0 || opening) {
+                long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+                SwingUtilities.invokeLater(() -> statusLabel.setText(
+                        current.getLineCount() + " lines in " + file + " (last scan " + elapsedMs + " ms)"));
+            }
+        } catch (NoSuchFileException e) {
+            SwingUtilities.invokeLater(() -> statusLabel.setText(file + " does not exist yet"));
+        } catch (IOException e) {
+            System.err.println("Error indexing " + file + ": " + e.getMessage());
+            SwingUtilities.invokeLater(() -> statusLabel.setText("Error reading " + file + ": " + e.getMessage()));
+            closeIndex(); // reopen on the next tick
+        }
+    }
+
+    // EDT
+    private void publishRows() {
+        if (model.sync() != 0 && followCheckBox.isSelected()) {
+            scrollToEnd();
+        }
+    }
+
+    private void scrollToEnd() {
+        int rows = table.getRowCount();
+        if (rows > 0) {
+            table.scrollRectToVisible(table.getCellRect(rows - 1, 0, true));
+        }
+    }
+
+    private void closeIndex() {
+        if (index == null) return;
+        try {
+            index.close();
+        } catch (IOException e) {
+            System.err.println("Error closing log index: " + e.getMessage());
+        }
+        index = null;
+    }
+}
@@ -0,0 +1,130 @@
+package com.firewall.gui;
+
+import com.firewall.query.LineOffsetIndex;
+
+import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Virtual table over a " | "-separated log file. Only the line offsets live in memory
+// (LineOffsetIndex); a row is read from disk and split when the table asks for it, which is
+// only for the rows currently on screen. A small LRU cache keeps repaints from re-reading.
+//
+// The row count only changes in sync(), on the EDT, so the JTable never sees rows it
+// hasn't been told about even though the index keeps growing in the background.
+class LogFileTableModel extends AbstractTableModel {
+    private static final Pattern SEPARATOR = Pattern.compile(" \\| ");
+    private static final int CACHE_SIZE = 512;
+
+    private LineOffsetIndex index;
+    private String[] columns = {"Line"};
+    private boolean hasHeader;
+    private int rowCount;
+    private int seenResetCount;
+
+    private final Map<Integer, String[]> rowCache = new LinkedHashMap<Integer, String[]>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // Switches to another file (or to nothing when 'index' is null).
+    void setIndex(LineOffsetIndex index) {
+        this.index = index;
+        this.seenResetCount = index == null ? 0 : index.getResetCount();
+        resetStructure();
+        sync();
+    }
+
+    // Publishes lines indexed since the last call. Returns the number of rows added, or -1 if
+    // the file was truncated/rotated and the table was rebuilt.
+    int sync() {
+        if (index == null) {
+            return 0;
+        }
+        if (index.getResetCount() != seenResetCount) {
+            seenResetCount = index.getResetCount();
+            resetStructure();
+            sync();
+            return -1;
+        }
+        int lineCount = index.getLineCount();
+        if (!hasHeader && rowCount == 0 && lineCount > 0 && readHeader()) {
+            fireTableStructureChanged();
+        }
+        int newRowCount = Math.max(0, lineCount - firstRowLine());
+        if (newRowCount <= rowCount) {
+            return 0;
+        }
+        int added = newRowCount - rowCount;
+        int first = rowCount;
+        rowCount = newRowCount;
+        fireTableRowsInserted(first, newRowCount - 1);
+        return added;
+    }
+
+    private void resetStructure() {
+        columns = new String[]{"Line"};
+        hasHeader = false;
+        rowCount = 0;
+        rowCache.clear();
+        fireTableStructureChanged();
+    }
+
+    // The loggers write a "TIMESTAMP | ..." header as the first line of a new file
+    private boolean readHeader() {
+        try {
+            String first = index.readLine(0);
+            if (first.startsWith("TIMESTAMP") && first.contains(" | ")) {
+                columns = SEPARATOR.split(first);
+                hasHeader = true;
+                return true;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading log header from " + index.getPath() + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    private int firstRowLine() {
+        return hasHeader ? 1 : 0;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        String[] row = rowCache.get(rowIndex);
+        if (row == null) {
+            row = readRow(rowIndex);
+            rowCache.put(rowIndex, row);
+        }
+        return columnIndex < row.length ? row[columnIndex] : "";
+    }
+
+    private String[] readRow(int rowIndex) {
+        try {
+            String line = index.readLine(rowIndex + firstRowLine());
+            // The last column (reason/details) is free text and may contain the separator itself
+            return hasHeader ? SEPARATOR.split(line, columns.length) : new String[]{line};
+        } catch (IOException e) {
+            return new String[]{"<unreadable: " + e.getMessage() + ">"};
+        }
+    }
+}
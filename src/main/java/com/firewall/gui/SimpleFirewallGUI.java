@@ -1,16 +1,13 @@
 package com.firewall.gui;
 
 import com.firewall.main.FirewallSimulator; // To call start/stop methods
+import com.firewall.core.TrafficStatistics;
 import com.firewall.model.DecisionResult;
-import com.firewall.model.NetworkRequest;
 import com.firewall.simulation.ApplicationSimulator;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 // --- NEW IMPORTS FOR INTERFACE SELECTION ---
 import java.util.List;
 import java.util.ArrayList;
@@ -25,13 +22,18 @@ import java.io.IOException;
 public class SimpleFirewallGUI extends JFrame {
 
     private JTextArea generalLogTextArea;
-    private DefaultTableModel liveLogTableModel;
+    private LiveTrafficTableModel liveLogTableModel;
     private JTable liveLogTable;
 
-    private JLabel totalPacketsLabel, allowedPacketsLabel, deniedPacketsLabel;
-    private long totalPacketCount = 0;
-    private long allowedPacketCount = 0;
-    private long deniedPacketCount = 0;
+    private JLabel totalPacketsLabel, allowedPacketsLabel, deniedPacketsLabel, rateLimitedPacketsLabel;
+    private JLabel allowedRateLabel, deniedRateLabel;
+    private ThroughputSparkline throughputSparkline;
+    private AppStatisticsTableModel appStatisticsTableModel;
+
+    // Counters are bumped on the decision path; the GUI only samples them on a timer,
+    // so its cost doesn't depend on the packet rate.
+    private final TrafficStatistics statistics;
+    private TrafficStatistics.Snapshot lastStatisticsSample;
 
     private JButton startRealTimeButton, stopRealTimeButton;
     private JButton runSimulationButton;
@@ -42,8 +44,10 @@ public class SimpleFirewallGUI extends JFrame {
     private List<PcapNetworkInterface> availableInterfaces;
     // --- END NEW FIELD ---
 
-    public SimpleFirewallGUI(ApplicationSimulator appSimulator, String activityLogFile, String alertLogFile) {
+    public SimpleFirewallGUI(ApplicationSimulator appSimulator, TrafficStatistics statistics,
+                             String activityLogFile, String alertLogFile) {
         this.appSimulator = appSimulator;
+        this.statistics = statistics;
 
         setTitle("Context-Aware Firewall Dashboard");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -57,11 +61,21 @@ public class SimpleFirewallGUI extends JFrame {
         totalPacketsLabel = new JLabel("Total: 0");
         allowedPacketsLabel = new JLabel("Allowed: 0");
         deniedPacketsLabel = new JLabel("Denied: 0");
+        rateLimitedPacketsLabel = new JLabel("Rate limited: 0");
+        allowedRateLabel = new JLabel("Allowed/s: 0.0");
+        deniedRateLabel = new JLabel("Denied/s: 0.0");
+        throughputSparkline = new ThroughputSparkline(120);
         statsPanel.add(totalPacketsLabel);
         statsPanel.add(new JSeparator(SwingConstants.VERTICAL));
         statsPanel.add(allowedPacketsLabel);
         statsPanel.add(new JSeparator(SwingConstants.VERTICAL));
         statsPanel.add(deniedPacketsLabel);
+        statsPanel.add(new JSeparator(SwingConstants.VERTICAL));
+        statsPanel.add(rateLimitedPacketsLabel);
+        statsPanel.add(new JSeparator(SwingConstants.VERTICAL));
+        statsPanel.add(allowedRateLabel);
+        statsPanel.add(deniedRateLabel);
+        statsPanel.add(throughputSparkline);
         topPanel.add(statsPanel, BorderLayout.CENTER);
 
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -77,21 +91,22 @@ public class SimpleFirewallGUI extends JFrame {
         add(topPanel, BorderLayout.NORTH);
 
         JTabbedPane tabbedPane = new JTabbedPane();
-        liveLogTableModel = new DefaultTableModel(
-            new String[]{"Time", "Proto", "Src IP", "Src Port", "Dst IP", "Dst Port", "App", "Decision", "Reason"}, 0
-        ) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-        liveLogTable = new JTable(liveLogTableModel);
+        // Keeps the last 2000 rows; packets are batched into the table at most 30 times a second
+        liveLogTableModel = new LiveTrafficTableModel(2000, 8192, 30);
+        // The table shows a filtered view; matching runs on a worker thread, not the EDT
+        FilteredTrafficTableModel filteredLogTableModel = new FilteredTrafficTableModel(liveLogTableModel, 2000);
+        liveLogTable = new JTable(filteredLogTableModel);
+        filteredLogTableModel.setFollowTable(liveLogTable);
+        liveLogTableModel.start();
         liveLogTable.setDefaultRenderer(Object.class, new TrafficLogTableCellRenderer());
         liveLogTable.getColumnModel().getColumn(0).setPreferredWidth(70);
         liveLogTable.getColumnModel().getColumn(1).setPreferredWidth(40);
         liveLogTable.getColumnModel().getColumn(8).setPreferredWidth(250);
         JScrollPane liveLogScrollPane = new JScrollPane(liveLogTable);
-        tabbedPane.addTab("Real-Time Traffic Log", liveLogScrollPane);
+        JPanel liveLogPanel = new JPanel(new BorderLayout());
+        liveLogPanel.add(new TrafficFilterBar(filteredLogTableModel), BorderLayout.NORTH);
+        liveLogPanel.add(liveLogScrollPane, BorderLayout.CENTER);
+        tabbedPane.addTab("Real-Time Traffic Log", liveLogPanel);
 
         generalLogTextArea = new JTextArea(15, 70);
         generalLogTextArea.setEditable(false);
@@ -99,6 +114,11 @@ public class SimpleFirewallGUI extends JFrame {
         generalLogTextArea.setWrapStyleWord(true);
         JScrollPane generalLogScrollPane = new JScrollPane(generalLogTextArea);
         tabbedPane.addTab("General & Simulation Log", generalLogScrollPane);
+
+        appStatisticsTableModel = new AppStatisticsTableModel();
+        JTable appStatisticsTable = new JTable(appStatisticsTableModel);
+        tabbedPane.addTab("Per-App Statistics", new JScrollPane(appStatisticsTable));
+        tabbedPane.addTab("Log Browser", new LogBrowserPanel(activityLogFile, alertLogFile));
         add(tabbedPane, BorderLayout.CENTER);
 
         runSimulationButton.addActionListener(e -> {
@@ -149,9 +169,34 @@ public class SimpleFirewallGUI extends JFrame {
             stopRealTimeButton.setEnabled(false);
         });
 
+        Timer statisticsTimer = new Timer(1000, e -> sampleStatistics());
+        statisticsTimer.start();
+
         logMessage("GUI Initialized. Activity Log: " + activityLogFile + ", Alert Log: " + alertLogFile);
     }
 
+    // Runs on the EDT once a second.
+    private void sampleStatistics() {
+        TrafficStatistics.Snapshot sample = statistics.snapshot();
+        TrafficStatistics.Snapshot previous = lastStatisticsSample;
+        lastStatisticsSample = sample;
+
+        totalPacketsLabel.setText("Total: " + sample.get(TrafficStatistics.Snapshot.TOTAL));
+        allowedPacketsLabel.setText("Allowed: " + sample.get(TrafficStatistics.Snapshot.ALLOWED));
+        deniedPacketsLabel.setText("Denied: " + sample.get(TrafficStatistics.Snapshot.DENIED));
+        rateLimitedPacketsLabel.setText("Rate limited: " + sample.get(TrafficStatistics.Snapshot.RATE_LIMITED));
+
+        double elapsedSeconds = previous == null ? 0 : (sample.getTimestampMs() - previous.getTimestampMs()) / 1000.0;
+        if (elapsedSeconds > 0) {
+            double allowedRate = (sample.get(TrafficStatistics.Snapshot.ALLOWED) - previous.get(TrafficStatistics.Snapshot.ALLOWED)) / elapsedSeconds;
+            double deniedRate = (sample.get(TrafficStatistics.Snapshot.DENIED) - previous.get(TrafficStatistics.Snapshot.DENIED)) / elapsedSeconds;
+            allowedRateLabel.setText(String.format("Allowed/s: %.1f", allowedRate));
+            deniedRateLabel.setText(String.format("Denied/s: %.1f", deniedRate));
+            throughputSparkline.addSample(allowedRate, deniedRate);
+        }
+        appStatisticsTableModel.update(sample, elapsedSeconds);
+    }
+
     // --- NEW METHOD to show interface selection dialog ---
     private PcapNetworkInterface showInterfaceSelectionDialog() {
         // Uses the class field 'availableInterfaces' which was populated by startRealTimeButton's action
@@ -210,44 +255,9 @@ public class SimpleFirewallGUI extends JFrame {
         });
     }
 
+    // Safe to call from the capture thread; rows reach the table on the next frame.
     public void addPacketToLiveLogTable(DecisionResult decisionResult, String sourceIp, int sourcePort) {
-        SwingUtilities.invokeLater(() -> {
-            if (liveLogTableModel != null) {
-                NetworkRequest request = decisionResult.request;
-                String timeStr = new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(request.getTimestamp()));
-                liveLogTableModel.addRow(new Object[]{
-                        timeStr,
-                        request.getProtocol(),
-                        sourceIp,
-                        sourcePort,
-                        request.getTargetIP(),
-                        request.getPort(),
-                        request.getApplicationName(),
-                        decisionResult.decision,
-                        decisionResult.reason
-                });
-                if (liveLogTable.getRowCount() > 0) {
-                    liveLogTable.scrollRectToVisible(liveLogTable.getCellRect(liveLogTable.getRowCount() - 1, 0, true));
-                }
-                if (liveLogTableModel.getRowCount() > 2000) {
-                    liveLogTableModel.removeRow(0);
-                }
-            }
-        });
-    }
-
-    public void updateStatistics(String decision) {
-        SwingUtilities.invokeLater(() -> {
-            totalPacketCount++;
-            if ("ALLOW".equalsIgnoreCase(decision)) {
-                allowedPacketCount++;
-            } else if ("DENY".equalsIgnoreCase(decision)) {
-                deniedPacketCount++;
-            }
-            totalPacketsLabel.setText("Total: " + totalPacketCount);
-            allowedPacketsLabel.setText("Allowed: " + allowedPacketCount);
-            deniedPacketsLabel.setText("Denied: " + deniedPacketCount);
-        });
+        liveLogTableModel.add(decisionResult, sourceIp, sourcePort);
     }
 }
 
@@ -256,6 +266,7 @@ class TrafficLogTableCellRenderer extends DefaultTableCellRenderer {
     // ... (your existing implementation for coloring rows) ...
     private static final Color ALLOW_COLOR = new Color(220, 255, 220);
     private static final Color DENY_COLOR = new Color(255, 220, 220);
+    private static final Color RATE_LIMITED_COLOR = new Color(255, 235, 200);
 
     @Override
     public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
@@ -264,13 +275,15 @@ class TrafficLogTableCellRenderer extends DefaultTableCellRenderer {
         
         if (!isSelected) { // Only apply custom background if not selected
             if (row < table.getModel().getRowCount()) {
-                Object decisionObj = table.getModel().getValueAt(row, 7); // Decision is column 7
+                Object decisionObj = table.getModel().getValueAt(row, LiveTrafficTableModel.DECISION_COLUMN);
                 if (decisionObj != null) {
                     String decision = decisionObj.toString();
                     if ("ALLOW".equalsIgnoreCase(decision)) {
                         c.setBackground(ALLOW_COLOR);
                     } else if ("DENY".equalsIgnoreCase(decision)) {
                         c.setBackground(DENY_COLOR);
+                    } else if ("RATE_LIMITED".equalsIgnoreCase(decision)) {
+                        c.setBackground(RATE_LIMITED_COLOR);
                     } else {
                         c.setBackground(table.getBackground());
                     }
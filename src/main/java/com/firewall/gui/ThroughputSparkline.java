@@ -0,0 +1,71 @@
+package com.firewall.gui;
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+// Tiny rolling chart of requests per second (allowed stacked under denied), one point per
+// statistics sample. Only touched on the EDT.
+class ThroughputSparkline extends JComponent {
+    private static final Color ALLOW_COLOR = new Color(60, 160, 60);
+    private static final Color DENY_COLOR = new Color(200, 60, 60);
+
+    private final double[] allowedRates;
+    private final double[] deniedRates;
+    private int start;
+    private int size;
+
+    ThroughputSparkline(int samples) {
+        this.allowedRates = new double[samples];
+        this.deniedRates = new double[samples];
+        setPreferredSize(new Dimension(samples * 2, 28));
+        setToolTipText("Requests per second (green: allowed, red: denied)");
+    }
+
+    void addSample(double allowedPerSecond, double deniedPerSecond) {
+        int index;
+        if (size < allowedRates.length) {
+            index = (start + size++) % allowedRates.length;
+        } else {
+            index = start;
+            start = (start + 1) % allowedRates.length;
+        }
+        allowedRates[index] = allowedPerSecond;
+        deniedRates[index] = deniedPerSecond;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            int width = getWidth();
+            int height = getHeight() - 2;
+            double max = 1;
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % allowedRates.length;
+                max = Math.max(max, allowedRates[index] + deniedRates[index]);
+            }
+            double step = (double) width / allowedRates.length;
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % allowedRates.length;
+                int x = (int) (width - (size - i) * step);
+                int barWidth = Math.max(1, (int) Math.ceil(step));
+                int allowedHeight = (int) Math.round(allowedRates[index] / max * height);
+                int deniedHeight = (int) Math.round(deniedRates[index] / max * height);
+                g2.setColor(ALLOW_COLOR);
+                g2.fillRect(x, height + 1 - allowedHeight, barWidth, allowedHeight);
+                g2.setColor(DENY_COLOR);
+                g2.fillRect(x, height + 1 - allowedHeight - deniedHeight, barWidth, deniedHeight);
+            }
+            g2.setColor(Color.GRAY);
+            g2.drawString(String.format("%.0f/s", max), 2, 11);
+        } finally {
+            g2.dispose();
+        }
+    }
+}
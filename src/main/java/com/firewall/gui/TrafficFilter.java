@@ -0,0 +1,37 @@
+package com.firewall.gui;
+
+import java.util.Locale;
+
+// Criteria from the live table's filter bar. Blank fields don't restrict anything.
+// App and decision compare case-insensitively; the IP matches either the source or the
+// destination address; 'text' is a substring search over the domain and the reason.
+final class TrafficFilter {
+    static final TrafficFilter NONE = new TrafficFilter(null, null, null, null);
+
+    final String app;
+    final String ip;
+    final String decision;
+    final String text;
+
+    TrafficFilter(String app, String ip, String decision, String text) {
+        this.app = normalize(app);
+        this.ip = blankToNull(ip);
+        this.decision = normalize(decision);
+        this.text = normalize(text);
+    }
+
+    boolean isEmpty() {
+        return app == null && ip == null && decision == null && text == null;
+    }
+
+    static String normalize(String value) {
+        String trimmed = blankToNull(value);
+        return trimmed == null ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    private static String blankToNull(String value) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
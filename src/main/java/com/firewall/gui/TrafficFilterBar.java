@@ -0,0 +1,64 @@
+package com.firewall.gui;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+
+// Filter bar above the live traffic table. Every edit just posts a new TrafficFilter to
+// FilteredTrafficTableModel, which does the matching off the EDT.
+class TrafficFilterBar extends JPanel {
+    private final FilteredTrafficTableModel model;
+    private final JTextField appField = new JTextField(10);
+    private final JTextField ipField = new JTextField(10);
+    private final JComboBox<String> decisionBox = new JComboBox<>(new String[]{"Any", "ALLOW", "DENY", "RATE_LIMITED"});
+    private final JTextField searchField = new JTextField(14);
+    private final JLabel matchLabel = new JLabel(" ");
+
+    TrafficFilterBar(FilteredTrafficTableModel model) {
+        super(new FlowLayout(FlowLayout.LEFT));
+        this.model = model;
+
+        add(new JLabel("App:"));
+        add(appField);
+        add(new JLabel("IP:"));
+        add(ipField);
+        add(new JLabel("Decision:"));
+        add(decisionBox);
+        add(new JLabel("Search:"));
+        add(searchField);
+        JButton clearButton = new JButton("Clear");
+        add(clearButton);
+        add(matchLabel);
+
+        DocumentListener onEdit = new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { applyFilter(); }
+            @Override public void removeUpdate(DocumentEvent e) { applyFilter(); }
+            @Override public void changedUpdate(DocumentEvent e) { applyFilter(); }
+        };
+        appField.getDocument().addDocumentListener(onEdit);
+        ipField.getDocument().addDocumentListener(onEdit);
+        searchField.getDocument().addDocumentListener(onEdit);
+        decisionBox.addActionListener(e -> applyFilter());
+        clearButton.addActionListener(e -> {
+            appField.setText("");
+            ipField.setText("");
+            searchField.setText("");
+            decisionBox.setSelectedIndex(0);
+        });
+        model.addTableModelListener(e -> updateMatchLabel());
+    }
+
+    private void applyFilter() {
+        String decision = decisionBox.getSelectedIndex() == 0 ? null : (String) decisionBox.getSelectedItem();
+        model.setFilter(new TrafficFilter(appField.getText(), ipField.getText(), decision, searchField.getText()));
+    }
+
+    private void updateMatchLabel() {
+        if (model.isFiltering()) {
+            matchLabel.setText(model.getRowCount() + " of " + model.getSourceRowCount() + " rows match");
+        } else {
+            matchLabel.setText(" ");
+        }
+    }
+}
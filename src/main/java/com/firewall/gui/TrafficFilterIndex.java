@@ -0,0 +1,222 @@
+package com.firewall.gui;
+
+import com.firewall.model.NetworkRequest;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+// Worker-thread mirror of the rows in the live traffic window, indexed for filtering.
+//
+// App, IP and decision are dictionary-encoded to int codes when a row arrives, and every
+// code keeps a postings list of its rows in arrival order. Testing a new row against the
+// filter is then a few int compares, and a new filter starts from the shortest postings
+// list of its criteria instead of the whole window. Only the free-text part has to look
+// at the strings.
+//
+// The window drops rows from the head and appends at the tail, so eviction is always at
+// the head of every postings list and of the match list. Not thread-safe: owned by the
+// filter worker thread.
+final class TrafficFilterIndex {
+    private static final int APP = 0;
+    private static final int IP = 1;
+    private static final int DECISION = 2;
+    private static final int NO_CODE = -1;
+
+    private final int capacity;
+    private final ArrayDeque<IndexedRow> rows = new ArrayDeque<>();
+    private final ArrayDeque<TrafficRow> matches = new ArrayDeque<>();
+    private final Column[] columns = {new Column(), new Column(), new Column()}; // APP, IP, DECISION
+
+    private TrafficFilter filter = TrafficFilter.NONE;
+    private int[] filterCodes = {NO_CODE, NO_CODE, NO_CODE}; // per column, NO_CODE = unrestricted
+    private int droppedMatches;  // matches evicted from the head since the last snapshot
+    private int appendedMatches; // matches appended at the tail since the last snapshot
+
+    TrafficFilterIndex(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void setFilter(TrafficFilter filter) {
+        this.filter = filter;
+        compileFilter();
+        matches.clear();
+        if (!filter.isEmpty()) {
+            for (IndexedRow row : candidates()) {
+                if (matches(row)) matches.addLast(row.row);
+            }
+        }
+        droppedMatches = 0;
+        appendedMatches = 0;
+    }
+
+    void add(TrafficRow row) {
+        if (rows.size() == capacity) {
+            evictOldest();
+        }
+        NetworkRequest request = row.result.request;
+        IndexedRow indexed = new IndexedRow(row,
+                encode(APP, TrafficFilter.normalize(request.getApplicationName())),
+                encode(IP, row.sourceIp),
+                encode(IP, request.getTargetIP()),
+                encode(DECISION, TrafficFilter.normalize(row.result.decision)));
+        rows.addLast(indexed);
+        addPosting(APP, indexed.app, indexed);
+        addPosting(IP, indexed.sourceIp, indexed);
+        if (indexed.targetIp != indexed.sourceIp) addPosting(IP, indexed.targetIp, indexed);
+        addPosting(DECISION, indexed.decision, indexed);
+
+        if (!filter.isEmpty() && matches(indexed)) {
+            matches.addLast(row);
+            appendedMatches++;
+        }
+        if (dictionarySize() > 4 * capacity + 1024) {
+            rebuildDictionaries();
+        }
+    }
+
+    boolean hasChanges() {
+        return droppedMatches > 0 || appendedMatches > 0;
+    }
+
+    int getDroppedMatches() {
+        return droppedMatches;
+    }
+
+    int getAppendedMatches() {
+        return appendedMatches;
+    }
+
+    TrafficRow[] snapshotMatches() {
+        droppedMatches = 0;
+        appendedMatches = 0;
+        return matches.toArray(new TrafficRow[0]);
+    }
+
+    private boolean matches(IndexedRow row) {
+        if (filterCodes[APP] != NO_CODE && row.app != filterCodes[APP]) return false;
+        if (filterCodes[IP] != NO_CODE && row.sourceIp != filterCodes[IP] && row.targetIp != filterCodes[IP]) return false;
+        if (filterCodes[DECISION] != NO_CODE && row.decision != filterCodes[DECISION]) return false;
+        return filter.text == null || containsText(row.row);
+    }
+
+    private boolean containsText(TrafficRow row) {
+        return containsIgnoreCase(row.result.request.getTargetDomain(), filter.text)
+                || containsIgnoreCase(row.result.reason, filter.text);
+    }
+
+    private static boolean containsIgnoreCase(String haystack, String lowerNeedle) {
+        if (haystack == null) return false;
+        int last = haystack.length() - lowerNeedle.length();
+        for (int i = 0; i <= last; i++) {
+            if (haystack.regionMatches(true, i, lowerNeedle, 0, lowerNeedle.length())) return true;
+        }
+        return false;
+    }
+
+    // Smallest postings list among the indexed criteria, or every row if there are none
+    private Iterable<IndexedRow> candidates() {
+        Iterable<IndexedRow> best = rows;
+        int bestSize = rows.size();
+        for (int column = APP; column <= DECISION; column++) {
+            if (filterCodes[column] == NO_CODE) continue;
+            ArrayDeque<IndexedRow> list = columns[column].postings.get(filterCodes[column]);
+            int size = list == null ? 0 : list.size();
+            if (size < bestSize) {
+                best = list == null ? new ArrayDeque<>() : list;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    // The filter's values are interned like row values, so rows arriving later with the
+    // same value get the same code
+    private void compileFilter() {
+        filterCodes = new int[]{
+                filter.app == null ? NO_CODE : encode(APP, filter.app),
+                filter.ip == null ? NO_CODE : encode(IP, filter.ip),
+                filter.decision == null ? NO_CODE : encode(DECISION, filter.decision)};
+    }
+
+    private int encode(int column, String value) {
+        Map<String, Integer> dictionary = columns[column].dictionary;
+        Integer code = dictionary.get(value == null ? "" : value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.put(value == null ? "" : value, code);
+        }
+        return code;
+    }
+
+    private void addPosting(int column, int code, IndexedRow row) {
+        columns[column].postings.computeIfAbsent(code, c -> new ArrayDeque<>()).addLast(row);
+    }
+
+    private void removePosting(int column, int code) {
+        Map<Integer, ArrayDeque<IndexedRow>> postings = columns[column].postings;
+        ArrayDeque<IndexedRow> list = postings.get(code);
+        list.pollFirst();
+        if (list.isEmpty()) postings.remove(code);
+    }
+
+    private void evictOldest() {
+        IndexedRow oldest = rows.pollFirst();
+        removePosting(APP, oldest.app);
+        removePosting(IP, oldest.sourceIp);
+        if (oldest.targetIp != oldest.sourceIp) removePosting(IP, oldest.targetIp);
+        removePosting(DECISION, oldest.decision);
+        if (!matches.isEmpty() && matches.peekFirst() == oldest.row) {
+            matches.pollFirst();
+            if (appendedMatches > 0 && matches.size() < appendedMatches) {
+                appendedMatches--; // appended and evicted before anyone saw it
+            } else {
+                droppedMatches++;
+            }
+        }
+    }
+
+    private int dictionarySize() {
+        return columns[APP].dictionary.size() + columns[IP].dictionary.size() + columns[DECISION].dictionary.size();
+    }
+
+    // Codes are never reused, so a steady stream of new IPs would grow the dictionaries
+    // forever; once they are well beyond what the window can reference, re-encode from scratch.
+    private void rebuildDictionaries() {
+        IndexedRow[] live = rows.toArray(new IndexedRow[0]);
+        for (int column = APP; column <= DECISION; column++) {
+            columns[column].dictionary.clear();
+            columns[column].postings.clear();
+        }
+        rows.clear();
+        TrafficFilter current = filter;
+        filter = TrafficFilter.NONE;
+        for (IndexedRow row : live) {
+            add(row.row);
+        }
+        filter = current;
+        compileFilter(); // matches are unchanged, only the codes moved
+    }
+
+    // Dictionary and postings lists of one indexed column
+    private static final class Column {
+        final Map<String, Integer> dictionary = new HashMap<>();
+        final Map<Integer, ArrayDeque<IndexedRow>> postings = new HashMap<>();
+    }
+
+    private static final class IndexedRow {
+        final TrafficRow row;
+        final int app;
+        final int sourceIp;
+        final int targetIp;
+        final int decision;
+
+        IndexedRow(TrafficRow row, int app, int sourceIp, int targetIp, int decision) {
+            this.row = row;
+            this.app = app;
+            this.sourceIp = sourceIp;
+            this.targetIp = targetIp;
+            this.decision = decision;
+        }
+    }
+}
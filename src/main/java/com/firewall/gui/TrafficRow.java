@@ -0,0 +1,48 @@
+package com.firewall.gui;
+
+import com.firewall.model.DecisionResult;
+import com.firewall.model.NetworkRequest;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// One row of the live traffic table. Immutable apart from the lazily formatted time, which
+// is only touched on the EDT.
+final class TrafficRow {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    final long sequence; // position in the producer ring, assigned by LiveTrafficTableModel
+    final DecisionResult result;
+    final String sourceIp;
+    final int sourcePort;
+    private String timeText;
+
+    TrafficRow(long sequence, DecisionResult result, String sourceIp, int sourcePort) {
+        this.sequence = sequence;
+        this.result = result;
+        this.sourceIp = sourceIp;
+        this.sourcePort = sourcePort;
+    }
+
+    Object getColumn(int column) {
+        NetworkRequest request = result.request;
+        switch (column) {
+            case 0:
+                if (timeText == null) {
+                    timeText = TIME_FORMAT.format(Instant.ofEpochMilli(request.getTimestamp()));
+                }
+                return timeText;
+            case 1: return request.getProtocol();
+            case 2: return sourceIp;
+            case 3: return sourcePort;
+            case 4: return request.getTargetIP();
+            case 5: return request.getPort();
+            case 6: return request.getApplicationName();
+            case 7: return result.decision;
+            case 8: return result.reason;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.firewall.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Duration covers writing the alert line, so slow alert I/O shows up next to the
+// file-write events of the same thread.
+@Name("com.firewall.Alert")
+@Label("Firewall Alert")
+@Category({"Firewall"})
+@Description("Alert written to the alert log (after cooldown and rate limiting)")
+@Enabled(false)
+@StackTrace(false)
+public class AlertJfrEvent extends Event {
+    @Label("Level")
+    public String level;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Application")
+    public String application;
+
+    @Label("Details")
+    public String details;
+}
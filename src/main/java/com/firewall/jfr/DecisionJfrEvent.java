@@ -0,0 +1,38 @@
+package com.firewall.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// One firewall verdict, timed from policy lookup to the end of FirewallAgent.processRequest.
+// Off unless a recording enables it; firewall.jfc records only decisions slower than its
+// threshold, so a busy host doesn't flood the recording.
+@Name("com.firewall.Decision")
+@Label("Firewall Decision")
+@Category({"Firewall"})
+@Description("A verdict issued by FirewallAgent")
+@Enabled(false)
+@Threshold("1 ms")
+@StackTrace(false)
+public class DecisionJfrEvent extends Event {
+    @Label("Application")
+    public String application;
+
+    @Label("Verdict")
+    public String verdict;
+
+    @Label("Rule")
+    @Description("Which part of the policy decided: global-default, policy-match, policy-violation, time-window, rate-limit or blocklist")
+    public String rule;
+
+    @Label("Protocol")
+    public String protocol;
+
+    @Label("Target Domain")
+    public String targetDomain;
+}
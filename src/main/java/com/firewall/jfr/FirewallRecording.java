@@ -0,0 +1,56 @@
+package com.firewall.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Starts a flight recording from inside the firewall when -Dfirewall.jfr=<file.jfr> is set:
+// the JDK "default" profile (GC, I/O, locks, ...) plus the bundled firewall.jfc, written to
+// the file when the JVM exits.
+public final class FirewallRecording {
+    public static final String FILE_PROPERTY = "firewall.jfr";
+    static final String SETTINGS_RESOURCE = "/firewall.jfc";
+
+    private FirewallRecording() {
+    }
+
+    public static void startIfRequested() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.trim().isEmpty()) {
+            return;
+        }
+        try {
+            Path destination = Paths.get(file.trim());
+            Recording recording = new Recording(settings());
+            recording.setName("firewall");
+            recording.setToDisk(true);
+            recording.setDestination(destination); // written out when the recording stops
+            recording.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(recording::stop, "jfr-shutdown"));
+            System.out.println("Flight recording started, will be written to " + destination.toAbsolutePath());
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            System.err.println("Could not start flight recording: " + e.getMessage());
+        }
+    }
+
+    // The firewall profile layered over the JDK default one
+    static Map<String, String> settings() throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (InputStream in = FirewallRecording.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Missing " + SETTINGS_RESOURCE + " on the classpath");
+            }
+            settings.putAll(Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8)).getSettings());
+        }
+        return settings;
+    }
+}
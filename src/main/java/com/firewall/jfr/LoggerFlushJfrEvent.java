@@ -0,0 +1,27 @@
+package com.firewall.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One batch written by the activity log writer thread.
+@Name("com.firewall.LoggerFlush")
+@Label("Activity Log Flush")
+@Category({"Firewall"})
+@Description("Batch of activity log entries written (and flushed when the queue ran dry)")
+@Enabled(false)
+@StackTrace(false)
+public class LoggerFlushJfrEvent extends Event {
+    @Label("Entries")
+    public int entries;
+
+    @Label("Flushed")
+    public boolean flushed;
+
+    @Label("Queue Depth After")
+    public int queueDepthAfter;
+}
@@ -0,0 +1,41 @@
+package com.firewall.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.firewall.PolicyLoad")
+@Label("Policy Load")
+@Category({"Firewall"})
+@Description("Policy file parsed into a new snapshot, at startup or on reload")
+@Enabled(false)
+@StackTrace(false)
+public class PolicyLoadJfrEvent extends Event {
+    @Label("Policy File")
+    public String policyFile;
+
+    @Label("Version")
+    public String version;
+
+    @Label("Generation")
+    public long generation;
+
+    @Label("Reload")
+    public boolean reload;
+
+    @Label("Applications")
+    public int applications;
+
+    @Label("Domain Rules")
+    public int domainRules;
+
+    @Label("Protocol Rules")
+    public int protocolRules;
+
+    @Label("IP Rules")
+    public int ipRules;
+}
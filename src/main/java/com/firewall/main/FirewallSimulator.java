@@ -1,13 +1,34 @@
 package com.firewall.main;
 
+import com.firewall.analysis.PolicyAnalyzer;
+import com.firewall.analysis.WhatIfAnalysis;
+import com.firewall.blocklist.BlocklistCompiler;
+import com.firewall.blocklist.BlocklistLoader;
+import com.firewall.central.EventCollector;
+import com.firewall.central.EventShipper;
+import com.firewall.central.PolicyClient;
+import com.firewall.central.PolicyServer;
+import com.firewall.checkpoint.StateCheckpointer;
+import com.firewall.classify.ServiceClassifier;
 import com.firewall.core.ActivityLogger;
 import com.firewall.core.AlertEngine;
 import com.firewall.core.FirewallAgent;
+import com.firewall.core.OverloadController;
 import com.firewall.core.PolicyManager;
 import com.firewall.gui.SimpleFirewallGUI;
+import com.firewall.jfr.FirewallRecording;
+import com.firewall.metrics.CaptureCounters;
+import com.firewall.metrics.MetricsHttpServer;
+import com.firewall.metrics.PipelineMetrics;
+import com.firewall.metrics.Stage;
 import com.firewall.model.DecisionResult;
 import com.firewall.model.NetworkRequest;
+import com.firewall.query.LogQueryTool;
 import com.firewall.simulation.ApplicationSimulator;
+import com.firewall.simulation.LoadGenerator;
+import com.firewall.simulation.MultiAppSimulation;
+import com.firewall.trace.TraceRecorder;
+import com.firewall.trace.TraceReplayer;
 
 import javax.swing.SwingUtilities;
 // REMOVE Scanner if no longer needed after interface selection moves to GUI
@@ -20,30 +41,108 @@ import org.pcap4j.packet.*;
 import org.pcap4j.packet.namednumber.*;
 import java.net.InetAddress;
 import java.io.IOException; // Still needed if Pcaps.findAllDevs() were here, but it's moved
+import java.util.Arrays;
 import java.util.List;
 
 public class FirewallSimulator {
     private static final String POLICY_FILE = "policies.txt";
     private static final String ACTIVITY_LOG_FILE = "firewall_activity.log";
     private static final String ALERT_LOG_FILE = "alerts.log";
+    private static final String SERVICES_FILE = ServiceClassifier.DEFAULT_FILE;
 
     private static FirewallAgent staticFirewallAgent;
     private static SimpleFirewallGUI staticGuiInstance;
     private static PcapHandle staticCaptureHandle;
+    private static OverloadController staticOverloadController; // null with -Dfirewall.overload=off
+    private static final CaptureCounters captureCounters = new CaptureCounters();
+    private static final long CAPTURE_STATS_INTERVAL_MS = 1000;
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("--query")) {
+            // Read-only log search, doesn't need the firewall itself
+            LogQueryTool.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--load")) {
+            // Synthetic load against its own agent and log files
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--multi-app")) {
+            // Thousands of simulated apps on (virtual) threads sharing one agent
+            MultiAppSimulation.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--policy-server")) {
+            PolicyServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--collector")) {
+            EventCollector.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--whatif")) {
+            // Offline comparison of a candidate policy file, never touches the live logs
+            WhatIfAnalysis.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--analyze-policies")) {
+            // Redundant and suspicious policy entries, and the canonical file the loader effectively uses
+            PolicyAnalyzer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--compile-blocklist")) {
+            // Threat-intel feeds -> a new version of the mapped file -Dfirewall.blocklist=<file> loads
+            BlocklistCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("--replay")) {
+            TraceReplayer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         System.out.println("Initializing Context-Aware Application Firewall Prototype...");
+        FirewallRecording.startIfRequested(); // before the policies load, so the load is recorded
 
         PolicyManager policyManager = new PolicyManager(POLICY_FILE);
+        PolicyClient.startIfRequested(policyManager); // -Dfirewall.policy.server=<host>:<port>
         ActivityLogger activityLogger = new ActivityLogger(ACTIVITY_LOG_FILE);
         AlertEngine alertEngine = new AlertEngine(ALERT_LOG_FILE);
+        EventShipper eventShipper = EventShipper.startIfRequested(); // -Dfirewall.collector=<host>:<port>
+        activityLogger.setEventShipper(eventShipper);
+        alertEngine.setEventShipper(eventShipper);
         staticFirewallAgent = new FirewallAgent(policyManager, activityLogger, alertEngine);
+        StateCheckpointer checkpointer = StateCheckpointer.startIfEnabled(); // -Dfirewall.checkpoint=<file>|off
+        if (checkpointer != null) {
+            checkpointer.register("traffic-stats", staticFirewallAgent.getStatistics());
+            alertEngine.registerCheckpointState(checkpointer);
+        }
+        // Queue, watchdog and load shedding between packet capture and the decisions
+        staticOverloadController = OverloadController.startIfEnabled(staticFirewallAgent, alertEngine,
+                FirewallSimulator::reportDecision); // -Dfirewall.overload=off to decide on the capture thread
+        BlocklistLoader.startIfRequested(staticFirewallAgent); // -Dfirewall.blocklist=<compiled file>
+        TraceRecorder.startIfRequested(staticFirewallAgent); // -Dfirewall.trace=<file>
+        PipelineMetrics.registerMBeans(staticFirewallAgent.getStatistics(), // no-op with -Dfirewall.metrics=false
+                alertEngine.getDetectorPipeline());
+        startMetricsEndpoint(policyManager, activityLogger, alertEngine);
+        // Decide queued requests, flush queued activity log entries and write a last state checkpoint however the JVM
+        // exits (the GUI exits on close)
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (staticOverloadController != null) {
+                staticOverloadController.close(); // queued decisions still get logged
+            }
+            if (checkpointer != null) {
+                checkpointer.close();
+            }
+            activityLogger.close();
+        }, "firewall-shutdown"));
         ApplicationSimulator appSimulator = new ApplicationSimulator(staticFirewallAgent);
 
         if (args.length > 0 && args[0].equalsIgnoreCase("--gui")) {
             System.out.println("Starting GUI mode...");
             SwingUtilities.invokeLater(() -> {
-                staticGuiInstance = new SimpleFirewallGUI(appSimulator, ACTIVITY_LOG_FILE, ALERT_LOG_FILE);
+                staticGuiInstance = new SimpleFirewallGUI(appSimulator, staticFirewallAgent.getStatistics(),
+                        ACTIVITY_LOG_FILE, ALERT_LOG_FILE);
                 staticGuiInstance.setVisible(true);
                 // GUI's "Start Real-Time Capture" button will now handle starting the capture
             });
@@ -67,6 +166,8 @@ public class FirewallSimulator {
                  appSimulator.simulateSingleRequest("BrowserApp", "news.google.com", "8.8.8.8", "HTTPS", 443);
                  // ... other simulation calls
             }
+            alertEngine.shutdown(); // let detectors finish queued decisions before exiting
+            activityLogger.close();
             System.out.println("\nFirewall simulation finished.");
         }
 
@@ -75,6 +176,34 @@ public class FirewallSimulator {
         }
     }
 
+    // Serves Prometheus metrics on localhost when started with -Dfirewall.metrics.port=<port>.
+    private static void startMetricsEndpoint(PolicyManager policyManager, ActivityLogger activityLogger,
+                                             AlertEngine alertEngine) {
+        String port = System.getProperty(MetricsHttpServer.PORT_PROPERTY);
+        if (port == null || port.trim().isEmpty()) {
+            return;
+        }
+        try {
+            MetricsHttpServer.start(Integer.parseInt(port.trim()), staticFirewallAgent.getStatistics(),
+                    policyManager, activityLogger, alertEngine, captureCounters, staticOverloadController);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + MetricsHttpServer.PORT_PROPERTY + ": " + port);
+        } catch (IOException e) {
+            System.err.println("Could not start metrics endpoint on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    // Copies libpcap's counters for the handle into captureCounters.
+    private static void sampleCaptureStats(PcapHandle handle) {
+        try {
+            PcapStat stats = handle.getStats();
+            captureCounters.update(stats.getNumPacketsReceived(), stats.getNumPacketsDropped(),
+                    stats.getNumPacketsDroppedByIf());
+        } catch (PcapNativeException | NotOpenException e) {
+            System.err.println("Could not read capture statistics: " + e.getMessage());
+        }
+    }
+
     public static void stopRealTimePacketCapture() {
         if (staticCaptureHandle != null && staticCaptureHandle.isOpen()) {
             try {
@@ -122,6 +251,7 @@ public class FirewallSimulator {
         try {
             // Assign to the static field so stopRealTimePacketCapture() and shutdown hook can access it
             staticCaptureHandle = nifToUse.openLive(snapLen, mode, timeoutMillis);
+            captureCounters.startSession();
         } catch (PcapNativeException e) {
             e.printStackTrace();
             String errorMsg = "Error opening live capture on " + nifToUse.getName() + ": " + e.getMessage();
@@ -140,9 +270,22 @@ public class FirewallSimulator {
         System.out.println("Starting packet capture loop...");
         if (staticGuiInstance != null) staticGuiInstance.logMessage("INFO: Packet capture started.");
 
+        final PcapHandle captureHandle = staticCaptureHandle;
+        // Reloaded per capture session; only the capture thread uses it
+        final ServiceClassifier serviceClassifier = ServiceClassifier.load(SERVICES_FILE);
+        System.out.println("Service classifier: " + serviceClassifier);
         PacketListener listener = new PacketListener() {
+            private long lastStatsSampleMs;
+
             @Override
             public void gotPacket(Packet packet) {
+                PipelineMetrics.countPacket();
+                long nowMs = System.currentTimeMillis();
+                if (nowMs - lastStatsSampleMs >= CAPTURE_STATS_INTERVAL_MS) {
+                    lastStatsSampleMs = nowMs; // pcap_stats is read on the capture thread only
+                    sampleCaptureStats(captureHandle);
+                }
+                long stageStart = PipelineMetrics.start();
                 String sourceIp = "N/A";
                 String destIp = "N/A";
                 int sourcePort = 0;
@@ -150,6 +293,8 @@ public class FirewallSimulator {
                 String protocol = "N/A";
                 String appName = "UnknownApp";
                 String targetDomainForRequest = "N/A";
+                String transport = null;
+                Packet transportPayload = null;
 
                 IpPacket ipPacket = packet.get(IpPacket.class);
                 if (ipPacket != null) {
@@ -162,41 +307,35 @@ public class FirewallSimulator {
                         TcpPacket tcpPacket = packet.get(TcpPacket.class);
                         sourcePort = tcpPacket.getHeader().getSrcPort().valueAsInt();
                         destPort = tcpPacket.getHeader().getDstPort().valueAsInt();
-                        appName = getApplicationNameFromPort(destPort, "TCP", packet);
+                        transportPayload = tcpPacket.getPayload();
+                        transport = "TCP";
                     } else if (packet.contains(UdpPacket.class)) {
                         UdpPacket udpPacket = packet.get(UdpPacket.class);
                         sourcePort = udpPacket.getHeader().getSrcPort().valueAsInt();
                         destPort = udpPacket.getHeader().getDstPort().valueAsInt();
-                        appName = getApplicationNameFromPort(destPort, "UDP", packet);
+                        transportPayload = udpPacket.getPayload();
+                        transport = "UDP";
                     } else if (protocol.startsWith("ICMP")) {
                         appName = protocol;
                     }
                 } else {
                     return; 
                 }
+                stageStart = PipelineMetrics.lap(Stage.PARSE, stageStart);
+                if (transport != null) {
+                    appName = serviceClassifier.classify(transport, sourceIp, sourcePort, destIp, destPort,
+                            transportPayload);
+                    PipelineMetrics.stop(Stage.CLASSIFY, stageStart);
+                }
 
-                NetworkRequest realNetworkRequest = new NetworkRequest(
-                        appName, targetDomainForRequest, destIp, protocol, destPort);
+                NetworkRequest realNetworkRequest = new NetworkRequest(appName, targetDomainForRequest, destIp,
+                        protocol, destPort, sourceIp, System.currentTimeMillis(), packet.length());
                 
-                DecisionResult decisionResult = staticFirewallAgent.processRequest(realNetworkRequest);
-
-                String consoleLog = String.format("PROCESSED: %s -> %s (Reason: %s)",
-                    realNetworkRequest.toString(), decisionResult.decision, decisionResult.reason);
-                System.out.println(consoleLog);
-
-                if (staticGuiInstance != null) {
-                    final String fSrcIp = sourceIp; 
-                    final int fSrcPort = sourcePort;   
-                    final DecisionResult fDecisionResult = decisionResult; 
-                    
-                    SwingUtilities.invokeLater(() -> {
-                        staticGuiInstance.addPacketToLiveLogTable(
-                            fDecisionResult, 
-                            fSrcIp,          
-                            fSrcPort         
-                        );
-                        staticGuiInstance.updateStatistics(fDecisionResult.decision);
-                    });
+                if (staticOverloadController != null) {
+                    // Decided on the worker thread, or shed right away if decisions can't keep up
+                    staticOverloadController.submit(realNetworkRequest, sourcePort);
+                } else {
+                    reportDecision(staticFirewallAgent.processRequest(realNetworkRequest), sourcePort);
                 }
             }
         };
@@ -224,6 +363,7 @@ public class FirewallSimulator {
             }
         } finally {
             if (staticCaptureHandle != null && staticCaptureHandle.isOpen()) {
+                sampleCaptureStats(staticCaptureHandle);
                 System.out.println("Exiting capture loop. Closing PcapHandle.");
                 if (staticGuiInstance != null) staticGuiInstance.logMessage("INFO: Packet capture stopped.");
                 staticCaptureHandle.close();
@@ -244,27 +384,19 @@ public class FirewallSimulator {
         if (staticGuiInstance != null) staticGuiInstance.logMessage("INFO: Real-time processing method finished.");
     }
 
-    private static String getApplicationNameFromPort(int port, String protocol, Packet packet) {
-        if ("TCP".equalsIgnoreCase(protocol)) {
-            switch (port) {
-                case 80: return "HTTP";
-                case 443: return "HTTPS";
-                case 21: return "FTP";
-                case 22: return "SSH";
-                case 25: return "SMTP";
-                case 53: return "DNS_TCP";
-                default: return "GenericTCP";
-            }
-        } else if ("UDP".equalsIgnoreCase(protocol)) {
-            switch (port) {
-                case 53: return "DNS"; // Often DNS_UDP is more specific if you use that
-                case 67: return "DHCP_Server";
-                case 68: return "DHCP_Client";
-                case 161: return "SNMP";
-                case 123: return "NTP";
-                default: return "GenericUDP";
-            }
+    // Console line and GUI row for a captured packet's verdict; called from the decision worker
+    // when the overload controller is on, otherwise from the capture thread.
+    private static void reportDecision(DecisionResult decisionResult, int sourcePort) {
+        String consoleLog = String.format("PROCESSED: %s -> %s (Reason: %s)",
+            decisionResult.request.toString(), decisionResult.decision, decisionResult.reason);
+        System.out.println(consoleLog);
+
+        if (staticGuiInstance != null) {
+            // Safe off the EDT, rows are batched into the table per frame.
+            // Statistics are counted by FirewallAgent and sampled by the GUI.
+            long stageStart = PipelineMetrics.start();
+            staticGuiInstance.addPacketToLiveLogTable(decisionResult, decisionResult.request.getSourceIP(), sourcePort);
+            PipelineMetrics.stop(Stage.GUI_DISPATCH, stageStart);
         }
-        return "UnknownApp";
     }
-}
\ No newline at end of file
+}
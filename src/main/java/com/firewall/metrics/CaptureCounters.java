@@ -0,0 +1,44 @@
+package com.firewall.metrics;
+
+// Packet counters reported by libpcap (pcap_stats). pcap counts per capture handle, so the
+// totals of finished captures are carried over and the getters stay monotonic across
+// stop/start, as Prometheus counters must.
+public class CaptureCounters {
+    private long carriedReceived;
+    private long carriedDropped;
+    private long carriedInterfaceDropped;
+    private long received;
+    private long dropped;
+    private long interfaceDropped;
+
+    // Call when a new capture handle is opened.
+    public synchronized void startSession() {
+        carriedReceived += received;
+        carriedDropped += dropped;
+        carriedInterfaceDropped += interfaceDropped;
+        received = 0;
+        dropped = 0;
+        interfaceDropped = 0;
+    }
+
+    // Latest values for the current handle.
+    public synchronized void update(long received, long dropped, long interfaceDropped) {
+        this.received = received;
+        this.dropped = dropped;
+        this.interfaceDropped = interfaceDropped;
+    }
+
+    public synchronized long getReceived() {
+        return carriedReceived + received;
+    }
+
+    // Dropped by the kernel because the capture buffer was full.
+    public synchronized long getDropped() {
+        return carriedDropped + dropped;
+    }
+
+    // Dropped by the network interface or its driver.
+    public synchronized long getInterfaceDropped() {
+        return carriedInterfaceDropped + interfaceDropped;
+    }
+}
@@ -0,0 +1,63 @@
+package com.firewall.metrics;
+
+import com.firewall.detection.DetectorPipeline;
+import com.firewall.detection.DetectorStats;
+
+class DetectorMetrics implements DetectorMetricsMXBean {
+    private final DetectorPipeline pipeline;
+    private final String detector;
+
+    DetectorMetrics(DetectorPipeline pipeline, String detector) {
+        this.pipeline = pipeline;
+        this.detector = detector;
+    }
+
+    private DetectorStats stats() {
+        for (DetectorStats stats : pipeline.getDetectorStats()) {
+            if (stats.getName().equals(detector)) {
+                return stats;
+            }
+        }
+        return new DetectorStats(detector, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public String getDetector() {
+        return detector;
+    }
+
+    @Override
+    public long getProcessed() {
+        return stats().getProcessed();
+    }
+
+    @Override
+    public long getDropped() {
+        return stats().getDropped();
+    }
+
+    @Override
+    public long getErrors() {
+        return stats().getErrors();
+    }
+
+    @Override
+    public int getBacklog() {
+        return stats().getBacklog();
+    }
+
+    @Override
+    public double getAverageProcessingMicros() {
+        return stats().getAverageProcessingMicros();
+    }
+
+    @Override
+    public double getMaxProcessingMicros() {
+        return stats().getMaxProcessingMicros();
+    }
+
+    @Override
+    public double getMaxQueueDelayMicros() {
+        return stats().getMaxQueueDelayMicros();
+    }
+}
@@ -0,0 +1,22 @@
+package com.firewall.metrics;
+
+// One MBean per alert detector, registered as com.firewall:type=Detector,name=<detector>.
+// Counts are cumulative; the maxima cover the whole run.
+public interface DetectorMetricsMXBean {
+    String getDetector();
+
+    long getProcessed();
+
+    // Events the detector never saw because its own queue was full
+    long getDropped();
+
+    long getErrors();
+
+    int getBacklog();
+
+    double getAverageProcessingMicros();
+
+    double getMaxProcessingMicros();
+
+    double getMaxQueueDelayMicros();
+}
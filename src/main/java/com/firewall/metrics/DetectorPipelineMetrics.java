@@ -0,0 +1,26 @@
+package com.firewall.metrics;
+
+import com.firewall.detection.DetectorPipeline;
+
+class DetectorPipelineMetrics implements DetectorPipelineMetricsMXBean {
+    private final DetectorPipeline pipeline;
+
+    DetectorPipelineMetrics(DetectorPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public long getPublished() {
+        return pipeline.getPublishedCount();
+    }
+
+    @Override
+    public long getDropped() {
+        return pipeline.getDroppedCount();
+    }
+
+    @Override
+    public int getBacklog() {
+        return pipeline.getBacklog();
+    }
+}
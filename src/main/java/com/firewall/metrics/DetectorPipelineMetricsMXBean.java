@@ -0,0 +1,11 @@
+package com.firewall.metrics;
+
+// Registered as com.firewall:type=DetectorPipeline: the queue in front of all detectors.
+public interface DetectorPipelineMetricsMXBean {
+    long getPublished();
+
+    // Decisions no detector saw because the pipeline's ingress queue was full
+    long getDropped();
+
+    int getBacklog();
+}
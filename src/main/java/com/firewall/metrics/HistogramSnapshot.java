@@ -0,0 +1,62 @@
+package com.firewall.metrics;
+
+// Immutable copy of a LatencyHistogram's counts, either cumulative or for an interval.
+public final class HistogramSnapshot {
+    static final HistogramSnapshot EMPTY = new HistogramSnapshot(new long[LatencyHistogram.BUCKET_COUNT], 0);
+
+    private final long[] counts;
+    private final long totalCount;
+    private final long sumNanos;
+
+    HistogramSnapshot(long[] counts, long sumNanos) {
+        this.counts = counts;
+        this.sumNanos = sumNanos;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    // What was recorded between 'earlier' and this snapshot.
+    public HistogramSnapshot minus(HistogramSnapshot earlier) {
+        long[] diff = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            diff[i] = Math.max(0, counts[i] - earlier.counts[i]);
+        }
+        return new HistogramSnapshot(diff, Math.max(0, sumNanos - earlier.sumNanos));
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public double getMeanNanos() {
+        return totalCount == 0 ? 0 : (double) sumNanos / totalCount;
+    }
+
+    // Value at or below which 'percentile' percent of the samples fall (0 when empty).
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return LatencyHistogram.highestValueIn(i);
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public long getMaxNanos() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return LatencyHistogram.highestValueIn(i);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.firewall.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// HDR-style latency histogram in nanoseconds: log-linear buckets, each power of two split
+// into 2^SUB_BUCKET_BITS linear sub-buckets, so every recorded value is kept to within
+// ~1.6% no matter how large. Values up to 2^42 ns (~73 minutes) are tracked, larger ones
+// land in the last bucket.
+//
+// Recording is one atomic increment plus a LongAdder add, no locks and no allocation, so
+// any number of threads can record at once. Counts are cumulative; interval views are made
+// by subtracting an earlier snapshot (see HistogramSnapshot.minus), which means a reader
+// never has to reset anything under the writers' feet.
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 42;
+    static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0; // nanoTime isn't guaranteed monotonic across cores on every OS
+        counts.incrementAndGet(bucketIndex(nanos));
+        sumNanos.add(nanos);
+    }
+
+    // Cumulative counts since creation. Counters are read one by one while writers keep
+    // going, so a snapshot taken mid-burst may be off by the samples recorded during the copy.
+    public HistogramSnapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new HistogramSnapshot(copy, sumNanos.sum());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int index = (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    // Largest value that maps to the bucket, i.e. what a percentile in it is reported as.
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,84 @@
+package com.firewall.metrics;
+
+import com.firewall.core.ActivityLogger;
+import com.firewall.core.AlertEngine;
+import com.firewall.core.OverloadController;
+import com.firewall.core.PolicyManager;
+import com.firewall.core.TrafficStatistics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+
+// Optional Prometheus scrape endpoint (GET /metrics) on the JDK's built-in HttpServer.
+// Bound to the loopback address only; scrapes run one at a time on a single daemon thread,
+// so they never compete with each other for the renderer's buffers.
+public class MetricsHttpServer {
+    public static final String PORT_PROPERTY = "firewall.metrics.port";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final PrometheusRenderer renderer;
+
+    private MetricsHttpServer(HttpServer server, PrometheusRenderer renderer) {
+        this.server = server;
+        this.renderer = renderer;
+    }
+
+    public static MetricsHttpServer start(int port, TrafficStatistics statistics, PolicyManager policyManager,
+                                          ActivityLogger activityLogger, AlertEngine alertEngine,
+                                          CaptureCounters captureCounters,
+                                          OverloadController overloadController) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        MetricsHttpServer metricsServer = new MetricsHttpServer(server,
+                new PrometheusRenderer(statistics, policyManager, activityLogger, alertEngine, captureCounters,
+                        overloadController));
+        server.createContext("/metrics", metricsServer::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        System.out.println("Metrics endpoint listening on http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/metrics");
+        return metricsServer;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            ByteBuffer body = renderer.render();
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.remaining());
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error rendering metrics: " + e.getMessage());
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.firewall.metrics;
+
+import com.firewall.core.TrafficStatistics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class PipelineCounters implements PipelineCountersMXBean {
+    private final TrafficStatistics statistics;
+
+    PipelineCounters(TrafficStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public long getPackets() {
+        return PipelineMetrics.getPacketCount();
+    }
+
+    @Override
+    public long getDecisions() {
+        return statistics.getTotal();
+    }
+
+    @Override
+    public long getAllowed() {
+        return statistics.getAllowed();
+    }
+
+    @Override
+    public long getDenied() {
+        return statistics.getDenied();
+    }
+
+    @Override
+    public long getRateLimited() {
+        return statistics.getRateLimited();
+    }
+
+    @Override
+    public Map<String, Long> getDecisionsPerApp() {
+        Map<String, Long> perApp = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> entry : statistics.snapshot().getPerApp().entrySet()) {
+            perApp.put(entry.getKey(), entry.getValue()[TrafficStatistics.Snapshot.TOTAL]);
+        }
+        return perApp;
+    }
+
+    @Override
+    public boolean isRecording() {
+        return PipelineMetrics.isRecording();
+    }
+
+    @Override
+    public void setRecording(boolean recording) {
+        PipelineMetrics.setRecording(recording);
+    }
+}
@@ -0,0 +1,23 @@
+package com.firewall.metrics;
+
+import java.util.Map;
+
+// Registered as com.firewall:type=PipelineCounters. Recording can be paused at runtime;
+// it can't be turned on if the JVM was started with -Dfirewall.metrics=false.
+public interface PipelineCountersMXBean {
+    long getPackets();
+
+    long getDecisions();
+
+    long getAllowed();
+
+    long getDenied();
+
+    long getRateLimited();
+
+    Map<String, Long> getDecisionsPerApp();
+
+    boolean isRecording();
+
+    void setRecording(boolean recording);
+}
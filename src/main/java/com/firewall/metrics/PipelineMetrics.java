@@ -0,0 +1,133 @@
+package com.firewall.metrics;
+
+import com.firewall.core.TrafficStatistics;
+import com.firewall.detection.DetectorPipeline;
+import com.firewall.detection.DetectorStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-stage latency histograms and packet counters for the capture/decision pipeline.
+//
+// Call sites bracket a stage with start() and stop()/lap(); when recording is off start()
+// returns NOT_TIMED and the rest is a no-op, so the instrumentation costs one volatile
+// read. Starting the JVM with -Dfirewall.metrics=false turns everything off for good:
+// nothing is recorded, no MBeans are registered and no background thread is started.
+//
+// Histograms are cumulative; a background task rolls an interval snapshot every
+// INTERVAL_MS, which is what the JMX percentiles report.
+public final class PipelineMetrics {
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("firewall.metrics"));
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+    static final long INTERVAL_MS = 10_000;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private static final HistogramSnapshot[] lastCumulative = new HistogramSnapshot[STAGES.length];
+    private static final HistogramSnapshot[] lastInterval = new HistogramSnapshot[STAGES.length];
+    private static final LongAdder packets = new LongAdder();
+    private static volatile boolean recording = ENABLED;
+    private static ScheduledExecutorService intervalRoller;
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            lastCumulative[i] = HistogramSnapshot.EMPTY;
+            lastInterval[i] = HistogramSnapshot.EMPTY;
+        }
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static long start() {
+        return recording ? System.nanoTime() : NOT_TIMED;
+    }
+
+    public static void stop(Stage stage, long startNanos) {
+        if (startNanos != NOT_TIMED) {
+            histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    // Ends 'stage' and returns the start time for the stage that follows it directly.
+    public static long lap(Stage stage, long startNanos) {
+        if (startNanos == NOT_TIMED) {
+            return NOT_TIMED;
+        }
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - startNanos);
+        return now;
+    }
+
+    public static void countPacket() {
+        if (recording) {
+            packets.increment();
+        }
+    }
+
+    public static long getPacketCount() {
+        return packets.sum();
+    }
+
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    public static void setRecording(boolean enabled) {
+        recording = enabled && ENABLED;
+    }
+
+    public static HistogramSnapshot cumulativeSnapshot(Stage stage) {
+        return histograms[stage.ordinal()].snapshot();
+    }
+
+    // Last completed interval for the stage (empty until the first interval has passed).
+    public static synchronized HistogramSnapshot intervalSnapshot(Stage stage) {
+        return lastInterval[stage.ordinal()];
+    }
+
+    private static synchronized void rollInterval() {
+        for (int i = 0; i < STAGES.length; i++) {
+            HistogramSnapshot cumulative = histograms[i].snapshot();
+            lastInterval[i] = cumulative.minus(lastCumulative[i]);
+            lastCumulative[i] = cumulative;
+        }
+    }
+
+    // Registers the stage, counter and detector MBeans and starts the interval roller. Does
+    // nothing when metrics are disabled or it has already run.
+    public static synchronized void registerMBeans(TrafficStatistics statistics, DetectorPipeline detectors) {
+        if (!ENABLED || intervalRoller != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Stage stage : STAGES) {
+                server.registerMBean(new StageLatency(stage),
+                        new ObjectName("com.firewall:type=PipelineStage,name=" + stage.name()));
+            }
+            server.registerMBean(new PipelineCounters(statistics), new ObjectName("com.firewall:type=PipelineCounters"));
+            server.registerMBean(new DetectorPipelineMetrics(detectors),
+                    new ObjectName("com.firewall:type=DetectorPipeline"));
+            for (DetectorStats stats : detectors.getDetectorStats()) {
+                server.registerMBean(new DetectorMetrics(detectors, stats.getName()),
+                        new ObjectName("com.firewall:type=Detector,name=" + stats.getName()));
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering pipeline metrics MBeans: " + e.getMessage());
+        }
+        intervalRoller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-interval");
+            t.setDaemon(true);
+            return t;
+        });
+        intervalRoller.scheduleAtFixedRate(PipelineMetrics::rollInterval, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,224 @@
+package com.firewall.metrics;
+
+import com.firewall.core.ActivityLogger;
+import com.firewall.core.AlertEngine;
+import com.firewall.core.OverloadController;
+import com.firewall.core.PolicyManager;
+import com.firewall.core.PolicySnapshot;
+import com.firewall.core.TrafficStatistics;
+import com.firewall.detection.DetectorPipeline;
+import com.firewall.detection.DetectorStats;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Renders the firewall's counters in the Prometheus text exposition format (0.0.4).
+//
+// Every source is read through its cheap accessors (LongAdder sums, visitors over the live
+// counter maps), nothing on the capture path is locked, and the text and byte buffers are
+// reused between scrapes. Not thread-safe; MetricsHttpServer serializes scrapes.
+class PrometheusRenderer {
+    private final TrafficStatistics statistics;
+    private final PolicyManager policyManager;
+    private final ActivityLogger activityLogger;
+    private final AlertEngine alertEngine;
+    private final CaptureCounters captureCounters;
+    private final OverloadController overloadController; // null when overload protection is off
+
+    private final StringBuilder text = new StringBuilder(8192);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer bytes = ByteBuffer.allocate(16384);
+
+    PrometheusRenderer(TrafficStatistics statistics, PolicyManager policyManager, ActivityLogger activityLogger,
+                       AlertEngine alertEngine, CaptureCounters captureCounters,
+                       OverloadController overloadController) {
+        this.statistics = statistics;
+        this.policyManager = policyManager;
+        this.activityLogger = activityLogger;
+        this.alertEngine = alertEngine;
+        this.captureCounters = captureCounters;
+        this.overloadController = overloadController;
+    }
+
+    // Returns a buffer positioned at 0 and limited to the rendered length; valid until the
+    // next call.
+    ByteBuffer render() {
+        text.setLength(0);
+
+        header("firewall_decisions_total", "counter", "Verdicts issued; rate() of this is the decision throughput.");
+        sample("firewall_decisions_total", "decision", "allow", statistics.getAllowed());
+        sample("firewall_decisions_total", "decision", "deny", statistics.getDenied());
+        sample("firewall_decisions_total", "decision", "rate_limited", statistics.getRateLimited());
+
+        header("firewall_app_decisions_total", "counter", "Verdicts issued per application.");
+        statistics.forEachApp((app, total, allowed, denied, rateLimited) -> {
+            appSample(app, "allow", allowed);
+            appSample(app, "deny", denied);
+            appSample(app, "rate_limited", rateLimited);
+        });
+
+        header("firewall_packets_total", "counter", "Packets handed to the decision pipeline by the capture loop.");
+        sample("firewall_packets_total", null, null, PipelineMetrics.getPacketCount());
+
+        PolicySnapshot policies = policyManager.getSnapshot();
+        header("firewall_policy_info", "gauge", "Version of the loaded policy file, from its '# Version:' comment.");
+        sample("firewall_policy_info", "version", policies.getVersion(), 1);
+        header("firewall_policy_generation", "gauge", "Policy loads since start (1 = initial load).");
+        sample("firewall_policy_generation", null, null, policies.getGeneration());
+        header("firewall_policy_loaded_timestamp_seconds", "gauge", "When the current policy snapshot was loaded.");
+        text.append("firewall_policy_loaded_timestamp_seconds ").append(policies.getLoadedAtMillis() / 1000.0).append('\n');
+        header("firewall_policy_apps", "gauge", "Applications with a policy in the current snapshot.");
+        sample("firewall_policy_apps", null, null, policies.getPolicies().size());
+
+        header("firewall_activity_log_queue_depth", "gauge", "Entries waiting for the activity log writer.");
+        sample("firewall_activity_log_queue_depth", null, null, activityLogger.getQueueDepth());
+        header("firewall_activity_log_queue_capacity", "gauge", "Capacity of the activity log queue.");
+        sample("firewall_activity_log_queue_capacity", null, null, activityLogger.getQueueCapacity());
+        header("firewall_activity_log_blocked_total", "counter", "Times a decision waited for room in the activity log queue.");
+        sample("firewall_activity_log_blocked_total", null, null, activityLogger.getBlockedCount());
+        header("firewall_activity_log_dropped_total", "counter", "Entries dropped because the logger was closed or its writer stopped.");
+        sample("firewall_activity_log_dropped_total", null, null, activityLogger.getDroppedCount());
+        header("firewall_activity_log_overflow_total", "counter", "Entries dropped because the queue was full when waiting wasn't an option.");
+        sample("firewall_activity_log_overflow_total", null, null, activityLogger.getOverflowCount());
+
+        header("firewall_alerts_total", "counter", "Alerts written, per type.");
+        alertEngine.forEachAlertCount((type, count) -> sample("firewall_alerts_total", "type", type, count));
+        renderDetectors(alertEngine.getDetectorPipeline());
+
+        header("firewall_capture_received_total", "counter", "Packets received by libpcap.");
+        sample("firewall_capture_received_total", null, null, captureCounters.getReceived());
+        header("firewall_capture_dropped_total", "counter", "Packets dropped because the capture buffer was full.");
+        sample("firewall_capture_dropped_total", null, null, captureCounters.getDropped());
+        header("firewall_capture_interface_dropped_total", "counter", "Packets dropped by the interface or driver.");
+        sample("firewall_capture_interface_dropped_total", null, null, captureCounters.getInterfaceDropped());
+
+        if (overloadController != null) {
+            renderOverload();
+        }
+        return encode();
+    }
+
+    private void renderOverload() {
+        OverloadController overload = overloadController;
+        header("firewall_overload_level", "gauge", "0 = normal, 1 = pressure (logs and alerts sampled), 2 = shedding.");
+        sample("firewall_overload_level", null, null, overload.getLevel().ordinal());
+        header("firewall_overload_queue_depth", "gauge", "Captured requests waiting for a decision.");
+        sample("firewall_overload_queue_depth", null, null, overload.getQueueDepth());
+        header("firewall_overload_queue_capacity", "gauge", "Capacity of the decision queue.");
+        sample("firewall_overload_queue_capacity", null, null, overload.getQueueCapacity());
+        header("firewall_overload_decision_latency_seconds", "gauge", "Longest wait for a verdict in the last watchdog interval.");
+        text.append("firewall_overload_decision_latency_seconds ")
+                .append(overload.getDecisionLatencyNanos() / 1e9).append('\n');
+        header("firewall_overload_shed_total", "counter", "Requests given their app's overloadAction without evaluation.");
+        sample("firewall_overload_shed_total", "action", "fail_open", overload.getShedFailOpenCount());
+        sample("firewall_overload_shed_total", "action", "fail_closed", overload.getShedFailClosedCount());
+        header("firewall_overload_shed_cause_total", "counter", "Shed requests by why they were shed.");
+        sample("firewall_overload_shed_cause_total", "cause", "queue_full", overload.getShedQueueFullCount());
+        sample("firewall_overload_shed_cause_total", "cause", "over_limit", overload.getShedOverLimitCount());
+        sample("firewall_overload_shed_cause_total", "cause", "expired", overload.getShedExpiredCount());
+        header("firewall_overload_sampled_out_total", "counter", "Decisions not logged or alerted on because of sampling.");
+        sample("firewall_overload_sampled_out_total", null, null, overload.getSampledOutCount());
+        header("firewall_overload_shedding_episodes_total", "counter", "Times the controller started shedding.");
+        sample("firewall_overload_shedding_episodes_total", null, null, overload.getSheddingEpisodes());
+        header("firewall_overload_reports_dropped_total", "counter", "Shed verdicts not shown because the reporter was behind.");
+        sample("firewall_overload_reports_dropped_total", null, null, overload.getReportsDroppedCount());
+    }
+
+    private void renderDetectors(DetectorPipeline pipeline) {
+        header("firewall_detector_published_total", "counter", "Decisions handed to the alert detectors.");
+        sample("firewall_detector_published_total", null, null, pipeline.getPublishedCount());
+        header("firewall_detector_ingress_dropped_total", "counter", "Decisions no detector saw because the pipeline queue was full.");
+        sample("firewall_detector_ingress_dropped_total", null, null, pipeline.getDroppedCount());
+        header("firewall_detector_ingress_queue_depth", "gauge", "Decisions waiting to be fanned out to the detectors.");
+        sample("firewall_detector_ingress_queue_depth", null, null, pipeline.getBacklog());
+
+        List<DetectorStats> detectors = pipeline.getDetectorStats();
+        header("firewall_detector_processed_total", "counter", "Decisions examined, per detector.");
+        for (DetectorStats stats : detectors) {
+            sample("firewall_detector_processed_total", "detector", stats.getName(), stats.getProcessed());
+        }
+        header("firewall_detector_queue_dropped_total", "counter", "Decisions a detector never saw because its own queue was full.");
+        for (DetectorStats stats : detectors) {
+            sample("firewall_detector_queue_dropped_total", "detector", stats.getName(), stats.getDropped());
+        }
+        header("firewall_detector_errors_total", "counter", "Exceptions thrown by a detector.");
+        for (DetectorStats stats : detectors) {
+            sample("firewall_detector_errors_total", "detector", stats.getName(), stats.getErrors());
+        }
+        header("firewall_detector_queue_depth", "gauge", "Decisions waiting for a detector.");
+        for (DetectorStats stats : detectors) {
+            sample("firewall_detector_queue_depth", "detector", stats.getName(), stats.getBacklog());
+        }
+        header("firewall_detector_processing_seconds_total", "counter", "Time spent in a detector; divide by processed for the mean.");
+        for (DetectorStats stats : detectors) {
+            sample("firewall_detector_processing_seconds_total", "detector", stats.getName(),
+                    stats.getTotalProcessingNanos() / 1e9);
+        }
+        header("firewall_detector_max_processing_seconds", "gauge", "Longest a detector took over one decision since start.");
+        for (DetectorStats stats : detectors) {
+            sample("firewall_detector_max_processing_seconds", "detector", stats.getName(),
+                    stats.getMaxProcessingMicros() / 1e6);
+        }
+        header("firewall_detector_max_queue_delay_seconds", "gauge", "Longest a decision waited for a detector since start.");
+        for (DetectorStats stats : detectors) {
+            sample("firewall_detector_max_queue_delay_seconds", "detector", stats.getName(),
+                    stats.getMaxQueueDelayMicros() / 1e6);
+        }
+    }
+
+    private void header(String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(String name, String label, String labelValue, long value) {
+        text.append(name);
+        if (label != null) {
+            text.append('{').append(label).append("=\"");
+            appendEscaped(labelValue);
+            text.append("\"}");
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    private void sample(String name, String label, String labelValue, double value) {
+        text.append(name).append('{').append(label).append("=\"");
+        appendEscaped(labelValue);
+        text.append("\"} ").append(value).append('\n');
+    }
+
+    private void appSample(String app, String decision, long value) {
+        text.append("firewall_app_decisions_total{app=\"");
+        appendEscaped(app);
+        text.append("\",decision=\"").append(decision).append("\"} ").append(value).append('\n');
+    }
+
+    private void appendEscaped(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    private ByteBuffer encode() {
+        int needed = (int) (text.length() * encoder.maxBytesPerChar()) + 1;
+        if (bytes.capacity() < needed) {
+            bytes = ByteBuffer.allocate(Integer.highestOneBit(needed) << 1);
+        }
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+        return bytes;
+    }
+}
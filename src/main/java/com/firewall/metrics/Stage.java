@@ -0,0 +1,13 @@
+package com.firewall.metrics;
+
+// Steps between the pcap callback and the verdict that PipelineMetrics times separately.
+public enum Stage {
+    PARSE,            // pulling addresses and ports out of the captured packet
+    CLASSIFY,         // mapping the destination port to an application name
+    BLOCKLIST,        // the global threat-intel blocklist (Blocklist.match)
+    POLICY_LOOKUP,    // PolicyManager.getPolicyForApp
+    RULE_EVALUATION,  // checking the request against the app policy
+    ACTIVITY_LOG,     // ActivityLogger.log
+    ALERT_DISPATCH,   // AlertEngine.processEvent
+    GUI_DISPATCH      // handing the row to the live traffic table
+}
@@ -0,0 +1,67 @@
+package com.firewall.metrics;
+
+class StageLatency implements StageLatencyMXBean {
+    private final Stage stage;
+
+    StageLatency(Stage stage) {
+        this.stage = stage;
+    }
+
+    private HistogramSnapshot interval() {
+        return PipelineMetrics.intervalSnapshot(stage);
+    }
+
+    private static double micros(double nanos) {
+        return nanos / 1000.0;
+    }
+
+    @Override
+    public String getStage() {
+        return stage.name();
+    }
+
+    @Override
+    public long getCount() {
+        return PipelineMetrics.cumulativeSnapshot(stage).getTotalCount();
+    }
+
+    @Override
+    public long getIntervalSeconds() {
+        return PipelineMetrics.INTERVAL_MS / 1000;
+    }
+
+    @Override
+    public long getIntervalCount() {
+        return interval().getTotalCount();
+    }
+
+    @Override
+    public double getIntervalMeanMicros() {
+        return micros(interval().getMeanNanos());
+    }
+
+    @Override
+    public double getIntervalP50Micros() {
+        return micros(interval().getValueAtPercentile(50));
+    }
+
+    @Override
+    public double getIntervalP90Micros() {
+        return micros(interval().getValueAtPercentile(90));
+    }
+
+    @Override
+    public double getIntervalP99Micros() {
+        return micros(interval().getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getIntervalP999Micros() {
+        return micros(interval().getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public double getIntervalMaxMicros() {
+        return micros(interval().getMaxNanos());
+    }
+}
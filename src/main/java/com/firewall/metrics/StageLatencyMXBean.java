@@ -0,0 +1,26 @@
+package com.firewall.metrics;
+
+// One MBean per pipeline stage, registered as com.firewall:type=PipelineStage,name=<STAGE>.
+// "Interval" attributes cover the last completed interval (see getIntervalSeconds), the
+// count is cumulative.
+public interface StageLatencyMXBean {
+    String getStage();
+
+    long getCount();
+
+    long getIntervalSeconds();
+
+    long getIntervalCount();
+
+    double getIntervalMeanMicros();
+
+    double getIntervalP50Micros();
+
+    double getIntervalP90Micros();
+
+    double getIntervalP99Micros();
+
+    double getIntervalP999Micros();
+
+    double getIntervalMaxMicros();
+}
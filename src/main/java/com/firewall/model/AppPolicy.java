@@ -1,31 +1,54 @@
 package com.firewall.model;
 
 import java.util.ArrayList; // <<< ADDED THIS IMPORT
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 public class AppPolicy {
     private final String appName;
     private final Set<String> allowedDomains; // Supports wildcards like *.example.com
+    private final List<String> wildcardSuffixes = new ArrayList<>(); // ".example.com" for each "*.example.com"
     private final Set<String> allowedProtocols;
     private final Set<String> allowedIPs;
     private final Action defaultAction;
+    // The key=value lines the policy was built from, so it can be compared and shipped as written
+    private final Map<String, String> sourceAttributes;
+    // Optional limits on allowed traffic, null when unlimited; enforced by core.RateLimiter
+    private RateLimit requestLimit;            // requests/s for the whole app
+    private RateLimit byteLimit;               // bytes/s for the whole app
+    private RateLimit destinationRequestLimit; // requests/s to any one destination
+    private RateLimit destinationByteLimit;    // bytes/s to any one destination
+    // Optional allowedTimes/deniedTimes windows, null when the app may run at any time
+    private TimeSchedule schedule;
+    // Verdict for requests shed without evaluation when decisions can't keep up (core.OverloadController)
+    private Action overloadAction = Action.DENY;
 
     public enum Action { ALLOW, DENY }
 
     public AppPolicy(String appName, Action defaultAction) {
+        this(appName, defaultAction, Collections.emptyMap());
+    }
+
+    public AppPolicy(String appName, Action defaultAction, Map<String, String> sourceAttributes) {
         this.appName = appName;
         this.allowedDomains = new HashSet<>();
         this.allowedProtocols = new HashSet<>();
         this.allowedIPs = new HashSet<>();
         this.defaultAction = defaultAction;
+        this.sourceAttributes = Collections.unmodifiableMap(new TreeMap<>(sourceAttributes));
     }
 
     public void addAllowedDomains(List<String> domains) {
         if (domains != null) {
             for (String domain : domains) {
-                this.allowedDomains.add(domain.trim()); // Trim whitespace
+                String trimmed = domain.trim(); // Trim whitespace
+                if (this.allowedDomains.add(trimmed) && trimmed.startsWith("*.")) {
+                    wildcardSuffixes.add(trimmed.substring(1));
+                }
             }
         }
     }
@@ -46,6 +69,22 @@ public class AppPolicy {
         }
     }
 
+    public void setRateLimits(RateLimit requests, RateLimit bytes, RateLimit destinationRequests,
+                              RateLimit destinationBytes) {
+        this.requestLimit = requests;
+        this.byteLimit = bytes;
+        this.destinationRequestLimit = destinationRequests;
+        this.destinationByteLimit = destinationBytes;
+    }
+
+    public void setSchedule(TimeSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    public void setOverloadAction(Action overloadAction) {
+        this.overloadAction = overloadAction;
+    }
+
     public String getAppName() {
         return appName;
     }
@@ -54,6 +93,11 @@ public class AppPolicy {
         return defaultAction;
     }
 
+    // Sorted by key
+    public Map<String, String> getSourceAttributes() {
+        return sourceAttributes;
+    }
+
     public boolean isDomainAllowed(String domain) {
         if (allowedDomains.isEmpty()) { // If no specific domains are listed, consider it based on defaultAction later.
             return true; // Or false, depending on how you interpret "empty means allow all vs deny all until matched"
@@ -65,12 +109,9 @@ public class AppPolicy {
             return true;
         }
         // Wildcard check: *.example.com matches sub.example.com
-        for (String pattern : allowedDomains) {
-            if (pattern.startsWith("*.")) {
-                String suffix = pattern.substring(1); // e.g., .example.com
-                if (domain.endsWith(suffix) && domain.length() > suffix.length()) { // ensure it's a subdomain
-                    return true;
-                }
+        for (String suffix : wildcardSuffixes) { // e.g., .example.com
+            if (domain.endsWith(suffix) && domain.length() > suffix.length()) { // ensure it's a subdomain
+                return true;
             }
         }
         return false;
@@ -90,6 +131,48 @@ public class AppPolicy {
         return allowedIPs.contains(ip.trim());
     }
 
+    public RateLimit getRequestLimit() {
+        return requestLimit;
+    }
+
+    public RateLimit getByteLimit() {
+        return byteLimit;
+    }
+
+    public RateLimit getDestinationRequestLimit() {
+        return destinationRequestLimit;
+    }
+
+    public RateLimit getDestinationByteLimit() {
+        return destinationByteLimit;
+    }
+
+    public TimeSchedule getSchedule() {
+        return schedule;
+    }
+
+    // ALLOW: fail open under overload; DENY (the default): fail closed
+    public Action getOverloadAction() {
+        return overloadAction;
+    }
+
+    public boolean hasRateLimits() {
+        return requestLimit != null || byteLimit != null || destinationRequestLimit != null
+                || destinationByteLimit != null;
+    }
+
+    public boolean hasAllowedDomains() {
+        return !allowedDomains.isEmpty();
+    }
+
+    public boolean hasAllowedProtocols() {
+        return !allowedProtocols.isEmpty();
+    }
+
+    public boolean hasAllowedIPs() {
+        return !allowedIPs.isEmpty();
+    }
+
     // --- START OF ADDED GETTERS (SELF-CORRECTION) ---
     public List<String> getAllowedDomainsList() {
         return new ArrayList<>(this.allowedDomains);
@@ -112,6 +195,12 @@ public class AppPolicy {
                ", allowedProtocols=" + allowedProtocols +
                ", allowedIPs=" + allowedIPs +
                ", defaultAction=" + defaultAction +
+               (requestLimit != null ? ", rateLimit=" + requestLimit : "") +
+               (byteLimit != null ? ", byteRateLimit=" + byteLimit : "") +
+               (destinationRequestLimit != null ? ", destinationRateLimit=" + destinationRequestLimit : "") +
+               (destinationByteLimit != null ? ", destinationByteRateLimit=" + destinationByteLimit : "") +
+               (schedule != null ? ", schedule=" + schedule : "") +
+               (overloadAction == Action.ALLOW ? ", overloadAction=ALLOW" : "") +
                '}';
     }
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package com.firewall.model;
 
 public class DecisionResult {
-    public final String decision; // "ALLOW" or "DENY"
+    public final String decision; // "ALLOW", "DENY" or "RATE_LIMITED"
     public final String reason;
     public final NetworkRequest request; // The original request for context
 
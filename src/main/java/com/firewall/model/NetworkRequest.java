@@ -6,15 +6,35 @@ public class NetworkRequest {
     private final String targetIP;
     private final String protocol;
     private final int port; // Optional, can be 0 if not specified
+    private final String sourceIP; // "N/A" when unknown, e.g. simulated requests
     private final long timestamp;
+    private final int bytes; // packet size on the wire, 0 when unknown
 
     public NetworkRequest(String applicationName, String targetDomain, String targetIP, String protocol, int port) {
+        this(applicationName, targetDomain, targetIP, protocol, port, "N/A");
+    }
+
+    public NetworkRequest(String applicationName, String targetDomain, String targetIP, String protocol, int port,
+                          String sourceIP) {
+        this(applicationName, targetDomain, targetIP, protocol, port, sourceIP, System.currentTimeMillis());
+    }
+
+    // For requests re-created from a recorded trace, which keep their original time
+    public NetworkRequest(String applicationName, String targetDomain, String targetIP, String protocol, int port,
+                          String sourceIP, long timestamp) {
+        this(applicationName, targetDomain, targetIP, protocol, port, sourceIP, timestamp, 0);
+    }
+
+    public NetworkRequest(String applicationName, String targetDomain, String targetIP, String protocol, int port,
+                          String sourceIP, long timestamp, int bytes) {
         this.applicationName = applicationName;
         this.targetDomain = targetDomain;
         this.targetIP = targetIP;
         this.protocol = protocol;
         this.port = port;
-        this.timestamp = System.currentTimeMillis();
+        this.sourceIP = sourceIP;
+        this.timestamp = timestamp;
+        this.bytes = bytes;
     }
 
     public String getApplicationName() {
@@ -37,10 +57,18 @@ public class NetworkRequest {
         return port;
     }
 
+    public String getSourceIP() {
+        return sourceIP;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
 
+    public int getBytes() {
+        return bytes;
+    }
+
     @Override
     public String toString() {
         return "NetworkRequest{" +
@@ -0,0 +1,92 @@
+package com.firewall.model;
+
+import java.util.Locale;
+
+// A rate with a burst allowance, in requests or bytes, as written in the policy file:
+//
+//   rateLimit=200/s                 200 per second, burst of one second's worth
+//   byteRateLimit=5M/s,burst=20M    5,000,000 bytes per second, up to 20,000,000 at once
+//
+// Amounts take an optional k, M or G suffix (powers of 1000).
+public final class RateLimit {
+    private final double perSecond;
+    private final double burst;
+
+    public RateLimit(double perSecond, double burst) {
+        if (!(perSecond > 0) || !(burst >= 1) || Double.isInfinite(perSecond) || Double.isInfinite(burst)) {
+            throw new IllegalArgumentException("rate must be positive and burst at least 1");
+        }
+        this.perSecond = perSecond;
+        this.burst = burst;
+    }
+
+    // Parses "<amount>/s[,burst=<amount>]"; throws IllegalArgumentException if malformed
+    public static RateLimit parse(String text) {
+        String[] parts = text.split(",");
+        String rate = parts[0].trim();
+        if (!rate.toLowerCase(Locale.ROOT).endsWith("/s")) {
+            throw new IllegalArgumentException("expected <amount>/s, got '" + rate + "'");
+        }
+        double perSecond = parseAmount(rate.substring(0, rate.length() - 2));
+        double burst = perSecond;
+        for (int i = 1; i < parts.length; i++) {
+            String[] option = parts[i].split("=", 2);
+            if (option.length != 2 || !option[0].trim().equalsIgnoreCase("burst")) {
+                throw new IllegalArgumentException("unknown rate limit option '" + parts[i].trim() + "'");
+            }
+            burst = parseAmount(option[1]);
+        }
+        return new RateLimit(perSecond, Math.max(1, burst));
+    }
+
+    private static double parseAmount(String text) {
+        String amount = text.trim();
+        double unit = 1;
+        if (!amount.isEmpty()) {
+            switch (amount.charAt(amount.length() - 1)) {
+                case 'k': case 'K': unit = 1e3; break;
+                case 'm': case 'M': unit = 1e6; break;
+                case 'g': case 'G': unit = 1e9; break;
+                default: break;
+            }
+        }
+        if (unit != 1) {
+            amount = amount.substring(0, amount.length() - 1).trim();
+        }
+        try {
+            return Double.parseDouble(amount) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad amount '" + text.trim() + "'");
+        }
+    }
+
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof RateLimit)) return false;
+        RateLimit that = (RateLimit) other;
+        return perSecond == that.perSecond && burst == that.burst;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(perSecond) * 31 + Double.hashCode(burst);
+    }
+
+    @Override
+    public String toString() {
+        return format(perSecond) + "/s burst " + format(burst);
+    }
+
+    private static String format(double amount) {
+        return amount == Math.rint(amount) ? Long.toString((long) amount) : Double.toString(amount);
+    }
+}
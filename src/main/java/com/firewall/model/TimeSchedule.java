@@ -0,0 +1,224 @@
+package com.firewall.model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// An app's allowedTimes/deniedTimes windows compiled into the instants where its state changes,
+// so a decision never does calendar math. The windows are expanded day by day over a horizon
+// (yesterday to a week ahead, in the system time zone, so DST shifts land where they should)
+// into a sorted long[] of transitions and the state in force after each one.
+//
+// On top of that sits the segment in force now, [from, until) with its state, which
+// PolicyManager's timer moves forward at each transition via advance(). stateAt() is then
+// two long comparisons; a timestamp outside the current segment (a stale timer, a replayed
+// request) falls back to a binary search. One outside the horizon (what-if over an old log) is
+// compiled on the fly into a small cache of tables, one slot per calendar week, so a run over
+// historical requests compiles each stretch of time once rather than once per request.
+public final class TimeSchedule {
+    public static final int OPEN = 0;
+    public static final int OUTSIDE_ALLOWED = 1; // allowedTimes set and no window covers the time
+    public static final int INSIDE_DENIED = 2;   // a deniedTimes window covers the time
+
+    private static final int DAYS_BEHIND = 1;
+    private static final int DAYS_AHEAD = 8;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final int OFF_HORIZON_SLOTS = 8;
+
+    private final List<TimeWindow> allowed; // null when the app has no allowedTimes
+    private final List<TimeWindow> denied;  // null when the app has no deniedTimes
+    private final ZoneId zone;
+    private volatile Compiled compiled;
+    private volatile Segment current;
+    private final AtomicReferenceArray<Compiled> offHorizon = new AtomicReferenceArray<>(OFF_HORIZON_SLOTS);
+
+    public TimeSchedule(List<TimeWindow> allowed, List<TimeWindow> denied) {
+        this(allowed, denied, ZoneId.systemDefault(), System.currentTimeMillis());
+    }
+
+    public TimeSchedule(List<TimeWindow> allowed, List<TimeWindow> denied, ZoneId zone, long nowMillis) {
+        this.allowed = allowed == null || allowed.isEmpty() ? null : new ArrayList<>(allowed);
+        this.denied = denied == null || denied.isEmpty() ? null : new ArrayList<>(denied);
+        this.zone = zone;
+        this.compiled = compile(nowMillis);
+        this.current = compiled.segmentAt(nowMillis);
+    }
+
+    // OPEN, OUTSIDE_ALLOWED or INSIDE_DENIED at the given epoch millis
+    public int stateAt(long millis) {
+        Segment segment = current;
+        if (millis >= segment.from && millis < segment.until) {
+            return segment.state;
+        }
+        Compiled table = compiled;
+        if (millis >= table.start && millis < table.end) {
+            return table.stateAt(millis);
+        }
+        // Parallel what-if leaves work through different weeks, so they mostly keep to their own slot
+        int slot = (int) Math.floorMod(Math.floorDiv(millis, 7 * DAY_MILLIS), (long) OFF_HORIZON_SLOTS);
+        Compiled cached = offHorizon.get(slot);
+        if (cached == null || millis < cached.start || millis >= cached.end) {
+            cached = compile(millis);
+            offHorizon.set(slot, cached);
+        }
+        return cached.stateAt(millis);
+    }
+
+    public boolean isBlockedAt(long millis) {
+        return stateAt(millis) != OPEN;
+    }
+
+    // Makes the segment containing 'nowMillis' current, recompiling the horizon once it gets
+    // within a day of its end, and returns when the state next changes. Called from one thread.
+    public long advance(long nowMillis) {
+        Compiled table = compiled;
+        if (nowMillis < table.start || nowMillis >= table.end - DAY_MILLIS) {
+            table = compile(nowMillis);
+            compiled = table;
+        }
+        Segment segment = table.segmentAt(nowMillis);
+        current = segment;
+        return segment.until;
+    }
+
+    private Compiled compile(long aroundMillis) {
+        LocalDate today = Instant.ofEpochMilli(aroundMillis).atZone(zone).toLocalDate();
+        LocalDate first = today.minusDays(DAYS_BEHIND);
+        LocalDate last = today.plusDays(DAYS_AHEAD);
+        long start = first.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = last.atStartOfDay(zone).toInstant().toEpochMilli();
+
+        // Windows starting the day before 'first' can reach into it across midnight
+        long[] allowedIntervals = allowed == null ? null : expand(allowed, first.minusDays(1), last);
+        long[] deniedIntervals = denied == null ? null : expand(denied, first.minusDays(1), last);
+
+        long[] boundaries = new long[2 + (allowedIntervals == null ? 0 : allowedIntervals.length)
+                + (deniedIntervals == null ? 0 : deniedIntervals.length)];
+        int count = 0;
+        boundaries[count++] = start;
+        count = addWithin(boundaries, count, allowedIntervals, start, end);
+        count = addWithin(boundaries, count, deniedIntervals, start, end);
+        Arrays.sort(boundaries, 0, count);
+
+        long[] transitions = new long[count];
+        int[] states = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size > 0 && boundaries[i] == transitions[size - 1]) continue;
+            int state = deniedIntervals != null && covers(deniedIntervals, boundaries[i]) ? INSIDE_DENIED
+                    : allowedIntervals != null && !covers(allowedIntervals, boundaries[i]) ? OUTSIDE_ALLOWED
+                    : OPEN;
+            if (size > 0 && states[size - 1] == state) continue; // merge adjacent windows
+            transitions[size] = boundaries[i];
+            states[size] = state;
+            size++;
+        }
+        return new Compiled(Arrays.copyOf(transitions, size), Arrays.copyOf(states, size), start, end);
+    }
+
+    // [from, until) pairs for every day a window starts on, from 'firstDay' up to 'endDay'
+    private long[] expand(List<TimeWindow> windows, LocalDate firstDay, LocalDate endDay) {
+        List<long[]> intervals = new ArrayList<>();
+        for (LocalDate day = firstDay; day.isBefore(endDay); day = day.plusDays(1)) {
+            for (TimeWindow window : windows) {
+                if (window.startsOn(day.getDayOfWeek())) {
+                    intervals.add(new long[]{atMinute(day, window.getStartMinute()), atMinute(day, window.getEndMinute())});
+                }
+            }
+        }
+        long[] flat = new long[intervals.size() * 2];
+        for (int i = 0; i < intervals.size(); i++) {
+            flat[2 * i] = intervals.get(i)[0];
+            flat[2 * i + 1] = intervals.get(i)[1];
+        }
+        return flat;
+    }
+
+    private long atMinute(LocalDate day, int minute) {
+        return day.atStartOfDay().plusMinutes(minute).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private static int addWithin(long[] boundaries, int count, long[] intervals, long start, long end) {
+        if (intervals != null) {
+            for (long instant : intervals) {
+                if (instant > start && instant < end) boundaries[count++] = instant;
+            }
+        }
+        return count;
+    }
+
+    private static boolean covers(long[] intervals, long millis) {
+        for (int i = 0; i < intervals.length; i += 2) {
+            if (millis >= intervals[i] && millis < intervals[i + 1]) return true;
+        }
+        return false;
+    }
+
+    public List<TimeWindow> getAllowedWindows() {
+        return allowed;
+    }
+
+    public List<TimeWindow> getDeniedWindows() {
+        return denied;
+    }
+
+    // e.g. "allowed 01:00-04:00; denied Mon-Fri 09:00-17:00"
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if (allowed != null) text.append("allowed ").append(join(allowed));
+        if (denied != null) text.append(text.length() > 0 ? "; " : "").append("denied ").append(join(denied));
+        return text.toString();
+    }
+
+    public static String join(List<TimeWindow> windows) {
+        StringBuilder text = new StringBuilder();
+        for (TimeWindow window : windows) {
+            text.append(text.length() > 0 ? ";" : "").append(window);
+        }
+        return text.toString();
+    }
+
+    private static final class Compiled {
+        final long[] transitions; // transitions[0] == start
+        final int[] states;       // state from transitions[i] until transitions[i + 1]
+        final long start;
+        final long end;
+
+        Compiled(long[] transitions, int[] states, long start, long end) {
+            this.transitions = transitions;
+            this.states = states;
+            this.start = start;
+            this.end = end;
+        }
+
+        // 'millis' must be within [start, end), here and in segmentAt()
+        int stateAt(long millis) {
+            int index = Arrays.binarySearch(transitions, millis);
+            return states[index < 0 ? -index - 2 : index];
+        }
+
+        Segment segmentAt(long millis) {
+            int index = Arrays.binarySearch(transitions, millis);
+            if (index < 0) index = -index - 2;
+            long until = index + 1 < transitions.length ? transitions[index + 1] : end;
+            return new Segment(transitions[index], until, states[index]);
+        }
+    }
+
+    private static final class Segment {
+        final long from;
+        final long until;
+        final int state;
+
+        Segment(long from, long until, int state) {
+            this.from = from;
+            this.until = until;
+            this.state = state;
+        }
+    }
+}
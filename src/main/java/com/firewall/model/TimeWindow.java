@@ -0,0 +1,116 @@
+package com.firewall.model;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// A weekly time window from the policy file, e.g.
+//
+//   01:00-04:00            every day
+//   Mon-Fri 09:00-17:00    weekdays only
+//   Sat,Sun 22:00-02:00    crosses midnight: Saturday 22:00 to Sunday 02:00, Sunday 22:00 to Monday 02:00
+//
+// Days are Mon..Sun, ranges (Mon-Fri), lists (Sat,Sun), "weekdays" or "weekends"; a window that
+// ends at or before its start runs into the next day. Several windows are separated by ';'.
+public final class TimeWindow {
+    private static final String[] DAY_NAMES = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+    private static final int ALL_DAYS = 0x7F;
+
+    private final int dayMask;      // bit (dayOfWeek - 1), Monday = bit 0
+    private final int startMinute;  // minutes after midnight
+    private final int endMinute;    // exclusive; <= startMinute means it ends the next day
+    private final String text;
+
+    private TimeWindow(int dayMask, int startMinute, int endMinute, String text) {
+        this.dayMask = dayMask;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+        this.text = text;
+    }
+
+    // Parses "<window>[;<window>...]"; throws IllegalArgumentException if malformed
+    public static List<TimeWindow> parseList(String text) {
+        List<TimeWindow> windows = new ArrayList<>();
+        for (String part : text.split(";")) {
+            if (!part.trim().isEmpty()) {
+                windows.add(parse(part));
+            }
+        }
+        if (windows.isEmpty()) {
+            throw new IllegalArgumentException("no time window in '" + text.trim() + "'");
+        }
+        return windows;
+    }
+
+    public static TimeWindow parse(String text) {
+        String trimmed = text.trim();
+        int space = trimmed.lastIndexOf(' ');
+        String hours = space < 0 ? trimmed : trimmed.substring(space + 1);
+        int dayMask = space < 0 ? ALL_DAYS : parseDays(trimmed.substring(0, space).trim());
+        String[] range = hours.split("-");
+        if (range.length != 2) {
+            throw new IllegalArgumentException("expected HH:MM-HH:MM, got '" + hours + "'");
+        }
+        return new TimeWindow(dayMask, parseMinute(range[0]), parseMinute(range[1]), trimmed);
+    }
+
+    private static int parseDays(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.equals("weekdays")) return 0x1F;
+        if (lower.equals("weekends")) return 0x60;
+        int mask = 0;
+        for (String item : lower.split(",")) {
+            String[] range = item.trim().split("-");
+            int from = dayIndex(range[0]);
+            int to = range.length > 1 ? dayIndex(range[1]) : from;
+            for (int day = from; ; day = (day + 1) % 7) { // Fri-Mon wraps over the weekend
+                mask |= 1 << day;
+                if (day == to) break;
+            }
+        }
+        return mask;
+    }
+
+    private static int dayIndex(String name) {
+        String prefix = name.trim();
+        for (int i = 0; i < DAY_NAMES.length; i++) {
+            if (prefix.length() >= 3 && DAY_NAMES[i].equals(prefix.substring(0, 3))) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown day '" + name.trim() + "'");
+    }
+
+    private static int parseMinute(String text) {
+        String[] parts = text.trim().split(":");
+        try {
+            int hour = Integer.parseInt(parts[0].trim());
+            int minute = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+            if (parts.length > 2 || hour < 0 || hour > 24 || minute < 0 || minute > 59 || hour * 60 + minute > 1440) {
+                throw new IllegalArgumentException("bad time '" + text.trim() + "'");
+            }
+            return hour * 60 + minute;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad time '" + text.trim() + "'");
+        }
+    }
+
+    public boolean startsOn(DayOfWeek day) {
+        return (dayMask & (1 << (day.getValue() - 1))) != 0;
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    // Minutes after the start day's midnight, so past 1440 for windows that cross midnight
+    public int getEndMinute() {
+        return endMinute > startMinute ? endMinute : endMinute + 1440;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
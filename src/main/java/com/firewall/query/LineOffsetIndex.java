@@ -0,0 +1,128 @@
+package com.firewall.query;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Start offset of every line in a log file, kept in a primitive long[] (8 bytes per line).
+// Unlike SparseLogIndex this gives random access to line N, which is what a scrolling
+// viewer needs.
+//
+// One thread calls refresh() to scan (memory-mapped, in windows) whatever was appended
+// since the last call; any number of threads can call getLineCount()/readLine() at the same
+// time. New offsets are written before the volatile count is bumped, so readers never see
+// a line whose offset isn't there yet.
+public class LineOffsetIndex implements AutoCloseable {
+    private static final long MAP_WINDOW = 64L << 20;
+    public static final int REFRESH_RESET = -1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private volatile long[] offsets = new long[1024];
+    private volatile int lineCount;       // complete lines indexed so far
+    private volatile long indexedLength;  // bytes scanned so far (end of the last complete line)
+    private volatile int resetCount;      // bumped whenever the file shrank and indexing restarted
+
+    public LineOffsetIndex(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getResetCount() {
+        return resetCount;
+    }
+
+    // Indexes complete lines appended since the last call. Returns REFRESH_RESET if the file
+    // shrank (rotated/truncated) and the index started over, otherwise the number of new lines.
+    // 'progress' is called after each mapped window so a viewer can show rows while a large
+    // file is still being indexed. Must only be called from one thread at a time.
+    public int refresh(Runnable progress) throws IOException {
+        long size = channel.size();
+        boolean reset = false;
+        if (size < indexedLength) {
+            lineCount = 0;
+            indexedLength = 0;
+            resetCount++;
+            reset = true;
+        }
+        int before = lineCount;
+        long pos = indexedLength;
+        while (pos < size) {
+            long windowLength = Math.min(MAP_WINDOW, size - pos);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, windowLength);
+            long lastLineEnd = -1;
+            for (int i = 0; i < windowLength; i++) {
+                if (window.get(i) == '\n') {
+                    long lineStart = indexedLength;
+                    lastLineEnd = pos + i + 1;
+                    indexedLength = lastLineEnd;
+                    appendLineStartingAt(lineStart); // publishes the line via lineCount
+                }
+            }
+            if (lastLineEnd < 0 && windowLength == MAP_WINDOW) {
+                pos += windowLength; // a single line longer than the window, keep scanning
+            } else {
+                pos = Math.max(indexedLength, pos + windowLength);
+            }
+            if (progress != null) progress.run();
+        }
+        return reset ? REFRESH_RESET : lineCount - before;
+    }
+
+    // Reads line 'index' without its line terminator.
+    public String readLine(int index) throws IOException {
+        int count = lineCount; // read before offsets so the array covers every line below count
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("line " + index + " of " + count);
+        }
+        long[] current = offsets;
+        long start = current[index];
+        long end = index + 1 < count ? current[index + 1] : indexedLength;
+        int length = (int) Math.min(end - start, Integer.MAX_VALUE);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) break;
+        }
+        byte[] bytes = buffer.array();
+        int contentLength = buffer.position();
+        for (int i = 0; i < contentLength; i++) {
+            if (bytes[i] == '\n') {
+                contentLength = i; // the last line's end may already include newer lines
+                break;
+            }
+        }
+        while (contentLength > 0 && (bytes[contentLength - 1] == '\n' || bytes[contentLength - 1] == '\r')) {
+            contentLength--;
+        }
+        return new String(bytes, 0, contentLength, StandardCharsets.UTF_8);
+    }
+
+    private void appendLineStartingAt(long offset) {
+        long[] current = offsets;
+        int count = lineCount;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, count * 2);
+            offsets = current; // readers only look below lineCount, which the copy preserves
+        }
+        current[count] = offset;
+        lineCount = count + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.firewall.query;
+
+import java.nio.charset.StandardCharsets;
+
+// Column layout of the two log files written by ActivityLogger and AlertEngine.
+// Index -1 means the log has no such column.
+public enum LogFormat {
+    // TIMESTAMP | LEVEL | APP_NAME | TARGET_DOMAIN | TARGET_IP | PROTOCOL | PORT | DECISION | REASON
+    ACTIVITY(9, 2, 4, 5, 7, -1),
+    // TIMESTAMP | LEVEL | TYPE | APPLICATION | DETAILS
+    ALERT(5, 3, -1, -1, -1, 2);
+
+    public final int columnCount;
+    public final int appColumn;
+    public final int ipColumn;
+    public final int protocolColumn;
+    public final int decisionColumn;
+    public final int typeColumn;
+
+    LogFormat(int columnCount, int appColumn, int ipColumn, int protocolColumn, int decisionColumn, int typeColumn) {
+        this.columnCount = columnCount;
+        this.appColumn = appColumn;
+        this.ipColumn = ipColumn;
+        this.protocolColumn = protocolColumn;
+        this.decisionColumn = decisionColumn;
+        this.typeColumn = typeColumn;
+    }
+
+    // Both loggers write a header line when the file is created; use it to tell the formats apart.
+    public static LogFormat detect(byte[] firstLine) {
+        String header = new String(firstLine, StandardCharsets.UTF_8);
+        if (header.startsWith("TIMESTAMP | LEVEL | TYPE")) {
+            return ALERT;
+        }
+        return ACTIVITY;
+    }
+}
@@ -0,0 +1,140 @@
+package com.firewall.query;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Filter for LogQueryEngine. Unset (null / -1) criteria don't restrict the result.
+// The time range is [from, to): lines at or after 'from' and strictly before 'to'.
+public class LogQuery {
+    private long fromKey = -1;
+    private long toKey = -1;
+    private String app;
+    private String decision;
+    private String ip;
+    private String protocol;
+    private String type;
+    private long limit = Long.MAX_VALUE;
+
+    public LogQuery from(String timestamp) {
+        this.fromKey = LogTimestamps.parseQueryKey(timestamp);
+        return this;
+    }
+
+    public LogQuery to(String timestamp) {
+        this.toKey = LogTimestamps.parseQueryKey(timestamp);
+        return this;
+    }
+
+    public LogQuery app(String app) {
+        this.app = app;
+        return this;
+    }
+
+    public LogQuery decision(String decision) {
+        this.decision = decision;
+        return this;
+    }
+
+    public LogQuery ip(String ip) {
+        this.ip = ip;
+        return this;
+    }
+
+    public LogQuery protocol(String protocol) {
+        this.protocol = protocol;
+        return this;
+    }
+
+    // Alert type (EXCESSIVE_DENIES, UNEXPECTED_PROTOCOL, ...); only meaningful for alerts.log.
+    public LogQuery type(String type) {
+        this.type = type;
+        return this;
+    }
+
+    public LogQuery limit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public long getFromKey() {
+        return fromKey;
+    }
+
+    public long getToKey() {
+        return toKey;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    boolean hasTimeRange() {
+        return fromKey >= 0 || toKey >= 0;
+    }
+
+    boolean inTimeRange(long key) {
+        if (key < 0) return false;
+        if (fromKey >= 0 && key < fromKey) return false;
+        return toKey < 0 || key < toKey;
+    }
+
+    // Resolves the criteria against a log layout into byte-level column matchers.
+    ColumnMatcher[] compile(LogFormat format) {
+        return new ColumnMatcher[] {
+            ColumnMatcher.of("app", app, format.appColumn, false, format),
+            ColumnMatcher.of("decision", decision, format.decisionColumn, true, format),
+            ColumnMatcher.of("ip", ip, format.ipColumn, false, format),
+            ColumnMatcher.of("protocol", protocol, format.protocolColumn, true, format),
+            ColumnMatcher.of("type", type, format.typeColumn, true, format)
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "LogQuery{from=" + fromKey + ", to=" + toKey + ", app=" + app + ", decision=" + decision +
+               ", ip=" + ip + ", protocol=" + protocol + ", type=" + type + ", limit=" + limit + '}';
+    }
+
+    // Compares one " | "-separated column against the expected value without decoding the line.
+    static final class ColumnMatcher {
+        final int column;
+        final byte[] expected;
+        final boolean ignoreCase;
+
+        private ColumnMatcher(int column, byte[] expected, boolean ignoreCase) {
+            this.column = column;
+            this.expected = expected;
+            this.ignoreCase = ignoreCase;
+        }
+
+        static ColumnMatcher of(String name, String value, int column, boolean ignoreCase, LogFormat format) {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            if (column < 0) {
+                throw new IllegalArgumentException("Filter '" + name + "' is not supported for " + format + " logs.");
+            }
+            return new ColumnMatcher(column, value.trim().getBytes(StandardCharsets.UTF_8), ignoreCase);
+        }
+
+        boolean matches(ByteBuffer buffer, int start, int end) {
+            if (end - start != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                byte actual = buffer.get(start + i);
+                byte wanted = expected[i];
+                if (actual != wanted) {
+                    if (!ignoreCase || toUpper(actual) != toUpper(wanted)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static byte toUpper(byte b) {
+            return (b >= 'a' && b <= 'z') ? (byte) (b - 32) : b;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.firewall.query;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+// Runs LogQuery filters over firewall_activity.log / alerts.log.
+//
+// The sparse index narrows the time range down to a byte range, which is cut into chunks.
+// Each chunk is memory-mapped and scanned by a fork/join task that splits it further into
+// leaves, matching columns directly on the mapped bytes and only decoding lines that match.
+// Only a small window of chunks is in flight at a time and results are handed to the
+// caller chunk by chunk in file order, so the first hits arrive long before a multi-GB
+// scan finishes and memory stays bounded by the window, not by the result size.
+public class LogQueryEngine {
+    private static final long CHUNK_BYTES = 16L << 20; // unit of ordered streaming
+    private static final long LEAF_BYTES = 2L << 20;   // unit of work for a single fork/join leaf
+    private static final int INITIAL_TAIL = 64 * 1024; // extra bytes mapped for a line crossing the leaf end
+    private static final byte[] SEPARATOR = " | ".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path logPath;
+    private final SparseLogIndex index;
+    private final ForkJoinPool pool;
+
+    public LogQueryEngine(String logFilePath) {
+        this(Paths.get(logFilePath), ForkJoinPool.commonPool());
+    }
+
+    public LogQueryEngine(Path logPath, ForkJoinPool pool) {
+        this.logPath = logPath;
+        this.index = new SparseLogIndex(logPath, SparseLogIndex.DEFAULT_STRIDE);
+        this.pool = pool;
+    }
+
+    // Streams matching lines to 'sink' in file order and returns how many were delivered.
+    // The sink is always called from the calling thread.
+    public long query(LogQuery query, Consumer<LogRecord> sink) throws IOException {
+        index.refresh();
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            LogFormat format = detectFormat(channel, fileSize);
+            LogQuery.ColumnMatcher[] matchers = query.compile(format);
+            long start = index.startOffsetFor(query.getFromKey());
+            long end = index.endOffsetFor(query.getToKey(), fileSize);
+            if (start >= end) {
+                return 0;
+            }
+
+            int chunkCount = (int) ((end - start + CHUNK_BYTES - 1) / CHUNK_BYTES);
+            int window = Math.max(2, pool.getParallelism() * 2);
+            List<ForkJoinTask<List<LogRecord>>> tasks = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                long chunkStart = start + i * CHUNK_BYTES;
+                tasks.add(new ScanTask(channel, fileSize, query, matchers, format,
+                        chunkStart, Math.min(end, chunkStart + CHUNK_BYTES)));
+            }
+
+            long emitted = 0;
+            try {
+                for (int i = 0; i < Math.min(window, chunkCount); i++) {
+                    pool.execute(tasks.get(i));
+                }
+                for (int i = 0; i < chunkCount; i++) {
+                    List<LogRecord> hits = tasks.get(i).join();
+                    tasks.set(i, null);
+                    if (i + window < chunkCount) {
+                        pool.execute(tasks.get(i + window));
+                    }
+                    for (LogRecord hit : hits) {
+                        sink.accept(hit);
+                        if (++emitted >= query.getLimit()) {
+                            return emitted;
+                        }
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                for (ForkJoinTask<List<LogRecord>> task : tasks) {
+                    if (task != null) task.cancel(false);
+                }
+            }
+            return emitted;
+        }
+    }
+
+    public List<LogRecord> queryToList(LogQuery query) throws IOException {
+        List<LogRecord> results = new ArrayList<>();
+        query(query, results::add);
+        return results;
+    }
+
+    private static LogFormat detectFormat(FileChannel channel, long fileSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) Math.min(64, fileSize));
+        channel.read(header, 0);
+        return LogFormat.detect(Arrays.copyOf(header.array(), header.position()));
+    }
+
+    // Scans the lines that *start* in [from, to). A line that begins before 'from' belongs to the
+    // previous range and a line that begins before 'to' is read to its end, so adjacent ranges
+    // never need to agree on line boundaries up front.
+    private static final class ScanTask extends RecursiveTask<List<LogRecord>> {
+        private final FileChannel channel;
+        private final long fileSize;
+        private final LogQuery query;
+        private final LogQuery.ColumnMatcher[] matchers;
+        private final LogFormat format;
+        private final long from;
+        private final long to;
+
+        ScanTask(FileChannel channel, long fileSize, LogQuery query, LogQuery.ColumnMatcher[] matchers,
+                 LogFormat format, long from, long to) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.query = query;
+            this.matchers = matchers;
+            this.format = format;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<LogRecord> compute() {
+            if (to - from > LEAF_BYTES) {
+                long mid = from + (to - from) / 2;
+                ScanTask left = new ScanTask(channel, fileSize, query, matchers, format, from, mid);
+                ScanTask right = new ScanTask(channel, fileSize, query, matchers, format, mid, to);
+                left.fork();
+                List<LogRecord> rightHits = right.compute();
+                List<LogRecord> hits = left.join();
+                hits.addAll(rightHits);
+                return hits;
+            }
+            try {
+                int tail = INITIAL_TAIL;
+                List<LogRecord> hits;
+                while ((hits = scanLeaf(tail)) == null) {
+                    tail *= 4; // a line longer than the mapped tail, map more and retry
+                }
+                return hits;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<LogRecord> scanLeaf(int tail) throws IOException {
+            long mapStart = from > 0 ? from - 1 : 0; // one byte back to see if 'from' starts a line
+            long mapEnd = Math.min(fileSize, to + tail);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            int limit = buffer.limit();
+            int rangeEnd = (int) (to - mapStart);
+
+            int pos = 0;
+            if (from > 0) {
+                pos = indexOf(buffer, (byte) '\n', 0, limit);
+                if (pos < 0) {
+                    return mapEnd == fileSize ? new ArrayList<>() : null;
+                }
+                pos++;
+            }
+
+            List<LogRecord> hits = new ArrayList<>();
+            int[] columnStarts = new int[format.columnCount + 1];
+            while (pos < rangeEnd) {
+                int lineEnd = indexOf(buffer, (byte) '\n', pos, limit);
+                if (lineEnd < 0) {
+                    if (mapEnd < fileSize) return null;
+                    break; // last line is still being written, leave it for the next query
+                }
+                int contentEnd = (lineEnd > pos && buffer.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+                if (matches(buffer, pos, contentEnd, columnStarts)) {
+                    byte[] bytes = new byte[contentEnd - pos];
+                    buffer.position(pos);
+                    buffer.get(bytes);
+                    hits.add(new LogRecord(mapStart + pos, new String(bytes, StandardCharsets.UTF_8)));
+                }
+                pos = lineEnd + 1;
+            }
+            return hits;
+        }
+
+        private boolean matches(MappedByteBuffer buffer, int start, int end, int[] columnStarts) {
+            long key = LogTimestamps.parseKey(buffer, start, end);
+            if (key < 0) {
+                return false; // header line or garbage
+            }
+            if (query.hasTimeRange() && !query.inTimeRange(key)) {
+                return false;
+            }
+            int columns = splitColumns(buffer, start, end, columnStarts);
+            for (LogQuery.ColumnMatcher matcher : matchers) {
+                if (matcher == null) continue;
+                if (matcher.column >= columns) return false;
+                int colStart = columnStarts[matcher.column];
+                int colEnd = matcher.column + 1 < columns ? columnStarts[matcher.column + 1] - SEPARATOR.length : end;
+                if (!matcher.matches(buffer, colStart, colEnd)) return false;
+            }
+            return true;
+        }
+
+        // Records where each column starts; the last column (reason/details) takes the rest of the line.
+        private int splitColumns(MappedByteBuffer buffer, int start, int end, int[] columnStarts) {
+            int count = 0;
+            columnStarts[count++] = start;
+            int i = start;
+            while (count < format.columnCount && i <= end - SEPARATOR.length) {
+                if (buffer.get(i) == ' ' && buffer.get(i + 1) == '|' && buffer.get(i + 2) == ' ') {
+                    i += SEPARATOR.length;
+                    columnStarts[count++] = i;
+                } else {
+                    i++;
+                }
+            }
+            return count;
+        }
+
+        private static int indexOf(MappedByteBuffer buffer, byte b, int from, int limit) {
+            for (int i = from; i < limit; i++) {
+                if (buffer.get(i) == b) return i;
+            }
+            return -1;
+        }
+    }
+}
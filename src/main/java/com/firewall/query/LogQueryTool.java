@@ -0,0 +1,77 @@
+package com.firewall.query;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+// Command line front end for LogQueryEngine, e.g.
+//   --log firewall_activity.log --from "2025-06-01 14:00" --to "2025-06-01 14:05" --app BrowserApp --decision DENY
+public class LogQueryTool {
+
+    public static void main(String[] args) {
+        String logFile = "firewall_activity.log";
+        LogQuery query = new LogQuery();
+        boolean countOnly = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--log": logFile = value(args, ++i, arg); break;
+                    case "--from": query.from(value(args, ++i, arg)); break;
+                    case "--to": query.to(value(args, ++i, arg)); break;
+                    case "--app": query.app(value(args, ++i, arg)); break;
+                    case "--decision": query.decision(value(args, ++i, arg)); break;
+                    case "--ip": query.ip(value(args, ++i, arg)); break;
+                    case "--protocol": query.protocol(value(args, ++i, arg)); break;
+                    case "--type": query.type(value(args, ++i, arg)); break;
+                    case "--limit": query.limit(Long.parseLong(value(args, ++i, arg))); break;
+                    case "--count": countOnly = true; break;
+                    default:
+                        printUsage();
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid query: " + e.getMessage());
+            printUsage();
+            return;
+        }
+
+        LogQueryEngine engine = new LogQueryEngine(logFile);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        long startNanos = System.nanoTime();
+        try {
+            final boolean printLines = !countOnly;
+            long matches = engine.query(query, record -> {
+                if (printLines) out.println(record.getLine());
+            });
+            out.flush();
+            long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+            System.err.println(matches + " matching line(s) in " + logFile + " (" + elapsedMs + " ms)");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid query: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error querying " + logFile + ": " + e.getMessage());
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: --query [--log <file>] [--from <yyyy-MM-dd HH:mm[:ss[.SSS]]>] [--to <timestamp>]");
+        System.err.println("               [--app <name>] [--decision ALLOW|DENY|RATE_LIMITED] [--ip <address>] [--protocol <proto>]");
+        System.err.println("               [--type <alert type>] [--limit <n>] [--count]");
+        System.err.println("The time range includes --from and excludes --to. --type only applies to alerts.log;");
+        System.err.println("--decision, --ip and --protocol only apply to the activity log.");
+    }
+}
@@ -0,0 +1,33 @@
+package com.firewall.query;
+
+// A single matching log line and where it was found.
+public class LogRecord {
+    private final long offset;
+    private final String line;
+    private String[] columns; // split lazily, most callers only print the line
+
+    public LogRecord(long offset, String line) {
+        this.offset = offset;
+        this.line = line;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public String getColumn(int index) {
+        if (columns == null) {
+            columns = line.split(" \\| ", -1);
+        }
+        return index >= 0 && index < columns.length ? columns[index] : null;
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
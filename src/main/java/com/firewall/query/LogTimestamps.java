@@ -0,0 +1,81 @@
+package com.firewall.query;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// Log lines start with "yyyy-MM-dd HH:mm:ss.SSS". Instead of parsing that into a Date we
+// pack the digits into a single long (e.g. 20250601142626370), which sorts the same way
+// and can be read straight out of a mapped buffer without allocating.
+public final class LogTimestamps {
+    public static final int TIMESTAMP_LENGTH = 23; // yyyy-MM-dd HH:mm:ss.SSS
+    private static final int KEY_DIGITS = 17;
+    private static final String PATTERN = "dddd-dd-dd dd:dd:dd.ddd";
+
+    private LogTimestamps() {
+    }
+
+    // Returns the timestamp key of the line starting at 'pos', or -1 if it doesn't start with a timestamp.
+    public static long parseKey(ByteBuffer buffer, int pos, int limit) {
+        if (limit - pos < TIMESTAMP_LENGTH) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            byte b = buffer.get(pos + i);
+            if (PATTERN.charAt(i) == 'd') {
+                if (b < '0' || b > '9') return -1;
+                key = key * 10 + (b - '0');
+            } else if (b != PATTERN.charAt(i)) {
+                return -1;
+            }
+        }
+        return key;
+    }
+
+    public static long parseKey(byte[] line) {
+        return parseKey(ByteBuffer.wrap(line), 0, line.length);
+    }
+
+    // The instant a key stands for, reading it as local time in 'zone' (the loggers write local time)
+    public static long toEpochMillis(long key, ZoneId zone) {
+        int millis = (int) (key % 1000);
+        long rest = key / 1000;
+        int second = (int) (rest % 100);
+        int minute = (int) (rest / 100 % 100);
+        int hour = (int) (rest / 10_000 % 100);
+        int day = (int) (rest / 1_000_000 % 100);
+        int month = (int) (rest / 100_000_000 % 100);
+        int year = (int) (rest / 10_000_000_000L);
+        return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000)
+                .atZone(zone).toInstant().toEpochMilli();
+    }
+
+    // Parses a possibly partial timestamp from the command line, e.g. "2025-06-01 14:00".
+    // Missing trailing fields are treated as zero, so "2025-06-01 14:05" means 14:05:00.000.
+    public static long parseQueryKey(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return -1;
+        }
+        long key = 0;
+        int digits = 0;
+        for (char c : text.trim().toCharArray()) {
+            if (c >= '0' && c <= '9') {
+                if (digits == KEY_DIGITS) {
+                    throw new IllegalArgumentException("Too many digits in timestamp: " + text);
+                }
+                key = key * 10 + (c - '0');
+                digits++;
+            } else if ("-: .T".indexOf(c) < 0) {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' in timestamp: " + text);
+            }
+        }
+        if (digits < 8) {
+            throw new IllegalArgumentException("Timestamp must include at least a date (yyyy-MM-dd): " + text);
+        }
+        for (; digits < KEY_DIGITS; digits++) {
+            key *= 10;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,260 @@
+package com.firewall.query;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// On-disk sparse index of a log file: for every 'stride' bytes it remembers the offset and
+// timestamp key of the first line starting in that block, and the lowest and highest key of
+// all lines starting in it. A time range can then be turned into a byte range without
+// scanning the whole file.
+//
+// Timestamps are only roughly in order: a thread stamps a line before it gets to append it,
+// so a line can land after later-stamped ones, and local time repeats an hour when daylight
+// saving ends. So the start of a range is found by binary search on the running maximum of
+// the block maxima, and the end is the block after the last one with a line before 'to'.
+//
+// Indexing a block reads it once, and refresh() only reads the complete blocks appended
+// since the last call, so each part of the log is read only once and not again per query.
+// The block still being written is left out until it's complete, and queries always scan it.
+// The index is saved next to the log as "<log>.idx".
+public class SparseLogIndex {
+    private static final int MAGIC = 0x46574958; // "FWIX"
+    private static final int VERSION = 2;
+    public static final long DEFAULT_STRIDE = 1L << 20; // 1 MB
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final long stride;
+
+    private long[] offsets = new long[64];
+    private long[] keys = new long[64];
+    private long[] minKeys = new long[64];
+    private long[] maxKeys = new long[64];
+    private long[] runningMaxKeys = new long[64]; // max of maxKeys[0..i], non-decreasing; not saved
+    private int size;
+    private long nextBoundary; // next block boundary that has not been indexed yet
+
+    public SparseLogIndex(String logFilePath) {
+        this(Paths.get(logFilePath), DEFAULT_STRIDE);
+    }
+
+    public SparseLogIndex(Path logPath, long stride) {
+        this.logPath = logPath;
+        this.indexPath = Paths.get(logPath.toString() + ".idx");
+        this.stride = stride;
+        load();
+    }
+
+    // Indexes any blocks appended since the last refresh. Rebuilds from scratch if the log
+    // was truncated or replaced (e.g. rotated) underneath us.
+    public synchronized void refresh() throws IOException {
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (!isConsistentWith(channel, fileSize)) {
+                reset();
+            }
+            boolean changed = false;
+            ByteBuffer buffer = null;
+            while (nextBoundary < fileSize) {
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate((int) stride + LogTimestamps.TIMESTAMP_LENGTH + 1);
+                }
+                long[] entry = new long[4];
+                int status = scanBlock(channel, nextBoundary, fileSize, buffer, entry);
+                if (status == INCOMPLETE) {
+                    break; // the tail is still being written, try again next refresh
+                }
+                if (status == FOUND) {
+                    append(entry[0], entry[1], entry[2], entry[3]);
+                }
+                nextBoundary += stride;
+                changed = true;
+            }
+            if (changed) {
+                save();
+            }
+        }
+    }
+
+    // Offset to start scanning from so that no line with key >= fromKey is missed: the first
+    // block holding such a line, or the unindexed tail if no indexed block does.
+    public synchronized long startOffsetFor(long fromKey) {
+        if (fromKey < 0) return 0;
+        int i = lastIndexBelow(fromKey) + 1;
+        if (i == 0) return 0;
+        return i < size ? offsets[i] : nextBoundary;
+    }
+
+    // Offset at which all following lines have key >= toKey: just past the last block holding
+    // a line before toKey. The unindexed tail is always included.
+    public synchronized long endOffsetFor(long toKey, long fileSize) {
+        if (toKey < 0) return fileSize;
+        int i = size;
+        while (i > 0 && minKeys[i - 1] >= toKey) {
+            i--;
+        }
+        return i < size ? Math.min(offsets[i], fileSize) : fileSize;
+    }
+
+    public synchronized int getEntryCount() {
+        return size;
+    }
+
+    public Path getIndexPath() {
+        return indexPath;
+    }
+
+    private int lastIndexBelow(long key) {
+        int lo = 0, hi = size - 1, result = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (runningMaxKeys[mid] < key) {
+                result = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    private static final int FOUND = 0;
+    private static final int NONE_IN_BLOCK = 1;
+    private static final int INCOMPLETE = 2;
+
+    // Reads the block [boundary, boundary + stride) and the bytes around it and fills 'entry'
+    // with the offset and key of the first timestamped line starting in it and the lowest and
+    // highest key of those lines. INCOMPLETE until the whole block has been written.
+    private int scanBlock(FileChannel channel, long boundary, long fileSize, ByteBuffer buffer, long[] entry)
+            throws IOException {
+        long end = boundary + stride;
+        if (fileSize < end + LogTimestamps.TIMESTAMP_LENGTH) {
+            return INCOMPLETE;
+        }
+        long from = boundary == 0 ? 0 : boundary - 1; // the byte before, to see if the block starts a line
+        buffer.clear();
+        buffer.limit((int) (end + LogTimestamps.TIMESTAMP_LENGTH - from));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) return INCOMPLETE;
+        }
+        int blockStart = (int) (boundary - from);
+        int blockEnd = (int) (end - from);
+        int limit = buffer.limit();
+        boolean found = false;
+        for (int i = blockStart; i < blockEnd; i++) {
+            if (i > 0 && buffer.get(i - 1) != '\n') {
+                continue;
+            }
+            long key = LogTimestamps.parseKey(buffer, i, limit); // header or garbage lines are -1
+            if (key < 0) {
+                continue;
+            }
+            if (!found) {
+                entry[0] = from + i;
+                entry[1] = key;
+                entry[2] = key;
+                entry[3] = key;
+                found = true;
+            } else {
+                entry[2] = Math.min(entry[2], key);
+                entry[3] = Math.max(entry[3], key);
+            }
+        }
+        return found ? FOUND : NONE_IN_BLOCK;
+    }
+
+    // Cheap sanity check that the saved index still describes this file: the first and last
+    // entries must still point at a line with the same timestamp.
+    private boolean isConsistentWith(FileChannel channel, long fileSize) throws IOException {
+        if (nextBoundary > 0 && fileSize <= nextBoundary - stride) {
+            return false; // truncated below what we already indexed
+        }
+        if (size == 0) return true;
+        return keyAt(channel, offsets[0], fileSize) == keys[0]
+            && keyAt(channel, offsets[size - 1], fileSize) == keys[size - 1];
+    }
+
+    private static long keyAt(FileChannel channel, long offset, long fileSize) throws IOException {
+        if (offset + LogTimestamps.TIMESTAMP_LENGTH > fileSize) return -1;
+        ByteBuffer buffer = ByteBuffer.allocate(LogTimestamps.TIMESTAMP_LENGTH);
+        channel.read(buffer, offset);
+        return LogTimestamps.parseKey(buffer, 0, buffer.position());
+    }
+
+    private void append(long offset, long key, long minKey, long maxKey) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+            minKeys = Arrays.copyOf(minKeys, size * 2);
+            maxKeys = Arrays.copyOf(maxKeys, size * 2);
+            runningMaxKeys = Arrays.copyOf(runningMaxKeys, size * 2);
+        }
+        offsets[size] = offset;
+        keys[size] = key;
+        minKeys[size] = minKey;
+        maxKeys[size] = maxKey;
+        runningMaxKeys[size] = size == 0 ? maxKey : Math.max(runningMaxKeys[size - 1], maxKey);
+        size++;
+    }
+
+    private void reset() {
+        size = 0;
+        nextBoundary = 0;
+    }
+
+    private void load() {
+        if (!Files.exists(indexPath)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != stride) {
+                System.err.println("Warning: Ignoring incompatible log index " + indexPath);
+                return;
+            }
+            long boundary = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                append(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+            }
+            nextBoundary = boundary;
+        } catch (IOException e) {
+            System.err.println("Warning: Could not read log index " + indexPath + ", rebuilding: " + e.getMessage());
+            reset();
+        }
+    }
+
+    private void save() {
+        Path tmp = Paths.get(indexPath.toString() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stride);
+            out.writeLong(nextBoundary);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(offsets[i]);
+                out.writeLong(keys[i]);
+                out.writeLong(minKeys[i]);
+                out.writeLong(maxKeys[i]);
+            }
+        } catch (IOException e) {
+            // Not fatal, the index just stays in memory for this run.
+            System.err.println("Warning: Could not write log index " + indexPath + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not write log index " + indexPath + ": " + e.getMessage());
+        }
+    }
+}
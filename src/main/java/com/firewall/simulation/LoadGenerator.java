@@ -0,0 +1,271 @@
+package com.firewall.simulation;
+
+import com.firewall.core.ActivityLogger;
+import com.firewall.core.AlertEngine;
+import com.firewall.core.FirewallAgent;
+import com.firewall.core.PolicyManager;
+import com.firewall.metrics.HistogramSnapshot;
+import com.firewall.metrics.LatencyHistogram;
+import com.firewall.model.DecisionResult;
+import com.firewall.model.NetworkRequest;
+import com.firewall.trace.TraceRecorder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop load generator for FirewallAgent, e.g.
+//   --load --rate 50000 --threads 4 --duration 30 --vocab 10000 --seed 42
+//
+// Requests are scheduled at fixed intended start times (rate / threads per producer) and a
+// producer that falls behind does not wait or skip: it sends the overdue requests right away.
+// Latency is measured from the intended start, so a stall is charged to every request
+// it delayed (coordinated omission corrected). The service time, measured from the actual
+// start, is reported next to it for comparison.
+//
+// Apps, domains and IPs are Zipf-distributed over a seeded vocabulary, so a run with the same
+// options and seed sends the same request mix.
+public class LoadGenerator {
+    private final FirewallAgent firewallAgent;
+    private final double targetRate;
+    private final int threads;
+    private final long durationNanos;
+    private final long seed;
+    private final TrafficVocabulary vocabulary;
+    private final ZipfSampler appSampler;
+    private final ZipfSampler domainSampler;
+    private final ZipfSampler ipSampler;
+
+    private final LatencyHistogram responseTimes = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    public LoadGenerator(FirewallAgent firewallAgent, double targetRate, int threads, long durationSeconds,
+                         int vocabularySize, int appCount, double zipfExponent, long seed) {
+        if (targetRate <= 0 || threads <= 0 || durationSeconds <= 0 || vocabularySize <= 0 || appCount <= 0) {
+            throw new IllegalArgumentException("rate, threads, duration, vocab and apps must be positive");
+        }
+        this.firewallAgent = firewallAgent;
+        this.targetRate = targetRate;
+        this.threads = threads;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.seed = seed;
+        this.vocabulary = new TrafficVocabulary(appCount, vocabularySize, vocabularySize, seed);
+        this.appSampler = new ZipfSampler(vocabulary.apps.length, zipfExponent);
+        this.domainSampler = new ZipfSampler(vocabulary.domains.length, zipfExponent);
+        this.ipSampler = new ZipfSampler(vocabulary.ips.length, zipfExponent);
+    }
+
+    public Report run() throws InterruptedException {
+        long periodNanos = (long) (1_000_000_000L * threads / targetRate); // per producer
+        long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50); // let all producers line up
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            // Producers are offset within one period so the combined stream is evenly spaced
+            long firstNanos = startNanos + periodNanos * t / threads;
+            SplittableRandom random = new SplittableRandom(seed * 31 + t);
+            Thread producer = new Thread(() -> {
+                try {
+                    produce(firstNanos, periodNanos, startNanos + durationNanos, random);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-producer-" + t);
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        long lastCompleted = 0;
+        while (!done.await(1, TimeUnit.SECONDS)) {
+            long now = completed.sum();
+            System.out.println("  ... " + (now - lastCompleted) + " req/s, " + now + " total");
+            lastCompleted = now;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return new Report(completed.sum(), denied.sum(), rateLimited.sum(), elapsedNanos, responseTimes.snapshot(),
+                serviceTimes.snapshot());
+    }
+
+    private void produce(long firstNanos, long periodNanos, long endNanos, SplittableRandom random) {
+        for (long intended = firstNanos; intended < endNanos; intended += periodNanos) {
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                long wait = intended - now;
+                if (wait > 50_000) {
+                    LockSupport.parkNanos(wait - 20_000); // park most of the way, spin the rest
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            NetworkRequest request = nextRequest(random);
+            DecisionResult result = firewallAgent.processRequest(request);
+            long end = System.nanoTime();
+            responseTimes.record(end - intended);
+            serviceTimes.record(end - now);
+            completed.increment();
+            if ("DENY".equals(result.decision)) {
+                denied.increment();
+            } else if ("RATE_LIMITED".equals(result.decision)) {
+                rateLimited.increment();
+            }
+        }
+    }
+
+    private NetworkRequest nextRequest(SplittableRandom random) {
+        String app = vocabulary.apps[appSampler.sample(random)];
+        String domain = vocabulary.domains[domainSampler.sample(random)];
+        String ip = vocabulary.ips[ipSampler.sample(random)];
+        String protocol;
+        int port;
+        int roll = random.nextInt(100);
+        if (roll < 65) {
+            protocol = "HTTPS"; port = 443;
+        } else if (roll < 80) {
+            protocol = "HTTP"; port = 80;
+        } else if (roll < 92) {
+            protocol = "DNS"; port = 53;
+        } else if (roll < 96) {
+            protocol = "IMAPS"; port = 993;
+        } else if (roll < 99) {
+            protocol = "SMTP"; port = 25;
+        } else {
+            protocol = "FTP"; port = 21;
+        }
+        String sourceIp = "192.168.1." + (2 + random.nextInt(60));
+        int bytes = 64 + random.nextInt(1437); // Ethernet-sized packets, for byte rate limits
+        return new NetworkRequest(app, domain, ip, protocol, port, sourceIp, System.currentTimeMillis(), bytes);
+    }
+
+    public static final class Report {
+        final long completed;
+        final long denied;
+        final long rateLimited;
+        final long elapsedNanos;
+        final HistogramSnapshot responseTimes;
+        final HistogramSnapshot serviceTimes;
+
+        Report(long completed, long denied, long rateLimited, long elapsedNanos, HistogramSnapshot responseTimes,
+               HistogramSnapshot serviceTimes) {
+            this.completed = completed;
+            this.denied = denied;
+            this.rateLimited = rateLimited;
+            this.elapsedNanos = elapsedNanos;
+            this.responseTimes = responseTimes;
+            this.serviceTimes = serviceTimes;
+        }
+
+        public double getThroughput() {
+            return completed / (elapsedNanos / 1e9);
+        }
+
+        void print(double targetRate) {
+            System.out.printf("Requests: %d completed in %.1f s, %d denied, %d rate limited%n", completed,
+                    elapsedNanos / 1e9, denied, rateLimited);
+            System.out.printf("Throughput: %.0f req/s (%.1f%% of the %.0f req/s target)%n",
+                    getThroughput(), 100 * getThroughput() / targetRate, targetRate);
+            printLatencies("Latency from intended start (corrected for coordinated omission)", responseTimes);
+            printLatencies("Service time from actual start", serviceTimes);
+        }
+
+        private static void printLatencies(String title, HistogramSnapshot latencies) {
+            System.out.println(title + ", microseconds:");
+            System.out.printf("  mean %.1f  p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  p99.99 %.1f  max %.1f%n",
+                    latencies.getMeanNanos() / 1000.0,
+                    latencies.getValueAtPercentile(50) / 1000.0,
+                    latencies.getValueAtPercentile(90) / 1000.0,
+                    latencies.getValueAtPercentile(99) / 1000.0,
+                    latencies.getValueAtPercentile(99.9) / 1000.0,
+                    latencies.getValueAtPercentile(99.99) / 1000.0,
+                    latencies.getMaxNanos() / 1000.0);
+        }
+    }
+
+    public static void main(String[] args) {
+        double rate = 10_000;
+        int threads = 4;
+        long duration = 10;
+        int vocab = 10_000;
+        int apps = 50;
+        double zipf = 1.1;
+        long seed = 42;
+        boolean echo = false;
+        String policyFile = "policies.txt";
+        String activityLog = "loadtest_activity.log";
+        String alertLog = "loadtest_alerts.log";
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--rate": rate = Double.parseDouble(value(args, ++i, arg)); break;
+                    case "--threads": threads = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--duration": duration = Long.parseLong(value(args, ++i, arg)); break;
+                    case "--vocab": vocab = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--apps": apps = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--zipf": zipf = Double.parseDouble(value(args, ++i, arg)); break;
+                    case "--seed": seed = Long.parseLong(value(args, ++i, arg)); break;
+                    case "--echo": echo = true; break;
+                    case "--policies": policyFile = value(args, ++i, arg); break;
+                    case "--activity-log": activityLog = value(args, ++i, arg); break;
+                    case "--alert-log": alertLog = value(args, ++i, arg); break;
+                    default:
+                        printUsage();
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            printUsage();
+            return;
+        }
+
+        PolicyManager policyManager = new PolicyManager(policyFile);
+        ActivityLogger activityLogger = new ActivityLogger(activityLog);
+        activityLogger.setConsoleEcho(echo);
+        AlertEngine alertEngine = new AlertEngine(alertLog);
+        FirewallAgent firewallAgent = new FirewallAgent(policyManager, activityLogger, alertEngine);
+        TraceRecorder traceRecorder = TraceRecorder.startIfRequested(firewallAgent);
+
+        System.out.printf("Load test: %.0f req/s target, %d threads, %d s, vocabulary %d (%d apps), zipf %.2f, seed %d%n",
+                rate, threads, duration, vocab, apps, zipf, seed);
+        try {
+            LoadGenerator generator = new LoadGenerator(firewallAgent, rate, threads, duration, vocab, apps, zipf, seed);
+            Report report = generator.run();
+            report.print(rate);
+            System.out.println("Activity log: " + activityLogger.getWrittenCount() + " entries written, queue full "
+                    + activityLogger.getBlockedCount() + " time(s). Alerts by type:");
+            alertEngine.forEachAlertCount((type, count) -> System.out.println("  " + type + ": " + count));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Load test interrupted.");
+        } finally {
+            if (traceRecorder != null) {
+                traceRecorder.close();
+                System.out.println("Trace: " + traceRecorder.getWrittenCount() + " requests recorded, "
+                        + traceRecorder.getDroppedCount() + " dropped.");
+            }
+            alertEngine.shutdown();
+            activityLogger.close();
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: --load [--rate <req/s>] [--threads <n>] [--duration <seconds>] [--vocab <n>]");
+        System.err.println("              [--apps <n>] [--zipf <exponent>] [--seed <n>] [--echo] [--policies <file>]");
+        System.err.println("              [--activity-log <file>] [--alert-log <file>]");
+        System.err.println("Writes to loadtest_activity.log / loadtest_alerts.log unless told otherwise.");
+    }
+}
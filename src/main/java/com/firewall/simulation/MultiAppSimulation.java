@@ -0,0 +1,296 @@
+package com.firewall.simulation;
+
+import com.firewall.core.ActivityLogger;
+import com.firewall.core.AlertEngine;
+import com.firewall.core.FirewallAgent;
+import com.firewall.core.PolicyManager;
+import com.firewall.metrics.HistogramSnapshot;
+import com.firewall.metrics.LatencyHistogram;
+import com.firewall.model.DecisionResult;
+import com.firewall.model.NetworkRequest;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Many simulated applications sharing one FirewallAgent, each on its own thread, e.g.
+//   --multi-app --apps 1,10,100,1000,5000 --think-ms 10 --duration 5
+//
+// Every app is a closed loop: send a request as that app, wait a randomized think time, repeat.
+// Each step of --apps runs that many apps for --duration seconds and the table at the end shows
+// how throughput and service time change with the number of concurrent callers: it should grow
+// with the app count until the CPUs are busy, then flatten without service time blowing up.
+//
+// Apps run on virtual threads when the JVM has them (Java 21+, found by reflection so the build
+// stays on Java 11) and on small-stack platform threads otherwise; --platform forces the latter.
+public class MultiAppSimulation {
+    private static final long PLATFORM_STACK_BYTES = 256 * 1024;
+
+    private final FirewallAgent firewallAgent;
+    private final TrafficVocabulary vocabulary;
+    private final ZipfSampler domainSampler;
+    private final ZipfSampler ipSampler;
+    private final long thinkNanos;
+    private final ThreadFactory threadFactory;
+
+    public MultiAppSimulation(FirewallAgent firewallAgent, int maxApps, int vocabularySize, long thinkMillis,
+                              long seed, boolean platformThreads) {
+        this.firewallAgent = firewallAgent;
+        this.vocabulary = new TrafficVocabulary(maxApps, vocabularySize, vocabularySize, seed);
+        this.domainSampler = new ZipfSampler(vocabulary.domains.length, 1.1);
+        this.ipSampler = new ZipfSampler(vocabulary.ips.length, 1.1);
+        this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(thinkMillis);
+        ThreadFactory virtual = platformThreads ? null : virtualThreadFactory();
+        this.threadFactory = virtual != null ? virtual : platformThreadFactory();
+    }
+
+    public boolean usesVirtualThreads() {
+        return !(threadFactory instanceof PlatformThreadFactory);
+    }
+
+    // Runs 'apps' simulated applications for the given time and reports what they got done.
+    public Step run(int apps, long durationSeconds, long seed) throws InterruptedException {
+        LatencyHistogram serviceTimes = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        LongAdder denied = new LongAdder();
+        CountDownLatch started = new CountDownLatch(apps);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(apps);
+        long[] endNanos = new long[1];
+        List<Thread> threads = new ArrayList<>(apps);
+        for (int i = 0; i < apps; i++) {
+            String appName = vocabulary.apps[i % vocabulary.apps.length];
+            SplittableRandom random = new SplittableRandom(seed * 31 + i);
+            Thread thread = threadFactory.newThread(() -> {
+                started.countDown();
+                try {
+                    go.await();
+                    simulateApp(appName, random, endNanos[0], serviceTimes, completed, denied);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        started.await();
+        long startNanos = System.nanoTime();
+        endNanos[0] = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        go.countDown(); // publishes endNanos to the app threads
+        if (!done.await(durationSeconds + 30, TimeUnit.SECONDS)) {
+            threads.forEach(Thread::interrupt);
+            done.await();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return new Step(apps, completed.sum(), denied.sum(), elapsedNanos, serviceTimes.snapshot());
+    }
+
+    private void simulateApp(String appName, SplittableRandom random, long endNanos, LatencyHistogram serviceTimes,
+                             LongAdder completed, LongAdder denied) throws InterruptedException {
+        // Apps don't all start in the same instant
+        sleepNanos(thinkNanos == 0 ? 0 : random.nextLong(thinkNanos));
+        while (System.nanoTime() < endNanos) {
+            NetworkRequest request = nextRequest(appName, random);
+            long start = System.nanoTime();
+            DecisionResult result = firewallAgent.processRequest(request);
+            serviceTimes.record(System.nanoTime() - start);
+            completed.increment();
+            if ("DENY".equals(result.decision)) {
+                denied.increment();
+            }
+            if (thinkNanos > 0) {
+                sleepNanos(thinkNanos / 2 + random.nextLong(thinkNanos)); // 0.5x to 1.5x the think time
+            }
+        }
+    }
+
+    private static void sleepNanos(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        }
+    }
+
+    private NetworkRequest nextRequest(String appName, SplittableRandom random) {
+        String domain = vocabulary.domains[domainSampler.sample(random)];
+        String ip = vocabulary.ips[ipSampler.sample(random)];
+        int roll = random.nextInt(100);
+        String protocol = roll < 70 ? "HTTPS" : roll < 85 ? "HTTP" : roll < 95 ? "DNS" : "IMAPS";
+        int port = roll < 70 ? 443 : roll < 85 ? 80 : roll < 95 ? 53 : 993;
+        return new NetworkRequest(appName, domain, ip, protocol, port, "192.168.1." + (2 + random.nextInt(60)));
+    }
+
+    // Thread.ofVirtual().name("sim-app-", 0).factory(), if this JVM has virtual threads
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "sim-app-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // before Java 21, or preview-only
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        return new PlatformThreadFactory();
+    }
+
+    private static final class PlatformThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(null, task, "sim-app-" + count.getAndIncrement(), PLATFORM_STACK_BYTES);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static final class Step {
+        final int apps;
+        final long completed;
+        final long denied;
+        final long elapsedNanos;
+        final HistogramSnapshot serviceTimes;
+
+        Step(int apps, long completed, long denied, long elapsedNanos, HistogramSnapshot serviceTimes) {
+            this.apps = apps;
+            this.completed = completed;
+            this.denied = denied;
+            this.elapsedNanos = elapsedNanos;
+            this.serviceTimes = serviceTimes;
+        }
+
+        public double getThroughput() {
+            return completed / (elapsedNanos / 1e9);
+        }
+    }
+
+    private static void printTable(List<Step> steps, long thinkMillis) {
+        System.out.println();
+        System.out.printf("%8s %10s %12s %9s %9s %9s %9s %9s%n", "apps", "requests", "req/s", "scaling",
+                "ideal", "p50 us", "p99 us", "max us");
+        double base = steps.get(0).getThroughput() / steps.get(0).apps;
+        for (Step step : steps) {
+            // 'ideal' is the speedup if every extra app added as much as the first step's apps did
+            double scaling = step.getThroughput() / steps.get(0).getThroughput();
+            double ideal = (double) step.apps / steps.get(0).apps;
+            System.out.printf("%8d %10d %12.0f %8.1fx %8.1fx %9.1f %9.1f %9.1f%n", step.apps, step.completed,
+                    step.getThroughput(), scaling, ideal,
+                    step.serviceTimes.getValueAtPercentile(50) / 1000.0,
+                    step.serviceTimes.getValueAtPercentile(99) / 1000.0,
+                    step.serviceTimes.getMaxNanos() / 1000.0);
+        }
+        if (thinkMillis > 0) {
+            System.out.printf("One app alone managed %.0f req/s; %d CPU(s) available.%n", base,
+                    Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] appCounts = {1, 10, 100, 1000, 5000};
+        long duration = 5;
+        long thinkMillis = 10;
+        int vocab = 10_000;
+        long seed = 42;
+        boolean platform = false;
+        String policyFile = "policies.txt";
+        String activityLog = "loadtest_activity.log";
+        String alertLog = "loadtest_alerts.log";
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--apps": appCounts = parseCounts(value(args, ++i, arg)); break;
+                    case "--duration": duration = Long.parseLong(value(args, ++i, arg)); break;
+                    case "--think-ms": thinkMillis = Long.parseLong(value(args, ++i, arg)); break;
+                    case "--vocab": vocab = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--seed": seed = Long.parseLong(value(args, ++i, arg)); break;
+                    case "--platform": platform = true; break;
+                    case "--policies": policyFile = value(args, ++i, arg); break;
+                    case "--activity-log": activityLog = value(args, ++i, arg); break;
+                    case "--alert-log": alertLog = value(args, ++i, arg); break;
+                    default:
+                        printUsage();
+                        return;
+                }
+            }
+            if (duration <= 0 || thinkMillis < 0 || vocab <= 0) {
+                throw new IllegalArgumentException("duration and vocab must be positive, think time not negative");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            printUsage();
+            return;
+        }
+
+        PolicyManager policyManager = new PolicyManager(policyFile);
+        ActivityLogger activityLogger = new ActivityLogger(activityLog);
+        activityLogger.setConsoleEcho(false);
+        AlertEngine alertEngine = new AlertEngine(alertLog);
+        FirewallAgent firewallAgent = new FirewallAgent(policyManager, activityLogger, alertEngine);
+        int maxApps = 0;
+        for (int apps : appCounts) {
+            maxApps = Math.max(maxApps, apps);
+        }
+        MultiAppSimulation simulation = new MultiAppSimulation(firewallAgent, maxApps, vocab, thinkMillis, seed, platform);
+        System.out.printf("Multi-app simulation on %s threads: %d s per step, think time %d ms%n",
+                simulation.usesVirtualThreads() ? "virtual" : "platform", duration, thinkMillis);
+        List<Step> steps = new ArrayList<>();
+        try {
+            for (int apps : appCounts) {
+                Step step = simulation.run(apps, duration, seed);
+                steps.add(step);
+                System.out.printf("  %d apps: %.0f req/s, %d denied%n", apps, step.getThroughput(), step.denied);
+                while (activityLogger.getQueueDepth() > 0) {
+                    Thread.sleep(10); // don't let one step's log backlog slow the next
+                }
+            }
+            printTable(steps, thinkMillis);
+            System.out.println("Activity log: " + activityLogger.getWrittenCount() + " entries written, queue full "
+                    + activityLogger.getBlockedCount() + " time(s).");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Multi-app simulation interrupted.");
+        } finally {
+            alertEngine.shutdown();
+            activityLogger.close();
+        }
+    }
+
+    private static int[] parseCounts(String list) {
+        String[] parts = list.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            counts[i] = Integer.parseInt(parts[i].trim());
+            if (counts[i] <= 0) {
+                throw new IllegalArgumentException("app counts must be positive: " + list);
+            }
+        }
+        return counts;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: --multi-app [--apps <n,n,...>] [--duration <seconds per step>] [--think-ms <ms>]");
+        System.err.println("                   [--vocab <n>] [--seed <n>] [--platform] [--policies <file>]");
+        System.err.println("                   [--activity-log <file>] [--alert-log <file>]");
+        System.err.println("Writes to loadtest_activity.log / loadtest_alerts.log unless told otherwise.");
+    }
+}
@@ -0,0 +1,58 @@
+package com.firewall.simulation;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+// Deterministic app, domain and IP vocabularies for the load generator. The names the
+// policies and the regular simulator know about take the most popular ranks, so head traffic
+// exercises real policy rules; the long tail is generated from the seed (same seed, same
+// vocabulary) so it hits the unknown-app and not-in-allow-list paths.
+class TrafficVocabulary {
+    private static final String[] KNOWN_APPS =
+            {"BrowserApp", "MailClient", "UpdaterService", "HTTPS", "DNS", "GameClient", "UnknownApp"};
+    private static final String[] KNOWN_DOMAINS = {
+            "news.google.com", "wikipedia.org", "updates.vendor.com", "smtp.example.com", "imap.example.com",
+            "google.com", "api.vendor.com", "facebook.com", "mybank.com", "gaming-server.net",
+            "random-domain.xyz", "malicious-site.com"};
+    private static final String[] KNOWN_IPS = {"8.8.8.8", "1.1.1.1", "10.0.0.5", "192.168.1.100", "203.0.113.45"};
+
+    private static final String[] APP_WORDS = {"Sync", "Chat", "Media", "Backup", "Telemetry", "Office", "Vpn",
+            "Store", "Player", "Agent", "Helper", "Cloud", "Notes", "Photo", "Printer"};
+    private static final String[] DOMAIN_WORDS = {"cdn", "static", "api", "img", "auth", "video", "ads",
+            "metrics", "shop", "mail", "news", "files", "edge", "push", "login"};
+    private static final String[] SITE_WORDS = {"example", "vendor", "cloudhost", "mediacorp", "adnet",
+            "bankco", "gamestudio", "socialapp", "newsdaily", "storefront", "devtools", "streamer"};
+    private static final String[] TLDS = {"com", "net", "org", "io", "co", "xyz"};
+
+    final String[] apps;
+    final String[] domains;
+    final String[] ips;
+
+    TrafficVocabulary(int appCount, int domainCount, int ipCount, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        this.apps = build(KNOWN_APPS, appCount,
+                () -> APP_WORDS[random.nextInt(APP_WORDS.length)] + APP_WORDS[random.nextInt(APP_WORDS.length)]
+                        + random.nextInt(1000));
+        this.domains = build(KNOWN_DOMAINS, domainCount,
+                () -> DOMAIN_WORDS[random.nextInt(DOMAIN_WORDS.length)] + random.nextInt(100) + "."
+                        + SITE_WORDS[random.nextInt(SITE_WORDS.length)] + random.nextInt(10_000) + "."
+                        + TLDS[random.nextInt(TLDS.length)]);
+        this.ips = build(KNOWN_IPS, ipCount,
+                () -> (1 + random.nextInt(223)) + "." + random.nextInt(256) + "." + random.nextInt(256) + "."
+                        + (1 + random.nextInt(254)));
+    }
+
+    private static String[] build(String[] known, int size, Supplier<String> generator) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < known.length && names.size() < size; i++) {
+            names.add(known[i]);
+        }
+        int attempts = 0;
+        while (names.size() < size && attempts++ < size * 20) {
+            names.add(generator.get());
+        }
+        return names.toArray(new String[0]);
+    }
+}
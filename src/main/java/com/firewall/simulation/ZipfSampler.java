@@ -0,0 +1,37 @@
+package com.firewall.simulation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Draws ranks 0..n-1 with P(rank k) proportional to 1 / (k + 1)^exponent, the long-tailed
+// popularity seen in real traffic (a few apps and domains carry most requests). The CDF is
+// precomputed once, so a draw is one uniform number and a binary search. Immutable and
+// shareable; each thread passes its own random source.
+public class ZipfSampler {
+    private final double[] cdf;
+
+    public ZipfSampler(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+        cdf[n - 1] = 1.0;
+    }
+
+    public int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public int size() {
+        return cdf.length;
+    }
+}
@@ -0,0 +1,73 @@
+package com.firewall.trace;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Layout of a request trace file:
+//
+//   header   "FWTR", version byte, flags byte (FLAG_DEFLATE), start time (8 bytes, big-endian millis)
+//   records  [deflate-compressed when FLAG_DEFLATE] one after another until end of stream
+//
+//   record   varint  zigzag(timestamp - previous timestamp)
+//            string  application, domain, target IP, protocol
+//            varint  port
+//            string  source IP, recorded verdict
+//            varint  packet bytes (version 2 on; version 1 traces read as 0, unknown)
+//            string  rule that decided (version 3 on; older traces read as null, unknown)
+//
+//   string   varint 0, varint length, UTF-8 bytes  -> new string, added to the dictionary
+//            varint 1                              -> null
+//            varint n > 1                          -> dictionary entry n - 2
+//
+// Writer and reader grow the same dictionary in the same order and both stop adding at
+// MAX_DICTIONARY, after which new strings are written out every time. Apps, domains and IPs
+// repeat heavily, so most records come down to a handful of one- or two-byte varints.
+final class TraceFormat {
+    static final byte[] MAGIC = {'F', 'W', 'T', 'R'};
+    static final int VERSION = 3;
+    static final int MIN_VERSION = 1;
+    static final int FLAG_DEFLATE = 1;
+    static final int MAX_DICTIONARY = 1 << 16;
+    static final int MAX_STRING_BYTES = 1 << 16;
+    static final int STRING_NEW = 0;
+    static final int STRING_NULL = 1;
+    static final int STRING_FIRST_ENTRY = 2;
+
+    private TraceFormat() {
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    // Returns -1 at a clean end of stream (before the first byte of the varint)
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) return -1;
+                throw new EOFException("Trace ends inside a varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,124 @@
+package com.firewall.trace;
+
+import com.firewall.model.NetworkRequest;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+// Reads a trace written by TraceWriter back one record at a time.
+public class TraceReader implements AutoCloseable {
+    private final InputStream in;
+    private final boolean compressed;
+    private final int version;
+    private final long startMillis;
+    private final List<String> dictionary = new ArrayList<>();
+    private long previousTimestamp;
+
+    public TraceReader(String path) throws IOException {
+        InputStream raw = new BufferedInputStream(new FileInputStream(path), 1 << 16);
+        try {
+            byte[] magic = raw.readNBytes(TraceFormat.MAGIC.length);
+            if (!Arrays.equals(magic, TraceFormat.MAGIC)) {
+                throw new IOException(path + " is not a request trace");
+            }
+            int version = raw.read();
+            if (version < TraceFormat.MIN_VERSION || version > TraceFormat.VERSION) {
+                throw new IOException("Unsupported trace version " + version + " in " + path);
+            }
+            int flags = raw.read();
+            byte[] start = raw.readNBytes(8);
+            if (flags < 0 || start.length < 8) {
+                throw new EOFException("Truncated trace header in " + path);
+            }
+            long millis = 0;
+            for (byte b : start) {
+                millis = (millis << 8) | (b & 0xFF);
+            }
+            this.version = version;
+            this.startMillis = millis;
+            this.previousTimestamp = millis;
+            this.compressed = (flags & TraceFormat.FLAG_DEFLATE) != 0;
+            this.in = compressed ? new BufferedInputStream(new InflaterInputStream(raw), 1 << 16) : raw;
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    // The next record, or null at the end of the trace
+    public TraceRecord next() throws IOException {
+        long delta = TraceFormat.readVarint(in);
+        if (delta < 0) {
+            return null;
+        }
+        long timestamp = previousTimestamp + TraceFormat.unzigzag(delta);
+        previousTimestamp = timestamp;
+        String app = readString();
+        String domain = readString();
+        String ip = readString();
+        String protocol = readString();
+        int port = (int) requireVarint();
+        String sourceIp = readString();
+        String verdict = readString();
+        int bytes = version >= 2 ? (int) requireVarint() : 0;
+        String rule = version >= 3 ? readString() : null;
+        return new TraceRecord(new NetworkRequest(app, domain, ip, protocol, port, sourceIp, timestamp, bytes),
+                verdict, rule);
+    }
+
+    private String readString() throws IOException {
+        long code = requireVarint();
+        if (code == TraceFormat.STRING_NULL) {
+            return null;
+        }
+        if (code >= TraceFormat.STRING_FIRST_ENTRY) {
+            long id = code - TraceFormat.STRING_FIRST_ENTRY;
+            if (id >= dictionary.size()) {
+                throw new IOException("Trace refers to unknown string #" + id);
+            }
+            return dictionary.get((int) id);
+        }
+        long length = requireVarint();
+        if (length > TraceFormat.MAX_STRING_BYTES) {
+            throw new IOException("Trace string length " + length + " out of range");
+        }
+        byte[] bytes = in.readNBytes((int) length);
+        if (bytes.length < length) {
+            throw new EOFException("Trace ends inside a string");
+        }
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if (dictionary.size() < TraceFormat.MAX_DICTIONARY) {
+            dictionary.add(value);
+        }
+        return value;
+    }
+
+    private long requireVarint() throws IOException {
+        long value = TraceFormat.readVarint(in);
+        if (value < 0) {
+            throw new EOFException("Trace ends inside a record");
+        }
+        return value;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,29 @@
+package com.firewall.trace;
+
+import com.firewall.model.NetworkRequest;
+
+// One request read back from a trace, with the verdict the firewall gave it when recorded and
+// the rule that decided it (null in traces from before rules were recorded).
+public final class TraceRecord {
+    private final NetworkRequest request;
+    private final String verdict;
+    private final String rule;
+
+    TraceRecord(NetworkRequest request, String verdict, String rule) {
+        this.request = request;
+        this.verdict = verdict;
+        this.rule = rule;
+    }
+
+    public NetworkRequest getRequest() {
+        return request;
+    }
+
+    public String getVerdict() {
+        return verdict;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+}
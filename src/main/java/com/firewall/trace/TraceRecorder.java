@@ -0,0 +1,134 @@
+package com.firewall.trace;
+
+import com.firewall.core.FirewallAgent;
+import com.firewall.model.NetworkRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Records every request FirewallAgent decides, with its verdict, to a trace file when the
+// JVM is started with -Dfirewall.trace=<file> (-Dfirewall.trace.compress=false for a raw trace).
+//
+// record() is called on the decision path, so it only offers the request to a bounded queue;
+// a writer thread does the encoding and I/O. Unlike the activity log, a trace is a debugging
+// aid: when the queue is full the request is dropped and counted rather than making the
+// firewall wait.
+public class TraceRecorder implements AutoCloseable {
+    public static final String FILE_PROPERTY = "firewall.trace";
+    public static final String COMPRESS_PROPERTY = "firewall.trace.compress";
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final int MAX_BATCH = 1024;
+
+    private final String path;
+    private final TraceWriter writer;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private volatile long written;
+
+    public TraceRecorder(String path, boolean compress) throws IOException {
+        this.path = path;
+        this.writer = new TraceWriter(path, compress);
+        this.writerThread = new Thread(this::writeLoop, "trace-recorder");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Starts recording for the agent if -Dfirewall.trace is set; the trace is closed on exit.
+    public static TraceRecorder startIfRequested(FirewallAgent agent) {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.trim().isEmpty()) {
+            return null;
+        }
+        boolean compress = !"false".equalsIgnoreCase(System.getProperty(COMPRESS_PROPERTY, "true").trim());
+        try {
+            TraceRecorder recorder = new TraceRecorder(file.trim(), compress);
+            agent.setTraceRecorder(recorder);
+            Runtime.getRuntime().addShutdownHook(new Thread(recorder::close, "trace-recorder-shutdown"));
+            System.out.println("Recording request trace to " + file.trim() + (compress ? " (compressed)" : ""));
+            return recorder;
+        } catch (IOException e) {
+            System.err.println("Could not start request trace: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 'rule' is the PolicyEvaluator.RULE_ constant that decided, so replays can tell verdicts
+    // reached without the policy apart
+    public void record(NetworkRequest request, String verdict, String rule) {
+        if (closed || !queue.offer(new Entry(request, verdict, rule))) {
+            dropped.increment();
+        }
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (Entry entry : batch) {
+                    writer.write(entry.request, entry.verdict, entry.rule);
+                }
+                batch.clear();
+                written = writer.getRecordCount();
+                if (queue.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing request trace " + path + ": " + e.getMessage());
+            closed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Error closing request trace " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Writes out everything queued so far and finishes the file. Safe to call more than once.
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            System.err.println("Warning: Trace recorder did not finish within 5 seconds.");
+        }
+    }
+
+    private static final class Entry {
+        final NetworkRequest request;
+        final String verdict;
+        final String rule;
+
+        Entry(NetworkRequest request, String verdict, String rule) {
+            this.request = request;
+            this.verdict = verdict;
+            this.rule = rule;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.firewall.trace;
+
+import com.firewall.core.ActivityLogger;
+import com.firewall.core.AlertEngine;
+import com.firewall.core.FirewallAgent;
+import com.firewall.core.PolicyEvaluator;
+import com.firewall.core.PolicyManager;
+import com.firewall.metrics.HistogramSnapshot;
+import com.firewall.metrics.LatencyHistogram;
+import com.firewall.model.DecisionResult;
+import com.firewall.model.NetworkRequest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Feeds a recorded trace through a fresh FirewallAgent, e.g.
+//   --replay trace.fwt --speed max --policies candidate_policies.txt
+//
+// --speed original keeps the recorded gaps between requests, a number scales them (2 = twice
+// as fast) and max sends requests back to back. Requests keep their recorded timestamps, so
+// the detectors see the same timeline at any speed. Requests go through one at a time in
+// recorded order; the report gives throughput, decision times and every verdict that differs
+// from the recorded one (e.g. after a policy change). Recorded blocklist denies and verdicts shed
+// under overload are still replayed, but not compared: the replaying agent has neither. Rate
+// limits are paced by the wall clock and start from fresh buckets, so RATE_LIMITED counts as the
+// ALLOW the policy gave; requests limited in only one of the two runs are counted separately.
+public class TraceReplayer {
+    private final FirewallAgent firewallAgent;
+    private final double speed; // 0 = as fast as possible
+    private final int maxDiffsShown;
+
+    private final LatencyHistogram decisionTimes = new LatencyHistogram();
+    private final Map<String, Long> diffCounts = new TreeMap<>();
+    private long replayed;
+    private long differing;
+    private long notCompared;
+    private long rateLimitTiming; // same policy verdict, rate-limited in only one of the two runs
+    private long maxBehindNanos;
+
+    public TraceReplayer(FirewallAgent firewallAgent, double speed, int maxDiffsShown) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must not be negative");
+        }
+        this.firewallAgent = firewallAgent;
+        this.speed = speed;
+        this.maxDiffsShown = maxDiffsShown;
+    }
+
+    public void replay(TraceReader reader) throws IOException {
+        long startNanos = System.nanoTime();
+        long firstTimestamp = Long.MIN_VALUE;
+        TraceRecord record;
+        while ((record = reader.next()) != null) {
+            NetworkRequest request = record.getRequest();
+            if (speed > 0) {
+                if (firstTimestamp == Long.MIN_VALUE) {
+                    firstTimestamp = request.getTimestamp();
+                }
+                long due = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(request.getTimestamp() - firstTimestamp) / speed);
+                long now = System.nanoTime();
+                if (due > now) {
+                    LockSupport.parkNanos(due - now);
+                } else {
+                    maxBehindNanos = Math.max(maxBehindNanos, now - due);
+                }
+            }
+            long before = System.nanoTime();
+            DecisionResult result = firewallAgent.processRequest(request);
+            decisionTimes.record(System.nanoTime() - before);
+            replayed++;
+            if (PolicyEvaluator.isDecidedOutsidePolicy(record.getRule())) {
+                notCompared++;
+            } else if (policyVerdict(result.decision).equals(policyVerdict(record.getVerdict()))) {
+                if (!result.decision.equals(record.getVerdict())) {
+                    rateLimitTiming++;
+                }
+            } else {
+                differing++;
+                diffCounts.merge(record.getVerdict() + " -> " + result.decision, 1L, Long::sum);
+                if (differing <= maxDiffsShown) {
+                    System.out.println("  DIFF " + record.getVerdict() + " -> " + result.decision + ": " + request
+                            + " (" + result.reason + ")");
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        printReport(elapsedNanos);
+    }
+
+    private static String policyVerdict(String decision) {
+        return "RATE_LIMITED".equals(decision) ? "ALLOW" : decision;
+    }
+
+    private void printReport(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Replayed %d requests in %.2f s: %.0f req/s%n", replayed, seconds,
+                seconds > 0 ? replayed / seconds : 0);
+        if (speed > 0) {
+            System.out.printf("Fell behind the trace schedule by up to %.1f ms%n", maxBehindNanos / 1e6);
+        }
+        HistogramSnapshot times = decisionTimes.snapshot();
+        System.out.printf("Decision time, microseconds: mean %.1f  p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                times.getMeanNanos() / 1000.0,
+                times.getValueAtPercentile(50) / 1000.0,
+                times.getValueAtPercentile(99) / 1000.0,
+                times.getValueAtPercentile(99.9) / 1000.0,
+                times.getMaxNanos() / 1000.0);
+        if (notCompared > 0) {
+            System.out.println(notCompared + " recorded blocklist or overload verdict(s) not compared.");
+        }
+        if (rateLimitTiming > 0) {
+            System.out.println(rateLimitTiming + " request(s) rate-limited in only one of the recording and the replay"
+                    + " (rate limits depend on timing; counted as allowed).");
+        }
+        if (differing == 0) {
+            System.out.println("All verdicts match the recording.");
+        } else {
+            System.out.println(differing + " verdict(s) differ from the recording:");
+            diffCounts.forEach((change, count) -> System.out.println("  " + change + ": " + count));
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            printUsage();
+            return;
+        }
+        String traceFile = args[0];
+        double speed = 1;
+        int diffs = 20;
+        String policyFile = "policies.txt";
+        String activityLog = "replay_activity.log";
+        String alertLog = "replay_alerts.log";
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--speed": speed = parseSpeed(value(args, ++i, arg)); break;
+                    case "--diffs": diffs = Integer.parseInt(value(args, ++i, arg)); break;
+                    case "--policies": policyFile = value(args, ++i, arg); break;
+                    case "--activity-log": activityLog = value(args, ++i, arg); break;
+                    case "--alert-log": alertLog = value(args, ++i, arg); break;
+                    default:
+                        printUsage();
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            printUsage();
+            return;
+        }
+
+        PolicyManager policyManager = new PolicyManager(policyFile);
+        ActivityLogger activityLogger = new ActivityLogger(activityLog);
+        activityLogger.setConsoleEcho(false);
+        AlertEngine alertEngine = new AlertEngine(alertLog);
+        FirewallAgent firewallAgent = new FirewallAgent(policyManager, activityLogger, alertEngine);
+        try (TraceReader reader = new TraceReader(traceFile)) {
+            System.out.println("Replaying " + traceFile + (reader.isCompressed() ? " (compressed)" : "") + " at "
+                    + (speed == 0 ? "maximum speed" : speed + "x") + " against " + policyFile);
+            new TraceReplayer(firewallAgent, speed, diffs).replay(reader);
+        } catch (IOException e) {
+            System.err.println("Error replaying trace " + traceFile + ": " + e.getMessage());
+        } finally {
+            alertEngine.shutdown();
+            activityLogger.close();
+        }
+    }
+
+    private static double parseSpeed(String value) {
+        if (value.equalsIgnoreCase("max")) return 0;
+        if (value.equalsIgnoreCase("original")) return 1;
+        double speed = Double.parseDouble(value);
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be original, max or a positive factor");
+        }
+        return speed;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: --replay <trace file> [--speed original|max|<factor>] [--policies <file>]");
+        System.err.println("                [--diffs <n shown>] [--activity-log <file>] [--alert-log <file>]");
+        System.err.println("Record a trace by starting the firewall with -Dfirewall.trace=<file>.");
+    }
+}
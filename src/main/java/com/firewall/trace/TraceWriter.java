@@ -0,0 +1,91 @@
+package com.firewall.trace;
+
+import com.firewall.model.NetworkRequest;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Encodes requests into the trace format (see TraceFormat). Not thread-safe: TraceRecorder
+// drives it from its single writer thread.
+public class TraceWriter implements AutoCloseable {
+    private final OutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private long previousTimestamp;
+    private long recordCount;
+
+    public TraceWriter(String path, boolean compress) throws IOException {
+        this(new FileOutputStream(path), compress, System.currentTimeMillis());
+    }
+
+    TraceWriter(OutputStream file, boolean compress, long startMillis) throws IOException {
+        OutputStream raw = new BufferedOutputStream(file, 1 << 16);
+        raw.write(TraceFormat.MAGIC);
+        raw.write(TraceFormat.VERSION);
+        raw.write(compress ? TraceFormat.FLAG_DEFLATE : 0);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            raw.write((int) (startMillis >>> shift));
+        }
+        this.out = compress
+                ? new BufferedOutputStream(new DeflaterOutputStream(raw, new Deflater(Deflater.BEST_SPEED), 1 << 16), 1 << 16)
+                : raw;
+        this.previousTimestamp = startMillis;
+    }
+
+    // 'rule' is the PolicyEvaluator.RULE_ constant behind the verdict, or null
+    public void write(NetworkRequest request, String verdict, String rule) throws IOException {
+        TraceFormat.writeVarint(out, TraceFormat.zigzag(request.getTimestamp() - previousTimestamp));
+        previousTimestamp = request.getTimestamp();
+        writeString(request.getApplicationName());
+        writeString(request.getTargetDomain());
+        writeString(request.getTargetIP());
+        writeString(request.getProtocol());
+        TraceFormat.writeVarint(out, request.getPort() & 0xFFFFFFFFL);
+        writeString(request.getSourceIP());
+        writeString(verdict);
+        TraceFormat.writeVarint(out, request.getBytes() & 0xFFFFFFFFL);
+        writeString(rule);
+        recordCount++;
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            TraceFormat.writeVarint(out, TraceFormat.STRING_NULL);
+            return;
+        }
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            TraceFormat.writeVarint(out, id + TraceFormat.STRING_FIRST_ENTRY);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > TraceFormat.MAX_STRING_BYTES) {
+            throw new IOException("String too long for trace: " + bytes.length + " bytes");
+        }
+        TraceFormat.writeVarint(out, TraceFormat.STRING_NEW);
+        TraceFormat.writeVarint(out, bytes.length);
+        out.write(bytes);
+        if (dictionary.size() < TraceFormat.MAX_DICTIONARY) {
+            dictionary.put(value, dictionary.size());
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close(); // finishes the deflate stream
+    }
+}
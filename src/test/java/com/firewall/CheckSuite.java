@@ -0,0 +1,53 @@
+package com.firewall;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Runs every *Check program, each in its own JVM so their static state, threads and timings
+// don't interfere, and exits non-zero if any of them failed. Run after 'mvn test-compile' with:
+//   java -cp target/test-classes:target/classes:<dependency jars> com.firewall.CheckSuite [check ...]
+// naming checks by simple class name to run only those.
+public class CheckSuite {
+    static final List<String> CHECKS = Arrays.asList(
+            "com.firewall.central.PolicyDistributionCheck",
+            "com.firewall.central.EventShippingCheck",
+            "com.firewall.core.RateLimiterCheck",
+            "com.firewall.core.TimeScheduleCheck",
+            "com.firewall.checkpoint.CheckpointCheck",
+            "com.firewall.analysis.PolicyAnalyzerCheck",
+            "com.firewall.core.OverloadCheck",
+            "com.firewall.blocklist.BlocklistCheck",
+            "com.firewall.classify.ServiceClassifierCheck",
+            "com.firewall.detection.SketchAccuracyCheck",
+            "com.firewall.detection.DetectorCheck",
+            "com.firewall.query.LogQueryCheck");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> selected = new ArrayList<>();
+        for (String check : CHECKS) {
+            String simpleName = check.substring(check.lastIndexOf('.') + 1);
+            if (args.length == 0 || Arrays.asList(args).contains(simpleName)) selected.add(check);
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> failed = new ArrayList<>();
+        for (String check : selected) {
+            System.out.println("\n=== " + check + " ===");
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), check)
+                    .inheritIO().start();
+            int status = process.waitFor();
+            System.out.printf("=== %s: %s in %.1f s ===%n", check, status == 0 ? "passed" : "FAILED (exit " + status + ")",
+                    (System.nanoTime() - start) / 1e9);
+            if (status != 0) failed.add(check);
+        }
+        if (failed.isEmpty()) {
+            System.out.println("\nAll " + selected.size() + " check programs passed.");
+        } else {
+            System.out.println("\nFailed: " + failed);
+            System.exit(1);
+        }
+    }
+}
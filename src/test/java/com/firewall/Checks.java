@@ -0,0 +1,29 @@
+package com.firewall;
+
+// Result reporting shared by the *Check programs: one line per check, a summary at the end,
+// and a non-zero exit status if anything failed so scripts can gate on them (see CheckSuite).
+public final class Checks {
+    private static int failures;
+
+    private Checks() {
+    }
+
+    public static void check(String what, boolean ok) {
+        System.out.println((ok ? "  OK    " : "  FAIL  ") + what);
+        if (!ok) failures++;
+    }
+
+    public static int getFailureCount() {
+        return failures;
+    }
+
+    // Prints the summary; exits with status 1 if any check failed
+    public static void finish() {
+        if (failures == 0) {
+            System.out.println("\nAll checks passed.");
+            return;
+        }
+        System.out.println("\n" + failures + " check(s) FAILED.");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.firewall.analysis;
+
+import com.firewall.Checks;
+import com.firewall.core.PolicyFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static com.firewall.Checks.check;
+
+// Runs the policy analyzer over a policy file seeded with every kind of redundancy, checks
+// each one is reported, that the canonical text is smaller and makes the same decisions, and
+// that the equivalence check does catch a canonical set that drops a needed entry. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.analysis.PolicyAnalyzerCheck
+public class PolicyAnalyzerCheck {
+    private static final String POLICIES = String.join("\n",
+            "# Version: check-1",
+            "stray=line",
+            "appName=Browser",
+            "allowedDomains=*.example.com, a.example.com, *.b.example.com, wiki.org, wiki.org, example.com",
+            "allowedProtocols=HTTPS, https, HTTP",
+            "allowedIPs=10.0.0.1, 10.0.0.1, 10.0.0.2",
+            "---",
+            "appName=Mail",
+            "allowedDomains=smtp.example.net",
+            "allowedProtocols=SMTP,SMTPS # Common mail protocols",
+            "allowedIPs=10.0.0.2",
+            "defaultAction=DENY # Deny unknown",
+            "allowedDomain=typo.example.net",
+            "---",
+            "appName=Updater",
+            "allowedDomains=old.vendor.com",
+            "---",
+            "appName=Updater",
+            "allowedDomains=updates.vendor.com",
+            "allowedProtocols=HTTPS",
+            "allowedProtocols=HTTP",
+            "deniedTimes=Mon-Fri 09:00-17:00",
+            "no equals sign here",
+            "---",
+            "appName=Ghost",
+            "");
+
+    public static void main(String[] args) throws IOException {
+        Path policies = Files.createTempFile("analyzer-check", ".txt");
+        Path canonical = Files.createTempFile("analyzer-check-canonical", ".txt");
+        try {
+            Files.write(policies, POLICIES.getBytes(StandardCharsets.UTF_8));
+            PolicyAnalyzer analyzer = new PolicyAnalyzer(policies.toString(), PolicyFile.read(policies.toString()));
+            Set<PolicyAnalyzer.Kind> reported = EnumSet.noneOf(PolicyAnalyzer.Kind.class);
+            for (PolicyAnalyzer.Finding finding : analyzer.getFindings()) {
+                System.out.println("  " + finding);
+                reported.add(finding.getKind());
+            }
+            for (PolicyAnalyzer.Kind kind : PolicyAnalyzer.Kind.values()) {
+                check(kind + " reported", reported.contains(kind));
+            }
+            check("fewer entries after minimizing (" + analyzer.getEntriesAsWritten() + " -> "
+                    + analyzer.getEntriesMinimized() + ")", analyzer.getEntriesMinimized() < analyzer.getEntriesAsWritten());
+
+            String text = analyzer.toCanonicalText();
+            Files.write(canonical, text.getBytes(StandardCharsets.UTF_8));
+            PolicyAnalyzer.Equivalence equivalence = analyzer.checkEquivalence(PolicyFile.read(canonical.toString()));
+            check("canonical set makes the same decisions (" + equivalence.getProbes() + " probes)",
+                    equivalence.getProbes() > 0 && equivalence.getMismatches() == 0);
+
+            // "example.com" isn't matched by "*.example.com", so dropping it must be caught
+            Files.write(canonical, text.replace(",example.com", "").getBytes(StandardCharsets.UTF_8));
+            PolicyAnalyzer.Equivalence broken = analyzer.checkEquivalence(PolicyFile.read(canonical.toString()));
+            check("dropping a needed entry is caught (" + broken.getMismatches() + " changed)", broken.getMismatches() > 0);
+        } finally {
+            Files.deleteIfExists(policies);
+            Files.deleteIfExists(canonical);
+        }
+        Checks.finish();
+    }
+}
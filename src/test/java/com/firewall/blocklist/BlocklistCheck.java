@@ -0,0 +1,209 @@
+package com.firewall.blocklist;
+
+import com.firewall.Checks;
+import com.firewall.core.ActivityLogger;
+import com.firewall.core.AlertEngine;
+import com.firewall.core.FirewallAgent;
+import com.firewall.core.PolicyManager;
+import com.firewall.model.DecisionResult;
+import com.firewall.model.NetworkRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.firewall.Checks.check;
+
+// Compiles a large synthetic feed, checks every kind of lookup against the ground truth, shows
+// how many lookups the in-memory prefilters answer on their own and what a lookup costs, then
+// swaps blocklists under a live FirewallAgent and makes sure a damaged file is refused. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.blocklist.BlocklistCheck [domains]
+public class BlocklistCheck {
+    private static final int RANGES = 50_000;
+
+    public static void main(String[] args) throws IOException {
+        int domainCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path work = Files.createTempDirectory("blocklist-check");
+        try {
+            Random random = new Random(42);
+            Path feed = work.resolve("feed.txt");
+            long[] truth = new long[RANGES]; // first address of each listed /24
+            try (java.io.BufferedWriter out = Files.newBufferedWriter(feed, StandardCharsets.UTF_8)) {
+                out.write("# synthetic threat-intel feed\nmalicious-site.com\n0.0.0.0 tracker.bad-ads.test\n");
+                out.write("2001:db8::1\n"); // IPv6, skipped
+                for (int i = 0; i < domainCount; i++) {
+                    out.write("bad" + i + ".threat.test\n");
+                }
+                for (int i = 0; i < RANGES; i++) {
+                    long first = (random.nextInt() & 0xffffff00L);
+                    truth[i] = first;
+                    out.write(BlocklistFormat.formatIPv4(first) + "/24\n");
+                }
+            }
+            Arrays.sort(truth);
+
+            System.out.println("\n--- Compile ---");
+            BlocklistCompiler compiler = new BlocklistCompiler();
+            long start = System.nanoTime();
+            compiler.addFeed(feed);
+            Path compiled = work.resolve("threat-intel.fwbl");
+            int[] counts = compiler.writeTo(compiled, System.currentTimeMillis());
+            System.out.printf("  %d ranges, %d domains in %.0f ms, %d KB on disk%n", counts[0], counts[1],
+                    (System.nanoTime() - start) / 1e6, Files.size(compiled) / 1024);
+            check("IPv6 line skipped", compiler.getSkippedCount() == 1);
+
+            start = System.nanoTime();
+            Blocklist blocklist = Blocklist.open(compiled);
+            System.out.printf("  Opened in %.1f ms: %s%n", (System.nanoTime() - start) / 1e6, blocklist);
+            check("heap use under 2 bytes a domain", blocklist.getHeapBytes() < 2L * domainCount + 65536);
+
+            System.out.println("\n--- Domains ---");
+            check("malicious-site.com listed", blocklist.isDomainListed("malicious-site.com"));
+            check("subdomain and upper case listed", blocklist.isDomainListed("Cdn.MALICIOUS-site.com."));
+            check("hosts-file entry listed", blocklist.isDomainListed("tracker.bad-ads.test"));
+            check("parent of a listed domain not listed", !blocklist.isDomainListed("bad-ads.test"));
+            int missed = 0;
+            for (int i = 0; i < domainCount; i += 7) {
+                if (!blocklist.isDomainListed("bad" + i + ".threat.test")) missed++;
+            }
+            check("every sampled listed domain found (" + missed + " missed)", missed == 0);
+            long probesBefore = blocklist.getMappedProbeCount();
+            int negatives = 200_000;
+            int wrong = 0;
+            for (int i = 0; i < negatives; i++) {
+                if (blocklist.isDomainListed("good" + i + ".example.org")) wrong++;
+            }
+            long probes = blocklist.getMappedProbeCount() - probesBefore;
+            check("no unlisted domain matched (" + wrong + ")", wrong == 0);
+            System.out.printf("  Unlisted domains reaching the mapped table: %.2f%% of %d label lookups%n",
+                    100.0 * probes / (3.0 * negatives), 3 * negatives);
+            check("Bloom filter answers >95% of unlisted lookups", probes < 0.05 * 3 * negatives);
+
+            System.out.println("\n--- IPv4 ranges ---");
+            wrong = 0;
+            probesBefore = blocklist.getMappedProbeCount();
+            int addresses = 500_000;
+            int listed = 0;
+            for (int i = 0; i < addresses; i++) {
+                long address = random.nextInt() & 0xffffffffL;
+                if (i % 10 == 0) { // some inside listed ranges
+                    long range = truth[random.nextInt(truth.length)];
+                    address = range + random.nextInt(256);
+                }
+                boolean expected = inTruth(truth, address);
+                if (expected) listed++;
+                if (blocklist.isAddressListed(BlocklistFormat.formatIPv4(address)) != expected) wrong++;
+            }
+            check("range lookups agree with the ground truth (" + wrong + " wrong, " + listed + " listed)", wrong == 0);
+            System.out.printf("  /16 prefilter let %.1f%% of lookups through to the mapped ranges%n",
+                    100.0 * (blocklist.getMappedProbeCount() - probesBefore) / addresses);
+
+            System.out.println("\n--- Lookup cost ---");
+            NetworkRequest clean = new NetworkRequest("BrowserApp", "www.example.org", "93.184.216.34", "HTTPS", 443);
+            NetworkRequest bad = new NetworkRequest("BrowserApp", "cdn.bad12345.threat.test", "93.184.216.34", "HTTPS", 443);
+            for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+                double cleanNs = time(blocklist, clean);
+                double badNs = time(blocklist, bad);
+                if (round == 2) {
+                    System.out.printf("  match(): %.0f ns for an unlisted destination, %.0f ns for a listed one%n",
+                            cleanNs, badNs);
+                }
+            }
+
+            System.out.println("\n--- In the agent ---");
+            Path policies = work.resolve("policies.txt");
+            Files.write(policies, "appName=BrowserApp\nallowedProtocols=HTTPS\n".getBytes(StandardCharsets.UTF_8));
+            ActivityLogger activityLogger = new ActivityLogger(work.resolve("activity.log").toString());
+            activityLogger.setConsoleEcho(false);
+            AlertEngine alertEngine = new AlertEngine(work.resolve("alerts.log").toString());
+            FirewallAgent agent = new FirewallAgent(new PolicyManager(policies.toString()), activityLogger, alertEngine);
+            NetworkRequest malicious = new NetworkRequest("BrowserApp", "malicious-site.com", "203.0.113.9", "HTTPS", 443);
+            check("allowed by policy without a blocklist", "ALLOW".equals(agent.processRequest(malicious).decision));
+            agent.setBlocklist(blocklist);
+            DecisionResult denied = agent.processRequest(malicious);
+            System.out.println("  " + denied);
+            check("denied once the blocklist is in", "DENY".equals(denied.decision)
+                    && denied.reason.contains("malicious-site.com"));
+            check("clean destination still allowed", "ALLOW".equals(agent.processRequest(clean).decision));
+
+            // Swaps as a running agent sees them: each compile is a new version next to the
+            // configured name, and the loader moves to the newest without replacing any file
+            Path configured = work.resolve("live.fwbl");
+            BlocklistLoader loader = new BlocklistLoader(configured, agent);
+            check("nothing to load before the first compile", !loader.reloadIfChanged());
+            BlocklistCompiler next = new BlocklistCompiler();
+            next.addEntry("203.0.113.0/24");
+            Path first = BlocklistLoader.versionPath(configured, 1000);
+            next.writeTo(first, 1000);
+            check("first version loaded", loader.reloadIfChanged() && agent.getBlocklist().getPath().equals(first));
+            check("unchanged versions not reloaded", !loader.reloadIfChanged());
+            DecisionResult byRange = agent.processRequest(malicious);
+            check("after the swap only the new list applies (" + byRange.reason + ")", "DENY".equals(byRange.decision)
+                    && byRange.reason.contains("203.0.113.0-203.0.113.255")
+                    && "ALLOW".equals(agent.processRequest(bad).decision));
+            boolean overwriteRefused;
+            try {
+                next.writeTo(first, 1000);
+                overwriteRefused = false;
+            } catch (java.nio.file.FileAlreadyExistsException e) {
+                overwriteRefused = true;
+            }
+            check("the compiler never writes over an existing blocklist", overwriteRefused);
+
+            Path second = BlocklistLoader.versionPath(configured, 2000);
+            BlocklistCompiler empty = new BlocklistCompiler();
+            empty.writeTo(second, 2000);
+            Path third = BlocklistLoader.versionPath(configured, 3000);
+            next.writeTo(third, 3000);
+            check("newest of several versions loaded", loader.reloadIfChanged()
+                    && agent.getBlocklist().getPath().equals(third));
+            check("skipped version deleted, the replaced one kept while it may be mapped",
+                    Files.exists(first) && !Files.exists(second));
+            Path swapped = third;
+            alertEngine.shutdown();
+            activityLogger.close();
+
+            try (FileChannel channel = FileChannel.open(swapped, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{0x55}), Files.size(swapped) - 3);
+            }
+            boolean refused;
+            try {
+                Blocklist.open(swapped);
+                refused = false;
+            } catch (IOException e) {
+                refused = e.getMessage().contains("checksum");
+            }
+            check("damaged blocklist refused", refused);
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(work)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(work);
+        }
+        Checks.finish();
+    }
+
+    // The listed /24s are aligned, so they never overlap partially
+    private static boolean inTruth(long[] sortedFirsts, long address) {
+        int index = Arrays.binarySearch(sortedFirsts, address & 0xffffff00L);
+        return index >= 0;
+    }
+
+    private static double time(Blocklist blocklist, NetworkRequest request) {
+        int iterations = 1_000_000;
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (blocklist.match(request) != null) found++;
+        }
+        return (System.nanoTime() - start) / (double) iterations + (found == -1 ? 1 : 0);
+    }
+}
@@ -0,0 +1,162 @@
+package com.firewall.central;
+
+import com.firewall.Checks;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.firewall.Checks.check;
+
+// End-to-end check of event collection with the collector and several shipping agents on
+// loopback in one JVM, in the same spirit as PolicyDistributionCheck. The collector is stopped
+// part way through and restarted on the same port; then two agents are restarted, one on its
+// old spool and one with its spool deleted. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.central.EventShippingCheck [agents] [events per agent]
+public class EventShippingCheck {
+    private static final long TIMEOUT_MS = 30_000;
+
+    public static void main(String[] args) throws Exception {
+        int agentCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int eventsPerAgent = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        Path work = Files.createTempDirectory("event-shipping-check");
+        Path collected = work.resolve("collected");
+        try {
+            EventCollector collector = new EventCollector(new InetSocketAddress("127.0.0.1", 0), collected);
+            int port = collector.getPort();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+            List<EventShipper> shippers = new ArrayList<>();
+            for (int i = 0; i < agentCount; i++) {
+                shippers.add(new EventShipper("agent-" + i, address, work.resolve("spool-" + i), 64L << 20));
+            }
+
+            System.out.println("\n--- " + agentCount + " agents, " + eventsPerAgent + " events each, collector restarted"
+                    + " after a third ---");
+            long maxOfferNanos = 0;
+            long totalOfferNanos = 0;
+            long lateBefore = 0;
+            long start = System.nanoTime();
+            for (int n = 0; n < eventsPerAgent; n++) {
+                if (n == eventsPerAgent / 3) {
+                    collector.close();
+                    lateBefore = collector.getLateEvents();
+                    System.out.printf("  collector stopped after %d events written%n", collector.getEventsWritten());
+                }
+                if (n == eventsPerAgent * 2 / 3) {
+                    collector = new EventCollector(new InetSocketAddress("127.0.0.1", port), collected);
+                    System.out.println("  collector restarted on port " + port);
+                }
+                for (int i = 0; i < agentCount; i++) {
+                    long t0 = System.nanoTime();
+                    shippers.get(i).offerDecision(System.currentTimeMillis(), "INFO", "App" + (n % 7), "example.com",
+                            "10.0.0.1", "TCP", 443, "ALLOW", "a" + i + "-" + n);
+                    long took = System.nanoTime() - t0;
+                    totalOfferNanos += took;
+                    maxOfferNanos = Math.max(maxOfferNanos, took);
+                }
+                if (n % 1000 == 999) {
+                    Thread.sleep(5); // spread the events over a few seconds
+                }
+            }
+            long offered = (long) agentCount * eventsPerAgent;
+            System.out.printf("  offered %d events in %.0f ms, offer average %.2f us, max %.2f ms%n", offered,
+                    (System.nanoTime() - start) / 1e6, totalOfferNanos / 1e3 / offered, maxOfferNanos / 1e6);
+
+            Thread.sleep(300); // let the last partial batches reach the spools
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            for (EventShipper shipper : shippers) {
+                while (shipper.getUnacknowledgedBatches() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(20);
+                }
+            }
+            long dropped = 0;
+            for (EventShipper shipper : shippers) {
+                shipper.close();
+                dropped += shipper.getDroppedCount();
+            }
+
+            int restarted = Math.min(2, agentCount);
+            int eventsAfterRestart = Math.max(1, eventsPerAgent / 10);
+            System.out.println("\n--- " + restarted + " agents restarted (agent-1 without its spool), "
+                    + eventsAfterRestart + " more events each ---");
+            if (restarted > 1) {
+                deleteTree(work.resolve("spool-1"));
+            }
+            shippers.clear();
+            for (int i = 0; i < restarted; i++) {
+                shippers.add(new EventShipper("agent-" + i, address, work.resolve("spool-" + i), 64L << 20));
+            }
+            for (int n = 0; n < eventsAfterRestart; n++) {
+                for (int i = 0; i < restarted; i++) {
+                    shippers.get(i).offerDecision(System.currentTimeMillis(), "INFO", "App" + (n % 7), "example.com",
+                            "10.0.0.1", "TCP", 443, "ALLOW", "b" + i + "-" + n);
+                }
+            }
+            offered += (long) restarted * eventsAfterRestart;
+            Thread.sleep(300);
+            for (EventShipper shipper : shippers) {
+                while (shipper.getUnacknowledgedBatches() > 0 && System.currentTimeMillis() < deadline + TIMEOUT_MS) {
+                    Thread.sleep(20);
+                }
+                shipper.close();
+                dropped += shipper.getDroppedCount();
+            }
+            collector.close();
+            long late = lateBefore + collector.getLateEvents();
+            System.out.println("  duplicate batches ignored after the restart: " + collector.getDuplicateBatches());
+
+            System.out.println("\n--- Collected segments ---");
+            Set<String> seen = new HashSet<>();
+            long lines = 0;
+            long duplicates = 0;
+            long outOfOrder = 0;
+            for (Path segment : segments(collected)) {
+                String previous = null;
+                try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines++;
+                        String timestamp = line.substring(0, line.indexOf(" | "));
+                        if (previous != null && timestamp.compareTo(previous) < 0) outOfOrder++;
+                        previous = timestamp;
+                        if (!seen.add(line.substring(line.lastIndexOf(" | ") + 3))) duplicates++;
+                    }
+                }
+                System.out.println("  " + segment.getFileName() + ": " + Files.size(segment) + " bytes");
+            }
+            check("no events dropped by the shippers (" + dropped + ")", dropped == 0);
+            check("every event collected (" + seen.size() + "/" + offered + ")", seen.size() == offered);
+            check("no event collected twice (" + duplicates + ")", duplicates == 0);
+            check("time order broken only by late events (" + outOfOrder + " inversions, " + late + " late)",
+                    outOfOrder <= late);
+            check("segment lines match events written", lines == offered);
+        } finally {
+            deleteTree(work);
+        }
+        Checks.finish();
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "events-*.log")) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+        return segments;
+    }
+}
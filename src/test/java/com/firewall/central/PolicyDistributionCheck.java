@@ -0,0 +1,144 @@
+package com.firewall.central;
+
+import com.firewall.Checks;
+import com.firewall.core.PolicyManager;
+import com.firewall.model.AppPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.firewall.Checks.check;
+
+// End-to-end check of the policy service with the server and many agents on loopback in one
+// JVM, in the same spirit as SketchAccuracyCheck. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.central.PolicyDistributionCheck [agents] [rounds]
+public class PolicyDistributionCheck {
+    private static final long TIMEOUT_MS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int agentCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        PolicyManager source = new PolicyManager("policies.txt");
+        Map<String, AppPolicy> policies = new HashMap<>(source.getSnapshot().getPolicies());
+        File empty = File.createTempFile("no-policies", ".txt");
+        empty.deleteOnExit();
+
+        try (PolicyServer server = new PolicyServer(new InetSocketAddress("127.0.0.1", 0), policies, "check-1")) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+            System.out.println("\n--- " + agentCount + " agents with no policies, 1 agent with policies.txt ---");
+            List<PolicyManager> managers = new ArrayList<>();
+            List<PolicyClient> clients = new ArrayList<>();
+            for (int i = 0; i < agentCount; i++) {
+                managers.add(new PolicyManager(empty.getPath()));
+            }
+            managers.add(new PolicyManager("policies.txt"));
+            long start = System.nanoTime();
+            for (int i = 0; i < managers.size(); i++) {
+                clients.add(startClient("agent-" + i, address, managers.get(i)));
+            }
+            awaitAll(clients, 1);
+            System.out.printf("All agents at revision 1 after %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            check("full resync for each empty agent", server.getFullResyncs() == agentCount);
+            check("agent with matching local file got a delta", clients.get(agentCount).getFullResyncs() == 0);
+            checkConverged(server, managers, policies);
+
+            System.out.println("\n--- " + rounds + " published changes ---");
+            long bytesBefore = server.getBytesSent();
+            for (int round = 1; round <= rounds; round++) {
+                mutate(policies, round);
+                long bytes = server.getBytesSent();
+                start = System.nanoTime();
+                server.publish(policies, "check-" + (round + 1));
+                awaitAll(clients, round + 1);
+                System.out.printf("  revision %d reached all %d agents in %.1f ms, %d bytes%n", round + 1,
+                        clients.size(), (System.nanoTime() - start) / 1e6, server.getBytesSent() - bytes);
+            }
+            check("no full resyncs during publishing", server.getFullResyncs() == agentCount);
+            System.out.printf("Average %.0f bytes per agent per change%n",
+                    (server.getBytesSent() - bytesBefore) / (double) rounds / clients.size());
+            checkConverged(server, managers, policies);
+
+            System.out.println("\n--- Drift ---");
+            long fullBefore = server.getFullResyncs();
+            PolicyClient offline = clients.get(0);
+            offline.close();
+            for (int i = 0; i < PolicyServer.MAX_HISTORY + 2; i++) {
+                mutate(policies, rounds + 1 + i);
+                server.publish(policies, "check-drift-" + i);
+            }
+            long latest = 1 + rounds + PolicyServer.MAX_HISTORY + 2;
+            clients.set(0, startClient("agent-0-restarted", address, managers.get(0)));
+            awaitAll(clients, latest);
+            check("agent that fell out of the history got a full resync", server.getFullResyncs() == fullBefore + 1);
+
+            Map<String, AppPolicy> tampered = new HashMap<>(managers.get(1).getSnapshot().getPolicies());
+            tampered.remove(tampered.keySet().iterator().next());
+            managers.get(1).install(tampered, "tampered");
+            clients.get(1).disconnect(); // reconnects and reports the tampered digest
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (server.getFullResyncs() < fullBefore + 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            check("locally modified agent got a full resync", server.getFullResyncs() == fullBefore + 2);
+
+            clients.get(2).close();
+            clients.set(2, startClient("agent-2-restarted", address, managers.get(2)));
+            awaitAll(clients, latest);
+            check("restarted agent with current policies got a delta", server.getFullResyncs() == fullBefore + 2);
+            checkConverged(server, managers, policies);
+            System.out.println("Slow agents disconnected: " + server.getDisconnectedSlowAgents());
+
+            for (PolicyClient client : clients) {
+                client.close();
+            }
+        }
+        Checks.finish();
+    }
+
+    private static PolicyClient startClient(String id, InetSocketAddress address, PolicyManager manager) {
+        PolicyClient client = new PolicyClient(id, address, manager);
+        client.setVerbose(false);
+        client.start();
+        return client;
+    }
+
+    // Changes one app, adds one and removes the one added last time
+    private static void mutate(Map<String, AppPolicy> policies, int round) {
+        String changed = new TreeMap<>(policies).firstKey();
+        Map<String, String> attributes = new HashMap<>(policies.get(changed).getSourceAttributes());
+        attributes.put("allowedIPs", "10.0.0." + round);
+        policies.put(changed, PolicyManager.buildPolicy(changed, attributes));
+        policies.remove("CheckApp" + (round - 1));
+        Map<String, String> added = new HashMap<>();
+        added.put("allowedDomains", "round" + round + ".example.com");
+        added.put("defaultAction", "DENY");
+        policies.put("CheckApp" + round, PolicyManager.buildPolicy("CheckApp" + round, added));
+    }
+
+    private static void awaitAll(List<PolicyClient> clients, long revision) throws InterruptedException {
+        for (PolicyClient client : clients) {
+            if (!client.awaitRevision(revision, TIMEOUT_MS)) {
+                check("agent reached revision " + revision + " (stuck at " + client.getRevision() + ")", false);
+                return;
+            }
+        }
+    }
+
+    private static void checkConverged(PolicyServer server, List<PolicyManager> managers, Map<String, AppPolicy> policies) {
+        long expected = PolicyDigest.of(policies);
+        int matching = 0;
+        for (PolicyManager manager : managers) {
+            if (PolicyDigest.of(manager.getSnapshot().getPolicies()) == expected) matching++;
+        }
+        check(matching + "/" + managers.size() + " agents hold the server's policies at revision "
+                + server.getLatestRevision(), matching == managers.size());
+    }
+}
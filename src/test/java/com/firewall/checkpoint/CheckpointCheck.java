@@ -0,0 +1,103 @@
+package com.firewall.checkpoint;
+
+import com.firewall.Checks;
+import com.firewall.core.AlertThrottle;
+import com.firewall.core.SlidingWindowCounter;
+import com.firewall.core.TrafficStatistics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.firewall.Checks.check;
+
+// Saves traffic counters, a deny window and alert cooldowns for many apps, "restarts" into
+// fresh instances restored from the checkpoint and checks they carry on where they left off,
+// then times opening the checkpoint against looking keys up in it. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.checkpoint.CheckpointCheck [apps]
+public class CheckpointCheck {
+    public static void main(String[] args) throws IOException {
+        int apps = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Path file = Files.createTempFile("checkpoint-check", ".ckpt");
+        Files.delete(file); // a cold start: no checkpoint yet
+        try {
+            long now = System.currentTimeMillis();
+            TrafficStatistics statistics = new TrafficStatistics(apps + 1);
+            SlidingWindowCounter denies = new SlidingWindowCounter(60_000, 60, apps + 1);
+            AlertThrottle throttle = new AlertThrottle(30_000, apps + 1, 10, 20);
+            for (int app = 0; app < apps; app++) {
+                for (int i = 0; i <= app % 7; i++) {
+                    statistics.record("app" + app, i % 2 == 0 ? "ALLOW" : "DENY");
+                    denies.record("app" + app, now - 1000 * i);
+                }
+                throttle.acquireCooldown("EXCESSIVE_DENIES", "app" + app, now);
+            }
+
+            StateCheckpointer before = new StateCheckpointer(file, 3600);
+            before.register("traffic-stats", statistics);
+            before.register("excessive-denies", denies);
+            before.register("alert-cooldowns", throttle);
+            long saveStart = System.nanoTime();
+            check("checkpoint written", before.save());
+            System.out.printf("  Saved %d apps in %.1f ms, %d KB%n", apps, (System.nanoTime() - saveStart) / 1e6,
+                    Files.size(before.getSavePath()) / 1024);
+            before.close();
+
+            long openStart = System.nanoTime();
+            StateCheckpointer after = new StateCheckpointer(file, 3600);
+            TrafficStatistics restoredStatistics = new TrafficStatistics(apps + 1);
+            SlidingWindowCounter restoredDenies = new SlidingWindowCounter(60_000, 60, apps + 1);
+            AlertThrottle restoredThrottle = new AlertThrottle(30_000, apps + 1, 10, 20);
+            after.register("traffic-stats", restoredStatistics);
+            after.register("excessive-denies", restoredDenies);
+            after.register("alert-cooldowns", restoredThrottle);
+            System.out.printf("  Opened and registered in %.2f ms%n", (System.nanoTime() - openStart) / 1e6);
+
+            check("totals carried over", restoredStatistics.getTotal() == statistics.getTotal()
+                    && restoredStatistics.getDenied() == statistics.getDenied());
+            int expected = 3 % 7 + 1;
+            int counted = restoredDenies.record("app3", now + 500) - 1;
+            check("deny window for app3 resumes at " + counted + ", expected " + expected, counted == expected);
+            check("alert for app5 still cooling down after restart",
+                    restoredThrottle.acquireCooldown("EXCESSIVE_DENIES", "app5", now + 1000) < 0);
+            check("unsaved alert type fires", restoredThrottle.acquireCooldown("PORT_SCAN", "app5", now + 1000) == 0);
+
+            Checkpoint.Section section = Checkpoint.open(after.getRestoredPath()).getSection("excessive-denies");
+            for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+                long lookupStart = System.nanoTime();
+                int found = 0;
+                for (int app = 0; app < apps; app++) {
+                    if (section.get("app" + app) != null) found++;
+                }
+                if (round == 2) {
+                    System.out.printf("  Lookup of %d saved deny windows: %.0f ns per key%n", found,
+                            (System.nanoTime() - lookupStart) / (double) apps);
+                }
+            }
+            for (int app = 0; app < apps; app++) {
+                restoredDenies.record("app" + app, now + 600);
+            }
+            long[] sum = new long[1];
+            restoredStatistics.forEachApp((name, total, allowed, denied, rateLimited) -> sum[0] += total);
+            check("per-app counters all restored on first read (" + sum[0] + " requests)",
+                    sum[0] == statistics.getTotal());
+            after.close();
+            check("a run saves to the generation it didn't map",
+                    !after.getSavePath().equals(after.getRestoredPath()));
+            StateCheckpointer third = new StateCheckpointer(file, 3600);
+            check("the next run resumes from the newest save", after.getSavePath().equals(third.getRestoredPath()));
+            third.close();
+
+            byte[] future = new byte[CheckpointFormat.HEADER_BYTES];
+            System.arraycopy(new byte[]{'F', 'W', 'C', 'K', 0, 9}, 0, future, 0, 6); // unknown version
+            Files.write(file, future);
+            check("unusable checkpoint ignored", Checkpoint.open(file) == null);
+        } finally {
+            for (String suffix : new String[]{"", ".a", ".b"}) {
+                Files.deleteIfExists(file.resolveSibling(file.getFileName() + suffix));
+                Files.deleteIfExists(file.resolveSibling(file.getFileName() + suffix + ".tmp"));
+            }
+        }
+        Checks.finish();
+    }
+}
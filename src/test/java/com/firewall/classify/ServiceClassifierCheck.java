@@ -0,0 +1,170 @@
+package com.firewall.classify;
+
+import com.firewall.Checks;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.UnknownPacket;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.firewall.Checks.check;
+
+// Checks the built-in and shipped mappings against the old hard-coded port switch, the config
+// grammar, payload signatures on non-standard ports and the flow cache, then compares lookup
+// cost with a handful of mappings and with thousands. Run from the project root with:
+//   java -cp target/test-classes:target/classes:<pcap4j jars> com.firewall.classify.ServiceClassifierCheck
+public class ServiceClassifierCheck {
+    private static final Packet TLS_CLIENT_HELLO = payload(new byte[]{0x16, 0x03, 0x01, 0x02, 0x00, 0x01, 0x00, 0x01,
+            (byte) 0xfc, 0x03, 0x03});
+    private static final Packet SSH_BANNER = payload("SSH-2.0-OpenSSH_9.6\r\n");
+    private static final Packet HTTP_GET = payload("GET /index.html HTTP/1.1\r\nHost: example.org\r\n\r\n");
+    private static final Packet NOISE = payload("\u0001\u0002binary-ish application data");
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("\n--- Port tables ---");
+        ServiceClassifier defaults = ServiceClassifier.defaults();
+        ServiceClassifier shipped = ServiceClassifier.load(ServiceClassifier.DEFAULT_FILE);
+        System.out.println("  built-in: " + defaults);
+        int differences = 0;
+        int shippedDifferences = 0;
+        for (int port = 0; port < 65536; port++) {
+            for (String transport : new String[]{"TCP", "UDP"}) {
+                String expected = oldSwitch(port, transport);
+                if (!expected.equals(defaults.serviceForPort(transport, port))) differences++;
+                if (!expected.equals(shipped.serviceForPort(transport, port))) shippedDifferences++;
+            }
+        }
+        check("built-in mappings match the old switch on every port (" + differences + " differ)", differences == 0);
+        check("services.txt matches the old switch on every port (" + shippedDifferences + " differ)",
+                shippedDifferences == 0);
+        check("other transports are UnknownApp",
+                "UnknownApp".equals(defaults.classify("ICMPV4", "10.0.0.1", 0, "10.0.0.2", 0, null)));
+
+        System.out.println("\n--- Config grammar ---");
+        ServiceClassifier custom = ServiceClassifier.parse(Arrays.asList(
+                "# comment", "tcp 8000-8099 WebAlt", "tcp 8080 Proxy   # overrides one port of the range",
+                "udp 5353 mDNS", "tcp * OtherTCP", "signature ssh-banner SecureShell", "inspect 2",
+                "tcp 70000 Broken", "icmp 8 Ping", "signature quic-initial QUIC"), "check config");
+        check("range mapped", "WebAlt".equals(custom.serviceForPort("TCP", 8000))
+                && "WebAlt".equals(custom.serviceForPort("TCP", 8099)));
+        check("later line overrides the range", "Proxy".equals(custom.serviceForPort("TCP", 8080)));
+        check("custom TCP fallback", "OtherTCP".equals(custom.serviceForPort("TCP", 8100)));
+        check("UDP mapping and default fallback", "mDNS".equals(custom.serviceForPort("UDP", 5353))
+                && "GenericUDP".equals(custom.serviceForPort("UDP", 53)));
+        check("signature only from config", "SecureShell".equals(
+                custom.classify("TCP", "10.0.0.1", 40000, "10.0.0.2", 2222, SSH_BANNER))
+                && "OtherTCP".equals(custom.classify("TCP", "10.0.0.1", 40001, "10.0.0.2", 9443, TLS_CLIENT_HELLO)));
+
+        System.out.println("\n--- Payload signatures ---");
+        ServiceClassifier classifier = ServiceClassifier.defaults();
+        check("TLS ClientHello on 8443 is HTTPS",
+                "HTTPS".equals(classifier.classify("TCP", "10.0.0.1", 50000, "10.0.0.2", 8443, TLS_CLIENT_HELLO)));
+        check("SSH banner on 2222 is SSH",
+                "SSH".equals(classifier.classify("TCP", "10.0.0.1", 50001, "10.0.0.2", 2222, SSH_BANNER)));
+        check("HTTP request on 8081 is HTTP",
+                "HTTP".equals(classifier.classify("TCP", "10.0.0.1", 50002, "10.0.0.2", 8081, HTTP_GET)));
+        check("mapped port wins over the payload",
+                "SMTP".equals(classifier.classify("TCP", "10.0.0.1", 50003, "10.0.0.2", 25, HTTP_GET)));
+
+        // Handshake packets carry no data and don't use up the flow's inspections
+        String flow = null;
+        for (int i = 0; i < 6; i++) {
+            flow = classifier.classify("TCP", "10.0.0.1", 50004, "10.0.0.2", 9000, null);
+        }
+        check("empty packets leave the flow GenericTCP", "GenericTCP".equals(flow));
+        check("...and it is still inspected afterwards",
+                "HTTPS".equals(classifier.classify("TCP", "10.0.0.1", 50004, "10.0.0.2", 9000, TLS_CLIENT_HELLO)));
+        long cacheHits = classifier.getFlowCacheHitCount();
+        check("later packets of the flow come from the cache",
+                "HTTPS".equals(classifier.classify("TCP", "10.0.0.1", 50004, "10.0.0.2", 9000, NOISE))
+                        && classifier.getFlowCacheHitCount() == cacheHits + 1);
+
+        for (int i = 0; i < 4; i++) {
+            classifier.classify("TCP", "10.0.0.1", 50005, "10.0.0.2", 9001, NOISE);
+        }
+        check("no match within the first 4 data packets settles on GenericTCP",
+                "GenericTCP".equals(classifier.classify("TCP", "10.0.0.1", 50005, "10.0.0.2", 9001, TLS_CLIENT_HELLO)));
+        check("the reverse direction is its own flow",
+                "SSH".equals(classifier.classify("TCP", "10.0.0.2", 9001, "10.0.0.1", 50005, SSH_BANNER)));
+        check("UDP flows use the UDP fallback",
+                "GenericUDP".equals(classifier.classify("UDP", "10.0.0.1", 50006, "10.0.0.2", 9002, NOISE)));
+
+        System.out.println("\n--- Lookup cost ---");
+        List<String> many = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            many.add((random.nextBoolean() ? "tcp " : "udp ") + random.nextInt(65536) + " Service" + random.nextInt(3000));
+        }
+        many.addAll(Arrays.asList("signature tls-client-hello HTTPS", "signature ssh-banner SSH"));
+        ServiceClassifier large = ServiceClassifier.parse(many, "generated mappings");
+        System.out.println("  generated: " + large);
+        int[] ports = new int[4096];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = random.nextInt(65536);
+        }
+        double smallNs = 0;
+        double largeNs = 0;
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            smallNs = time(ServiceClassifier.defaults(), ports);
+            largeNs = time(large, ports);
+        }
+        System.out.printf("  classify(): %.1f ns with %d services, %.1f ns with %d services%n", smallNs,
+                defaults.getServiceCount(), largeNs, large.getServiceCount());
+        check("thousands of mappings cost about the same as a handful", largeNs < 3 * smallNs + 20);
+
+        Checks.finish();
+    }
+
+    // The switch FirewallSimulator used before services.txt
+    private static String oldSwitch(int port, String protocol) {
+        if ("TCP".equals(protocol)) {
+            switch (port) {
+                case 80: return "HTTP";
+                case 443: return "HTTPS";
+                case 21: return "FTP";
+                case 22: return "SSH";
+                case 25: return "SMTP";
+                case 53: return "DNS_TCP";
+                default: return "GenericTCP";
+            }
+        }
+        switch (port) {
+            case 53: return "DNS";
+            case 67: return "DHCP_Server";
+            case 68: return "DHCP_Client";
+            case 161: return "SNMP";
+            case 123: return "NTP";
+            default: return "GenericUDP";
+        }
+    }
+
+    // Mixed traffic: mapped and unmapped ports, many short flows, some with a payload
+    private static double time(ServiceClassifier classifier, int[] ports) {
+        int iterations = 2_000_000;
+        int hash = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            int port = ports[i & (ports.length - 1)];
+            String service = classifier.classify((i & 1) == 0 ? "TCP" : "UDP", "10.0.0.1", 30000 + (i & 1023),
+                    "10.0.0.2", port, (i & 7) == 0 ? NOISE : null);
+            hash += service.length();
+        }
+        return (System.nanoTime() - start) / (double) iterations + (hash == -1 ? 1 : 0);
+    }
+
+    private static Packet payload(String text) {
+        return payload(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static Packet payload(byte[] data) {
+        try {
+            return UnknownPacket.newPacket(data, 0, data.length);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.firewall.core;
+
+import com.firewall.Checks;
+import com.firewall.model.NetworkRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.firewall.Checks.check;
+
+// Drives an OverloadController through a quiet period, a flood it can't keep up with (every
+// verdict costs the sink 2 ms, as a slow console or GUI would) and the recovery, checking that
+// it sheds instead of queueing without bound, fails open only for the app marked
+// overloadAction=ALLOW, still gives every request exactly one verdict, and settles back to
+// NORMAL. Then floods a controller whose activity log and sink are both slow, and checks
+// that submit() still returns at once. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.core.OverloadCheck [flood requests]
+public class OverloadCheck {
+    private static final int LATENCY_BUDGET_MS = 100;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int flood = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path work = Files.createTempDirectory("overload-check");
+        Path policies = work.resolve("policies.txt");
+        Files.write(policies, ("appName=Trusted\nallowedProtocols=HTTPS\noverloadAction=ALLOW\n---\n"
+                + "appName=Other\nallowedProtocols=HTTPS\n").getBytes(StandardCharsets.UTF_8));
+        Path alertLog = work.resolve("alerts.log");
+        try {
+            PolicyManager policyManager = new PolicyManager(policies.toString());
+            ActivityLogger activityLogger = new ActivityLogger(work.resolve("activity.log").toString());
+            activityLogger.setConsoleEcho(false);
+            AlertEngine alertEngine = new AlertEngine(alertLog.toString());
+            FirewallAgent agent = new FirewallAgent(policyManager, activityLogger, alertEngine);
+            for (int i = 0; i < 1000; i++) { // load classes and warm up first, or the quiet phase isn't quiet
+                agent.processRequest(new NetworkRequest("Warmup", "example.com", "10.0.0.1", "HTTPS", 443));
+            }
+            long warmup = agent.getStatistics().getTotal();
+
+            AtomicBoolean slowSink = new AtomicBoolean();
+            AtomicLong worstLatencyMs = new AtomicLong();
+            LongAdder wrongFailOpen = new LongAdder();
+            LongAdder wrongFailClosed = new LongAdder();
+            OverloadController controller = new OverloadController(agent, alertEngine, (result, sourcePort) -> {
+                worstLatencyMs.accumulateAndGet(System.currentTimeMillis() - result.request.getTimestamp(), Math::max);
+                if (result.reason.startsWith("Shed")) {
+                    boolean trusted = result.request.getApplicationName().equals("Trusted");
+                    if (trusted && !"ALLOW".equals(result.decision)) wrongFailClosed.increment();
+                    if (!trusted && !"DENY".equals(result.decision)) wrongFailOpen.increment();
+                }
+                if (slowSink.get()) {
+                    sleep(2);
+                }
+            }, 512, LATENCY_BUDGET_MS, 10);
+
+            System.out.println("\n--- Quiet: 200 requests, 1 ms apart ---");
+            long submitted = submit(controller, 200, 0);
+            sleep(200);
+            check("level stays NORMAL (latency " + controller.getDecisionLatencyNanos() / 1000 + " us)", controller.getLevel() == OverloadController.Level.NORMAL);
+            check("nothing shed or sampled out", controller.getShedCount() == 0 && controller.getSampledOutCount() == 0);
+
+            System.out.println("\n--- Flood: " + flood + " requests with a 2 ms sink ---");
+            slowSink.set(true);
+            worstLatencyMs.set(0);
+            long floodStart = System.currentTimeMillis();
+            submitted += submit(controller, flood, 20);
+            OverloadController.Level levelAtEnd = controller.getLevel();
+            System.out.printf("  Submitted in %d ms; evaluated %d, shed %d (%d fail-open, %d fail-closed;"
+                            + " %d queue full, %d over limit, %d expired), %d sampled out%n",
+                    System.currentTimeMillis() - floodStart, controller.getEvaluatedCount(), controller.getShedCount(),
+                    controller.getShedFailOpenCount(), controller.getShedFailClosedCount(),
+                    controller.getShedQueueFullCount(), controller.getShedOverLimitCount(),
+                    controller.getShedExpiredCount(), controller.getSampledOutCount());
+            check("reached SHEDDING (" + levelAtEnd + " at the end of the flood)", controller.getSheddingEpisodes() > 0);
+            check("shed requests", controller.getShedCount() > 0);
+            check("both fail-open and fail-closed verdicts", controller.getShedFailOpenCount() > 0
+                    && controller.getShedFailClosedCount() > 0);
+            check("no fail-closed Trusted or fail-open Other verdicts", wrongFailClosed.sum() == 0
+                    && wrongFailOpen.sum() == 0);
+            check("logging and alerting sampled", controller.getSampledOutCount() > 0);
+            check("worst wait for a verdict " + worstLatencyMs.get() + " ms, bounded by the budget",
+                    worstLatencyMs.get() < 4 * LATENCY_BUDGET_MS);
+
+            System.out.println("\n--- Recovery ---");
+            slowSink.set(false);
+            long recoveryStart = System.currentTimeMillis();
+            while (controller.getLevel() != OverloadController.Level.NORMAL
+                    && System.currentTimeMillis() - recoveryStart < 5000) {
+                sleep(10);
+            }
+            check("back to NORMAL after " + (System.currentTimeMillis() - recoveryStart) + " ms",
+                    controller.getLevel() == OverloadController.Level.NORMAL);
+            long shedBefore = controller.getShedCount();
+            submitted += submit(controller, 200, 0);
+            controller.close();
+            check("nothing shed once recovered", controller.getShedCount() == shedBefore);
+            long verdicts = agent.getStatistics().getTotal() - warmup;
+            check("every request got exactly one verdict (" + verdicts + " of " + submitted + ")",
+                    verdicts == submitted
+                            && controller.getEvaluatedCount() + controller.getShedCount() == submitted);
+
+            alertEngine.shutdown();
+            activityLogger.close();
+            String alerts = new String(Files.readAllBytes(alertLog), StandardCharsets.UTF_8);
+            check("OVERLOAD and OVERLOAD_CLEARED alerts written",
+                    alerts.contains("| OVERLOAD |") && alerts.contains("| OVERLOAD_CLEARED |"));
+
+            checkSlowLoggerAndSink(policyManager, work, flood / 4);
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(work)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(work);
+        }
+        Checks.finish();
+    }
+
+    // Every log() call takes 3 ms and every verdict costs the sink 2 ms. Shedding happens on the
+    // capture thread, so its logging and reporting must not wait for either.
+    private static void checkSlowLoggerAndSink(PolicyManager policyManager, Path work, int count) {
+        System.out.println("\n--- Flood: " + count + " requests, 3 ms activity log and 2 ms sink ---");
+        ActivityLogger slowLogger = new ActivityLogger(work.resolve("slow-activity.log").toString(), 64) {
+            @Override
+            public void log(String level, String appName, String targetDomain, String targetIP, String protocol,
+                            int port, String decision, String reason) {
+                sleep(3);
+                super.log(level, appName, targetDomain, targetIP, protocol, port, decision, reason);
+            }
+        };
+        slowLogger.setConsoleEcho(false);
+        AlertEngine alertEngine = new AlertEngine(work.resolve("slow-alerts.log").toString());
+        FirewallAgent agent = new FirewallAgent(policyManager, slowLogger, alertEngine);
+        OverloadController controller = new OverloadController(agent, alertEngine, (result, sourcePort) -> sleep(2),
+                256, LATENCY_BUDGET_MS, 10);
+        String[] apps = {"Trusted", "Other", "Unlisted"};
+        long[] submitNanos = new long[count];
+        for (int i = 0; i < count; i++) {
+            NetworkRequest request = new NetworkRequest(apps[i % apps.length], "example.com", "10.0.0.1", "HTTPS",
+                    443, "10.0.0.2");
+            long start = System.nanoTime();
+            controller.submit(request, 40000 + i % 1000);
+            submitNanos[i] = System.nanoTime() - start;
+            if (i % 50 == 49) {
+                sleep(1);
+            }
+        }
+        java.util.Arrays.sort(submitNanos);
+        long p99 = submitNanos[count * 99 / 100];
+        System.out.printf("  submit(): median %d us, p99 %d us, max %d us; shed %d, %d shed verdicts unreported,"
+                        + " %d log entries dropped as the log queue was full%n", submitNanos[count / 2] / 1000,
+                p99 / 1000, submitNanos[count - 1] / 1000, controller.getShedCount(),
+                controller.getReportsDroppedCount(), slowLogger.getOverflowCount());
+        check("requests were shed", controller.getShedCount() > 0);
+        check("submit() didn't wait for the logger or the sink (p99 " + p99 / 1000 + " us)", p99 < 1_000_000);
+        controller.close();
+        alertEngine.shutdown();
+        slowLogger.close();
+    }
+
+    // Alternates Trusted, Other and an app without a policy; pauses 1 ms every 'burst' requests
+    // (after each one when 'burst' is 0)
+    private static long submit(OverloadController controller, int count, int burst) {
+        String[] apps = {"Trusted", "Other", "Unlisted"};
+        for (int i = 0; i < count; i++) {
+            controller.submit(new NetworkRequest(apps[i % apps.length], "example.com", "10.0.0.1", "HTTPS", 443,
+                    "10.0.0.2"), 40000 + i % 1000);
+            if (burst == 0 || i % burst == burst - 1) {
+                sleep(1);
+            }
+        }
+        return count;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.firewall.core;
+
+import com.firewall.Checks;
+import com.firewall.model.AppPolicy;
+import com.firewall.model.NetworkRequest;
+import com.firewall.model.RateLimit;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.firewall.Checks.check;
+
+// Checks RateLimiter's admission counts against the configured rates on a simulated clock,
+// then times tryAcquire() with several threads hammering one app, in the same spirit as
+// SketchAccuracyCheck. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.core.RateLimiterCheck [max threads]
+public class RateLimiterCheck {
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+
+        System.out.println("\n--- Admissions on a simulated clock (10 s at 5x the limit) ---");
+        checkAdmissions("1000/s burst 100, app-wide", limited(RateLimit.parse("1000/s,burst=100"), null, null, null),
+                5000, 0, 1, 100 + 10_000);
+        checkAdmissions("1M/s bytes burst 64k, 1000-byte requests",
+                limited(null, RateLimit.parse("1M/s,burst=64k"), null, null), 5000, 1000, 1, 64 + 10_000);
+        checkAdmissions("50/s per destination, 4 destinations",
+                limited(null, null, RateLimit.parse("50/s"), null), 1000, 0, 4, 4 * (50 + 500));
+
+        System.out.println("\n--- tryAcquire cost, all threads on one app ---");
+        timeContended(limited(RateLimit.parse("1G/s"), null, null, null), 1); // warm up the JIT
+        System.out.printf("%8s %16s %16s%n", "threads", "ns/op admitted", "ns/op limited");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double open = timeContended(limited(RateLimit.parse("1G/s"), null, null, null), threads);
+            double closed = timeContended(limited(RateLimit.parse("1/s"), null, null, null), threads);
+            System.out.printf("%8d %16.1f %16.1f%n", threads, open, closed);
+        }
+        long clockStart = System.nanoTime();
+        long clockSum = 0;
+        for (int i = 0; i < 2_000_000; i++) {
+            clockSum += System.nanoTime();
+        }
+        System.out.printf("Of which System.nanoTime(): %.1f ns per call%s%n", (System.nanoTime() - clockStart) / 2e6,
+                clockSum == 42 ? "!" : ""); // use the sum so the loop isn't optimized away
+        Checks.finish();
+    }
+
+    private static RateLimiter limited(RateLimit requests, RateLimit bytes, RateLimit destinationRequests,
+                                       RateLimit destinationBytes) {
+        AppPolicy policy = new AppPolicy("CheckApp", AppPolicy.Action.ALLOW);
+        policy.setRateLimits(requests, bytes, destinationRequests, destinationBytes);
+        return RateLimiter.forPolicy(policy);
+    }
+
+    private static void checkAdmissions(String what, RateLimiter limiter, int offeredPerSecond, int bytes,
+                                        int destinations, long expected) {
+        NetworkRequest[] requests = new NetworkRequest[destinations];
+        for (int i = 0; i < destinations; i++) {
+            requests[i] = new NetworkRequest("CheckApp", "dest" + i + ".example.com", "10.0.0." + i, "HTTPS", 443,
+                    "N/A", 0, bytes);
+        }
+        long start = System.nanoTime();
+        long stepNanos = 1_000_000_000L / offeredPerSecond;
+        long admitted = 0;
+        for (long i = 0; i < 10L * offeredPerSecond; i++) {
+            for (NetworkRequest request : requests) {
+                if (limiter.tryAcquire(request, start + i * stepNanos) == RateLimiter.NOT_LIMITED) admitted++;
+            }
+        }
+        double error = Math.abs(admitted - expected) / (double) expected;
+        check(what + ": " + admitted + " admitted, expected ~" + expected, error < 0.01);
+    }
+
+    private static double timeContended(RateLimiter limiter, int threads) throws InterruptedException {
+        int perThread = 2_000_000;
+        NetworkRequest request = new NetworkRequest("CheckApp", "example.com", "10.0.0.1", "HTTPS", 443);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        LongAdder sink = new LongAdder();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long admitted = 0;
+                for (int i = 0; i < perThread; i++) {
+                    if (limiter.tryAcquire(request, System.nanoTime()) == RateLimiter.NOT_LIMITED) admitted++;
+                }
+                sink.add(admitted);
+                done.countDown();
+            }).start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        // Wall time per operation across all threads, i.e. the inverse of total throughput
+        return (System.nanoTime() - start) / (double) threads / perThread;
+    }
+}
@@ -0,0 +1,169 @@
+package com.firewall.core;
+
+import com.firewall.Checks;
+import com.firewall.analysis.VerdictDiff;
+import com.firewall.analysis.WhatIfAnalysis;
+import com.firewall.model.TimeSchedule;
+import com.firewall.model.TimeWindow;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.firewall.Checks.check;
+
+// Checks compiled time-window schedules against plain calendar math over a few weeks that
+// include a DST change, times stateAt() on the current segment and on timestamps months in the
+// past, and times a what-if run over an old log with and without a time-window policy. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.core.TimeScheduleCheck
+public class TimeScheduleCheck {
+    private static final ZoneId ZONE = ZoneId.of("America/New_York");
+
+    public static void main(String[] args) throws IOException {
+        // 2024-03-10 is the spring-forward day in New York
+        long origin = ZonedDateTime.of(2024, 3, 4, 0, 0, 0, 0, ZONE).toInstant().toEpochMilli();
+
+        System.out.println("\n--- Compiled schedule vs calendar, 3 weeks around a DST change ---");
+        checkAgainstCalendar("allowedTimes=01:00-04:00", "01:00-04:00", null, origin);
+        checkAgainstCalendar("deniedTimes=Mon-Fri 09:00-17:00", null, "Mon-Fri 09:00-17:00", origin);
+        checkAgainstCalendar("allowedTimes=Sat,Sun 22:00-02:00", "Sat,Sun 22:00-02:00", null, origin);
+        checkAgainstCalendar("both, overlapping", "weekdays 08:00-18:00;Sat 10:00-14:00", "Wed 12:00-13:00", origin);
+
+        System.out.println("\n--- stateAt cost ---");
+        TimeSchedule schedule = new TimeSchedule(TimeWindow.parseList("01:00-04:00"),
+                TimeWindow.parseList("Mon-Fri 09:00-17:00"));
+        long now = System.currentTimeMillis();
+        schedule.advance(now);
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            long blocked = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < 10_000_000; i++) {
+                if (schedule.isBlockedAt(now + (i & 1023))) blocked++;
+            }
+            if (round == 1) {
+                System.out.printf("  %.1f ns per call on the current segment (%d blocked)%n",
+                        (System.nanoTime() - start) / 1e7, blocked);
+            }
+        }
+        long past = now - 200L * 86_400_000L;
+        double pastNs = 0;
+        for (int round = 0; round < 2; round++) {
+            long blocked = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < 1_000_000; i++) {
+                if (schedule.isBlockedAt(past + i * 5_000L)) blocked++; // 58 days of old requests
+            }
+            pastNs = (System.nanoTime() - start) / 1e6;
+            if (round == 1) {
+                System.out.printf("  %.1f ns per call months in the past (%d blocked)%n", pastNs, blocked);
+            }
+        }
+        check("old timestamps don't compile a schedule per call", pastNs < 1000);
+
+        checkWhatIfTiming(now - 200L * 86_400_000L);
+        Checks.finish();
+    }
+
+    // What-if evaluates logged requests at their logged time, so a time-window policy makes every
+    // line of an old log fall outside the live schedule's horizon
+    private static void checkWhatIfTiming(long from) throws IOException {
+        int lines = 500_000;
+        System.out.println("\n--- What-if over " + lines + " logged requests from 2 months, 7 months ago ---");
+        Path work = Files.createTempDirectory("schedule-check");
+        Path log = work.resolve("activity.log");
+        Path plain = work.resolve("plain.txt");
+        Path windowed = work.resolve("windowed.txt");
+        try {
+            DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+                    .withZone(ZoneId.systemDefault());
+            try (BufferedWriter out = Files.newBufferedWriter(log, StandardCharsets.UTF_8)) {
+                out.write("TIMESTAMP | LEVEL | APP_NAME | TARGET_DOMAIN | TARGET_IP | PROTOCOL | PORT | DECISION | REASON\n");
+                for (int i = 0; i < lines; i++) {
+                    out.write(format.format(Instant.ofEpochMilli(from + i * 10_000L))
+                            + " | INFO | BackupApp | backup.example.com | 10.0.0.5 | HTTPS | 443 | ALLOW | Allowed by policy.\n");
+                }
+            }
+            Files.write(plain, "appName=BackupApp\nallowedProtocols=HTTPS\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(windowed, ("appName=BackupApp\nallowedProtocols=HTTPS\nallowedTimes=01:00-04:00\n"
+                    + "deniedTimes=Sun 02:00-03:00\n").getBytes(StandardCharsets.UTF_8));
+            double plainSeconds = 0;
+            double windowedSeconds = 0;
+            VerdictDiff diff = null;
+            for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+                long start = System.nanoTime();
+                whatIf(plain, log);
+                plainSeconds = (System.nanoTime() - start) / 1e9;
+                start = System.nanoTime();
+                diff = whatIf(windowed, log);
+                windowedSeconds = (System.nanoTime() - start) / 1e9;
+            }
+            System.out.printf("  %.2f s without time windows, %.2f s with allowedTimes/deniedTimes (%d would change)%n",
+                    plainSeconds, windowedSeconds, diff.getChanged());
+            check("every request outside 01:00-04:00 or in the Sunday window would change",
+                    diff.getChanged() > lines * 0.8 && diff.getChanged() < lines);
+            check("time windows cost less than twice the plain run", windowedSeconds < 2 * plainSeconds + 0.2);
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(plain);
+            Files.deleteIfExists(windowed);
+            Files.delete(work);
+        }
+    }
+
+    private static VerdictDiff whatIf(Path policies, Path log) throws IOException {
+        PolicyManager manager = new PolicyManager(policies.toString());
+        return new WhatIfAnalysis(manager.getSnapshot(), ForkJoinPool.commonPool(), 1).analyzeLog(log);
+    }
+
+    private static void checkAgainstCalendar(String what, String allowedText, String deniedText, long origin) {
+        List<TimeWindow> allowed = allowedText == null ? null : TimeWindow.parseList(allowedText);
+        List<TimeWindow> denied = deniedText == null ? null : TimeWindow.parseList(deniedText);
+        TimeSchedule schedule = new TimeSchedule(allowed, denied, ZONE, origin);
+        Random random = new Random(42);
+        int mismatches = 0;
+        long step = 60_000;
+        // Walks minute by minute, advancing like the timer does, plus random probes across the whole range
+        long now = origin;
+        long next = schedule.advance(now);
+        for (; now < origin + 21L * 86_400_000L; now += step) {
+            if (now >= next) next = schedule.advance(now);
+            if (schedule.stateAt(now) != calendarState(allowed, denied, now)) mismatches++;
+            long probe = origin + (long) (random.nextDouble() * 28 * 86_400_000L);
+            if (schedule.stateAt(probe) != calendarState(allowed, denied, probe)) mismatches++;
+        }
+        check(what + ": " + mismatches + " mismatches", mismatches == 0);
+    }
+
+    // The state at 'millis' worked out directly from the wall-clock time
+    private static int calendarState(List<TimeWindow> allowed, List<TimeWindow> denied, long millis) {
+        if (denied != null && covered(denied, millis)) return TimeSchedule.INSIDE_DENIED;
+        if (allowed != null && !covered(allowed, millis)) return TimeSchedule.OUTSIDE_ALLOWED;
+        return TimeSchedule.OPEN;
+    }
+
+    private static boolean covered(List<TimeWindow> windows, long millis) {
+        LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE);
+        for (int daysBack = 0; daysBack <= 1; daysBack++) {
+            LocalDateTime midnight = local.toLocalDate().minusDays(daysBack).atStartOfDay();
+            DayOfWeek day = midnight.getDayOfWeek();
+            for (TimeWindow window : windows) {
+                if (!window.startsOn(day)) continue;
+                long from = midnight.plusMinutes(window.getStartMinute()).atZone(ZONE).toInstant().toEpochMilli();
+                long until = midnight.plusMinutes(window.getEndMinute()).atZone(ZONE).toInstant().toEpochMilli();
+                if (millis >= from && millis < until) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+package com.firewall.detection;
+
+import com.firewall.Checks;
+import com.firewall.model.NetworkRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.firewall.Checks.check;
+
+// Feeds each streaming detector ordinary background traffic with one synthetic incident mixed
+// in (a port scan, a heavy hitter, a traffic burst) and checks that it raises exactly one alert,
+// of the right type, for the right source. Detectors are driven directly, without the pipeline's
+// threads, as DetectorPipeline would: one event at a time. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.detection.DetectorCheck
+public class DetectorCheck {
+    private static final long START_MS = 1_700_000_000_000L;
+
+    public static void main(String[] args) {
+        checkPortScan();
+        checkHeavyHitter();
+        checkBurst();
+        Checks.finish();
+    }
+
+    private static void checkPortScan() {
+        System.out.println("--- PortScanDetector: one source walks 500 ports of one host ---");
+        PortScanDetector detector = new PortScanDetector();
+        List<String[]> alerts = new ArrayList<>();
+        Random random = new Random(1);
+        long now = START_MS;
+        for (int i = 0; i < 5_000; i++, now += 5) {
+            // 20 well-behaved clients, each using a handful of ports on a handful of hosts
+            int client = random.nextInt(20);
+            int[] ports = {80, 443, 53, 22};
+            feed(detector, alerts, new NetworkRequest("Browser", "N/A", "93.184.216." + random.nextInt(10), "TCP",
+                    ports[random.nextInt(ports.length)], "192.168.1." + client, now));
+            if (i % 10 == 0) {
+                feed(detector, alerts, new NetworkRequest("nmap", "N/A", "192.168.1.200", "TCP", 1 + i / 10,
+                        "192.168.1.66", now));
+            }
+        }
+        report(alerts);
+        check("one port-scan alert", alerts.size() == 1 && alerts.get(0)[1].equals("PORT_SCAN"));
+        check("blamed on the scanning source", alerts.size() == 1 && alerts.get(0)[3].contains("192.168.1.66"));
+    }
+
+    private static void checkHeavyHitter() {
+        System.out.println("--- HeavyHitterDetector: 70% of requests go to one destination ---");
+        HeavyHitterDetector detector = new HeavyHitterDetector();
+        List<String[]> alerts = new ArrayList<>();
+        Random random = new Random(2);
+        long now = START_MS;
+        for (int i = 0; i < 3_000; i++, now += 10) {
+            String domain = random.nextInt(10) < 7 ? "exfil.example.net" : "site" + random.nextInt(300) + ".example.com";
+            feed(detector, alerts, new NetworkRequest("Updater", domain, "203.0.113.7", "TCP", 443, "N/A", now));
+        }
+        report(alerts);
+        check("one heavy-hitter alert", alerts.size() == 1 && alerts.get(0)[1].equals("HEAVY_HITTER"));
+        check("names the heavy destination", alerts.size() == 1 && alerts.get(0)[3].contains("exfil.example.net"));
+    }
+
+    private static void checkBurst() {
+        System.out.println("--- BurstDetector: 10/s for 10 minutes, then 200/s for 10 s ---");
+        BurstDetector detector = new BurstDetector();
+        List<String[]> alerts = new ArrayList<>();
+        long now = START_MS;
+        for (int i = 0; i < 10 * 600; i++, now += 100) {
+            feed(detector, alerts, new NetworkRequest("Quiet", "a.example.com", "203.0.113.1", "TCP", 443, "N/A", now));
+            feed(detector, alerts, new NetworkRequest("Bursty", "b.example.com", "203.0.113.2", "TCP", 443, "N/A", now));
+        }
+        check("no alert for steady traffic", alerts.isEmpty());
+        for (int i = 0; i < 200 * 10; i++, now += 5) {
+            feed(detector, alerts, new NetworkRequest("Bursty", "b.example.com", "203.0.113.2", "TCP", 443, "N/A", now));
+            if (i % 20 == 0) {
+                feed(detector, alerts, new NetworkRequest("Quiet", "a.example.com", "203.0.113.1", "TCP", 443, "N/A", now));
+            }
+        }
+        report(alerts);
+        check("one burst alert", alerts.size() == 1 && alerts.get(0)[1].equals("TRAFFIC_BURST"));
+        check("for the bursting application", alerts.size() == 1 && alerts.get(0)[2].equals("Bursty"));
+    }
+
+    private static void feed(AlertDetector detector, List<String[]> alerts, NetworkRequest request) {
+        detector.onDecision(new DecisionEvent(request, "ALLOW", "Test"),
+                (level, type, application, details) -> alerts.add(new String[]{level, type, application, details}));
+    }
+
+    private static void report(List<String[]> alerts) {
+        for (String[] alert : alerts) {
+            System.out.println("  [" + alert[0] + "] " + alert[1] + " " + alert[2] + ": " + alert[3]);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.firewall.detection;
+
+import com.firewall.Checks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.firewall.Checks.check;
+
+// Accuracy and throughput check for the sketches against exact counts, in the same spirit
+// as PolicyManager.main(). The bounds asserted are a few standard errors wide, so a fixed
+// seed passes them with plenty of room. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.detection.SketchAccuracyCheck [seed]
+public class SketchAccuracyCheck {
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42L;
+        Random random = new Random(seed);
+        checkHyperLogLog(random);
+        checkHeavyHitters(random);
+        checkDecayingRate();
+        Checks.finish();
+    }
+
+    private static void checkHyperLogLog(Random random) {
+        System.out.println("--- HyperLogLog (precision 10, 1 KB) vs HashSet ---");
+        HyperLogLog warmUp = new HyperLogLog(10);
+        for (int i = 0; i < 1_000_000; i++) {
+            warmUp.add(Hashing.hash64(i)); // let the JIT compile add() before timing it
+        }
+        for (int cardinality : new int[]{10, 100, 1_000, 10_000, 100_000, 1_000_000}) {
+            HyperLogLog hll = new HyperLogLog(10);
+            Set<Long> exact = new HashSet<>();
+            long[] values = new long[cardinality * 3]; // every value seen ~3 times
+            for (int i = 0; i < values.length; i++) {
+                values[i] = random.nextInt(cardinality);
+            }
+            long start = System.nanoTime();
+            for (long v : values) {
+                hll.add(Hashing.hash64(v));
+            }
+            long nanos = System.nanoTime() - start;
+            for (long v : values) {
+                exact.add(v);
+            }
+            long estimate = hll.estimate();
+            double error = 100.0 * (estimate - exact.size()) / exact.size();
+            System.out.printf("distinct=%,10d estimate=%,10d error=%+6.2f%%  add=%.1f ns/op%n",
+                    exact.size(), estimate, error, (double) nanos / values.length);
+            // Standard error is 1.04 / sqrt(1024) = 3.3%; small sets use linear counting, near exact
+            check("HyperLogLog within 10% of " + exact.size() + " distinct values", Math.abs(error) < 10);
+        }
+    }
+
+    private static void checkHeavyHitters(Random random) {
+        System.out.println("--- Count-Min (4 x 2048) + top-10 vs HashMap, Zipf(1.1) over 100k items ---");
+        int items = 100_000;
+        int events = 2_000_000;
+        double[] cdf = zipfCdf(items, 1.1);
+        String[] names = new String[items];
+        for (int i = 0; i < items; i++) {
+            names[i] = "dest-" + i + ".example.com";
+        }
+
+        HeavyHitters heavyHitters = new HeavyHitters(10, 4, 2048);
+        Map<String, Long> exact = new HashMap<>();
+        String[] stream = new String[events];
+        for (int i = 0; i < events; i++) {
+            stream[i] = names[sample(cdf, random.nextDouble())];
+        }
+        long start = System.nanoTime();
+        for (String item : stream) {
+            heavyHitters.add(item);
+        }
+        long nanos = System.nanoTime() - start;
+        for (String item : stream) {
+            exact.merge(item, 1L, Long::sum);
+        }
+
+        List<Map.Entry<String, Long>> exactTop = new ArrayList<>(exact.entrySet());
+        exactTop.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Set<String> exactTop10 = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            exactTop10.add(exactTop.get(i).getKey());
+        }
+        int found = 0;
+        double worstOvercount = 0;
+        boolean undercounted = false;
+        long worstExcess = 0;
+        for (HeavyHitters.Entry entry : heavyHitters.top()) {
+            if (exactTop10.contains(entry.item)) found++;
+            long actual = exact.getOrDefault(entry.item, 0L);
+            undercounted |= entry.getCount() < actual;
+            worstExcess = Math.max(worstExcess, entry.getCount() - actual);
+            worstOvercount = Math.max(worstOvercount, 100.0 * (entry.getCount() - actual) / Math.max(1, actual));
+            System.out.printf("  %-26s estimate=%,9d exact=%,9d%n", entry.item, entry.getCount(), actual);
+        }
+        System.out.printf("top-10 recall=%d/10 worst overcount=%.2f%% add=%.1f ns/op%n",
+                found, worstOvercount, (double) nanos / events);
+        check("Count-Min never undercounts", !undercounted);
+        // Count-Min overcounts by at most e / width of all events, except with probability e^-depth
+        check("Count-Min overcount within e/width of the stream", worstExcess <= Math.E / 2048 * events);
+        check("top-10 recall at least 9/10", found >= 9);
+    }
+
+    private static void checkDecayingRate() {
+        System.out.println("--- DecayingRate (half-life 5 s) vs exact rate ---");
+        DecayingRate rate = new DecayingRate(5_000);
+        long now = 0;
+        // 50 req/s for a minute, then 500 req/s for 10 s
+        for (int i = 0; i < 50 * 60; i++, now += 20) {
+            rate.add(now, 1);
+        }
+        double steady = rate.ratePerSecond(now);
+        System.out.printf("steady 50/s     -> estimate %.1f/s%n", steady);
+        check("DecayingRate settles on a steady 50/s", Math.abs(steady - 50) < 2.5);
+        for (int i = 0; i < 500 * 10; i++, now += 2) {
+            rate.add(now, 1);
+        }
+        double afterBurst = rate.ratePerSecond(now);
+        // Two half-lives into the burst the estimate should be 50 + 450 * (1 - 1/4)
+        System.out.printf("burst 500/s     -> estimate %.1f/s (expected %.1f/s after 10 s)%n", afterBurst, 50 + 450 * 0.75);
+        double afterSilence = rate.ratePerSecond(now + 10_000);
+        System.out.printf("10 s of silence -> estimate %.1f/s (expected %.1f/s)%n", afterSilence, afterBurst / 4);
+        check("DecayingRate follows a burst within 5%", Math.abs(afterBurst - (50 + 450 * 0.75)) < 0.05 * 387.5);
+        check("DecayingRate halves every half-life of silence", Math.abs(afterSilence - afterBurst / 4) < 0.01 * afterBurst);
+    }
+
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, double u) {
+        int lo = 0, hi = cdf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] < u) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+}
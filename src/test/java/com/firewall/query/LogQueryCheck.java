@@ -0,0 +1,123 @@
+package com.firewall.query;
+
+import com.firewall.Checks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static com.firewall.Checks.check;
+
+// Writes an activity log whose timestamps are only roughly in order: every 7th line is
+// appended 300 ms after it was stamped, and halfway through the clock falls back an hour the
+// way local time does when daylight saving ends. Then checks that the sparse index never
+// narrows a time range past a line inside it, and that --query --from/--to returns exactly
+// the lines a full scan finds. Run with:
+//   java -cp target/test-classes:target/classes com.firewall.query.LogQueryCheck
+public class LogQueryCheck {
+    private static final int LINES = 60_000;
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    public static void main(String[] args) throws IOException {
+        Path work = Files.createTempDirectory("log-query-check");
+        Path log = work.resolve("activity.log");
+        try {
+            long[] offsets = new long[LINES];
+            long[] keys = new long[LINES];
+            writeLog(log, offsets, keys);
+            System.out.printf("  %d lines, %d KB%n", LINES, Files.size(log) / 1024);
+
+            System.out.println("\n--- Index bounds ---");
+            SparseLogIndex index = new SparseLogIndex(log, 4096);
+            index.refresh();
+            Random random = new Random(7);
+            int startsTooLate = 0;
+            int endsTooEarly = 0;
+            long scanned = 0;
+            int probes = 2000;
+            for (int p = 0; p < probes; p++) {
+                long key = keys[random.nextInt(LINES)] + random.nextInt(3) - 1;
+                long start = index.startOffsetFor(key);
+                long end = index.endOffsetFor(key, Files.size(log));
+                for (int i = 0; i < LINES && offsets[i] < start; i++) {
+                    if (keys[i] >= key) {
+                        startsTooLate++;
+                        break;
+                    }
+                }
+                for (int i = LINES - 1; i >= 0 && offsets[i] >= end; i--) {
+                    if (keys[i] < key) {
+                        endsTooEarly++;
+                        break;
+                    }
+                }
+                scanned += Files.size(log) - start;
+            }
+            check("no start offset skips a line at or after 'from' (" + startsTooLate + " of " + probes + ")",
+                    startsTooLate == 0);
+            check("no end offset cuts off a line before 'to' (" + endsTooEarly + " of " + probes + ")",
+                    endsTooEarly == 0);
+            System.out.printf("  %d index entries; a 'from' search still skips %.0f%% of the file on average%n",
+                    index.getEntryCount(), 100.0 - 100.0 * scanned / probes / Files.size(log));
+            Files.deleteIfExists(index.getIndexPath());
+
+            System.out.println("\n--- Queries ---");
+            LogQueryEngine engine = new LogQueryEngine(log.toString());
+            String[][] ranges = {
+                    {"2025-11-02 01:30", null},                 // both passes through 01:30
+                    {"2025-11-02 01:05", "2025-11-02 01:10"},   // only after the fall-back
+                    {"2025-11-02 01:50", "2025-11-02 01:55"},   // once before, once after
+                    {"2025-11-02 01:59:59.8", null},            // the last lines before the fall-back
+                    {null, "2025-11-02 01:25"},
+            };
+            for (String[] range : ranges) {
+                LogQuery query = new LogQuery();
+                if (range[0] != null) query.from(range[0]);
+                if (range[1] != null) query.to(range[1]);
+                int expected = 0;
+                for (long key : keys) {
+                    if (query.inTimeRange(key)) expected++;
+                }
+                long found = engine.queryToList(query).size();
+                check("--from " + range[0] + " --to " + range[1] + ": " + found + " of " + expected + " lines",
+                        found == expected);
+            }
+        } finally {
+            Files.deleteIfExists(log.resolveSibling("activity.log.idx"));
+            Files.deleteIfExists(log.resolveSibling("activity.log.idx.tmp"));
+            Files.deleteIfExists(log);
+            Files.delete(work);
+        }
+        Checks.finish();
+    }
+
+    private static void writeLog(Path log, long[] offsets, long[] keys) throws IOException {
+        LocalDateTime clock = LocalDateTime.of(2025, 11, 2, 1, 20);
+        boolean fellBack = false;
+        long offset = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(log, StandardCharsets.US_ASCII)) {
+            String header = "TIMESTAMP | LEVEL | APP_NAME | TARGET_DOMAIN | TARGET_IP | PROTOCOL | PORT | DECISION | REASON\n";
+            out.write(header);
+            offset += header.length();
+            for (int i = 0; i < LINES; i++) {
+                clock = clock.plusNanos(100_000_000);
+                if (!fellBack && clock.getHour() == 2) {
+                    clock = clock.minusHours(1);
+                    fellBack = true;
+                }
+                LocalDateTime stamped = i % 7 == 3 ? clock.minusNanos(300_000_000) : clock;
+                String line = FORMAT.format(stamped) + " | INFO | BrowserApp | host" + i + ".example.org | 10.0.0."
+                        + (i % 250) + " | HTTPS | 443 | ALLOW | Request by 'BrowserApp' matches app policy.\n";
+                offsets[i] = offset;
+                keys[i] = LogTimestamps.parseKey(line.getBytes(StandardCharsets.US_ASCII));
+                out.write(line);
+                offset += line.length();
+            }
+        }
+    }
+}